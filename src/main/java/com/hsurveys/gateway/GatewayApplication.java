@@ -1,12 +1,12 @@
 package com.hsurveys.gateway;
 
+import com.hsurveys.gateway.config.GatewayRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.cloud.gateway.route.RouteLocator;
-import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
-import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(GatewayRuntimeHints.class)
 public class GatewayApplication {
 
 	public static void main(String[] args) {
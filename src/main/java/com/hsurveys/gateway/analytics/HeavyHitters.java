@@ -0,0 +1,109 @@
+package com.hsurveys.gateway.analytics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted Space-Saving sketch: the heaviest keys of a stream in a fixed number of
+ * counters, however many distinct keys the stream has. A key without a counter takes
+ * over the smallest one and inherits its weight as {@code error}, so a key's
+ * {@code weight} never underestimates what it was given, {@code weight - error} never
+ * overestimates it, and any key with more than {@code total / capacity} of the weight is
+ * guaranteed to hold a counter.
+ * <p>
+ * {@link #decay} scales every counter, so old traffic fades out instead of pinning keys
+ * that have gone quiet. An update is a map lookup, plus a scan of the {@code capacity}
+ * counters when a new key replaces the smallest.
+ * <p>
+ * Not thread-safe: callers serialize access, and can batch updates to take their lock
+ * less often.
+ */
+public final class HeavyHitters<K> {
+
+    /** A tracked key, heaviest first in {@link #top()}. */
+    public record Estimate<K>(K key, double weight, double error) {
+    }
+
+    private final int capacity;
+    private final Map<K, Counter<K>> counters;
+    private double total;
+
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public void add(K key, double weight) {
+        if (weight <= 0) {
+            return;
+        }
+        total += weight;
+        Counter<K> counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter<>(key);
+            } else {
+                counter = smallest();
+                counters.remove(counter.key);
+                counter.error = counter.weight;
+                counter.key = key;
+            }
+            counters.put(key, counter);
+        }
+        counter.weight += weight;
+    }
+
+    /**
+     * Multiplies every weight by {@code factor}, between 0 and 1.
+     */
+    public void decay(double factor) {
+        total *= factor;
+        for (Counter<K> counter : counters.values()) {
+            counter.weight *= factor;
+            counter.error *= factor;
+        }
+    }
+
+    /**
+     * Weight added to the sketch, decayed like the counters.
+     */
+    public double total() {
+        return total;
+    }
+
+    public List<Estimate<K>> top() {
+        List<Estimate<K>> estimates = new ArrayList<>(counters.size());
+        for (Counter<K> counter : counters.values()) {
+            estimates.add(new Estimate<>(counter.key, counter.weight, counter.error));
+        }
+        estimates.sort(Comparator.comparingDouble((Estimate<K> estimate) -> estimate.weight()).reversed());
+        return estimates;
+    }
+
+    private Counter<K> smallest() {
+        Counter<K> smallest = null;
+        for (Counter<K> counter : counters.values()) {
+            if (smallest == null || counter.weight < smallest.weight) {
+                smallest = counter;
+            }
+        }
+        return smallest;
+    }
+
+    private static final class Counter<K> {
+
+        private K key;
+        private double weight;
+        private double error;
+
+        private Counter(K key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.hsurveys.gateway.analytics;
+
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Which organizations and users drive each route's load, for {@code /actuator/tenants}.
+ * Tagging meters with tenant ids would create a series per tenant; instead every route
+ * keeps a {@link HeavyHitters} sketch per tenant dimension and measure (requests, bytes,
+ * time spent), so memory stays at {@code tenant-traffic.capacity} counters per sketch
+ * however many tenants there are.
+ * <p>
+ * Requests are not added to the sketches one at a time: each lands in a small buffer
+ * picked by the recording thread, and a full buffer is added under the route's lock in
+ * one go. Event loop threads each have their own buffer, so a request takes an
+ * uncontended lock, and the route's lock is taken once per {@value #BATCH} requests.
+ * Reads add the buffered requests first, so they see every recorded request.
+ * <p>
+ * Weights decay with a half-life of {@code tenant-traffic.half-life}. Decay is lazy: the
+ * first request recorded on a route, or read of it, at least
+ * {@code tenant-traffic.decay-interval} after the last decay applies the decay for all
+ * the time since. The ranking therefore follows recent traffic.
+ */
+@Component
+public class TenantTraffic {
+
+    /** Whose traffic a sketch ranks. */
+    enum Dimension {
+        ORGANIZATION("organizations"),
+        USER("users");
+
+        final String tag;
+
+        Dimension(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    /** What a sketch weighs each request by. */
+    enum Measure {
+        /** One per request. */
+        REQUESTS("requests", 1),
+        /** Request and response body bytes. */
+        BYTES("bytes", 1),
+        /** Time from authentication to the end of the exchange, reported in milliseconds. */
+        TIME("time_ms", TimeUnit.MILLISECONDS.toNanos(1));
+
+        final String tag;
+        final double unit;
+
+        Measure(String tag, double unit) {
+            this.tag = tag;
+            this.unit = unit;
+        }
+    }
+
+    /** Requests a buffer holds before they are added to the sketches. */
+    static final int BATCH = 64;
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+    private static final Measure[] MEASURES = Measure.values();
+
+    private final boolean enabled;
+    private final int capacity;
+    private final long halfLifeNanos;
+    private final long decayIntervalNanos;
+    private final LongSupplier nanoClock;
+    private final Map<String, RouteTraffic> routes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TenantTraffic(@Value("${tenant-traffic.enabled:true}") boolean enabled,
+                         @Value("${tenant-traffic.capacity:50}") int capacity,
+                         @Value("${tenant-traffic.half-life:5m}") Duration halfLife,
+                         @Value("${tenant-traffic.decay-interval:10s}") Duration decayInterval) {
+        this(enabled, capacity, halfLife, decayInterval, System::nanoTime);
+    }
+
+    TenantTraffic(boolean enabled, int capacity, Duration halfLife, Duration decayInterval, LongSupplier nanoClock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("tenant-traffic.capacity must be at least 1, got " + capacity);
+        }
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.halfLifeNanos = halfLife.toNanos();
+        this.decayIntervalNanos = decayInterval.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts a finished request of {@code principal} on {@code routeId}.
+     */
+    public void record(String routeId, JwtPrincipal principal, long bytes, long nanos) {
+        if (!enabled || routeId == null) {
+            return;
+        }
+        RouteTraffic traffic = routes.computeIfAbsent(routeId, id -> new RouteTraffic(capacity, nanoClock.getAsLong()));
+        traffic.decayIfDue(nanoClock.getAsLong());
+        traffic.record(principal.organizationId(), principal.userId(), bytes, nanos);
+    }
+
+    /**
+     * Every route's heaviest organizations and users per measure, with each one's
+     * estimate, its possible overestimation ({@code error}) and its share of the route's
+     * decayed total.
+     */
+    public Map<String, Map<String, Map<String, Object>>> snapshot() {
+        Map<String, Map<String, Map<String, Object>>> snapshot = new TreeMap<>();
+        routes.forEach((routeId, traffic) -> snapshot.put(routeId, snapshot(traffic)));
+        return snapshot;
+    }
+
+    public Map<String, Map<String, Object>> snapshot(String routeId) {
+        RouteTraffic traffic = routes.get(routeId);
+        return traffic != null ? snapshot(traffic) : null;
+    }
+
+    private Map<String, Map<String, Object>> snapshot(RouteTraffic traffic) {
+        // a route that went quiet still fades out
+        traffic.decayIfDue(nanoClock.getAsLong());
+        traffic.flush();
+        Map<String, Map<String, Object>> dimensions = new LinkedHashMap<>();
+        synchronized (traffic) {
+            for (Dimension dimension : DIMENSIONS) {
+                Map<String, Object> measures = new LinkedHashMap<>();
+                for (Measure measure : MEASURES) {
+                    measures.put(measure.tag, snapshot(traffic.sketch(dimension, measure), measure.unit));
+                }
+                dimensions.put(dimension.tag, measures);
+            }
+        }
+        return dimensions;
+    }
+
+    private static Map<String, Object> snapshot(HeavyHitters<UUID> sketch, double unit) {
+        double total = sketch.total();
+        List<Map<String, Object>> top = sketch.top().stream()
+                .map(estimate -> {
+                    Map<String, Object> values = new LinkedHashMap<>();
+                    values.put("id", estimate.key().toString());
+                    values.put("estimate", estimate.weight() / unit);
+                    values.put("error", estimate.error() / unit);
+                    values.put("share", total > 0 ? estimate.weight() / total : 0);
+                    return values;
+                })
+                .toList();
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("total", total / unit);
+        values.put("top", top);
+        return values;
+    }
+
+    /**
+     * A route's sketches, guarded by the route itself, and the buffers feeding them. A
+     * buffer is locked before the route, never the other way round.
+     */
+    private final class RouteTraffic {
+
+        private final HeavyHitters<UUID>[] sketches;
+        private final Buffer[] buffers;
+        private final AtomicLong lastDecay;
+
+        @SuppressWarnings("unchecked")
+        private RouteTraffic(int capacity, long now) {
+            this.sketches = new HeavyHitters[DIMENSIONS.length * MEASURES.length];
+            for (int i = 0; i < sketches.length; i++) {
+                sketches[i] = new HeavyHitters<>(capacity);
+            }
+            // a power of two, at least reactor-netty's default number of event loop threads
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            int stripes = Integer.highestOneBit(threads * 2 - 1);
+            this.buffers = new Buffer[stripes];
+            for (int i = 0; i < stripes; i++) {
+                buffers[i] = new Buffer();
+            }
+            this.lastDecay = new AtomicLong(now);
+        }
+
+        HeavyHitters<UUID> sketch(Dimension dimension, Measure measure) {
+            return sketches[dimension.ordinal() * MEASURES.length + measure.ordinal()];
+        }
+
+        void record(UUID organization, UUID user, long bytes, long nanos) {
+            Buffer buffer = buffers[(int) Thread.currentThread().getId() & (buffers.length - 1)];
+            synchronized (buffer) {
+                int i = buffer.size++;
+                buffer.organizations[i] = organization;
+                buffer.users[i] = user;
+                buffer.bytes[i] = bytes;
+                buffer.nanos[i] = nanos;
+                if (buffer.size == BATCH) {
+                    drain(buffer);
+                }
+            }
+        }
+
+        /**
+         * Adds every buffered request to the sketches.
+         */
+        void flush() {
+            for (Buffer buffer : buffers) {
+                synchronized (buffer) {
+                    drain(buffer);
+                }
+            }
+        }
+
+        // with the buffer's lock held
+        private void drain(Buffer buffer) {
+            if (buffer.size == 0) {
+                return;
+            }
+            synchronized (this) {
+                for (int i = 0; i < buffer.size; i++) {
+                    add(Dimension.ORGANIZATION, buffer.organizations[i], buffer.bytes[i], buffer.nanos[i]);
+                    add(Dimension.USER, buffer.users[i], buffer.bytes[i], buffer.nanos[i]);
+                }
+            }
+            Arrays.fill(buffer.organizations, 0, buffer.size, null);
+            Arrays.fill(buffer.users, 0, buffer.size, null);
+            buffer.size = 0;
+        }
+
+        private void add(Dimension dimension, UUID tenant, long bytes, long nanos) {
+            if (tenant == null) {
+                return;
+            }
+            sketch(dimension, Measure.REQUESTS).add(tenant, 1);
+            sketch(dimension, Measure.BYTES).add(tenant, bytes);
+            sketch(dimension, Measure.TIME).add(tenant, nanos);
+        }
+
+        void decayIfDue(long now) {
+            long last = lastDecay.get();
+            long elapsed = now - last;
+            if (elapsed < decayIntervalNanos || !lastDecay.compareAndSet(last, now)) {
+                return;
+            }
+            double factor = Math.pow(0.5, (double) elapsed / halfLifeNanos);
+            // buffered requests came before the decay too
+            flush();
+            synchronized (this) {
+                for (HeavyHitters<UUID> sketch : sketches) {
+                    sketch.decay(factor);
+                }
+            }
+        }
+    }
+
+    private static final class Buffer {
+
+        private final UUID[] organizations = new UUID[BATCH];
+        private final UUID[] users = new UUID[BATCH];
+        private final long[] bytes = new long[BATCH];
+        private final long[] nanos = new long[BATCH];
+        private int size;
+    }
+}
@@ -0,0 +1,33 @@
+package com.hsurveys.gateway.analytics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/tenants} and {@code /actuator/tenants/{route}}: the organizations and
+ * users sending each route the most requests, bytes and time, over recent traffic.
+ */
+@Component
+@Endpoint(id = "tenants")
+public class TenantTrafficEndpoint {
+
+    private final TenantTraffic tenantTraffic;
+
+    public TenantTrafficEndpoint(TenantTraffic tenantTraffic) {
+        this.tenantTraffic = tenantTraffic;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Map<String, Object>>> routes() {
+        return tenantTraffic.snapshot();
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> route(@Selector String route) {
+        return tenantTraffic.snapshot(route);
+    }
+}
@@ -0,0 +1,144 @@
+package com.hsurveys.gateway.cache;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies a response body into an off-heap buffer while it streams to the client, so the
+ * response is neither delayed nor aggregated on the heap. Bodies over {@code maxBytes}
+ * are written through and not captured; so are bodies sent with
+ * {@code writeAndFlushWith} (server-sent events and other streams). A response completed
+ * without a body is captured as an empty one.
+ * <p>
+ * Exactly one of {@link #captured} and {@link #notCaptured} is called per response, the
+ * latter as soon as the body is known not to be captured. The captured headers are the
+ * ones the body was written with here: decorators further down, such as compression,
+ * change the response's own headers to match what they make of the body.
+ */
+public abstract class BodyCaptureResponseDecorator extends ServerHttpResponseDecorator {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final int maxBytes;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    protected BodyCaptureResponseDecorator(ServerHttpResponse delegate, int maxBytes) {
+        super(delegate);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Decides, once the status and headers are known, whether to capture the body.
+     */
+    protected abstract boolean shouldCapture();
+
+    /**
+     * Receives the complete body, flipped and ready to read, after it was written, with a
+     * copy of the headers taken when the write began.
+     */
+    protected abstract void captured(ByteBuffer body, HttpHeaders headers);
+
+    /**
+     * Called when the body is not captured: not wanted, too large, streamed, or the write
+     * failed or was cancelled.
+     */
+    protected void notCaptured() {
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        if (!shouldCapture() || getHeaders().getContentLength() > maxBytes) {
+            finish(null);
+            return super.writeWith(body);
+        }
+        HttpHeaders headers = copyOfHeaders();
+        long contentLength = headers.getContentLength();
+        Capture capture = new Capture(contentLength >= 0 ? (int) contentLength : INITIAL_CAPACITY);
+        // the copy is taken before the buffer is handed on, since the server releases it once written
+        Flux<? extends DataBuffer> teed = Flux.from(body).doOnNext(capture::append);
+        return super.writeWith(teed)
+                .doOnSuccess(done -> finish(capture.complete(), headers))
+                .doOnError(e -> finish(null))
+                .doOnCancel(() -> finish(null));
+    }
+
+    @Override
+    public Mono<Void> setComplete() {
+        HttpHeaders headers = shouldCapture() ? copyOfHeaders() : null;
+        return super.setComplete()
+                .doOnSuccess(done -> finish(headers != null ? ByteBuffer.allocateDirect(0) : null, headers))
+                .doOnError(e -> finish(null))
+                .doOnCancel(() -> finish(null));
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        finish(null);
+        return super.writeAndFlushWith(body);
+    }
+
+    private HttpHeaders copyOfHeaders() {
+        HttpHeaders copy = new HttpHeaders();
+        getHeaders().forEach((name, values) -> copy.put(name, List.copyOf(values)));
+        return copy;
+    }
+
+    private void finish(ByteBuffer body) {
+        finish(body, null);
+    }
+
+    private void finish(ByteBuffer body, HttpHeaders headers) {
+        if (finished.compareAndSet(false, true)) {
+            if (body != null) {
+                captured(body, headers);
+            } else {
+                notCaptured();
+            }
+        }
+    }
+
+    private final class Capture {
+
+        private ByteBuffer buffer;
+        private boolean overflowed;
+
+        private Capture(int initialCapacity) {
+            this.buffer = ByteBuffer.allocateDirect(Math.min(initialCapacity, maxBytes));
+        }
+
+        void append(DataBuffer chunk) {
+            int length = chunk.readableByteCount();
+            if (overflowed || length == 0) {
+                return;
+            }
+            if (buffer.position() + length > maxBytes) {
+                overflowed = true;
+                buffer = null;
+                finish(null);
+                return;
+            }
+            if (buffer.remaining() < length) {
+                int capacity = Math.min(maxBytes, Math.max(buffer.capacity() * 2, buffer.position() + length));
+                ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            chunk.toByteBuffer(chunk.readPosition(), buffer, buffer.position(), length);
+            buffer.position(buffer.position() + length);
+        }
+
+        ByteBuffer complete() {
+            return overflowed ? null : buffer.flip();
+        }
+    }
+}
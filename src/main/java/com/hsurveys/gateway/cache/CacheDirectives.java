@@ -0,0 +1,94 @@
+package com.hsurveys.gateway.cache;
+
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The {@code Cache-Control} directives the response cache acts on. Unknown directives
+ * are ignored.
+ *
+ * @param hasSharedMaxAge whether {@code s-maxage} is present
+ * @param maxAge {@code s-maxage} if present, else {@code max-age}, else {@code null}
+ */
+public record CacheDirectives(boolean noStore, boolean noCache, boolean isPrivate, boolean isPublic,
+                              boolean hasSharedMaxAge, Duration maxAge) {
+
+    public static final CacheDirectives NONE = new CacheDirectives(false, false, false, false, false, null);
+
+    public static CacheDirectives of(HttpHeaders headers) {
+        List<String> values = headers.get(HttpHeaders.CACHE_CONTROL);
+        if (values == null || values.isEmpty()) {
+            return NONE;
+        }
+        boolean noStore = false;
+        boolean noCache = false;
+        boolean isPrivate = false;
+        boolean isPublic = false;
+        Duration maxAge = null;
+        Duration sharedMaxAge = null;
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                String name = directive.trim();
+                String argument = null;
+                int equals = name.indexOf('=');
+                if (equals >= 0) {
+                    argument = name.substring(equals + 1).trim();
+                    name = name.substring(0, equals).trim();
+                }
+                switch (name.toLowerCase()) {
+                    case "no-store" -> noStore = true;
+                    case "no-cache" -> noCache = true;
+                    case "private" -> isPrivate = true;
+                    case "public" -> isPublic = true;
+                    case "max-age" -> maxAge = seconds(argument);
+                    case "s-maxage" -> sharedMaxAge = seconds(argument);
+                    default -> {
+                    }
+                }
+            }
+        }
+        return new CacheDirectives(noStore, noCache, isPrivate, isPublic, sharedMaxAge != null,
+                sharedMaxAge != null ? sharedMaxAge : maxAge);
+    }
+
+    /**
+     * Whether the response explicitly allows shared caches such as the gateway to store
+     * it ({@code public} or {@code s-maxage}). Responses to authenticated requests may
+     * only be shared when they say so.
+     */
+    public boolean isShareable() {
+        return isPublic || hasSharedMaxAge;
+    }
+
+    /**
+     * Whether a request asks to bypass stored responses ({@code no-cache}, {@code max-age=0}
+     * or {@code Pragma: no-cache}).
+     */
+    public static boolean requestsRevalidation(HttpHeaders requestHeaders) {
+        CacheDirectives directives = of(requestHeaders);
+        return directives.noCache()
+                || Duration.ZERO.equals(directives.maxAge())
+                || "no-cache".equalsIgnoreCase(requestHeaders.getFirst(HttpHeaders.PRAGMA));
+    }
+
+    /**
+     * Whether a request forbids storing its response ({@code no-store}).
+     */
+    public static boolean forbidsStorage(HttpHeaders requestHeaders) {
+        return of(requestHeaders).noStore();
+    }
+
+    private static Duration seconds(String argument) {
+        if (argument == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(argument.replace("\"", ""))));
+        } catch (NumberFormatException e) {
+            // an unparsable age is treated as already stale
+            return Duration.ZERO;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.hsurveys.gateway.cache;
+
+import org.springframework.http.HttpHeaders;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stored 200 response: an off-heap body and the upstream headers that describe it.
+ * The body is shared by every reader, so it is only ever handed out as a
+ * {@linkplain #body() duplicate}. The request headers named by the response's
+ * {@code Vary} are kept as well, and later requests must send the same values to be
+ * served it.
+ */
+public final class CachedResponse {
+
+    static final List<String> STORED_HEADERS = List.of(
+            HttpHeaders.CONTENT_TYPE,
+            HttpHeaders.CONTENT_LANGUAGE,
+            HttpHeaders.CONTENT_ENCODING,
+            HttpHeaders.ETAG,
+            HttpHeaders.LAST_MODIFIED,
+            HttpHeaders.CACHE_CONTROL,
+            HttpHeaders.VARY);
+
+    // rough size of the key, headers and bookkeeping kept on the heap per entry
+    static final int HEAP_OVERHEAD_BYTES = 512;
+
+    private final ByteBuffer body;
+    private final HttpHeaders headers;
+    private final String etag;
+    private final Map<String, List<String>> variedRequestHeaders;
+    private final long validatedAtNanos;
+    private final long freshUntilNanos;
+
+    private CachedResponse(ByteBuffer body, HttpHeaders headers, Map<String, List<String>> variedRequestHeaders,
+                           long validatedAtNanos, Duration ttl) {
+        this.body = body.asReadOnlyBuffer();
+        this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        this.etag = headers.getETag();
+        this.variedRequestHeaders = variedRequestHeaders;
+        this.validatedAtNanos = validatedAtNanos;
+        this.freshUntilNanos = validatedAtNanos + ttl.toNanos();
+    }
+
+    /**
+     * @param requestHeaders headers of the request the response answers, of which those
+     * named by the response's {@code Vary} are kept
+     */
+    public static CachedResponse of(ByteBuffer body, HttpHeaders upstreamHeaders, HttpHeaders requestHeaders,
+                                    Duration ttl) {
+        HttpHeaders headers = new HttpHeaders();
+        for (String name : STORED_HEADERS) {
+            List<String> values = upstreamHeaders.get(name);
+            if (values != null) {
+                headers.put(name, List.copyOf(values));
+            }
+        }
+        Map<String, List<String>> varied = new LinkedHashMap<>();
+        for (String name : upstreamHeaders.getVary()) {
+            varied.put(name, List.copyOf(requestHeaders.getOrEmpty(name)));
+        }
+        return new CachedResponse(body, headers, Map.copyOf(varied), System.nanoTime(), ttl);
+    }
+
+    /**
+     * The same body and headers, fresh for {@code ttl} from now.
+     */
+    public CachedResponse revalidated(Duration ttl) {
+        return new CachedResponse(body, headers, variedRequestHeaders, System.nanoTime(), ttl);
+    }
+
+    /**
+     * Whether a request sends the same values as the stored one for every header the
+     * response varies on.
+     */
+    public boolean matchesVary(HttpHeaders requestHeaders) {
+        for (Map.Entry<String, List<String>> varied : variedRequestHeaders.entrySet()) {
+            if (!varied.getValue().equals(requestHeaders.getOrEmpty(varied.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public ByteBuffer body() {
+        return body.duplicate();
+    }
+
+    public int size() {
+        return body.remaining();
+    }
+
+    public HttpHeaders headers() {
+        return headers;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    public boolean isFresh(long nowNanos) {
+        return nowNanos - freshUntilNanos < 0;
+    }
+
+    /**
+     * Whole seconds since the body was stored or last revalidated, for the {@code Age} header.
+     */
+    public long ageSeconds(long nowNanos) {
+        return Duration.ofNanos(nowNanos - validatedAtNanos).toSeconds();
+    }
+
+    long remainingFreshNanos(long nowNanos) {
+        return Math.max(0, freshUntilNanos - nowNanos);
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header value names this response, using the weak
+     * comparison that conditional GETs call for.
+     */
+    public boolean matches(List<String> ifNoneMatch) {
+        if (etag == null || ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = opaque(etag);
+        for (String value : ifNoneMatch) {
+            for (String candidate : value.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || opaque(tag).equals(opaque)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
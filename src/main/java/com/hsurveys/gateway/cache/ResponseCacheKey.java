@@ -0,0 +1,15 @@
+package com.hsurveys.gateway.cache;
+
+/**
+ * Identifies a cached response. The tenant is part of every key, so organizations never
+ * share entries even for identical URLs; the scope further splits a tenant's entries by
+ * roles and authorities or by user ({@code null} when the whole tenant shares them). The
+ * negotiation headers keep representations (media type, compression) apart.
+ */
+public record ResponseCacheKey(String routeId,
+                               String tenant,
+                               Object scope,
+                               String pathAndQuery,
+                               String accept,
+                               String acceptEncoding) {
+}
@@ -0,0 +1,156 @@
+package com.hsurveys.gateway.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Response bodies shared by every {@code ResponseCache} route filter, kept off-heap and
+ * bounded by {@code response-cache.max-memory}. Caffeine evicts by size-aware W-TinyLFU
+ * (frequency and recency); each entry also expires once it is stale, unless it carries
+ * an {@code ETag}, in which case it is kept for {@code stale-retention} so it can be
+ * revalidated instead of refetched.
+ * <p>
+ * Off-heap bodies are released by the garbage collector once no entry or in-flight
+ * response references them, so an eviction never invalidates a body being written.
+ */
+@Component
+public class ResponseCacheStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCacheStore.class);
+
+    static final String CACHE_NAME = "gateway.response-cache";
+
+    /** How a request was answered, tagged as {@code result} on {@code gateway.response_cache.requests}. */
+    public enum Result {
+        /** Served from a fresh entry. */
+        HIT,
+        /** Served from a stale entry after the upstream answered 304. */
+        REVALIDATED,
+        /** Fetched from the upstream. */
+        MISS,
+        /** Not cacheable, passed through without a lookup. */
+        BYPASS;
+
+        final String tag = name().toLowerCase();
+    }
+
+    private final Cache<ResponseCacheKey, CachedResponse> cache;
+    private final int maxEntrySize;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Map<Result, Counter>> counters = new ConcurrentHashMap<>();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+
+    public ResponseCacheStore(MeterRegistry meterRegistry,
+                              @Value("${response-cache.max-memory:64MB}") DataSize maxMemory,
+                              @Value("${response-cache.max-entry-size:1MB}") DataSize maxEntrySize,
+                              @Value("${response-cache.stale-retention:5m}") Duration staleRetention) {
+        this.meterRegistry = meterRegistry;
+        this.maxEntrySize = (int) Math.min(Integer.MAX_VALUE, maxEntrySize.toBytes());
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxMemory.toBytes())
+                .weigher((ResponseCacheKey key, CachedResponse value) -> CachedResponse.HEAP_OVERHEAD_BYTES + value.size())
+                .expireAfter(new StaleExpiry(staleRetention))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder("gateway.response_cache.memory", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Bytes held by cached responses, bodies and per-entry overhead")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("gateway.response_cache.hit_ratio", this, ResponseCacheStore::hitRatio)
+                .description("Share of cacheable requests answered without a full upstream response")
+                .register(meterRegistry);
+        logger.info("Response cache max memory: {}, max entry size: {}", maxMemory, maxEntrySize);
+    }
+
+    public CachedResponse get(ResponseCacheKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(ResponseCacheKey key, CachedResponse response) {
+        cache.put(key, response);
+    }
+
+    public int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public void record(String routeId, Result result) {
+        counters.computeIfAbsent(routeId, this::registerCounters).get(result).increment();
+        if (result != Result.BYPASS) {
+            lookups.increment();
+            if (result != Result.MISS) {
+                served.increment();
+            }
+        }
+    }
+
+    double hitRatio() {
+        long total = lookups.sum();
+        return total == 0 ? 0 : (double) served.sum() / total;
+    }
+
+    long estimatedSize() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    private Map<Result, Counter> registerCounters(String routeId) {
+        Map<Result, Counter> byResult = new EnumMap<>(Result.class);
+        for (Result result : Result.values()) {
+            byResult.put(result, Counter.builder("gateway.response_cache.requests")
+                    .description("Requests seen by the response cache filter")
+                    .tag("route", routeId)
+                    .tag("result", result.tag)
+                    .register(meterRegistry));
+        }
+        return byResult;
+    }
+
+    private static final class StaleExpiry implements Expiry<ResponseCacheKey, CachedResponse> {
+
+        private final long staleRetentionNanos;
+
+        private StaleExpiry(Duration staleRetention) {
+            this.staleRetentionNanos = staleRetention.toNanos();
+        }
+
+        private long lifetime(CachedResponse value) {
+            long fresh = value.remainingFreshNanos(System.nanoTime());
+            return value.etag() != null ? fresh + staleRetentionNanos : fresh;
+        }
+
+        @Override
+        public long expireAfterCreate(ResponseCacheKey key, CachedResponse value, long currentTime) {
+            return lifetime(value);
+        }
+
+        @Override
+        public long expireAfterUpdate(ResponseCacheKey key, CachedResponse value, long currentTime, long currentDuration) {
+            return lifetime(value);
+        }
+
+        @Override
+        public long expireAfterRead(ResponseCacheKey key, CachedResponse value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.hsurveys.gateway.client;
+
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+
+/**
+ * Builds a route's client exactly like the gateway's shared one (timeouts, TLS, proxy,
+ * customizers from {@code spring.cloud.gateway.httpclient}), but on the route's own pool.
+ */
+public class RouteHttpClientFactory extends HttpClientFactory {
+
+    private final ConnectionProvider connectionProvider;
+
+    public RouteHttpClientFactory(ConnectionProvider connectionProvider, HttpClientProperties properties,
+                                  ServerProperties serverProperties, HttpClientSslConfigurer sslConfigurer,
+                                  List<HttpClientCustomizer> customizers) {
+        super(properties, serverProperties, sslConfigurer, customizers);
+        this.connectionProvider = connectionProvider;
+    }
+
+    public HttpClient create() {
+        return createInstance();
+    }
+
+    @Override
+    protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+        return connectionProvider;
+    }
+}
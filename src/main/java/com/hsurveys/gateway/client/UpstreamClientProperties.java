@@ -0,0 +1,145 @@
+package com.hsurveys.gateway.client;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code upstream-clients.*}: routes that call their upstream through a connection pool
+ * of their own, with its own protocol and limits. Other routes share the gateway's
+ * {@code spring.cloud.gateway.httpclient} pool.
+ */
+@ConfigurationProperties(prefix = "upstream-clients")
+public class UpstreamClientProperties implements Validator {
+
+    private Map<String, Client> routes = new LinkedHashMap<>();
+
+    public Map<String, Client> getRoutes() {
+        return routes;
+    }
+
+    public void setRoutes(Map<String, Client> routes) {
+        this.routes = routes;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return UpstreamClientProperties.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        ((UpstreamClientProperties) target).getRoutes().forEach((routeId, client) -> {
+            for (String protocol : client.getProtocols()) {
+                if (UpstreamHttpClients.protocol(protocol) == null) {
+                    errors.rejectValue("routes[" + routeId + "].protocols", "upstream-clients.protocols.unknown",
+                            "Unknown protocol " + protocol + ", expected HTTP11 or H2C");
+                }
+            }
+        });
+    }
+
+    public static class Client {
+        // names rather than reactor-netty's HttpProtocol, which ahead-of-time processing cannot bind
+        private List<String> protocols = new ArrayList<>();
+        private int maxConnections = 500;
+        private long maxStreams = 100;
+        private int pendingAcquireMaxCount = 1000;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+        private Duration maxIdleTime = Duration.ofSeconds(20);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+
+        /**
+         * HTTP11, or H2C to multiplex calls over HTTP/2 without TLS (prior knowledge, the
+         * upstream must accept it). Empty for the gateway client's protocols.
+         */
+        public List<String> getProtocols() {
+            return protocols;
+        }
+
+        public void setProtocols(List<String> protocols) {
+            this.protocols = protocols;
+        }
+
+        /**
+         * Connections per upstream address; with H2C each carries up to {@code max-streams} calls.
+         */
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        /**
+         * Concurrent calls per HTTP/2 connection, if the upstream allows as many.
+         */
+        public long getMaxStreams() {
+            return maxStreams;
+        }
+
+        public void setMaxStreams(long maxStreams) {
+            this.maxStreams = maxStreams;
+        }
+
+        /**
+         * Calls that may wait for a connection once all are busy; more fail at once.
+         */
+        public int getPendingAcquireMaxCount() {
+            return pendingAcquireMaxCount;
+        }
+
+        public void setPendingAcquireMaxCount(int pendingAcquireMaxCount) {
+            this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+        }
+
+        public Duration getPendingAcquireTimeout() {
+            return pendingAcquireTimeout;
+        }
+
+        public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+        }
+
+        /**
+         * Idle connections are closed after this; keep it below the upstream's keep-alive timeout.
+         */
+        public Duration getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        /**
+         * Connections are closed after this, so new upstream instances get their share.
+         */
+        public Duration getMaxLifeTime() {
+            return maxLifeTime;
+        }
+
+        public void setMaxLifeTime(Duration maxLifeTime) {
+            this.maxLifeTime = maxLifeTime;
+        }
+
+        /**
+         * How often idle and expired connections are closed in the background.
+         */
+        public Duration getEvictionInterval() {
+            return evictionInterval;
+        }
+
+        public void setEvictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.hsurveys.gateway.client;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.gateway.route.Route;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.CONNECT_TIMEOUT_ATTR;
+
+/**
+ * The HTTP client each route calls its upstream with: the route's own from
+ * {@code upstream-clients.routes}, or the gateway's shared one. Both routing filters get
+ * their client here, which also times how long each call marked with
+ * {@link #timingAcquire} waits for a connection (or an HTTP/2 stream) as
+ * {@code gateway.upstream.connection.acquire{route}}; reactor-netty's pool meters do not
+ * include that wait.
+ */
+public class UpstreamHttpClients implements DisposableBean {
+
+    private static final String ACQUIRE_START = UpstreamHttpClients.class.getName() + ".acquireStart";
+
+    private final Map<String, HttpClient> clients;
+    private final List<ConnectionProvider> providers;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, HttpClient> timedClients = new ConcurrentHashMap<>();
+
+    public UpstreamHttpClients(Map<String, HttpClient> clients, List<ConnectionProvider> providers,
+                               MeterRegistry meterRegistry) {
+        this.clients = Map.copyOf(clients);
+        this.providers = List.copyOf(providers);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * The client for one call of the route, with the route's {@code connect-timeout}
+     * metadata applied as the Netty routing filter does.
+     */
+    public HttpClient forRoute(Route route, HttpClient defaultClient) {
+        String routeId = route != null ? route.getId() : "unknown";
+        HttpClient client = timedClients.computeIfAbsent(routeId,
+                id -> timed(id, clients.getOrDefault(id, defaultClient)));
+        Object connectTimeout = route != null ? route.getMetadata().get(CONNECT_TIMEOUT_ATTR) : null;
+        if (connectTimeout != null) {
+            client = client.option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                    connectTimeout instanceof Number number ? number.intValue()
+                            : Integer.parseInt(connectTimeout.toString()));
+        }
+        return client;
+    }
+
+    /**
+     * Marks when the call subscribed, which is when it starts waiting for a connection.
+     */
+    public static <T> Mono<T> timingAcquire(Mono<T> call) {
+        return call.contextWrite(context -> context.put(ACQUIRE_START, System.nanoTime()));
+    }
+
+    // not mapConnect, which would take every call's connection outside the pool
+    private HttpClient timed(String routeId, HttpClient client) {
+        Timer acquireTimer = Timer.builder("gateway.upstream.connection.acquire")
+                .description("Wait for an upstream connection or stream, including connecting")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        return client.doOnRequest((request, connection) -> {
+            Long start = request.currentContextView().getOrDefault(ACQUIRE_START, null);
+            if (start != null) {
+                acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    /**
+     * A pool for the route, publishing reactor-netty's
+     * {@code reactor.netty.connection.provider.*} meters under its id.
+     */
+    public static ConnectionProvider connectionProvider(String routeId, UpstreamClientProperties.Client config) {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(routeId)
+                .maxConnections(config.getMaxConnections())
+                .pendingAcquireMaxCount(config.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(config.getPendingAcquireTimeout())
+                .maxIdleTime(config.getMaxIdleTime())
+                .maxLifeTime(config.getMaxLifeTime())
+                .evictInBackground(config.getEvictionInterval())
+                .metrics(true);
+        if (protocols(config).contains(HttpProtocol.H2C)) {
+            builder.allocationStrategy(Http2AllocationStrategy.builder()
+                    .maxConnections(config.getMaxConnections())
+                    .maxConcurrentStreams(config.getMaxStreams())
+                    .minConnections(1)
+                    .build());
+        }
+        return builder.build();
+    }
+
+    public static HttpClient withProtocols(HttpClient client, UpstreamClientProperties.Client config) {
+        List<HttpProtocol> protocols = protocols(config);
+        return protocols.isEmpty() ? client : client.protocol(protocols.toArray(HttpProtocol[]::new));
+    }
+
+    private static List<HttpProtocol> protocols(UpstreamClientProperties.Client config) {
+        return config.getProtocols().stream().map(UpstreamHttpClients::protocol).toList();
+    }
+
+    /**
+     * The protocol of a {@code protocols} entry, or null if there is none by that name.
+     */
+    static HttpProtocol protocol(String name) {
+        return switch (name.trim().toUpperCase(Locale.ROOT)) {
+            case "HTTP11" -> HttpProtocol.HTTP11;
+            case "H2C" -> HttpProtocol.H2C;
+            default -> null;
+        };
+    }
+
+    @Override
+    public void destroy() {
+        providers.forEach(ConnectionProvider::dispose);
+    }
+}
@@ -0,0 +1,129 @@
+package com.hsurveys.gateway.compression;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips one response body chunk by chunk as it streams through, so the body is never
+ * aggregated. Each chunk is released once consumed; compressed output is returned as
+ * soon as the deflater produces it, which for small chunks may be nothing yet.
+ * <p>
+ * Not thread-safe: chunks arrive one at a time. {@link #end()} must be called however the
+ * body ends, to free the deflater's native memory.
+ */
+public final class GzipEncoder {
+
+    // magic, deflate, no flags, no mtime, no extra flags, unknown OS
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int SCRATCH_SIZE = 8 * 1024;
+
+    private final DataBufferFactory bufferFactory;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] scratch = new byte[SCRATCH_SIZE];
+    private boolean headerWritten;
+    private long bytesIn;
+    private long bytesOut;
+    private long nanos;
+
+    public GzipEncoder(DataBufferFactory bufferFactory, int level) {
+        this.bufferFactory = bufferFactory;
+        this.deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Compresses {@code chunk} and releases it.
+     *
+     * @return the compressed bytes available so far, possibly empty
+     */
+    public DataBuffer encode(DataBuffer chunk) {
+        long start = System.nanoTime();
+        try {
+            DataBuffer out = bufferFactory.allocateBuffer(Math.max(64, chunk.readableByteCount() / 2));
+            writeHeader(out);
+            bytesIn += chunk.readableByteCount();
+            try (DataBuffer.ByteBufferIterator input = chunk.readableByteBuffers()) {
+                while (input.hasNext()) {
+                    ByteBuffer buffer = input.next();
+                    crc.update(buffer.duplicate());
+                    deflater.setInput(buffer);
+                    while (!deflater.needsInput()) {
+                        drain(out);
+                    }
+                }
+            }
+            return out;
+        } finally {
+            DataBufferUtils.release(chunk);
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return the rest of the compressed body and the gzip trailer
+     */
+    public DataBuffer finish() {
+        long start = System.nanoTime();
+        DataBuffer out = bufferFactory.allocateBuffer(64);
+        writeHeader(out);
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(out);
+        }
+        writeIntLe(out, (int) crc.getValue());
+        writeIntLe(out, (int) bytesIn);
+        bytesOut += 8;
+        nanos += System.nanoTime() - start;
+        return out;
+    }
+
+    /**
+     * Frees the deflater; further calls fail. Safe to call more than once.
+     */
+    public void end() {
+        deflater.end();
+    }
+
+    public long bytesIn() {
+        return bytesIn;
+    }
+
+    public long bytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * Time spent compressing, in nanoseconds.
+     */
+    public long nanos() {
+        return nanos;
+    }
+
+    private void drain(DataBuffer out) {
+        int length = deflater.deflate(scratch, 0, scratch.length, Deflater.NO_FLUSH);
+        if (length > 0) {
+            out.write(scratch, 0, length);
+            bytesOut += length;
+        }
+    }
+
+    private void writeHeader(DataBuffer out) {
+        if (!headerWritten) {
+            headerWritten = true;
+            out.write(HEADER);
+            bytesOut += HEADER.length;
+        }
+    }
+
+    private static void writeIntLe(DataBuffer out, int value) {
+        out.write((byte) value);
+        out.write((byte) (value >>> 8));
+        out.write((byte) (value >>> 16));
+        out.write((byte) (value >>> 24));
+    }
+}
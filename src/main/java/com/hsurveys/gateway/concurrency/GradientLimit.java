@@ -0,0 +1,165 @@
+package com.hsurveys.gateway.concurrency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit of one route, adjusted from the latency of the calls it admits (a
+ * gradient limit, after Netflix's concurrency-limits). Latency samples are averaged per
+ * window and compared with a slowly moving baseline:
+ * <ul>
+ *     <li>while the window average stays within {@code tolerance} times the baseline, the
+ *     limit grows by about its square root, smoothed over several windows;</li>
+ *     <li>above that it shrinks in proportion to the latency increase, by at most half;</li>
+ *     <li>a window in which more than {@code dropRateThreshold} of the calls failed or
+ *     timed out backs the limit off by 10%; the odd failure below that is ignored.</li>
+ * </ul>
+ * A call cut short before its response ({@link #cancel}) counts as timed out once it has
+ * been in flight longer than {@code tolerance} times the baseline. Otherwise the calls
+ * an overloaded upstream never answers would leave only the quick ones in the average.
+ * Windows in which the route never used half its limit leave it unchanged, so a quiet
+ * route does not grow an arbitrarily large limit.
+ * <p>
+ * {@link #tryAcquire} and {@link #release} are lock-free; the window is closed by
+ * whichever completing call finds it due.
+ */
+public final class GradientLimit {
+
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+    // weight of each window in the latency baseline, roughly the last 20 windows
+    private static final double BASELINE_WEIGHT = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double dropRateThreshold;
+    private final long windowNanos;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+    private final AtomicLong windowStart;
+
+    private volatile double limit;
+    // only written by the call closing a window
+    private volatile double baselineNanos;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double dropRateThreshold,
+                         long windowNanos, LongSupplier nanoClock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= max, got " + minLimit + ".." + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.dropRateThreshold = dropRateThreshold;
+        this.windowNanos = windowNanos;
+        this.nanoClock = nanoClock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.windowStart = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Admits a call if fewer than {@code share} of the limit (at least one) are in flight.
+     * Every admitted call must be ended with {@link #release}.
+     */
+    public boolean tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (limit * share));
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                if (current + 1 > peakInFlight.get()) {
+                    peakInFlight.accumulateAndGet(current + 1, Math::max);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ends an admitted call. {@code latencyNanos} is its upstream latency, or negative if
+     * it did not reach the upstream (e.g. answered by the gateway) and tells nothing about
+     * the upstream's capacity.
+     */
+    public void release(long latencyNanos, boolean dropped) {
+        inFlight.decrementAndGet();
+        if (dropped) {
+            drops.increment();
+        } else if (latencyNanos >= 0) {
+            latencySum.add(latencyNanos);
+            samples.increment();
+        } else {
+            return;
+        }
+        closeWindowIfDue();
+    }
+
+    /**
+     * Ends an admitted call cancelled before its response: by a client going away, or by a
+     * timeout such as the circuit breaker's time limiter, which cannot be told apart. A
+     * call cut after {@code tolerance} times the baseline latency was already too slow and
+     * counts as a drop. A quicker one tells nothing about the upstream and only frees its
+     * slot.
+     */
+    public void cancel(long elapsedNanos) {
+        double baseline = baselineNanos;
+        release(-1, baseline > 0 && elapsedNanos > tolerance * baseline);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void closeWindowIfDue() {
+        long start = windowStart.get();
+        long now = nanoClock.getAsLong();
+        if (now - start < windowNanos || samples.sum() + drops.sum() < MIN_WINDOW_SAMPLES
+                || !windowStart.compareAndSet(start, now)) {
+            return;
+        }
+        long count = samples.sumThenReset();
+        long sum = latencySum.sumThenReset();
+        long dropCount = drops.sumThenReset();
+        boolean dropped = dropCount > (count + dropCount) * dropRateThreshold;
+        int peak = peakInFlight.getAndSet(inFlight.get());
+        update(count > 0 ? (double) sum / count : 0, dropped, peak);
+    }
+
+    private void update(double latencyNanos, boolean dropped, int peak) {
+        double current = limit;
+        double next;
+        if (dropped) {
+            next = current * BACKOFF_RATIO;
+        } else if (latencyNanos <= 0) {
+            return;
+        } else {
+            baselineNanos = baselineNanos == 0 ? latencyNanos
+                    : baselineNanos + (latencyNanos - baselineNanos) * BASELINE_WEIGHT;
+            if (baselineNanos > 2 * latencyNanos) {
+                // latency dropped back after an overload; let the baseline catch up sooner
+                baselineNanos *= 0.95;
+            }
+            if (peak < current / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * baselineNanos / latencyNanos));
+            double target = current * gradient + Math.sqrt(current);
+            next = current * (1 - SMOOTHING) + target * SMOOTHING;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
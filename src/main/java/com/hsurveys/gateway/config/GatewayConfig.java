@@ -1,7 +1,20 @@
 package com.hsurveys.gateway.config;
 
+import com.hsurveys.gateway.controller.FallbackProperties;
+import com.hsurveys.gateway.loadbalancer.UpstreamLoadBalancerConfiguration;
+import com.hsurveys.gateway.loadbalancer.UpstreamProperties;
+import com.hsurveys.gateway.metrics.GatewayLatency;
+import com.hsurveys.gateway.ratelimit.LeasingRateLimiter;
+import com.hsurveys.gateway.ratelimit.RateLimitKey;
+import com.hsurveys.gateway.ratelimit.RedisTokenLeases;
+import com.hsurveys.gateway.routing.AuthProperties;
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
 import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -12,7 +25,11 @@ import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 @Configuration
+@EnableConfigurationProperties({AuthProperties.class, FallbackProperties.class, UpstreamProperties.class})
+@LoadBalancerClients(defaultConfiguration = UpstreamLoadBalancerConfiguration.class)
 public class GatewayConfig {
 
     @Value("${redis.host}")
@@ -33,6 +50,42 @@ public class GatewayConfig {
     @Value("${rate-limit.requested-tokens}")
     private int requestedTokens;
 
+    @Value("${rate-limit.organization.replenish-rate:0}")
+    private int organizationReplenishRate;
+
+    @Value("${rate-limit.organization.burst-capacity:0}")
+    private int organizationBurstCapacity;
+
+    @Value("${rate-limit.route.replenish-rate:0}")
+    private int routeReplenishRate;
+
+    @Value("${rate-limit.route.burst-capacity:0}")
+    private int routeBurstCapacity;
+
+    @Value("${rate-limit.batch.max-size:64}")
+    private int leaseBatchMaxSize;
+
+    @Value("${rate-limit.batch.window:2ms}")
+    private Duration leaseBatchWindow;
+
+    @Value("${rate-limit.batch.timeout:1s}")
+    private Duration leaseBatchTimeout;
+
+    @Value("${rate-limit.lease.max-size:5}")
+    private int maxLeaseSize;
+
+    @Value("${rate-limit.lease.ttl:1s}")
+    private Duration leaseTtl;
+
+    @Value("${rate-limit.lease.timeout:50ms}")
+    private Duration leaseTimeout;
+
+    @Value("${rate-limit.lease.redis-backoff:5s}")
+    private Duration redisBackoff;
+
+    @Value("${rate-limit.lease.max-keys:100000}")
+    private long maxRateLimitKeys;
+
     @Bean
     public LettuceConnectionFactory redisConnectionFactory() {
         LettuceConnectionFactory factory = new LettuceConnectionFactory(redisHost, redisPort);
@@ -52,20 +105,51 @@ public class GatewayConfig {
         return new RedisRateLimiter(replenishRate, burstCapacity, requestedTokens);
     }
 
+    @Bean
+    public RedisTokenLeases redisTokenLeases(ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+                                             MeterRegistry meterRegistry) {
+        return new RedisTokenLeases(reactiveStringRedisTemplate,
+                leaseBatchMaxSize, leaseBatchWindow, leaseBatchTimeout, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public LeasingRateLimiter leasingRateLimiter(RedisTokenLeases redisTokenLeases,
+                                                 ConfigurationService configurationService,
+                                                 MeterRegistry meterRegistry,
+                                                 GatewayLatency gatewayLatency) {
+        LeasingRateLimiter.Config defaultConfig = new LeasingRateLimiter.Config();
+        defaultConfig.setReplenishRate(replenishRate);
+        defaultConfig.setBurstCapacity(burstCapacity);
+        defaultConfig.setRequestedTokens(requestedTokens);
+        defaultConfig.setOrganizationReplenishRate(organizationReplenishRate);
+        defaultConfig.setOrganizationBurstCapacity(organizationBurstCapacity);
+        defaultConfig.setRouteReplenishRate(routeReplenishRate);
+        defaultConfig.setRouteBurstCapacity(routeBurstCapacity);
+        LeasingRateLimiter.Settings settings = new LeasingRateLimiter.Settings(
+                maxLeaseSize, leaseTtl, leaseTimeout, redisBackoff, maxRateLimitKeys, Duration.ofMinutes(10));
+        return new LeasingRateLimiter(redisTokenLeases, configurationService, defaultConfig, settings,
+                meterRegistry, gatewayLatency);
+    }
+
+    /**
+     * Keys requests by the principal verified by the JwtAuthentication filter, which must
+     * therefore come before RequestRateLimiter in the route's filters. Client-supplied
+     * identity headers are never trusted; anonymous requests are keyed by client address.
+     */
     @Bean
     @Primary
     public KeyResolver userKeyResolver() {
         return exchange -> {
-           
-            String userId = exchange.getRequest().getHeaders().getFirst("X-User-Id");
-            if (userId != null) {
-                return Mono.just(userId);
+            JwtPrincipal principal = JwtPrincipal.from(exchange);
+            if (principal != null) {
+                return Mono.just(RateLimitKey.of(principal));
             }
 
             // Fallback to IP address
             String clientIp = exchange.getRequest().getRemoteAddress() != null ?
                     exchange.getRequest().getRemoteAddress().getAddress().getHostAddress() : "unknown";
-            return Mono.just(clientIp);
+            return Mono.just(RateLimitKey.anonymous(clientIp));
         };
     }
 
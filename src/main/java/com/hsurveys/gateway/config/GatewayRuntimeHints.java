@@ -0,0 +1,38 @@
+package com.hsurveys.gateway.config;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.List;
+
+/**
+ * What AOT processing cannot see by itself, for the native image: the jjwt
+ * implementation classes its API instantiates by name, the serializers it finds through
+ * {@code ServiceLoader}, and the rate limiter's Lua script.
+ */
+public class GatewayRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final List<String> JJWT_IMPLEMENTATIONS = List.of(
+            "io.jsonwebtoken.impl.DefaultJwtBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtParserBuilder",
+            "io.jsonwebtoken.impl.DefaultClaimsBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtHeaderBuilder",
+            "io.jsonwebtoken.impl.io.StandardCompressionAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardSecureDigestAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardEncryptionAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardKeyAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardKeyOperations",
+            "io.jsonwebtoken.impl.security.KeysBridge",
+            "io.jsonwebtoken.jackson.io.JacksonSerializer",
+            "io.jsonwebtoken.jackson.io.JacksonDeserializer");
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        JJWT_IMPLEMENTATIONS.forEach(type -> hints.reflection().registerType(TypeReference.of(type),
+                MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS));
+        hints.resources().registerPattern("META-INF/services/io.jsonwebtoken.*");
+        hints.resources().registerPattern("scripts/*.lua");
+    }
+}
@@ -0,0 +1,56 @@
+package com.hsurveys.gateway.config;
+
+import com.hsurveys.gateway.client.RouteHttpClientFactory;
+import com.hsurveys.gateway.client.UpstreamClientProperties;
+import com.hsurveys.gateway.client.UpstreamHttpClients;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+@EnableConfigurationProperties(UpstreamClientProperties.class)
+public class UpstreamClientConfig {
+
+    @Bean
+    public UpstreamHttpClients upstreamHttpClients(UpstreamClientProperties properties,
+                                                   HttpClientProperties httpClientProperties,
+                                                   ServerProperties serverProperties,
+                                                   HttpClientSslConfigurer sslConfigurer,
+                                                   ObjectProvider<HttpClientCustomizer> customizers,
+                                                   MeterRegistry meterRegistry) {
+        Map<String, HttpClient> clients = new HashMap<>();
+        List<ConnectionProvider> providers = new ArrayList<>();
+        properties.getRoutes().forEach((routeId, config) -> {
+            ConnectionProvider provider = UpstreamHttpClients.connectionProvider(routeId, config);
+            providers.add(provider);
+            HttpClient client = new RouteHttpClientFactory(provider, httpClientProperties, serverProperties,
+                    sslConfigurer, customizers.orderedStream().toList()).create();
+            clients.put(routeId, UpstreamHttpClients.withProtocols(client, config));
+        });
+        return new UpstreamHttpClients(clients, providers, meterRegistry);
+    }
+
+    /**
+     * The gateway only registers its response writer along with the Netty routing filter,
+     * which {@code UpstreamRoutingFilter} replaces; without it upstream bodies are never sent.
+     */
+    @Bean
+    public NettyWriteResponseFilter upstreamWriteResponseFilter(GatewayProperties gatewayProperties) {
+        return new NettyWriteResponseFilter(gatewayProperties.getStreamingMediaTypes());
+    }
+}
@@ -1,52 +1,58 @@
 package com.hsurveys.gateway.controller;
 
+import com.hsurveys.gateway.error.JsonErrorTemplate;
+import com.hsurveys.gateway.error.TimestampFormat;
+import com.hsurveys.gateway.logging.RequestCorrelation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
 
-import java.time.Instant;
+import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Serves the circuit breaker fallbacks configured under {@code fallbacks.services}, for
+ * any request method. Bodies are compiled into {@link JsonErrorTemplate}s at startup.
+ */
 @RestController
 @RequestMapping("/fallback")
 public class FallbackController {
 
     private static final Logger logger = LoggerFactory.getLogger(FallbackController.class);
 
-    @GetMapping("/user-service")
-    @PostMapping("/user-service")
-    public ResponseEntity<Map<String, Object>> userServiceFallback() {
-        logger.warn("User service is unavailable - returning fallback response");
-        return createFallbackResponse("User Service");
+    private final Map<String, Fallback> fallbacks = new HashMap<>();
+
+    public FallbackController(FallbackProperties properties) {
+        properties.getServices().forEach((service, config) -> {
+            HttpStatus status = config.getStatus();
+            JsonErrorTemplate body = JsonErrorTemplate.builder(status)
+                    .field("error", status.getReasonPhrase())
+                    .field("message", config.getMessage())
+                    .timestamp("timestamp", TimestampFormat.INSTANT)
+                    .field("status", status.value())
+                    .build();
+            fallbacks.put(service, new Fallback(config.getName(), body));
+        });
+        logger.info("Registered fallbacks for: {}", fallbacks.keySet());
     }
 
-    @GetMapping("/organization-service")
-    @PostMapping("/organization-service")
-    public ResponseEntity<Map<String, Object>> organizationServiceFallback() {
-        logger.warn("Organization service is unavailable - returning fallback response");
-        return createFallbackResponse("Organization Service");
+    @RequestMapping("/{service}")
+    public Mono<Void> fallback(@PathVariable String service, ServerWebExchange exchange) {
+        Fallback fallback = fallbacks.get(service);
+        if (fallback == null) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "No fallback for " + service));
+        }
+        RequestCorrelation.log(exchange,
+                () -> logger.warn("{} is unavailable - returning fallback response", fallback.name()));
+        return fallback.body().write(exchange.getResponse());
     }
 
-    @GetMapping("/survey-service")
-    @PostMapping("/survey-service")
-    public ResponseEntity<Map<String, Object>> surveyServiceFallback() {
-        logger.warn("Survey service is unavailable - returning fallback response");
-        return createFallbackResponse("Survey Service");
+    private record Fallback(String name, JsonErrorTemplate body) {
     }
-
-    private ResponseEntity<Map<String, Object>> createFallbackResponse(String serviceName) {
-        Map<String, Object> response = Map.of(
-            "error", "Service Unavailable",
-            "message", serviceName + " is temporarily unavailable. Please try again later.",
-            "timestamp", Instant.now().toString(),
-            "status", HttpStatus.SERVICE_UNAVAILABLE.value()
-        );
-        
-        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
-    }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package com.hsurveys.gateway.controller;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.HttpStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code fallbacks.*}: the responses served on {@code /fallback/{service}} when a circuit
+ * breaker forwards there. Each entry is compiled once by {@link FallbackController}.
+ */
+@ConfigurationProperties(prefix = "fallbacks")
+public class FallbackProperties {
+
+    private Map<String, Service> services = new LinkedHashMap<>();
+
+    public Map<String, Service> getServices() {
+        return services;
+    }
+
+    public void setServices(Map<String, Service> services) {
+        this.services = services;
+    }
+
+    public static class Service {
+        private String name;
+        private String message;
+        private HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        /**
+         * The message of the body, by default "{@code <name> is temporarily unavailable. ...}".
+         */
+        public String getMessage() {
+            return message != null ? message : name + " is temporarily unavailable. Please try again later.";
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+
+        public HttpStatus getStatus() {
+            return status;
+        }
+
+        public void setStatus(HttpStatus status) {
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.hsurveys.gateway.cors;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Preflight answers of the {@code globalcors} configurations, as Spring's
+ * {@code DefaultCorsProcessor} would give them. The headers that depend only on the
+ * origin are built once per allowed origin: up front for literal origins, on first use
+ * for origins matching a pattern, keeping at most {@value #MAX_ORIGINS} per configuration.
+ * Only the allowed methods and headers are added per request, from the lists the
+ * configuration resolves for them.
+ */
+public final class PreflightResponses {
+
+    static final int MAX_ORIGINS = 1024;
+
+    private static final List<String> VARY = List.of(HttpHeaders.ORIGIN, HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD,
+            HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS);
+
+    private final List<Policy> policies = new ArrayList<>();
+
+    /**
+     * @param configurations by path pattern, the first matching pattern applying
+     */
+    public PreflightResponses(Map<String, CorsConfiguration> configurations) {
+        configurations.forEach((pattern, configuration) ->
+                policies.add(new Policy(PathPatternParser.defaultInstance.parse(pattern), configuration)));
+    }
+
+    /**
+     * Sets the headers answering a preflight on {@code responseHeaders}.
+     *
+     * @return {@code false}, with nothing set, if the origin, method or requested headers
+     * are not allowed and the request must be left to the gateway
+     */
+    public boolean answer(PathContainer path, HttpHeaders requestHeaders, HttpHeaders responseHeaders) {
+        Policy policy = null;
+        for (Policy candidate : policies) {
+            if (candidate.pattern.matches(path)) {
+                policy = candidate;
+                break;
+            }
+        }
+        String origin = requestHeaders.getOrigin();
+        HttpMethod method = requestHeaders.getAccessControlRequestMethod();
+        if (policy == null || origin == null || method == null) {
+            return false;
+        }
+        HttpHeaders originHeaders = policy.forOrigin(origin);
+        List<HttpMethod> methods = policy.configuration.checkHttpMethod(method);
+        List<String> allowHeaders = policy.configuration.checkHeaders(requestHeaders.getAccessControlRequestHeaders());
+        if (originHeaders == null || methods == null || allowHeaders == null) {
+            return false;
+        }
+        responseHeaders.putAll(originHeaders);
+        // every allowed method, or the requested one if any is allowed
+        responseHeaders.setAccessControlAllowMethods(methods);
+        if (!allowHeaders.isEmpty()) {
+            responseHeaders.setAccessControlAllowHeaders(allowHeaders);
+        }
+        return true;
+    }
+
+    private static final class Policy {
+
+        private final PathPattern pattern;
+        private final CorsConfiguration configuration;
+        private final Map<String, HttpHeaders> byOrigin = new ConcurrentHashMap<>();
+
+        private Policy(PathPattern pattern, CorsConfiguration configuration) {
+            this.pattern = pattern;
+            this.configuration = configuration;
+            List<String> literalOrigins = new ArrayList<>();
+            if (configuration.getAllowedOrigins() != null) {
+                literalOrigins.addAll(configuration.getAllowedOrigins());
+            }
+            if (configuration.getAllowedOriginPatterns() != null) {
+                literalOrigins.addAll(configuration.getAllowedOriginPatterns());
+            }
+            literalOrigins.stream()
+                    .filter(origin -> !origin.contains(CorsConfiguration.ALL))
+                    .forEach(this::forOrigin);
+        }
+
+        HttpHeaders forOrigin(String origin) {
+            HttpHeaders headers = byOrigin.get(origin);
+            if (headers != null) {
+                return headers;
+            }
+            String allowOrigin = configuration.checkOrigin(origin);
+            if (allowOrigin == null) {
+                return null;
+            }
+            headers = build(allowOrigin);
+            if (byOrigin.size() < MAX_ORIGINS) {
+                byOrigin.put(origin, headers);
+            }
+            return headers;
+        }
+
+        private HttpHeaders build(String allowOrigin) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setVary(VARY);
+            headers.setAccessControlAllowOrigin(allowOrigin);
+            if (Boolean.TRUE.equals(configuration.getAllowCredentials())) {
+                headers.setAccessControlAllowCredentials(true);
+            }
+            if (configuration.getMaxAge() != null) {
+                headers.setAccessControlMaxAge(configuration.getMaxAge());
+            }
+            return HttpHeaders.readOnlyHttpHeaders(headers);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.hsurveys.gateway.error;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON error body compiled to bytes once, with at most one timestamp field patched in
+ * per response. Error and fallback volume peaks when the gateway is under stress, so
+ * writing one of these costs a single buffer from the response's (pooled) buffer factory
+ * and no serialization.
+ * <pre>
+ * JsonErrorTemplate.builder(HttpStatus.UNAUTHORIZED)
+ *         .field("error", "Unauthorized")
+ *         .timestamp("timestamp", TimestampFormat.INSTANT)
+ *         .field("status", 401)
+ *         .build();
+ * </pre>
+ */
+public final class JsonErrorTemplate {
+
+    private final HttpStatus status;
+    private final byte[] prefix;
+    private final TimestampFormat timestampFormat;
+    private final byte[] suffix;
+
+    private JsonErrorTemplate(HttpStatus status, byte[] prefix, TimestampFormat timestampFormat, byte[] suffix) {
+        this.status = status;
+        this.prefix = prefix;
+        this.timestampFormat = timestampFormat;
+        this.suffix = suffix;
+    }
+
+    public static Builder builder(HttpStatus status) {
+        return new Builder(status);
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Sets the status and JSON headers on {@code response} and writes the body.
+     */
+    public Mono<Void> write(ServerHttpResponse response) {
+        byte[] timestamp = timestampFormat != null ? timestampFormat.now() : null;
+        int length = prefix.length + suffix.length + (timestamp != null ? timestamp.length : 0);
+
+        response.setStatusCode(status);
+        HttpHeaders headers = response.getHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentLength(length);
+
+        DataBuffer buffer = response.bufferFactory().allocateBuffer(length);
+        buffer.write(prefix);
+        if (timestamp != null) {
+            buffer.write(timestamp);
+        }
+        buffer.write(suffix);
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    /**
+     * Renders the body as a string, mainly for tests and logging.
+     */
+    public String render() {
+        byte[] timestamp = timestampFormat != null ? timestampFormat.now() : new byte[0];
+        return new String(prefix, StandardCharsets.UTF_8)
+                + new String(timestamp, StandardCharsets.UTF_8)
+                + new String(suffix, StandardCharsets.UTF_8);
+    }
+
+    public static final class Builder {
+
+        private static final JsonStringEncoder ENCODER = JsonStringEncoder.getInstance();
+
+        private final HttpStatus status;
+        private final ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream suffix = new ByteArrayOutputStream();
+        private TimestampFormat timestampFormat;
+        private boolean empty = true;
+
+        private Builder(HttpStatus status) {
+            this.status = status;
+        }
+
+        public Builder field(String name, String value) {
+            name(name);
+            quoted(value);
+            return this;
+        }
+
+        public Builder field(String name, int value) {
+            name(name);
+            append(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return this;
+        }
+
+        /**
+         * Adds the field whose value is the time each response is written.
+         */
+        public Builder timestamp(String name, TimestampFormat format) {
+            if (timestampFormat != null) {
+                throw new IllegalStateException("An error template has at most one timestamp field");
+            }
+            name(name);
+            append(new byte[] {'"'});
+            timestampFormat = format;
+            append(new byte[] {'"'});
+            return this;
+        }
+
+        public JsonErrorTemplate build() {
+            append(empty ? new byte[] {'{', '}'} : new byte[] {'}'});
+            return new JsonErrorTemplate(status, prefix.toByteArray(), timestampFormat, suffix.toByteArray());
+        }
+
+        private void name(String name) {
+            append(new byte[] {(byte) (empty ? '{' : ',')});
+            empty = false;
+            quoted(name);
+            append(new byte[] {':'});
+        }
+
+        private void quoted(String value) {
+            append(new byte[] {'"'});
+            append(ENCODER.quoteAsUTF8(value));
+            append(new byte[] {'"'});
+        }
+
+        private void append(byte[] bytes) {
+            // everything after the timestamp value belongs to the suffix
+            (timestampFormat == null ? prefix : suffix).writeBytes(bytes);
+        }
+    }
+}
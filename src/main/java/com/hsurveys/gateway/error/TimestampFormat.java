@@ -0,0 +1,47 @@
+package com.hsurveys.gateway.error;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Timestamp renderings used in error bodies. Each keeps the UTF-8 bytes of the current
+ * millisecond, so bursts of errors share one formatted value instead of formatting a
+ * date per response.
+ */
+public enum TimestampFormat {
+
+    /** {@link LocalDateTime#toString()} in the system time zone. */
+    LOCAL_DATE_TIME {
+        @Override
+        String format(long epochMilli) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault()).toString();
+        }
+    },
+    /** {@link Instant#toString()}, always UTC. */
+    INSTANT {
+        @Override
+        String format(long epochMilli) {
+            return Instant.ofEpochMilli(epochMilli).toString();
+        }
+    };
+
+    private volatile Rendered current = new Rendered(Long.MIN_VALUE, new byte[0]);
+
+    abstract String format(long epochMilli);
+
+    byte[] now() {
+        long millis = System.currentTimeMillis();
+        Rendered rendered = current;
+        if (rendered.epochMilli != millis) {
+            // racing threads may both format the same millisecond; either result is correct
+            rendered = new Rendered(millis, format(millis).getBytes(StandardCharsets.UTF_8));
+            current = rendered;
+        }
+        return rendered.bytes;
+    }
+
+    private record Rendered(long epochMilli, byte[] bytes) {
+    }
+}
@@ -0,0 +1,361 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.concurrency.GradientLimit;
+import com.hsurveys.gateway.error.JsonErrorTemplate;
+import com.hsurveys.gateway.error.TimestampFormat;
+import com.hsurveys.gateway.logging.RequestCorrelation;
+import com.hsurveys.gateway.routing.PathIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.GatewayToStringStyler;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounds the calls a route has in flight to its upstream with a {@link GradientLimit},
+ * which adapts to the upstream's latency, and answers calls over the limit with an
+ * immediate 503 instead of queueing them.
+ * <p>
+ * Calls are admitted by {@link Priority}: bulk calls only while the route uses less than
+ * {@code bulk-share} of its limit, normal ones below {@code normal-share}, and critical
+ * ones up to the full limit, so as latency rises bulk writes are shed first and logins
+ * last.
+ * <p>
+ * Place it after the filters that may answer without the upstream (authentication,
+ * rate limiting, coalescing, caching), so those answers take no slot. The current limit,
+ * in-flight calls and shed counts are shown with the route's filters on
+ * {@code /actuator/gateway/routes}.
+ */
+@Component
+public class AdaptiveConcurrencyGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<AdaptiveConcurrencyGatewayFilterFactory.Config> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyGatewayFilterFactory.class);
+
+    private static final JsonErrorTemplate OVERLOADED = JsonErrorTemplate.builder(HttpStatus.SERVICE_UNAVAILABLE)
+            .field("error", HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase())
+            .field("message", "The service is overloaded. Please try again shortly.")
+            .timestamp("timestamp", TimestampFormat.INSTANT)
+            .field("status", HttpStatus.SERVICE_UNAVAILABLE.value())
+            .build();
+
+    /** Which share of the route's limit a call may use. */
+    public enum Priority {
+        /** Up to the whole limit, e.g. logins and token refreshes. */
+        CRITICAL,
+        /** Up to {@code normal-share} of the limit. */
+        NORMAL,
+        /** Up to {@code bulk-share} of the limit, e.g. bulk response writes. */
+        BULK;
+
+        final String tag = name().toLowerCase();
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, GradientLimit> limits = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        GradientLimit limit = new GradientLimit(config.getInitialLimit(), config.getMinLimit(),
+                config.getMaxLimit(), config.getTolerance(), config.getDropRateThreshold(),
+                config.getWindow().toNanos(), System::nanoTime);
+        String routeId = config.getRouteId() != null ? config.getRouteId() : "unknown";
+        // a refreshed route starts over with a new limit; the gauges follow the latest one
+        limits.put(routeId, limit);
+        Gauge.builder("gateway.concurrency.limit", limits, byRoute -> gauge(byRoute, routeId, false))
+                .description("Current adaptive concurrency limit of the route")
+                .tag("route", routeId)
+                .strongReference(true)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.in_flight", limits, byRoute -> gauge(byRoute, routeId, true))
+                .description("Calls of the route admitted by its concurrency limit and still in flight")
+                .tag("route", routeId)
+                .strongReference(true)
+                .register(meterRegistry);
+        return new AdaptiveConcurrencyFilter(config, limit, counters(routeId));
+    }
+
+    private static double gauge(Map<String, GradientLimit> byRoute, String routeId, boolean inFlight) {
+        GradientLimit limit = byRoute.get(routeId);
+        if (limit == null) {
+            return Double.NaN;
+        }
+        return inFlight ? limit.getInFlight() : limit.getLimit();
+    }
+
+    private Map<Priority, Outcomes> counters(String routeId) {
+        Map<Priority, Outcomes> byPriority = new EnumMap<>(Priority.class);
+        for (Priority priority : Priority.values()) {
+            byPriority.put(priority, new Outcomes(counter(routeId, priority, "admitted"),
+                    counter(routeId, priority, "shed")));
+        }
+        return byPriority;
+    }
+
+    private Counter counter(String routeId, Priority priority, String result) {
+        return Counter.builder("gateway.concurrency.requests")
+                .description("Requests admitted or shed by the adaptive concurrency limit")
+                .tag("route", routeId)
+                .tag("priority", priority.tag)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static PathIndex<Boolean> index(List<String> patterns) {
+        PathIndex.Builder<Boolean> builder = PathIndex.builder();
+        patterns.forEach(pattern -> builder.add(pattern, Boolean.TRUE));
+        return builder.build();
+    }
+
+    private record Outcomes(Counter admitted, Counter shed) {
+    }
+
+    private final class AdaptiveConcurrencyFilter implements GatewayFilter {
+
+        private final Config config;
+        private final GradientLimit limit;
+        private final Map<Priority, Outcomes> counters;
+        private final PathIndex<Boolean> criticalPaths;
+        private final PathIndex<Boolean> bulkPaths;
+
+        private AdaptiveConcurrencyFilter(Config config, GradientLimit limit, Map<Priority, Outcomes> counters) {
+            this.config = config;
+            this.limit = limit;
+            this.counters = counters;
+            this.criticalPaths = index(config.getCriticalPaths());
+            this.bulkPaths = index(config.getBulkPaths());
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            Priority priority = priority(exchange.getRequest());
+            double share = switch (priority) {
+                case CRITICAL -> 1.0;
+                case NORMAL -> config.getNormalShare();
+                case BULK -> config.getBulkShare();
+            };
+            if (!limit.tryAcquire(share)) {
+                counters.get(priority).shed().increment();
+                RequestCorrelation.log(exchange, () -> logger.debug("Shed {} request to {} at limit {}",
+                        priority.tag, exchange.getRequest().getURI().getPath(), limit.getLimit()));
+                exchange.getResponse().getHeaders().set("Retry-After", "1");
+                return OVERLOADED.write(exchange.getResponse());
+            }
+            counters.get(priority).admitted().increment();
+            long start = System.nanoTime();
+            AtomicBoolean released = new AtomicBoolean();
+            // timed as the signal leaves the routing filter, which completes once the upstream's
+            // response headers arrive; the body is streamed after that by the write filter, and a
+            // doFinally would only run once that post-processing has been set off
+            return chain.filter(exchange)
+                    .doOnEach(signal -> {
+                        if (signal.isOnComplete() || signal.isOnError()) {
+                            release(exchange, signal.getType(), System.nanoTime() - start, released);
+                        }
+                    })
+                    .doOnCancel(() -> release(exchange, SignalType.CANCEL, System.nanoTime() - start, released));
+        }
+
+        private void release(ServerWebExchange exchange, SignalType signal, long latencyNanos,
+                             AtomicBoolean released) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (signal == SignalType.CANCEL) {
+                // the client went away or the route's time limiter cut the call short
+                limit.cancel(latencyNanos);
+                return;
+            }
+            // errors and upstream overload statuses
+            HttpStatusCode status = exchange.getResponse().getStatusCode();
+            boolean dropped = signal == SignalType.ON_ERROR
+                    || status != null && (status.value() == HttpStatus.SERVICE_UNAVAILABLE.value()
+                    || status.value() == HttpStatus.GATEWAY_TIMEOUT.value());
+            boolean reachedUpstream = exchange.getAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR) != null;
+            limit.release(reachedUpstream ? latencyNanos : -1, dropped);
+        }
+
+        private Priority priority(ServerHttpRequest request) {
+            String path = request.getURI().getRawPath();
+            if (!criticalPaths.match(path).isEmpty()) {
+                return Priority.CRITICAL;
+            }
+            if (config.getBulkMethods().contains(request.getMethod()) && !bulkPaths.match(path).isEmpty()) {
+                return Priority.BULK;
+            }
+            return Priority.NORMAL;
+        }
+
+        @Override
+        public String toString() {
+            return GatewayToStringStyler.filterToStringCreator(AdaptiveConcurrencyGatewayFilterFactory.this)
+                    .append("limit", limit.getLimit())
+                    .append("inFlight", limit.getInFlight())
+                    .append("shed", shedCounts())
+                    .toString();
+        }
+
+        private Map<String, Long> shedCounts() {
+            Map<String, Long> shed = new LinkedHashMap<>();
+            counters.forEach((priority, outcomes) -> shed.put(priority.tag, (long) outcomes.shed().count()));
+            return shed;
+        }
+    }
+
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private int initialLimit = 100;
+        private int minLimit = 10;
+        private int maxLimit = 1000;
+        private double tolerance = 1.5;
+        private double dropRateThreshold = 0.05;
+        private Duration window = Duration.ofSeconds(1);
+        private List<String> criticalPaths = new ArrayList<>();
+        private List<String> bulkPaths = new ArrayList<>();
+        private List<HttpMethod> bulkMethods = new ArrayList<>(List.of(HttpMethod.POST, HttpMethod.PUT,
+                HttpMethod.PATCH));
+        private double normalShare = 0.9;
+        private double bulkShare = 0.5;
+
+        @Override
+        public String getRouteId() {
+            return routeId;
+        }
+
+        @Override
+        public void setRouteId(String routeId) {
+            this.routeId = routeId;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        /**
+         * How far latency may rise above its baseline before the limit shrinks.
+         */
+        public double getTolerance() {
+            return tolerance;
+        }
+
+        public void setTolerance(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        /**
+         * Share of a window's calls that may fail or time out before the limit backs off.
+         */
+        public double getDropRateThreshold() {
+            return dropRateThreshold;
+        }
+
+        public void setDropRateThreshold(double dropRateThreshold) {
+            this.dropRateThreshold = dropRateThreshold;
+        }
+
+        /**
+         * How often the limit is adjusted (given at least a few completed calls).
+         */
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        /**
+         * IndexedPath-style patterns of {@link Priority#CRITICAL} calls, any method.
+         */
+        public List<String> getCriticalPaths() {
+            return criticalPaths;
+        }
+
+        public void setCriticalPaths(List<String> criticalPaths) {
+            this.criticalPaths = criticalPaths;
+        }
+
+        /**
+         * IndexedPath-style patterns of {@link Priority#BULK} calls, for {@code bulk-methods}.
+         */
+        public List<String> getBulkPaths() {
+            return bulkPaths;
+        }
+
+        public void setBulkPaths(List<String> bulkPaths) {
+            this.bulkPaths = bulkPaths;
+        }
+
+        public List<HttpMethod> getBulkMethods() {
+            return bulkMethods;
+        }
+
+        public void setBulkMethods(List<HttpMethod> bulkMethods) {
+            this.bulkMethods = bulkMethods;
+        }
+
+        public double getNormalShare() {
+            return normalShare;
+        }
+
+        public void setNormalShare(double normalShare) {
+            this.normalShare = normalShare;
+        }
+
+        public double getBulkShare() {
+            return bulkShare;
+        }
+
+        public void setBulkShare(double bulkShare) {
+            this.bulkShare = bulkShare;
+        }
+    }
+}
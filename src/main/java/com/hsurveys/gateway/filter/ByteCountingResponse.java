@@ -0,0 +1,40 @@
+package com.hsurveys.gateway.filter;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Counts the body bytes written through it. Chunked and compressed responses have no
+ * {@code Content-Length} to read instead.
+ */
+final class ByteCountingResponse extends ServerHttpResponseDecorator {
+
+    // buffers of one response are written one after the other, never concurrently
+    private volatile long bytes;
+
+    ByteCountingResponse(ServerHttpResponse delegate) {
+        super(delegate);
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        return super.writeWith(Flux.from(body).doOnNext(this::count));
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        return super.writeAndFlushWith(Flux.from(body).map(chunk -> Flux.from(chunk).doOnNext(this::count)));
+    }
+
+    private void count(DataBuffer buffer) {
+        bytes += buffer.readableByteCount();
+    }
+}
@@ -0,0 +1,75 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.cors.PreflightResponses;
+import com.hsurveys.gateway.routing.RouteIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.reactive.CorsUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Answers CORS preflights to the routes from the {@code globalcors} configuration before
+ * routing, so they never reach the route filters (JWT, rate limiter and its Redis leases,
+ * circuit breakers) or an upstream. Preflights that are not allowed, or to paths no route
+ * serves, are left to the gateway, which rejects or handles them as before.
+ * <p>
+ * Runs after the server's observation filter, so preflights still show up in
+ * {@code http.server.requests}; {@code gateway.cors.preflights{result}} counts them apart,
+ * {@code answered} here or {@code passed} on.
+ */
+@Component
+public class CorsPreflightFilter implements WebFilter, Ordered {
+
+    private final PreflightResponses responses;
+    private final RouteIndex routeIndex;
+    private final Counter answered;
+    private final Counter passed;
+
+    public CorsPreflightFilter(GlobalCorsProperties corsProperties, RouteIndex routeIndex,
+                               MeterRegistry meterRegistry) {
+        this.responses = new PreflightResponses(corsProperties.getCorsConfigurations());
+        this.routeIndex = routeIndex;
+        this.answered = preflights(meterRegistry, "answered");
+        this.passed = preflights(meterRegistry, "passed");
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!CorsUtils.isPreFlightRequest(request)) {
+            return chain.filter(exchange);
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        // the route lookup is kept on the exchange, so a preflight passed on is not resolved twice
+        if (routeIndex.resolve(exchange).routeKeys().isEmpty()
+                || !responses.answer(request.getPath().pathWithinApplication(), request.getHeaders(),
+                response.getHeaders())) {
+            passed.increment();
+            return chain.filter(exchange);
+        }
+        answered.increment();
+        response.setStatusCode(HttpStatus.OK);
+        return response.setComplete();
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    private static Counter preflights(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.cors.preflights")
+                .description("CORS preflight requests")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,159 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.hedging.HedgeDelay;
+import com.hsurveys.gateway.hedging.HedgePolicy;
+import com.hsurveys.gateway.hedging.RetryBudget;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opts a route into hedged upstream calls for idempotent methods: if the first attempt
+ * has no response after a percentile of the route's recent latency, a second one is
+ * sent, the first response wins and the other attempt is cancelled. A first attempt
+ * failing before that delay is retried at once instead. Both kinds of extra call are
+ * bounded by a {@link RetryBudget}, so hedging cannot multiply the load on an upstream
+ * that is already struggling.
+ * <p>
+ * The filter only marks the request; {@link HedgingRoutingFilter} makes the calls in
+ * place of the Netty routing filter. Requests with a body are never hedged.
+ */
+@Component
+public class HedgeGatewayFilterFactory extends AbstractGatewayFilterFactory<HedgeGatewayFilterFactory.Config> {
+
+    private final MeterRegistry meterRegistry;
+
+    public HedgeGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        HedgeDelay delay = new HedgeDelay(config.getPercentile(), config.getMinDelay().toNanos(),
+                config.getMaxDelay().toNanos(), Duration.ofSeconds(1).toNanos(), System::nanoTime);
+        RetryBudget budget = new RetryBudget(config.getBudgetRatio(), config.getBudgetMinPerSecond(),
+                config.getBudgetCapacity(), System::nanoTime);
+        String routeId = config.getRouteId() != null ? config.getRouteId() : "unknown";
+        HedgePolicy policy = new HedgePolicy(routeId, delay, budget, meterRegistry);
+
+        return (exchange, chain) -> {
+            if (isHedgeable(exchange.getRequest(), config.getMethods())) {
+                exchange.getAttributes().put(HedgingRoutingFilter.POLICY_ATTRIBUTE, policy);
+            }
+            return chain.filter(exchange);
+        };
+    }
+
+    private static boolean isHedgeable(ServerHttpRequest request, List<HttpMethod> methods) {
+        HttpHeaders headers = request.getHeaders();
+        return methods.contains(request.getMethod())
+                && headers.getContentLength() <= 0
+                && !headers.containsKey(HttpHeaders.TRANSFER_ENCODING);
+    }
+
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private List<HttpMethod> methods = new ArrayList<>(List.of(HttpMethod.GET, HttpMethod.HEAD,
+                HttpMethod.OPTIONS));
+        private double percentile = 95;
+        private Duration minDelay = Duration.ofMillis(10);
+        private Duration maxDelay = Duration.ofSeconds(1);
+        private double budgetRatio = 0.1;
+        private double budgetMinPerSecond = 5;
+        private int budgetCapacity = 20;
+
+        @Override
+        public String getRouteId() {
+            return routeId;
+        }
+
+        @Override
+        public void setRouteId(String routeId) {
+            this.routeId = routeId;
+        }
+
+        /**
+         * Methods to hedge; only list idempotent ones.
+         */
+        public List<HttpMethod> getMethods() {
+            return methods;
+        }
+
+        public void setMethods(List<HttpMethod> methods) {
+            this.methods = methods;
+        }
+
+        /**
+         * Latency percentile (0-100) of first attempts after which the hedge is sent.
+         */
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+
+        /**
+         * Upper bound of the hedge delay, also used until enough latencies are recorded.
+         */
+        public Duration getMaxDelay() {
+            return maxDelay;
+        }
+
+        public void setMaxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+        }
+
+        /**
+         * Extra calls allowed per original call, e.g. 0.1 for 10%.
+         */
+        public double getBudgetRatio() {
+            return budgetRatio;
+        }
+
+        public void setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+        }
+
+        /**
+         * Extra calls allowed per second regardless of traffic.
+         */
+        public double getBudgetMinPerSecond() {
+            return budgetMinPerSecond;
+        }
+
+        public void setBudgetMinPerSecond(double budgetMinPerSecond) {
+            this.budgetMinPerSecond = budgetMinPerSecond;
+        }
+
+        /**
+         * Most extra calls the budget can save up.
+         */
+        public int getBudgetCapacity() {
+            return budgetCapacity;
+        }
+
+        public void setBudgetCapacity(int budgetCapacity) {
+            this.budgetCapacity = budgetCapacity;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.client.UpstreamHttpClients;
+import com.hsurveys.gateway.hedging.HedgePolicy;
+import com.hsurveys.gateway.loadbalancer.UpstreamInstance;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+import reactor.netty.Connection;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_HEADER_NAMES;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.ORIGINAL_RESPONSE_CONTENT_TYPE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.isAlreadyRouted;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setAlreadyRouted;
+
+/**
+ * Routes requests marked by {@link HedgeGatewayFilterFactory} in place of
+ * {@link NettyRoutingFilter}, which can only make one call per exchange. The first
+ * attempt is raced against a second one started after the route's hedge delay, or at
+ * once if the first fails, when the retry budget allows; the first response to arrive
+ * is used and the other attempt is cancelled, closing its connection. The winner's
+ * status, headers and connection are handed on exactly as the Netty routing filter
+ * would, so {@code NettyWriteResponseFilter} streams its body as usual.
+ * <p>
+ * On {@code lb://} routes the second attempt goes to another instance of the pool than
+ * the first, when there is one. Each instance is told about its own attempt in place of
+ * {@link LoadBalancerStatsFilter}: the one whose response is used gets the exchange's
+ * outcome, an attempt that failed a failure and one that lost the race a cancellation.
+ * <p>
+ * Only a first attempt that got a response feeds the route's hedge delay; one cancelled
+ * for losing the race would only tell how long it had waited.
+ */
+@Component
+public class HedgingRoutingFilter implements GlobalFilter, Ordered {
+
+    public static final String POLICY_ATTRIBUTE = HedgingRoutingFilter.class.getName() + ".policy";
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgingRoutingFilter.class);
+
+    private final HttpClient httpClient;
+    private final UpstreamHttpClients clients;
+    private final ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider;
+    private final HttpClientProperties properties;
+    private volatile List<HttpHeadersFilter> headersFilters;
+
+    public HedgingRoutingFilter(HttpClient httpClient, UpstreamHttpClients clients,
+                                ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+                                HttpClientProperties properties) {
+        this.httpClient = httpClient;
+        this.clients = clients;
+        this.headersFiltersProvider = headersFiltersProvider;
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        HedgePolicy policy = exchange.getAttribute(POLICY_ATTRIBUTE);
+        URI requestUrl = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (policy == null || requestUrl == null || isAlreadyRouted(exchange)
+                || !"http".equalsIgnoreCase(requestUrl.getScheme()) && !"https".equalsIgnoreCase(requestUrl.getScheme())) {
+            return chain.filter(exchange);
+        }
+        setAlreadyRouted(exchange);
+        policy.requested();
+
+        ServerHttpRequest request = exchange.getRequest();
+        DefaultHttpHeaders headers = new DefaultHttpHeaders();
+        HttpHeadersFilter.filterRequest(getHeadersFilters(), exchange).forEach(headers::set);
+        headers.remove(HttpHeaders.HOST);
+        if (exchange.getAttributeOrDefault(PRESERVE_HOST_HEADER_ATTRIBUTE, false)) {
+            headers.add(HttpHeaders.HOST, request.getHeaders().getFirst(HttpHeaders.HOST));
+        }
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        HttpClient client = clients.forRoute(route, httpClient).headers(outbound -> outbound.add(headers));
+        io.netty.handler.codec.http.HttpMethod method =
+                io.netty.handler.codec.http.HttpMethod.valueOf(request.getMethod().name());
+        String url = requestUrl.toASCIIString();
+
+        AtomicBoolean decided = new AtomicBoolean();
+        Response<ServiceInstance> chosen = exchange.getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        UpstreamInstance firstInstance = chosen != null && chosen.getServer() instanceof UpstreamInstance instance
+                ? instance : null;
+        Long firstStart = firstInstance != null ? LoadBalancerStatsFilter.takeOver(exchange) : null;
+        InstanceCall firstCall = firstStart != null ? new InstanceCall(firstInstance, firstStart) : null;
+        AtomicReference<InstanceCall> hedgeCall = new AtomicReference<>();
+
+        Sinks.Empty<Void> firstFailed = Sinks.empty();
+        Mono<Attempt> first = timed(tracked(attempt(client, method, url, false, firstCall), firstCall, decided), policy)
+                .doOnError(e -> firstFailed.tryEmitEmpty());
+        Mono<Attempt> hedge = Mono.firstWithSignal(
+                        Mono.delay(policy.delay()).thenReturn(HedgePolicy.Trigger.DELAY),
+                        firstFailed.asMono().thenReturn(HedgePolicy.Trigger.ERROR))
+                .filter(policy::tryHedge)
+                .flatMap(trigger -> hedge(client, method, requestUrl, firstInstance, hedgeCall, decided));
+
+        Mono<Attempt> winner = Flux.mergeDelayError(2, first, hedge)
+                // both attempts may respond at the same moment; the later one is closed
+                .filter(attempt -> decided.compareAndSet(false, true) || attempt.discard())
+                .next();
+        Duration responseTimeout = getResponseTimeout(route);
+        if (responseTimeout != null) {
+            winner = winner.timeout(responseTimeout, Mono.error(() ->
+                            new TimeoutException("Response took longer than timeout: " + responseTimeout)))
+                    .onErrorMap(TimeoutException.class,
+                            e -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, e.getMessage(), e));
+        }
+        AtomicReference<Attempt> won = new AtomicReference<>();
+        return winner
+                .doOnNext(attempt -> {
+                    won.set(attempt);
+                    if (attempt.hedge()) {
+                        policy.hedgeWon();
+                        logger.debug("Hedged call to {} answered first", url);
+                    }
+                    handOn(exchange, attempt);
+                })
+                .then(chain.filter(exchange))
+                .doFinally(signal -> {
+                    UpstreamInstance.Outcome outcome = LoadBalancerStatsFilter.outcome(exchange, signal);
+                    Attempt used = won.get();
+                    if (used != null) {
+                        // the loser is told when the race cancels it
+                        if (used.call() != null) {
+                            used.call().finish(outcome);
+                        }
+                        return;
+                    }
+                    if (firstCall != null) {
+                        firstCall.finish(outcome);
+                    }
+                    InstanceCall hedged = hedgeCall.get();
+                    if (hedged != null) {
+                        hedged.finish(outcome);
+                    }
+                });
+    }
+
+    private static Mono<Attempt> hedge(HttpClient client, io.netty.handler.codec.http.HttpMethod method,
+                                       URI requestUrl, UpstreamInstance first,
+                                       AtomicReference<InstanceCall> hedgeCall, AtomicBoolean decided) {
+        UpstreamInstance other = first != null ? first.getPool().choose(first) : null;
+        if (other == null) {
+            return attempt(client, method, requestUrl.toASCIIString(), true, null);
+        }
+        String url = UriComponentsBuilder.fromUri(requestUrl)
+                .scheme(other.getScheme())
+                .host(other.getHost())
+                .port(other.getPort())
+                .build(true)
+                .toUri()
+                .toASCIIString();
+        return Mono.defer(() -> {
+            InstanceCall call = new InstanceCall(other, other.start());
+            hedgeCall.set(call);
+            return tracked(attempt(client, method, url, true, call), call, decided);
+        });
+    }
+
+    /**
+     * Feeds the first attempt's time to response headers into the hedge delay, if it gets a response.
+     */
+    private static Mono<Attempt> timed(Mono<Attempt> attempt, HedgePolicy policy) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return attempt.doOnNext(response -> policy.recordLatency(System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * Reports an attempt that ends without a response: failed, or cancelled once the other
+     * one won. One that got a response is reported when it is discarded or the exchange ends.
+     */
+    private static Mono<Attempt> tracked(Mono<Attempt> attempt, InstanceCall call, AtomicBoolean decided) {
+        if (call == null) {
+            return attempt;
+        }
+        AtomicBoolean responded = new AtomicBoolean();
+        return attempt
+                .doOnNext(response -> responded.set(true))
+                .doFinally(signal -> {
+                    if (signal == SignalType.ON_ERROR) {
+                        call.finish(UpstreamInstance.Outcome.FAILURE);
+                    } else if (signal == SignalType.CANCEL && decided.get() && !responded.get()) {
+                        call.finish(UpstreamInstance.Outcome.CANCELLED);
+                    }
+                });
+    }
+
+    private static Mono<Attempt> attempt(HttpClient client, io.netty.handler.codec.http.HttpMethod method, String url,
+                                         boolean hedge, InstanceCall call) {
+        return UpstreamHttpClients.timingAcquire(client.request(method)
+                .uri(url)
+                .responseConnection((response, connection) -> Mono.just(new Attempt(response, connection, hedge, call)))
+                // emitted on completion, so cancelling the race afterwards leaves the winner's connection open
+                .singleOrEmpty());
+    }
+
+    // what NettyRoutingFilter does with the upstream response
+    private void handOn(ServerWebExchange exchange, Attempt attempt) {
+        HttpClientResponse clientResponse = attempt.response();
+        exchange.getAttributes().put(CLIENT_RESPONSE_ATTR, clientResponse);
+        exchange.getAttributes().put(CLIENT_RESPONSE_CONN_ATTR, attempt.connection());
+
+        HttpHeaders headers = new HttpHeaders();
+        clientResponse.responseHeaders().forEach(entry -> headers.add(entry.getKey(), entry.getValue()));
+        String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        if (StringUtils.hasLength(contentType)) {
+            exchange.getAttributes().put(ORIGINAL_RESPONSE_CONTENT_TYPE_ATTR, contentType);
+        }
+
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatusCode.valueOf(clientResponse.status().code()));
+        HttpHeaders filtered = HttpHeadersFilter.filter(getHeadersFilters(), headers, exchange,
+                HttpHeadersFilter.Type.RESPONSE);
+        if (!filtered.containsKey(HttpHeaders.TRANSFER_ENCODING) && filtered.containsKey(HttpHeaders.CONTENT_LENGTH)) {
+            response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+        }
+        exchange.getAttributes().put(CLIENT_RESPONSE_HEADER_NAMES, filtered.keySet());
+        response.getHeaders().addAll(filtered);
+    }
+
+    private List<HttpHeadersFilter> getHeadersFilters() {
+        if (headersFilters == null) {
+            headersFilters = headersFiltersProvider.getIfAvailable(List::of);
+        }
+        return headersFilters;
+    }
+
+    private Duration getResponseTimeout(Route route) {
+        Object timeout = route != null ? route.getMetadata().get(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR) : null;
+        if (timeout instanceof Number millis) {
+            return millis.longValue() < 0 ? null : Duration.ofMillis(millis.longValue());
+        }
+        if (timeout != null) {
+            long millis = Long.parseLong(timeout.toString());
+            return millis < 0 ? null : Duration.ofMillis(millis);
+        }
+        return properties.getResponseTimeout();
+    }
+
+    /**
+     * After {@code UpstreamLatencyFilter}, so hedged calls count as upstream time.
+     */
+    @Override
+    public int getOrder() {
+        return NettyRoutingFilter.ORDER - 1;
+    }
+
+    private record Attempt(HttpClientResponse response, Connection connection, boolean hedge, InstanceCall call) {
+
+        boolean discard() {
+            connection.dispose();
+            if (call != null) {
+                call.finish(UpstreamInstance.Outcome.CANCELLED);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * An attempt's call to a pool instance, reported to it once whichever way it ends.
+     */
+    private static final class InstanceCall {
+
+        private final UpstreamInstance instance;
+        private final long start;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        InstanceCall(UpstreamInstance instance, long start) {
+            this.instance = instance;
+            this.start = start;
+        }
+
+        void finish(UpstreamInstance.Outcome outcome) {
+            if (finished.compareAndSet(false, true)) {
+                instance.finish(start, outcome);
+            }
+        }
+    }
+}
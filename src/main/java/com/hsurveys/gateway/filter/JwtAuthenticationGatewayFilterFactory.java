@@ -1,9 +1,23 @@
 package com.hsurveys.gateway.filter;
 
-import com.hsurveys.gateway.utils.JwtUtil;
+import com.hsurveys.gateway.analytics.TenantTraffic;
+import com.hsurveys.gateway.error.JsonErrorTemplate;
+import com.hsurveys.gateway.error.TimestampFormat;
+import com.hsurveys.gateway.logging.RequestCorrelation;
+import com.hsurveys.gateway.metrics.GatewayLatency;
+import com.hsurveys.gateway.metrics.LatencyPhase;
+import com.hsurveys.gateway.routing.AuthPolicy;
+import com.hsurveys.gateway.routing.AuthProperties;
+import com.hsurveys.gateway.routing.RouteIndex;
+import com.hsurveys.gateway.utils.IdentityHeaderMode;
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import com.hsurveys.gateway.utils.TokenVerification;
+import com.hsurveys.gateway.utils.TokenVerifier;
+import com.hsurveys.gateway.utils.VerifiedToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -13,20 +27,36 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
 
 @Component
 public class JwtAuthenticationGatewayFilterFactory extends AbstractGatewayFilterFactory<JwtAuthenticationGatewayFilterFactory.Config> {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationGatewayFilterFactory.class);
-    private final JwtUtil jwtUtil;
 
-    public JwtAuthenticationGatewayFilterFactory(JwtUtil jwtUtil) {
+    private static final JsonErrorTemplate MISSING_TOKEN =
+            errorTemplate(HttpStatus.UNAUTHORIZED, "No authentication token found");
+    private static final JsonErrorTemplate INVALID_TOKEN =
+            errorTemplate(HttpStatus.UNAUTHORIZED, "Invalid authentication token");
+    private static final JsonErrorTemplate INSUFFICIENT_PERMISSIONS =
+            errorTemplate(HttpStatus.FORBIDDEN, "Insufficient permissions");
+    private static final JsonErrorTemplate PROCESSING_ERROR =
+            errorTemplate(HttpStatus.UNAUTHORIZED, "Token processing error");
+
+    private final TokenVerifier tokenVerifier;
+    private final GatewayLatency gatewayLatency;
+    private final RouteIndex routeIndex;
+    private final TenantTraffic tenantTraffic;
+
+    public JwtAuthenticationGatewayFilterFactory(TokenVerifier tokenVerifier,
+                                                 GatewayLatency gatewayLatency,
+                                                 RouteIndex routeIndex,
+                                                 TenantTraffic tenantTraffic) {
         super(Config.class);
-        this.jwtUtil = jwtUtil;
+        this.tokenVerifier = tokenVerifier;
+        this.gatewayLatency = gatewayLatency;
+        this.routeIndex = routeIndex;
+        this.tenantTraffic = tenantTraffic;
     }
 
     @Override
@@ -38,7 +68,8 @@ public class JwtAuthenticationGatewayFilterFactory extends AbstractGatewayFilter
             logger.debug("Processing request: {}", path);
 
           
-            if (isPublicEndpoint(path)) {
+            AuthProperties.Rule authRule = routeIndex.resolve(exchange).authRule();
+            if (authRule.getPolicy() == AuthPolicy.PUBLIC) {
                 logger.debug("Skipping authentication for public endpoint: {}", path);
                 return chain.filter(exchange);
             }
@@ -47,76 +78,70 @@ public class JwtAuthenticationGatewayFilterFactory extends AbstractGatewayFilter
             String token = extractTokenFromRequest(request);
             
             if (token == null) {
-                logger.warn("No token found in request: {}", path);
-                return onError(exchange, "No authentication token found", HttpStatus.UNAUTHORIZED);
+                RequestCorrelation.log(exchange, () -> logger.warn("No token found in request: {}", path));
+                return onError(exchange, MISSING_TOKEN);
             }
 
+            long start = System.nanoTime();
             try {
-            
-                if (!jwtUtil.validateToken(token)) {
-                    logger.warn("Invalid token for request: {}", path);
-                    return onError(exchange, "Invalid authentication token", HttpStatus.UNAUTHORIZED);
+                TokenVerification verification = tokenVerifier.verify(token);
+                if (!verification.isVerified()) {
+                    recordLatency(exchange, start);
+                    // counted per reason by TokenVerifier; logging each one is too costly during bot bursts
+                    logger.debug("Rejected token for request: {} ({})", path, verification.rejection());
+                    return onError(exchange, INVALID_TOKEN);
                 }
 
-               
-                String username = jwtUtil.extractUsername(token);
-                UUID userId = jwtUtil.extractUserId(token);
-                UUID organizationId = jwtUtil.extractOrganizationId(token);
-                UUID departmentId = jwtUtil.extractDepartmentId(token);
-                UUID teamId = jwtUtil.extractTeamId(token);
-                List<String> authorities = jwtUtil.extractAuthorities(token);
-                List<String> roles = jwtUtil.extractRoles(token);
+                VerifiedToken verified = verification.token();
+                JwtPrincipal principal = verified.principal();
+                logger.debug("Token validated for user: {} in organization: {}",
+                        principal.username(), principal.organizationId());
+
+                if (!authRule.permits(principal.roles(), principal.authorities())) {
+                    recordLatency(exchange, start);
+                    logger.debug("User {} lacks the roles {} required for: {}",
+                            principal.username(), authRule.getRoles(), path);
+                    return onError(exchange, INSUFFICIENT_PERMISSIONS);
+                }
 
-                logger.debug("Token validated for user: {} in organization: {}", username, organizationId);
+                exchange.getAttributes().put(JwtPrincipal.EXCHANGE_ATTRIBUTE, principal);
 
-                
                 ServerHttpRequest mutatedRequest = request.mutate()
-                    .headers(httpHeaders -> {
-                        if (userId != null) {
-                            httpHeaders.add("X-User-Id", userId.toString());
-                        }
-                        if (username != null) {
-                            httpHeaders.add("X-Username", username);
-                            httpHeaders.add("X-User-Name", username);
-                        }
-                        if (organizationId != null) {
-                            httpHeaders.add("X-Organization-Id", organizationId.toString());
-                        }
-                        if (departmentId != null) {
-                            httpHeaders.add("X-Department-Id", departmentId.toString());
-                        }
-                        if (teamId != null) {
-                            httpHeaders.add("X-Team-Id", teamId.toString());
-                        }
-                        if (authorities != null && !authorities.isEmpty()) {
-                            String authoritiesStr = String.join(",", authorities);
-                            httpHeaders.add("X-Authorities", authoritiesStr);
-                            httpHeaders.add("X-User-Authorities", authoritiesStr);
-                        }
-                        if (roles != null && !roles.isEmpty()) {
-                            String rolesStr = String.join(",", roles);
-                            httpHeaders.add("X-Roles", rolesStr);
-                            httpHeaders.add("X-User-Roles", rolesStr);
-                        }
-                        httpHeaders.add("X-Authenticated", "true");
-                    })
+                    .headers(httpHeaders -> verified.applyTo(httpHeaders, config.getIdentityHeaders()))
                     .build();
+                recordLatency(exchange, start);
 
-                return chain.filter(exchange.mutate().request(mutatedRequest).build());
+                ServerWebExchange authenticated = exchange.mutate().request(mutatedRequest).build();
+                if (!tenantTraffic.isEnabled()) {
+                    return chain.filter(authenticated);
+                }
+                return filterCountingTraffic(authenticated, principal, chain);
 
             } catch (Exception e) {
-                logger.error("Error processing token for request: {}", path, e);
-                return onError(exchange, "Token processing error", HttpStatus.UNAUTHORIZED);
+                RequestCorrelation.log(exchange, () -> logger.error("Error processing token for request: {}", path, e));
+                return onError(exchange, PROCESSING_ERROR);
             }
         };
     }
 
-    private boolean isPublicEndpoint(String path) {
-        return path.startsWith("/api/auth/login") ||
-               path.startsWith("/api/auth/register") ||
-               path.startsWith("/api/auth/refresh") ||
-               path.startsWith("/api/organizations/register") ||
-               path.startsWith("/actuator/");
+    private void recordLatency(ServerWebExchange exchange, long start) {
+        gatewayLatency.record(LatencyMetricsFilter.routeId(exchange), LatencyPhase.AUTHENTICATION,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Passes the request on and feeds its size and duration to {@link TenantTraffic}. The
+     * response body is counted as it is written to the client, after any compression.
+     */
+    private Mono<Void> filterCountingTraffic(ServerWebExchange exchange, JwtPrincipal principal,
+                                             GatewayFilterChain chain) {
+        String routeId = LatencyMetricsFilter.routeId(exchange);
+        long requestBytes = Math.max(0, exchange.getRequest().getHeaders().getContentLength());
+        long start = System.nanoTime();
+        ByteCountingResponse response = ResponseDecorationFilter.decorate(exchange, ByteCountingResponse::new);
+        return chain.filter(exchange.mutate().response(response).build())
+                .doFinally(signalType -> tenantTraffic.record(routeId, principal,
+                        requestBytes + response.bytes(), System.nanoTime() - start));
     }
 
     private String extractTokenFromRequest(ServerHttpRequest request) {
@@ -144,47 +169,43 @@ public class JwtAuthenticationGatewayFilterFactory extends AbstractGatewayFilter
         return null;
     }
 
-    private Mono<Void> onError(ServerWebExchange exchange, String message, HttpStatus status) {
+    private Mono<Void> onError(ServerWebExchange exchange, JsonErrorTemplate error) {
         ServerHttpResponse response = exchange.getResponse();
 
         if (response.isCommitted()) {
-            logger.warn("Response already committed, cannot modify headers for: {}",
-                    exchange.getRequest().getURI().getPath());
+            RequestCorrelation.log(exchange, () -> logger.warn("Response already committed, cannot modify headers for: {}",
+                    exchange.getRequest().getURI().getPath()));
             return Mono.empty();
         }
 
         logger.debug("Setting error response for: {} with status: {}",
-                exchange.getRequest().getURI().getPath(), status);
-
-        response.setStatusCode(status);
-        response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "application/json");
-
-        Map<String, Object> errorBody = new HashMap<>();
-        errorBody.put("timestamp", java.time.LocalDateTime.now().toString());
-        errorBody.put("status", status.value());
-        errorBody.put("error", status.getReasonPhrase());
-        errorBody.put("message", message);
-        errorBody.put("details", ""); // pour correspondre à la structure complète
-
-        String body;
-        try {
-            body = new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(errorBody);
-        } catch (Exception e) {
-            logger.error("Failed to serialize error body", e);
-            body = "{\"timestamp\":\"" + java.time.LocalDateTime.now() + "\",\"status\":500,"
-                    + "\"error\":\"Internal Server Error\",\"message\":\"Failed to serialize error body\",\"details\":\"\"}";
-        }
+                exchange.getRequest().getURI().getPath(), error.getStatus());
 
-        byte[] bytes = body.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-        return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)))
-                .doOnSuccess(v -> logger.debug("Authentication error response sent successfully for: {}",
-                        exchange.getRequest().getURI().getPath()))
-                .doOnError(e -> logger.error("Error sending authentication error response: {}", e.getMessage()));
+        return error.write(response)
+                .doOnError(e -> RequestCorrelation.log(exchange,
+                        () -> logger.error("Error sending authentication error response: {}", e.getMessage())));
     }
 
-
+    private static JsonErrorTemplate errorTemplate(HttpStatus status, String message) {
+        // same fields and order the previous HashMap body serialized to
+        return JsonErrorTemplate.builder(status)
+                .field("details", "")
+                .field("error", status.getReasonPhrase())
+                .field("message", message)
+                .timestamp("timestamp", TimestampFormat.LOCAL_DATE_TIME)
+                .field("status", status.value())
+                .build();
+    }
 
     public static class Config {
+        private IdentityHeaderMode identityHeaders = IdentityHeaderMode.LEGACY;
 
+        public IdentityHeaderMode getIdentityHeaders() {
+            return identityHeaders;
+        }
+
+        public void setIdentityHeaders(IdentityHeaderMode identityHeaders) {
+            this.identityHeaders = identityHeaders;
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.metrics.GatewayLatency;
+import com.hsurveys.gateway.metrics.LatencyPhase;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Times the whole exchange and marks its start for {@link UpstreamLatencyFilter}, which
+ * splits the time into gateway filters and the upstream call.
+ */
+@Component
+public class LatencyMetricsFilter implements GlobalFilter, Ordered {
+
+    static final String START_ATTRIBUTE = LatencyMetricsFilter.class.getName() + ".start";
+
+    private final GatewayLatency gatewayLatency;
+
+    public LatencyMetricsFilter(GatewayLatency gatewayLatency) {
+        this.gatewayLatency = gatewayLatency;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        long start = System.nanoTime();
+        exchange.getAttributes().put(START_ATTRIBUTE, start);
+        return chain.filter(exchange)
+                .doFinally(signalType -> gatewayLatency.record(routeId(exchange), LatencyPhase.TOTAL,
+                        System.nanoTime() - start));
+    }
+
+    static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : null;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
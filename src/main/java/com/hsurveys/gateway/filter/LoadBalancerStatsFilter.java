@@ -0,0 +1,76 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.loadbalancer.UpstreamInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+
+/**
+ * Reports each call of an {@code lb://} route back to the instance the load balancer
+ * picked: in flight until the upstream's response headers, then its latency and whether
+ * it failed. The load balancer's own lifecycle callbacks are not used as they are never
+ * told about calls cancelled by the circuit breaker's time limiter, which would leave
+ * them in flight for good.
+ * <p>
+ * A routing filter that makes more than one call, such as {@link HedgingRoutingFilter},
+ * {@linkplain #takeOver takes over} the report and tells each instance about its own call.
+ */
+@Component
+public class LoadBalancerStatsFilter implements GlobalFilter, Ordered {
+
+    static final String START_ATTRIBUTE = LoadBalancerStatsFilter.class.getName() + ".start";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Response<ServiceInstance> response = exchange.getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        if (response == null || !(response.getServer() instanceof UpstreamInstance instance)) {
+            return chain.filter(exchange);
+        }
+        exchange.getAttributes().put(START_ATTRIBUTE, instance.start());
+        return chain.filter(exchange)
+                .doFinally(signal -> {
+                    Long start = takeOver(exchange);
+                    if (start != null) {
+                        instance.finish(start, outcome(exchange, signal));
+                    }
+                });
+    }
+
+    /**
+     * Leaves the report of the call to the picked instance to the caller.
+     *
+     * @return the start time to pass to {@link UpstreamInstance#finish}, or {@code null} if
+     * no call is being reported for the exchange
+     */
+    static Long takeOver(ServerWebExchange exchange) {
+        return (Long) exchange.getAttributes().remove(START_ATTRIBUTE);
+    }
+
+    static UpstreamInstance.Outcome outcome(ServerWebExchange exchange, SignalType signal) {
+        if (signal == SignalType.CANCEL) {
+            return UpstreamInstance.Outcome.CANCELLED;
+        }
+        if (signal == SignalType.ON_ERROR || exchange.getAttribute(CLIENT_RESPONSE_ATTR) == null) {
+            return UpstreamInstance.Outcome.FAILURE;
+        }
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        return status != null && status.is5xxServerError()
+                ? UpstreamInstance.Outcome.FAILURE : UpstreamInstance.Outcome.SUCCESS;
+    }
+
+    @Override
+    public int getOrder() {
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+    }
+}
@@ -0,0 +1,200 @@
+package com.hsurveys.gateway.filter;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.DedupeResponseHeaderGatewayFilterFactory.Strategy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Cleans up response headers just before the response is committed, whatever wrote it:
+ * the upstream, the cache, a fallback or a 401/403 of the JWT filter. Upstream headers are
+ * added next to the gateway's own, so CORS headers and {@code Vary} come out twice.
+ * <ul>
+ *   <li>{@code remove}: headers dropped;</li>
+ *   <li>{@code dedupe}: headers reduced to one value by {@code strategy};</li>
+ *   <li>{@code merge}: comma-separated lists joined into one header without repeated
+ *       elements;</li>
+ *   <li>{@code cors}: dedupes {@code Access-Control-Allow-Origin},
+ *       {@code -Allow-Credentials} and {@code -Max-Age}, and merges {@code Vary},
+ *       {@code Access-Control-Allow-Methods}, {@code -Allow-Headers} and
+ *       {@code -Expose-Headers}, unless those are configured otherwise.</li>
+ * </ul>
+ * The rules are compiled once per route; each response only looks up the configured
+ * headers, once each, and single values are left untouched. Registering the hook is all
+ * the filter does on the way in, so list it first in the route to cover responses of the
+ * filters after it.
+ */
+@Component
+public class NormalizeResponseHeadersGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<NormalizeResponseHeadersGatewayFilterFactory.Config> {
+
+    private static final List<String> CORS_DEDUPE = List.of(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN,
+            HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, HttpHeaders.ACCESS_CONTROL_MAX_AGE);
+    private static final List<String> CORS_MERGE = List.of(HttpHeaders.VARY, HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS,
+            HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS);
+
+    enum Action {
+        REMOVE,
+        DEDUPE,
+        MERGE
+    }
+
+    record Rule(String name, Action action) {
+    }
+
+    public NormalizeResponseHeadersGatewayFilterFactory() {
+        super(Config.class);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Rule[] rules = compile(config);
+        Strategy strategy = config.getStrategy();
+        return (exchange, chain) -> {
+            HttpHeaders headers = exchange.getResponse().getHeaders();
+            exchange.getResponse().beforeCommit(() -> {
+                normalize(headers, rules, strategy);
+                return Mono.empty();
+            });
+            return chain.filter(exchange);
+        };
+    }
+
+    /**
+     * One rule per header name, the first configuration of a name winning in the order
+     * remove, dedupe, merge, then the CORS defaults.
+     */
+    static Rule[] compile(Config config) {
+        Map<String, Action> actions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        config.getRemove().forEach(name -> actions.putIfAbsent(name, Action.REMOVE));
+        config.getDedupe().forEach(name -> actions.putIfAbsent(name, Action.DEDUPE));
+        config.getMerge().forEach(name -> actions.putIfAbsent(name, Action.MERGE));
+        if (config.isCors()) {
+            CORS_DEDUPE.forEach(name -> actions.putIfAbsent(name, Action.DEDUPE));
+            CORS_MERGE.forEach(name -> actions.putIfAbsent(name, Action.MERGE));
+        }
+        return actions.entrySet().stream()
+                .map(entry -> new Rule(entry.getKey(), entry.getValue()))
+                .toArray(Rule[]::new);
+    }
+
+    static void normalize(HttpHeaders headers, Rule[] rules, Strategy strategy) {
+        for (Rule rule : rules) {
+            List<String> values = headers.get(rule.name());
+            if (values == null) {
+                continue;
+            }
+            switch (rule.action()) {
+                case REMOVE -> headers.remove(rule.name());
+                case DEDUPE -> {
+                    if (values.size() > 1) {
+                        headers.put(rule.name(), dedupe(values, strategy));
+                    }
+                }
+                case MERGE -> {
+                    if (values.size() > 1) {
+                        headers.set(rule.name(), merge(values));
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<String> dedupe(List<String> values, Strategy strategy) {
+        return switch (strategy) {
+            case RETAIN_FIRST -> List.of(values.get(0));
+            case RETAIN_LAST -> List.of(values.get(values.size() - 1));
+            case RETAIN_UNIQUE -> new ArrayList<>(new LinkedHashSet<>(values));
+        };
+    }
+
+    private static String merge(List<String> values) {
+        Set<String> seen = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        StringBuilder merged = new StringBuilder();
+        for (String value : values) {
+            for (String element : value.split(",")) {
+                String trimmed = element.trim();
+                if (!trimmed.isEmpty() && seen.add(trimmed)) {
+                    if (!merged.isEmpty()) {
+                        merged.append(", ");
+                    }
+                    merged.append(trimmed);
+                }
+            }
+        }
+        return merged.toString();
+    }
+
+    public static class Config {
+        private List<String> remove = new ArrayList<>();
+        private List<String> dedupe = new ArrayList<>();
+        private Strategy strategy = Strategy.RETAIN_FIRST;
+        private List<String> merge = new ArrayList<>();
+        private boolean cors;
+
+        /**
+         * Headers dropped from every response.
+         */
+        public List<String> getRemove() {
+            return remove;
+        }
+
+        public void setRemove(List<String> remove) {
+            this.remove = remove;
+        }
+
+        /**
+         * Headers left with one value, picked by {@code strategy}.
+         */
+        public List<String> getDedupe() {
+            return dedupe;
+        }
+
+        public void setDedupe(List<String> dedupe) {
+            this.dedupe = dedupe;
+        }
+
+        /**
+         * RETAIN_FIRST keeps the gateway's value, as the upstream's are added after it.
+         */
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        /**
+         * Comma-separated list headers joined into one value without repeats.
+         */
+        public List<String> getMerge() {
+            return merge;
+        }
+
+        public void setMerge(List<String> merge) {
+            this.merge = merge;
+        }
+
+        /**
+         * Normalizes the CORS headers and {@code Vary}.
+         */
+        public boolean isCors() {
+            return cors;
+        }
+
+        public void setCors(boolean cors) {
+            this.cors = cors;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.cache.BodyCaptureResponseDecorator;
+import com.hsurveys.gateway.cache.CacheDirectives;
+import com.hsurveys.gateway.routing.PathIndex;
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collapses concurrent identical GET and HEAD requests on a route into one upstream call
+ * (single flight). The first request leads; requests with the same key arriving while it
+ * is in flight wait for its response, which is buffered off-heap and written to each of
+ * them. Nothing outlives the flight.
+ * <p>
+ * The key is the method, path and query, the organization of the verified token, the
+ * authorization {@link Scope}, the conditional request headers and the configured
+ * {@code key-headers}. A response is only shared if it fits {@code max-body-size}, is not
+ * partial, sets no cookie and, unless the scope is {@link Scope#USER}, is not
+ * {@code private}; otherwise waiting requests go upstream themselves, as they do when
+ * the leader fails or exceeds {@code max-wait}. Bodies are only buffered when someone is
+ * waiting for them.
+ * <p>
+ * Must come after {@code JwtAuthentication}, and before {@code ResponseCache} so a herd on
+ * a cold or stale entry reaches the cache as one request.
+ */
+@Component
+public class RequestCoalescingGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<RequestCoalescingGatewayFilterFactory.Config> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestCoalescingGatewayFilterFactory.class);
+
+    private static final List<String> CONDITIONAL_HEADERS = List.of(
+            HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE);
+
+    // set by the server or recomputed for each waiting response
+    private static final Set<String> UNSHARED_HEADERS = caseInsensitive(List.of(
+            HttpHeaders.CONTENT_LENGTH, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONNECTION, "Keep-Alive"));
+
+    /** Whose requests may share a response, on top of the organization. */
+    public enum Scope {
+        /** Every member of the organization. */
+        TENANT,
+        /** Members of the organization with the same roles and authorities. */
+        ROLES,
+        /** Only requests of the same user. */
+        USER
+    }
+
+    /** How a request was handled, tagged as {@code result} on {@code gateway.coalescing.requests}. */
+    enum Outcome {
+        /** Went upstream and shared its response with any waiting requests. */
+        LEADER,
+        /** Answered with the response of a concurrent identical request. */
+        FOLLOWER,
+        /** Waited for a leader whose response could not be shared, then went upstream. */
+        FALLBACK,
+        /** Not eligible for coalescing. */
+        BYPASS;
+
+        final String tag = name().toLowerCase();
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Map<Outcome, Counter>> counters = new ConcurrentHashMap<>();
+    private final DistributionSummary followers;
+
+    public RequestCoalescingGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+        this.followers = DistributionSummary.builder("gateway.coalescing.followers")
+                .description("Requests answered by one upstream call besides its leader")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        PathIndex<Boolean> paths = null;
+        if (!config.getPaths().isEmpty()) {
+            PathIndex.Builder<Boolean> builder = PathIndex.builder();
+            config.getPaths().forEach(pattern -> builder.add(pattern, Boolean.TRUE));
+            paths = builder.build();
+        }
+        PathIndex<Boolean> coalescedPaths = paths;
+        Map<FlightKey, Flight> inFlight = new ConcurrentHashMap<>();
+
+        return (exchange, chain) -> {
+            String routeId = LatencyMetricsFilter.routeId(exchange);
+            FlightKey key = key(exchange, config, coalescedPaths);
+            if (key == null) {
+                record(routeId, Outcome.BYPASS);
+                return chain.filter(exchange);
+            }
+
+            Flight flight = new Flight(key, inFlight);
+            Flight leader = inFlight.putIfAbsent(key, flight);
+            if (leader != null && leader.isOverdue(config.getMaxWait())) {
+                // a leader that never wrote a response must not hold its key forever
+                leader.land(null);
+            }
+            if (leader != null && leader.join()) {
+                return follow(exchange, chain, routeId, leader, config.getMaxWait());
+            }
+            if (leader != null) {
+                // the leader has already decided not to share; go on alone
+                record(routeId, Outcome.BYPASS);
+                return chain.filter(exchange);
+            }
+
+            record(routeId, Outcome.LEADER);
+            int maxBodySize = (int) Math.min(Integer.MAX_VALUE, config.getMaxBodySize().toBytes());
+            boolean sharePrivate = config.getScope() == Scope.USER;
+            CoalescingResponse response = ResponseDecorationFilter.decorate(exchange,
+                    delegate -> new CoalescingResponse(delegate, maxBodySize, sharePrivate, flight));
+            return chain.filter(exchange.mutate().response(response).build())
+                    .doOnError(e -> flight.land(null))
+                    .doOnCancel(() -> flight.land(null));
+        };
+    }
+
+    private Mono<Void> follow(ServerWebExchange exchange, GatewayFilterChain chain, String routeId,
+                              Flight leader, Duration maxWait) {
+        return leader.response()
+                .timeout(maxWait, Mono.empty())
+                .flatMap(shared -> {
+                    record(routeId, Outcome.FOLLOWER);
+                    return shared.writeTo(exchange.getResponse()).thenReturn(Boolean.TRUE);
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    record(routeId, Outcome.FALLBACK);
+                    logger.debug("Coalesced request for {} went upstream on its own",
+                            exchange.getRequest().getURI().getPath());
+                    return chain.filter(exchange).thenReturn(Boolean.TRUE);
+                }))
+                .then();
+    }
+
+    private static FlightKey key(ServerWebExchange exchange, Config config, PathIndex<Boolean> paths) {
+        ServerHttpRequest request = exchange.getRequest();
+        HttpMethod method = request.getMethod();
+        if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+            return null;
+        }
+        HttpHeaders headers = request.getHeaders();
+        if (headers.containsKey(HttpHeaders.RANGE) || CacheDirectives.forbidsStorage(headers)) {
+            return null;
+        }
+        JwtPrincipal principal = JwtPrincipal.from(exchange);
+        if (principal == null) {
+            return null;
+        }
+        String path = request.getURI().getRawPath();
+        if (paths != null && paths.match(path).isEmpty()) {
+            return null;
+        }
+        Object scope = switch (config.getScope()) {
+            case TENANT -> null;
+            case ROLES -> List.of(principal.roles(), principal.authorities());
+            case USER -> principal.userId();
+        };
+        List<List<String>> headerValues = new ArrayList<>(CONDITIONAL_HEADERS.size() + config.getKeyHeaders().size());
+        for (String name : CONDITIONAL_HEADERS) {
+            headerValues.add(headers.getOrEmpty(name));
+        }
+        for (String name : config.getKeyHeaders()) {
+            headerValues.add(headers.getOrEmpty(name));
+        }
+        String query = request.getURI().getRawQuery();
+        return new FlightKey(method, query != null ? path + "?" + query : path,
+                principal.organizationId(), scope, headerValues);
+    }
+
+    private void record(String routeId, Outcome outcome) {
+        if (routeId != null) {
+            counters.computeIfAbsent(routeId, this::registerCounters).get(outcome).increment();
+        }
+    }
+
+    private Map<Outcome, Counter> registerCounters(String routeId) {
+        Map<Outcome, Counter> byOutcome = new EnumMap<>(Outcome.class);
+        for (Outcome outcome : Outcome.values()) {
+            byOutcome.put(outcome, Counter.builder("gateway.coalescing.requests")
+                    .description("Requests seen by the request coalescing filter")
+                    .tag("route", routeId)
+                    .tag("result", outcome.tag)
+                    .register(meterRegistry));
+        }
+        return byOutcome;
+    }
+
+    private static Set<String> caseInsensitive(List<String> names) {
+        Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        set.addAll(names);
+        return set;
+    }
+
+    private record FlightKey(HttpMethod method,
+                             String pathAndQuery,
+                             Object organizationId,
+                             Object scope,
+                             List<List<String>> headerValues) {
+    }
+
+    private record SharedResponse(HttpStatusCode status, HttpHeaders headers, ByteBuffer body) {
+
+        Mono<Void> writeTo(ServerHttpResponse response) {
+            response.setStatusCode(status);
+            HttpHeaders responseHeaders = response.getHeaders();
+            responseHeaders.putAll(headers);
+            responseHeaders.setContentLength(body.remaining());
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body.duplicate())));
+        }
+    }
+
+    /**
+     * One upstream call and the requests waiting for its response.
+     */
+    private final class Flight {
+
+        private final FlightKey key;
+        private final Map<FlightKey, Flight> inFlight;
+        private final Sinks.One<SharedResponse> response = Sinks.one();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicBoolean landed = new AtomicBoolean();
+        private final long startedAt = System.nanoTime();
+
+        private Flight(FlightKey key, Map<FlightKey, Flight> inFlight) {
+            this.key = key;
+            this.inFlight = inFlight;
+        }
+
+        boolean isOverdue(Duration maxWait) {
+            return System.nanoTime() - startedAt > maxWait.toNanos();
+        }
+
+        /**
+         * Registers a waiting request, unless the leader has already decided whether to share.
+         */
+        boolean join() {
+            if (landed.get()) {
+                return false;
+            }
+            waiting.incrementAndGet();
+            return true;
+        }
+
+        boolean hasFollowers() {
+            return waiting.get() > 0;
+        }
+
+        Mono<SharedResponse> response() {
+            return response.asMono();
+        }
+
+        void land(SharedResponse shared) {
+            if (!landed.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.remove(key, this);
+            int followerCount = waiting.get();
+            if (followerCount > 0) {
+                followers.record(followerCount);
+            }
+            if (shared != null) {
+                response.tryEmitValue(shared);
+            } else {
+                response.tryEmitEmpty();
+            }
+        }
+    }
+
+    /**
+     * Buffers the leader's response for the requests waiting on its flight.
+     */
+    private final class CoalescingResponse extends BodyCaptureResponseDecorator {
+
+        private final boolean sharePrivate;
+        private final Flight flight;
+        private final Set<String> gatewayHeaders;
+
+        private CoalescingResponse(ServerHttpResponse delegate, int maxBodySize, boolean sharePrivate, Flight flight) {
+            super(delegate, maxBodySize);
+            this.sharePrivate = sharePrivate;
+            this.flight = flight;
+            // headers set by the gateway for this request (CORS, request id, rate limits) are not shared
+            this.gatewayHeaders = caseInsensitive(new ArrayList<>(delegate.getHeaders().keySet()));
+        }
+
+        @Override
+        protected boolean shouldCapture() {
+            HttpStatusCode status = getStatusCode();
+            if (!flight.hasFollowers() || status == null || status.value() == HttpStatus.PARTIAL_CONTENT.value()) {
+                return false;
+            }
+            HttpHeaders headers = getHeaders();
+            return !headers.containsKey(HttpHeaders.SET_COOKIE)
+                    && (sharePrivate || !CacheDirectives.of(headers).isPrivate());
+        }
+
+        @Override
+        protected void captured(ByteBuffer body, HttpHeaders headers) {
+            HttpHeaders shared = new HttpHeaders();
+            headers.forEach((name, values) -> {
+                if (!gatewayHeaders.contains(name) && !UNSHARED_HEADERS.contains(name)) {
+                    shared.put(name, List.copyOf(values));
+                }
+            });
+            flight.land(new SharedResponse(getStatusCode(), HttpHeaders.readOnlyHttpHeaders(shared),
+                    body.asReadOnlyBuffer()));
+        }
+
+        @Override
+        protected void notCaptured() {
+            flight.land(null);
+        }
+    }
+
+    public static class Config {
+        private List<String> paths = new ArrayList<>();
+        private Scope scope = Scope.ROLES;
+        private List<String> keyHeaders = new ArrayList<>(List.of(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING,
+                HttpHeaders.ACCEPT_LANGUAGE));
+        private DataSize maxBodySize = DataSize.ofKilobytes(256);
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * IndexedPath-style patterns to coalesce; empty coalesces every GET on the route.
+         */
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public void setPaths(List<String> paths) {
+            this.paths = paths;
+        }
+
+        public Scope getScope() {
+            return scope;
+        }
+
+        public void setScope(Scope scope) {
+            this.scope = scope;
+        }
+
+        /**
+         * Request headers whose values must also match for requests to share a response.
+         */
+        public List<String> getKeyHeaders() {
+            return keyHeaders;
+        }
+
+        public void setKeyHeaders(List<String> keyHeaders) {
+            this.keyHeaders = keyHeaders;
+        }
+
+        /**
+         * Larger responses are streamed to the leader only; waiting requests go upstream.
+         */
+        public DataSize getMaxBodySize() {
+            return maxBodySize;
+        }
+
+        public void setMaxBodySize(DataSize maxBodySize) {
+            this.maxBodySize = maxBodySize;
+        }
+
+        /**
+         * How long a request waits for the leader before going upstream itself.
+         */
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+}
@@ -1,77 +1,96 @@
 package com.hsurveys.gateway.filter;
 
+import com.hsurveys.gateway.logging.AccessLog;
+import com.hsurveys.gateway.logging.RequestCorrelation;
+import com.hsurveys.gateway.logging.RequestIds;
+import com.hsurveys.gateway.utils.JwtPrincipal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
-
-import java.time.Instant;
-import java.util.UUID;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
 
 @Component
 public class RequestLoggingFilter implements GlobalFilter, Ordered {
 
     private static final Logger logger = LoggerFactory.getLogger(RequestLoggingFilter.class);
-    private static final String REQUEST_ID_HEADER = "X-Request-ID";
-    private static final String REQUEST_START_TIME = "request_start_time";
+    private static final String REQUEST_ID_HEADER = RequestCorrelation.REQUEST_ID_HEADER;
+
+    // nginx convention for requests the client abandoned before a response was written
+    private static final int CLIENT_CLOSED_REQUEST = 499;
+
+    private final AccessLog accessLog;
+
+    public RequestLoggingFilter(AccessLog accessLog) {
+        this.accessLog = accessLog;
+    }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         ServerHttpRequest request = exchange.getRequest();
         ServerHttpResponse response = exchange.getResponse();
-        
-      
-                String requestId = request.getHeaders().getFirst(REQUEST_ID_HEADER);
-        if (requestId == null) {
-            requestId = UUID.randomUUID().toString();
+        long start = System.nanoTime();
+
+        String requestId = request.getHeaders().getFirst(REQUEST_ID_HEADER);
+        boolean generated = !RequestIds.isAcceptable(requestId);
+        final String finalRequestId = generated ? RequestIds.next() : requestId;
+
+        exchange.getAttributes().put(RequestCorrelation.REQUEST_ID_ATTRIBUTE, finalRequestId);
+        response.getHeaders().set(REQUEST_ID_HEADER, finalRequestId);
+
+        // a usable client id is already on the request, only replace missing or unsafe ones
+        ServerWebExchange.Builder forwarded = exchange.mutate();
+        if (generated) {
+            forwarded.request(request.mutate().headers(headers -> headers.set(REQUEST_ID_HEADER, finalRequestId)).build());
         }
-        
-        final String finalRequestId = requestId;
-        
-        
-        response.getHeaders().add(REQUEST_ID_HEADER, finalRequestId);
-        
-        
-        ServerHttpRequest mutatedRequest = request.mutate()
-            .header(REQUEST_ID_HEADER, finalRequestId)
-            .build();
-        
-        
-        MDC.put("requestId", finalRequestId);
-        MDC.put("requestMethod", request.getMethod().name());
-        MDC.put("requestPath", request.getPath().toString());
-        
-    
-        exchange.getAttributes().put(REQUEST_START_TIME, Instant.now());
-        
-        logger.info("Gateway Request - Method: {}, Path: {}, Headers: {}", 
-            request.getMethod(), 
-            request.getPath(),
-            request.getHeaders().toSingleValueMap().keySet());
-        
-        return chain.filter(exchange.mutate().request(mutatedRequest).build())
-            .doOnSuccess(aVoid -> logResponse(exchange, finalRequestId))
-            .doOnError(throwable -> logError(exchange, finalRequestId, throwable))
-            .doFinally(signalType -> MDC.clear());
+        // runs ahead of ResponseDecorationFilter, so it counts what route filters finally write
+        ByteCountingResponse counted = accessLog.isEnabled() ? new ByteCountingResponse(response) : null;
+        if (counted != null) {
+            forwarded.response(counted);
+        }
+
+        return chain.filter(forwarded.build())
+            .doOnEach(signal -> {
+                if (signal.isOnError()) {
+                    RequestCorrelation.log(signal.getContextView(),
+                        () -> logError(exchange, finalRequestId, signal.getThrowable()));
+                }
+            })
+            .doFinally(signalType -> logAccess(exchange, finalRequestId, signalType, System.nanoTime() - start,
+                counted))
+            .contextWrite(Context.of(RequestCorrelation.REQUEST_ID_KEY, finalRequestId));
     }
-    
-    private void logResponse(ServerWebExchange exchange, String requestId) {
+
+    private void logAccess(ServerWebExchange exchange, String requestId, SignalType signalType, long latencyNanos,
+                           ByteCountingResponse counted) {
+        if (counted == null) {
+            return;
+        }
         ServerHttpResponse response = exchange.getResponse();
-        Instant startTime = exchange.getAttribute(REQUEST_START_TIME);
-        long duration = startTime != null ? 
-            Instant.now().toEpochMilli() - startTime.toEpochMilli() : 0;
-        
-        logger.info("Gateway Response - Status: {}, Duration: {}ms, Request-ID: {}", 
-            response.getStatusCode(), 
-            duration, 
-            requestId);
+        HttpStatusCode status = response.getStatusCode();
+        int statusCode = status != null ? status.value() : signalType == SignalType.ON_ERROR ? 500 : 200;
+        if (signalType == SignalType.CANCEL && !response.isCommitted()) {
+            statusCode = CLIENT_CLOSED_REQUEST;
+        }
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        JwtPrincipal principal = JwtPrincipal.from(exchange);
+        accessLog.record(exchange.getRequest().getMethod().name(),
+            route != null ? route.getId() : null,
+            statusCode,
+            latencyNanos,
+            requestId,
+            principal != null && principal.userId() != null ? principal.userId().toString() : null,
+            counted.bytes());
     }
     
     private void logError(ServerWebExchange exchange, String requestId, Throwable throwable) {
@@ -88,4 +107,4 @@ public class RequestLoggingFilter implements GlobalFilter, Ordered {
     public int getOrder() {
         return -1;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,304 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.cache.BodyCaptureResponseDecorator;
+import com.hsurveys.gateway.cache.CacheDirectives;
+import com.hsurveys.gateway.cache.CachedResponse;
+import com.hsurveys.gateway.cache.ResponseCacheKey;
+import com.hsurveys.gateway.cache.ResponseCacheStore;
+import com.hsurveys.gateway.cache.ResponseCacheStore.Result;
+import com.hsurveys.gateway.routing.PathIndex;
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opt-in cache for GETs on read-mostly routes, keyed by the organization of the verified
+ * token so tenants never share entries, and within it by the configured
+ * {@link RequestCoalescingGatewayFilterFactory.Scope Scope}: by default only principals
+ * with the same roles and authorities share an entry. Must come after
+ * {@code JwtAuthentication}; requests without a verified principal are passed through.
+ * Upstream bodies are captured through {@link ResponseDecorationFilter}.
+ * <p>
+ * Upstream {@code Cache-Control} decides what is stored and for how long
+ * ({@code s-maxage}/{@code max-age}, else {@code ttl}). As a shared cache of
+ * authenticated requests, the gateway only stores responses marked {@code public} or
+ * carrying {@code s-maxage}; {@code no-store}, {@code private}, {@code Vary: *} and
+ * {@code Set-Cookie} responses are never stored, {@code no-cache} ones only to be
+ * revalidated. An entry is only served to requests that send the same values for the
+ * headers its {@code Vary} names. Stale entries with an {@code ETag} are revalidated with
+ * {@code If-None-Match}, and a 304 from the upstream refreshes them without a refetch.
+ * Clients sending a matching {@code If-None-Match} get a 304 from the gateway.
+ */
+@Component
+public class ResponseCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCacheGatewayFilterFactory.class);
+
+    static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    private final ResponseCacheStore store;
+
+    public ResponseCacheGatewayFilterFactory(ResponseCacheStore store) {
+        super(Config.class);
+        this.store = store;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        PathIndex<Boolean> paths = null;
+        if (!config.getPaths().isEmpty()) {
+            PathIndex.Builder<Boolean> builder = PathIndex.builder();
+            config.getPaths().forEach(pattern -> builder.add(pattern, Boolean.TRUE));
+            paths = builder.build();
+        }
+        PathIndex<Boolean> cachedPaths = paths;
+        Duration defaultTtl = config.getTtl();
+
+        return (exchange, chain) -> {
+            String routeId = LatencyMetricsFilter.routeId(exchange);
+            ResponseCacheKey key = key(exchange, routeId, cachedPaths, config.getScope());
+            if (key == null) {
+                store.record(routeId, Result.BYPASS);
+                return chain.filter(exchange);
+            }
+
+            ServerHttpRequest request = exchange.getRequest();
+            List<String> ifNoneMatch = request.getHeaders().get(HttpHeaders.IF_NONE_MATCH);
+            HttpHeaders requestHeaders = request.getHeaders();
+            boolean noCache = CacheDirectives.requestsRevalidation(requestHeaders);
+            CachedResponse cached = noCache ? null : store.get(key);
+            if (cached != null && !cached.matchesVary(requestHeaders)) {
+                cached = null;
+            }
+            long now = System.nanoTime();
+            if (cached != null && cached.isFresh(now)) {
+                store.record(routeId, Result.HIT);
+                logger.debug("Serving {} from the response cache", key.pathAndQuery());
+                return serve(exchange.getResponse(), cached, ifNoneMatch, Result.HIT);
+            }
+
+            CachedResponse stale = cached != null && cached.etag() != null ? cached : null;
+            if (stale != null) {
+                request = request.mutate()
+                        .headers(headers -> {
+                            headers.setIfNoneMatch(stale.etag());
+                            headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+                        })
+                        .build();
+            }
+            CachingResponse response = ResponseDecorationFilter.decorate(exchange,
+                    delegate -> new CachingResponse(delegate, key, requestHeaders, stale, ifNoneMatch, defaultTtl));
+            // the decorator records the result: the upstream response is written after this filter completes
+            return chain.filter(exchange.mutate().request(request).response(response).build());
+        };
+    }
+
+    private static ResponseCacheKey key(ServerWebExchange exchange, String routeId, PathIndex<Boolean> paths,
+                                        RequestCoalescingGatewayFilterFactory.Scope scope) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getMethod() != HttpMethod.GET || routeId == null) {
+            return null;
+        }
+        JwtPrincipal principal = JwtPrincipal.from(exchange);
+        if (principal == null || (principal.organizationId() == null && principal.userId() == null)) {
+            return null;
+        }
+        String path = request.getURI().getRawPath();
+        if (paths != null && paths.match(path).isEmpty()) {
+            return null;
+        }
+        HttpHeaders headers = request.getHeaders();
+        if (CacheDirectives.forbidsStorage(headers)) {
+            return null;
+        }
+        String tenant = principal.organizationId() != null
+                ? "o:" + principal.organizationId()
+                : "u:" + principal.userId();
+        Object scopeKey = switch (scope) {
+            case TENANT -> null;
+            case ROLES -> List.of(principal.roles(), principal.authorities());
+            case USER -> principal.userId();
+        };
+        if (scope == RequestCoalescingGatewayFilterFactory.Scope.USER && scopeKey == null) {
+            return null;
+        }
+        String query = request.getURI().getRawQuery();
+        return new ResponseCacheKey(routeId, tenant, scopeKey,
+                query != null ? path + "?" + query : path,
+                headers.getFirst(HttpHeaders.ACCEPT),
+                headers.getFirst(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    private static Mono<Void> serve(ServerHttpResponse response, CachedResponse cached,
+                                    List<String> ifNoneMatch, Result result) {
+        HttpHeaders headers = response.getHeaders();
+        headers.putAll(cached.headers());
+        headers.set(HttpHeaders.AGE, Long.toString(cached.ageSeconds(System.nanoTime())));
+        headers.set(CACHE_STATUS_HEADER, result.name());
+        if (cached.matches(ifNoneMatch)) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            for (String name : List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_LENGTH,
+                    HttpHeaders.CONTENT_ENCODING, HttpHeaders.CONTENT_LANGUAGE, HttpHeaders.TRANSFER_ENCODING)) {
+                headers.remove(name);
+            }
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatus.OK);
+        headers.remove(HttpHeaders.TRANSFER_ENCODING);
+        headers.setContentLength(cached.size());
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.body())));
+    }
+
+    /**
+     * Stores cacheable upstream responses as they stream to the client, and turns an
+     * upstream 304 for a stale entry back into the cached response.
+     */
+    private final class CachingResponse extends BodyCaptureResponseDecorator {
+
+        private final ResponseCacheKey key;
+        private final HttpHeaders requestHeaders;
+        private final CachedResponse stale;
+        private final List<String> ifNoneMatch;
+        private final Duration defaultTtl;
+        private Duration ttl;
+
+        private CachingResponse(ServerHttpResponse delegate, ResponseCacheKey key, HttpHeaders requestHeaders,
+                                CachedResponse stale, List<String> ifNoneMatch, Duration defaultTtl) {
+            super(delegate, store.getMaxEntrySize());
+            this.key = key;
+            this.requestHeaders = requestHeaders;
+            this.stale = stale;
+            this.ifNoneMatch = ifNoneMatch;
+            this.defaultTtl = defaultTtl;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            if (isRevalidated()) {
+                // a 304 carries no body, but whatever arrives must still be released
+                return Flux.from(body)
+                        .doOnNext(DataBufferUtils::release)
+                        .then(Mono.defer(this::serveRevalidated));
+            }
+            store.record(key.routeId(), Result.MISS);
+            getHeaders().set(CACHE_STATUS_HEADER, Result.MISS.name());
+            return super.writeWith(body);
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            store.record(key.routeId(), Result.MISS);
+            return super.writeAndFlushWith(body);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            if (isRevalidated()) {
+                return serveRevalidated();
+            }
+            store.record(key.routeId(), Result.MISS);
+            return super.setComplete();
+        }
+
+        private boolean isRevalidated() {
+            return stale != null && HttpStatus.NOT_MODIFIED.isSameCodeAs(getStatusCode());
+        }
+
+        private Mono<Void> serveRevalidated() {
+            CachedResponse refreshed = stale.revalidated(ttl(CacheDirectives.of(getHeaders())));
+            store.put(key, refreshed);
+            store.record(key.routeId(), Result.REVALIDATED);
+            return serve(getDelegate(), refreshed, ifNoneMatch, Result.REVALIDATED);
+        }
+
+        @Override
+        protected boolean shouldCapture() {
+            HttpStatusCode status = getStatusCode();
+            if (status == null || status.value() != HttpStatus.OK.value()) {
+                return false;
+            }
+            HttpHeaders headers = getHeaders();
+            CacheDirectives directives = CacheDirectives.of(headers);
+            if (!directives.isShareable() || directives.noStore() || directives.isPrivate()
+                    || headers.containsKey(HttpHeaders.SET_COOKIE)
+                    || headers.getVary().contains("*")) {
+                return false;
+            }
+            ttl = ttl(directives);
+            return !ttl.isZero() || headers.getETag() != null;
+        }
+
+        @Override
+        protected void captured(ByteBuffer body, HttpHeaders headers) {
+            store.put(key, CachedResponse.of(body, headers, requestHeaders, ttl));
+        }
+
+        private Duration ttl(CacheDirectives directives) {
+            if (directives.noCache()) {
+                return Duration.ZERO;
+            }
+            return directives.maxAge() != null ? directives.maxAge() : defaultTtl;
+        }
+    }
+
+    public static class Config {
+        private List<String> paths = new ArrayList<>();
+        private Duration ttl = Duration.ofSeconds(30);
+        private RequestCoalescingGatewayFilterFactory.Scope scope = RequestCoalescingGatewayFilterFactory.Scope.ROLES;
+
+        /**
+         * IndexedPath-style patterns to cache; empty caches every GET on the route.
+         */
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public void setPaths(List<String> paths) {
+            this.paths = paths;
+        }
+
+        /**
+         * Freshness of responses that carry no {@code max-age}.
+         */
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        /**
+         * Who within an organization shares entries: the whole {@code TENANT}, principals
+         * with the same {@code ROLES} and authorities (the default) or only the same
+         * {@code USER}.
+         */
+        public RequestCoalescingGatewayFilterFactory.Scope getScope() {
+            return scope;
+        }
+
+        public void setScope(RequestCoalescingGatewayFilterFactory.Scope scope) {
+            this.scope = scope;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.compression.GzipEncoder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips response bodies for clients that accept it, chunk by chunk as they stream from
+ * the upstream (see {@link GzipEncoder}). Bodies with a {@code Content-Length} below
+ * {@code min-size}, bodies already carrying a {@code Content-Encoding}, types outside
+ * {@code mime-types}, {@code no-transform}, partial and bodiless responses are passed
+ * through, as are HEAD requests and streams written with {@code writeAndFlushWith}.
+ * Compressible responses get {@code Vary: Accept-Encoding} whether compressed or not, and
+ * a compressed one loses its {@code Content-Length} and has its {@code ETag} weakened.
+ * <p>
+ * Upstream bodies are reached through {@link ResponseDecorationFilter}. Put it ahead of
+ * {@code RequestCoalescing} and {@code ResponseCache} in the route. They then see the
+ * write before this filter does, so they share and store the identity body with the
+ * headers it came with, and what they replay is compressed on the way out.
+ */
+@Component
+public class ResponseCompressionGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ResponseCompressionGatewayFilterFactory.Config> {
+
+    private static final String GZIP = "gzip";
+
+    /** How a response was handled, tagged as {@code result} on {@code gateway.compression.responses}. */
+    enum Outcome {
+        /** Gzipped. */
+        COMPRESSED,
+        /** The client does not accept gzip. */
+        NOT_ACCEPTED,
+        /** The upstream had already encoded the body. */
+        ENCODED,
+        /** Shorter than {@code min-size}. */
+        SMALL,
+        /** Not a compressible type, or a response that must not be transformed. */
+        SKIPPED;
+
+        final String tag = name().toLowerCase();
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, RouteMeters> meters = new ConcurrentHashMap<>();
+
+    public ResponseCompressionGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        if (config.getLevel() < Deflater.BEST_SPEED || config.getLevel() > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9, was " + config.getLevel());
+        }
+        List<MediaType> mimeTypes = MediaType.parseMediaTypes(config.getMimeTypes());
+        long minSize = config.getMinSize().toBytes();
+        int level = config.getLevel();
+
+        return (exchange, chain) -> {
+            if (!config.isEnabled() || exchange.getRequest().getMethod() == HttpMethod.HEAD) {
+                return chain.filter(exchange);
+            }
+            String routeId = LatencyMetricsFilter.routeId(exchange);
+            boolean accepted = acceptsGzip(exchange.getRequest().getHeaders().get(HttpHeaders.ACCEPT_ENCODING));
+            CompressingResponse response = ResponseDecorationFilter.decorate(exchange,
+                    delegate -> new CompressingResponse(delegate, routeId, accepted, mimeTypes, minSize, level));
+            return chain.filter(exchange.mutate().response(response).build());
+        };
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} allows gzip: named, or covered by {@code *},
+     * with a non-zero q-value.
+     */
+    static boolean acceptsGzip(List<String> acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String header : acceptEncoding) {
+            for (String element : header.split(",")) {
+                int semicolon = element.indexOf(';');
+                String coding = (semicolon >= 0 ? element.substring(0, semicolon) : element).trim();
+                boolean allowed = semicolon < 0 || !isZeroQuality(element.substring(semicolon + 1));
+                if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip")) {
+                    return allowed;
+                }
+                if (coding.equals("*")) {
+                    wildcard = allowed;
+                }
+            }
+        }
+        return wildcard != null && wildcard;
+    }
+
+    private static boolean isZeroQuality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.regionMatches(true, 0, "q=", 0, 2)) {
+                try {
+                    return Double.parseDouble(trimmed.substring(2).trim()) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private RouteMeters meters(String routeId) {
+        return meters.computeIfAbsent(routeId != null ? routeId : "unknown", this::registerMeters);
+    }
+
+    private RouteMeters registerMeters(String routeId) {
+        Map<Outcome, Counter> responses = new EnumMap<>(Outcome.class);
+        for (Outcome outcome : Outcome.values()) {
+            responses.put(outcome, Counter.builder("gateway.compression.responses")
+                    .description("Responses seen by the response compression filter")
+                    .tag("route", routeId)
+                    .tag("result", outcome.tag)
+                    .register(meterRegistry));
+        }
+        return new RouteMeters(responses,
+                Counter.builder("gateway.compression.bytes")
+                        .description("Bytes of compressed responses before and after compression")
+                        .baseUnit("bytes")
+                        .tag("route", routeId)
+                        .tag("stage", "in")
+                        .register(meterRegistry),
+                Counter.builder("gateway.compression.bytes")
+                        .description("Bytes of compressed responses before and after compression")
+                        .baseUnit("bytes")
+                        .tag("route", routeId)
+                        .tag("stage", "out")
+                        .register(meterRegistry),
+                Timer.builder("gateway.compression.time")
+                        .description("Time spent compressing each response")
+                        .tag("route", routeId)
+                        .register(meterRegistry));
+    }
+
+    private record RouteMeters(Map<Outcome, Counter> responses, Counter bytesIn, Counter bytesOut, Timer time) {
+
+        void record(GzipEncoder encoder) {
+            responses.get(Outcome.COMPRESSED).increment();
+            bytesIn.increment(encoder.bytesIn());
+            bytesOut.increment(encoder.bytesOut());
+            time.record(encoder.nanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private final class CompressingResponse extends ServerHttpResponseDecorator {
+
+        private final String routeId;
+        private final boolean accepted;
+        private final List<MediaType> mimeTypes;
+        private final long minSize;
+        private final int level;
+
+        private CompressingResponse(ServerHttpResponse delegate, String routeId, boolean accepted,
+                                    List<MediaType> mimeTypes, long minSize, int level) {
+            super(delegate);
+            this.routeId = routeId;
+            this.accepted = accepted;
+            this.mimeTypes = mimeTypes;
+            this.minSize = minSize;
+            this.level = level;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            Outcome outcome = decide();
+            RouteMeters routeMeters = meters(routeId);
+            if (outcome != Outcome.COMPRESSED) {
+                routeMeters.responses().get(outcome).increment();
+                return super.writeWith(body);
+            }
+
+            HttpHeaders headers = getHeaders();
+            headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            String etag = headers.getETag();
+            if (etag != null && !etag.startsWith("W/")) {
+                // the gzipped body is a different representation from the identity one
+                headers.setETag("W/" + etag);
+            }
+            GzipEncoder encoder = new GzipEncoder(bufferFactory(), level);
+            Flux<DataBuffer> compressed = Flux.<DataBuffer>from(body)
+                    .map(encoder::encode)
+                    .concatWith(Mono.fromSupplier(encoder::finish))
+                    .filter(ResponseCompressionGatewayFilterFactory::nonEmpty)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .doFinally(signal -> {
+                        encoder.end();
+                        if (signal == SignalType.ON_COMPLETE) {
+                            routeMeters.record(encoder);
+                        }
+                    });
+            return super.writeWith(compressed);
+        }
+
+        private Outcome decide() {
+            HttpStatusCode status = getStatusCode();
+            HttpHeaders headers = getHeaders();
+            if (status != null && (status.is1xxInformational() || status.isSameCodeAs(HttpStatus.NO_CONTENT)
+                    || status.isSameCodeAs(HttpStatus.NOT_MODIFIED)
+                    || status.isSameCodeAs(HttpStatus.PARTIAL_CONTENT))) {
+                return Outcome.SKIPPED;
+            }
+            if (headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+                return Outcome.ENCODED;
+            }
+            MediaType contentType = headers.getContentType();
+            if (contentType == null || mimeTypes.stream().noneMatch(type -> type.includes(contentType))
+                    || hasNoTransform(headers)) {
+                return Outcome.SKIPPED;
+            }
+            long contentLength = headers.getContentLength();
+            if (contentLength >= 0 && contentLength < minSize) {
+                return Outcome.SMALL;
+            }
+            // the response could have been compressed, so caches must key it by Accept-Encoding
+            if (!headers.getVary().contains(HttpHeaders.ACCEPT_ENCODING)) {
+                headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            return accepted ? Outcome.COMPRESSED : Outcome.NOT_ACCEPTED;
+        }
+    }
+
+    private static boolean hasNoTransform(HttpHeaders headers) {
+        for (String cacheControl : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+            if (cacheControl.toLowerCase().contains("no-transform")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean nonEmpty(DataBuffer buffer) {
+        if (buffer.readableByteCount() > 0) {
+            return true;
+        }
+        DataBufferUtils.release(buffer);
+        return false;
+    }
+
+    public static class Config {
+        private boolean enabled = true;
+        private int level = 6;
+        private DataSize minSize = DataSize.ofKilobytes(1);
+        private List<String> mimeTypes = new ArrayList<>(List.of(MediaType.APPLICATION_JSON_VALUE,
+                "application/*+json", "application/xml", "application/javascript", "text/*"));
+
+        /**
+         * Switches the filter off for the route without removing it.
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Deflate level, 1 (fastest) to 9 (smallest).
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+
+        /**
+         * Bodies with a shorter {@code Content-Length} are not worth the CPU. Bodies of
+         * unknown length are always compressed.
+         */
+        public DataSize getMinSize() {
+            return minSize;
+        }
+
+        public void setMinSize(DataSize minSize) {
+            this.minSize = minSize;
+        }
+
+        /**
+         * Content types to compress; wildcards such as {@code text/*} are allowed.
+         */
+        public List<String> getMimeTypes() {
+            return mimeTypes;
+        }
+
+        public void setMimeTypes(List<String> mimeTypes) {
+            this.mimeTypes = mimeTypes;
+        }
+    }
+}
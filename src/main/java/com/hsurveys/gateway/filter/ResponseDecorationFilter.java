@@ -0,0 +1,91 @@
+package com.hsurveys.gateway.filter;
+
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+/**
+ * Lets route filters decorate the upstream response body even though they run after
+ * {@link NettyWriteResponseFilter} has taken hold of the response. Route filters only get
+ * their order from their position in the route, after global filters like this one, and
+ * the ones that need a verified principal cannot be moved ahead of authentication.
+ * <p>
+ * This filter installs a pass-through response just before the write filter, and
+ * {@link #decorate} later redirects its writes to the route filter's decorator. Several
+ * route filters may decorate the same response; the one decorating last sees the write
+ * first.
+ */
+@Component
+public class ResponseDecorationFilter implements GlobalFilter, Ordered {
+
+    private static final String DEFERRED_RESPONSE_ATTRIBUTE = ResponseDecorationFilter.class.getName() + ".response";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        DeferredResponse response = new DeferredResponse(exchange.getResponse());
+        exchange.getAttributes().put(DEFERRED_RESPONSE_ATTRIBUTE, response);
+        return chain.filter(exchange.mutate().response(response).build());
+    }
+
+    /**
+     * Makes everything written to the response of {@code exchange} go through the
+     * decorator built by {@code factory}, which receives the response to delegate to.
+     * Without this filter in the chain (e.g. in unit tests) the decorator simply wraps the
+     * exchange's current response.
+     *
+     * @return the decorator, to be set on the exchange passed down the chain
+     */
+    public static <T extends ServerHttpResponse> T decorate(ServerWebExchange exchange,
+                                                            Function<ServerHttpResponse, T> factory) {
+        DeferredResponse deferred = exchange.getAttribute(DEFERRED_RESPONSE_ATTRIBUTE);
+        if (deferred != null) {
+            ServerHttpResponse current = deferred.target;
+            T decorated = factory.apply(current != null ? current : deferred.getDelegate());
+            deferred.target = decorated;
+            return decorated;
+        }
+        return factory.apply(exchange.getResponse());
+    }
+
+    @Override
+    public int getOrder() {
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    private static final class DeferredResponse extends ServerHttpResponseDecorator {
+
+        private volatile ServerHttpResponse target;
+
+        private DeferredResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            ServerHttpResponse decorated = target;
+            return decorated != null ? decorated.writeWith(body) : super.writeWith(body);
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            ServerHttpResponse decorated = target;
+            return decorated != null ? decorated.writeAndFlushWith(body) : super.writeAndFlushWith(body);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            ServerHttpResponse decorated = target;
+            return decorated != null ? decorated.setComplete() : super.setComplete();
+        }
+    }
+}
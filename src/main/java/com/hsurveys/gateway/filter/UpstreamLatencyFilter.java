@@ -0,0 +1,45 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.metrics.GatewayLatency;
+import com.hsurveys.gateway.metrics.LatencyPhase;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Runs right before the routing filters: the time since {@link LatencyMetricsFilter}
+ * started is the gateway's own filter work, and the rest of the chain is the upstream
+ * call up to the response headers (or the forward to a fallback).
+ */
+@Component
+public class UpstreamLatencyFilter implements GlobalFilter, Ordered {
+
+    private final GatewayLatency gatewayLatency;
+
+    public UpstreamLatencyFilter(GatewayLatency gatewayLatency) {
+        this.gatewayLatency = gatewayLatency;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        String routeId = LatencyMetricsFilter.routeId(exchange);
+        long start = System.nanoTime();
+        Long exchangeStart = exchange.getAttribute(LatencyMetricsFilter.START_ATTRIBUTE);
+        if (exchangeStart != null) {
+            gatewayLatency.record(routeId, LatencyPhase.FILTERS, start - exchangeStart);
+        }
+        return chain.filter(exchange)
+                .doFinally(signalType -> gatewayLatency.record(routeId, LatencyPhase.UPSTREAM,
+                        System.nanoTime() - start));
+    }
+
+    @Override
+    public int getOrder() {
+        // ahead of HedgingRoutingFilter as well
+        return NettyRoutingFilter.ORDER - 2;
+    }
+}
@@ -0,0 +1,44 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.client.UpstreamHttpClients;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+
+/**
+ * The Netty routing filter, calling each route's upstream with its client from
+ * {@link UpstreamHttpClients}. Replaces the built-in one, which is switched off with
+ * {@code spring.cloud.gateway.global-filter.netty-routing.enabled=false}.
+ */
+@Component
+public class UpstreamRoutingFilter extends NettyRoutingFilter {
+
+    private final HttpClient httpClient;
+    private final UpstreamHttpClients clients;
+
+    public UpstreamRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+                                 HttpClientProperties properties, UpstreamHttpClients clients) {
+        super(httpClient, headersFiltersProvider, properties);
+        this.httpClient = httpClient;
+        this.clients = clients;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        return UpstreamHttpClients.timingAcquire(super.filter(exchange, chain));
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        return clients.forRoute(route, httpClient);
+    }
+}
@@ -0,0 +1,72 @@
+package com.hsurveys.gateway.hedging;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * How long to wait for the first attempt before hedging: a percentile of the route's
+ * recent upstream latency, within {@code [min, max]}. Latencies are recorded wait-free
+ * into an HdrHistogram {@link Recorder}; at most once per {@code interval} the recorded
+ * values are collected, and once at least {@value #MIN_SAMPLES} have accumulated the
+ * delay is recomputed from them and they are discarded. Until then the delay stays at
+ * {@code max}.
+ */
+public final class HedgeDelay {
+
+    static final int MIN_SAMPLES = 20;
+
+    private final double percentile;
+    private final long minNanos;
+    private final long maxNanos;
+    private final long intervalNanos;
+    private final LongSupplier nanoClock;
+
+    private final Recorder recorder = new Recorder(2);
+    private final AtomicLong lastCollected;
+    // only touched by the caller that won lastCollected
+    private final Histogram window = new Histogram(2);
+    private Histogram interval;
+
+    private volatile long delayNanos;
+
+    public HedgeDelay(double percentile, long minNanos, long maxNanos, long intervalNanos, LongSupplier nanoClock) {
+        this.percentile = percentile;
+        this.minNanos = minNanos;
+        this.maxNanos = maxNanos;
+        this.intervalNanos = intervalNanos;
+        this.nanoClock = nanoClock;
+        this.delayNanos = maxNanos;
+        this.lastCollected = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Records the latency of a first attempt, until its response headers. Attempts that
+     * never got one are left out.
+     */
+    public void record(long latencyNanos) {
+        recorder.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    public long currentNanos() {
+        long last = lastCollected.get();
+        long now = nanoClock.getAsLong();
+        if (now - last >= intervalNanos && lastCollected.compareAndSet(last, now)) {
+            collect();
+        }
+        return delayNanos;
+    }
+
+    private void collect() {
+        interval = recorder.getIntervalHistogram(interval);
+        window.add(interval);
+        if (window.getTotalCount() >= MIN_SAMPLES) {
+            long nanos = TimeUnit.MICROSECONDS.toNanos(window.getValueAtPercentile(percentile));
+            delayNanos = Math.max(minNanos, Math.min(maxNanos, nanos));
+            window.reset();
+        }
+    }
+}
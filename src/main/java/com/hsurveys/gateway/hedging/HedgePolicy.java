@@ -0,0 +1,97 @@
+package com.hsurveys.gateway.hedging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedging state of one route: when to send the second attempt, whether the retry budget
+ * allows it, and the {@code gateway.hedging.*} metrics. The hedge rate is
+ * {@code gateway.hedging.hedges / gateway.hedging.requests}, the win rate
+ * {@code gateway.hedging.wins / gateway.hedging.hedges}.
+ */
+public final class HedgePolicy {
+
+    /** Why a second attempt was sent. */
+    public enum Trigger {
+        /** The first attempt had no response after the hedge delay. */
+        DELAY,
+        /** The first attempt failed before the hedge delay, so the second is a retry. */
+        ERROR;
+
+        final String tag = name().toLowerCase();
+    }
+
+    private final HedgeDelay delay;
+    private final RetryBudget budget;
+    private final Counter requests;
+    private final Map<Trigger, Counter> hedges = new EnumMap<>(Trigger.class);
+    private final Counter wins;
+    private final Counter budgetExhausted;
+
+    public HedgePolicy(String routeId, HedgeDelay delay, RetryBudget budget, MeterRegistry meterRegistry) {
+        this.delay = delay;
+        this.budget = budget;
+        this.requests = Counter.builder("gateway.hedging.requests")
+                .description("Upstream calls eligible for hedging")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        for (Trigger trigger : Trigger.values()) {
+            hedges.put(trigger, Counter.builder("gateway.hedging.hedges")
+                    .description("Second attempts sent to the upstream")
+                    .tag("route", routeId)
+                    .tag("trigger", trigger.tag)
+                    .register(meterRegistry));
+        }
+        this.wins = Counter.builder("gateway.hedging.wins")
+                .description("Responses that came from the second attempt")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("gateway.hedging.budget_exhausted")
+                .description("Second attempts not sent because the retry budget was spent")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        TimeGauge.builder("gateway.hedging.delay", delay, TimeUnit.NANOSECONDS, HedgeDelay::currentNanos)
+                .description("Current wait for the first attempt before hedging")
+                .tag("route", routeId)
+                .strongReference(true)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts an eligible call and credits the retry budget for it.
+     */
+    public void requested() {
+        requests.increment();
+        budget.deposit();
+    }
+
+    public Duration delay() {
+        return Duration.ofNanos(delay.currentNanos());
+    }
+
+    public void recordLatency(long nanos) {
+        delay.record(nanos);
+    }
+
+    /**
+     * Spends the budget for a second attempt, if it allows one.
+     */
+    public boolean tryHedge(Trigger trigger) {
+        if (!budget.tryWithdraw()) {
+            budgetExhausted.increment();
+            return false;
+        }
+        hedges.get(trigger).increment();
+        return true;
+    }
+
+    public void hedgeWon() {
+        wins.increment();
+    }
+}
@@ -0,0 +1,77 @@
+package com.hsurveys.gateway.hedging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket bounding the extra upstream calls (hedges and retries) of a route. Every
+ * original call deposits {@code ratio} of a token and every extra call spends a whole
+ * one, so extra calls stay below that share of the traffic; {@code minPerSecond} tokens
+ * are added over time so quiet routes can still hedge. The balance is capped at
+ * {@code capacity}, which bounds the burst of extra calls an outage can cause once the
+ * bucket has filled up during normal traffic.
+ */
+public final class RetryBudget {
+
+    // tokens are kept in thousandths so fractional deposits need no floating point
+    private static final long UNIT = 1000;
+    private static final long MIN_REFILL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final long deposit;
+    private final long capacity;
+    private final double refillPerNano;
+    private final LongSupplier nanoClock;
+    private final AtomicLong balance;
+    private final AtomicLong lastRefill;
+
+    public RetryBudget(double ratio, double minPerSecond, int capacity, LongSupplier nanoClock) {
+        this.deposit = Math.round(ratio * UNIT);
+        this.capacity = capacity * UNIT;
+        this.refillPerNano = minPerSecond * UNIT / TimeUnit.SECONDS.toNanos(1);
+        this.nanoClock = nanoClock;
+        this.balance = new AtomicLong(this.capacity);
+        this.lastRefill = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Credits the budget for an original call.
+     */
+    public void deposit() {
+        add(deposit);
+    }
+
+    /**
+     * Spends one token for an extra call, if there is one.
+     */
+    public boolean tryWithdraw() {
+        refill();
+        for (;;) {
+            long current = balance.get();
+            if (current < UNIT) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - UNIT)) {
+                return true;
+            }
+        }
+    }
+
+    public double getBalance() {
+        return (double) balance.get() / UNIT;
+    }
+
+    private void refill() {
+        long last = lastRefill.get();
+        long now = nanoClock.getAsLong();
+        if (now - last >= MIN_REFILL_INTERVAL && lastRefill.compareAndSet(last, now)) {
+            add((long) ((now - last) * refillPerNano));
+        }
+    }
+
+    private void add(long tokens) {
+        if (tokens > 0) {
+            balance.accumulateAndGet(tokens, (current, added) -> Math.min(capacity, current + added));
+        }
+    }
+}
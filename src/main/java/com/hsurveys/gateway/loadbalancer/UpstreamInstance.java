@@ -0,0 +1,159 @@
+package com.hsurveys.gateway.loadbalancer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One instance of an {@link UpstreamPool}, with what the pool needs to pick between
+ * instances: calls in flight, a peak-sensitive moving average of latency and passive
+ * health. Calls routed to it report back through {@link #start()} and
+ * {@link #finish(long, Outcome)}.
+ */
+public final class UpstreamInstance implements ServiceInstance {
+
+    /** How a call to the instance ended. */
+    public enum Outcome {
+        SUCCESS,
+        /** An error or a 5xx response; counts towards ejection. */
+        FAILURE,
+        /** Given up on before a response, so its latency is only a lower bound. */
+        CANCELLED
+    }
+
+    private final UpstreamPool pool;
+    private final URI uri;
+    private final String instanceId;
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    // written under this instance's lock
+    private volatile double latencyNanos;
+    private volatile long sampledAt;
+
+    // written under the pool's lock
+    volatile boolean ejected;
+    volatile long ejectedUntil;
+    volatile int ejections;
+    Counter ejectionCounter;
+    List<Meter> meters = List.of();
+
+    UpstreamInstance(UpstreamPool pool, URI uri, double initialLatencyNanos, long now) {
+        this.pool = pool;
+        this.uri = uri;
+        this.instanceId = uri.getHost() + ":" + uri.getPort();
+        this.latencyNanos = initialLatencyNanos;
+        this.sampledAt = now;
+    }
+
+    public UpstreamPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Counts a call in flight; pass the returned start time to {@link #finish}.
+     */
+    public long start() {
+        inFlight.incrementAndGet();
+        return pool.nanoTime();
+    }
+
+    public void finish(long startNanos, Outcome outcome) {
+        inFlight.decrementAndGet();
+        long now = pool.nanoTime();
+        observe(now - startNanos, now, outcome == Outcome.CANCELLED);
+        if (outcome == Outcome.SUCCESS) {
+            consecutiveFailures.set(0);
+            pool.succeeded(this, now);
+        } else if (outcome == Outcome.FAILURE) {
+            pool.failed(this, consecutiveFailures.incrementAndGet(), now);
+        }
+    }
+
+    // peak EWMA: a slower sample is taken as is, faster ones are averaged in
+    private synchronized void observe(long latency, long now, boolean lowerBound) {
+        double current = latencyNanos;
+        if (latency > current) {
+            latencyNanos = latency;
+        } else if (!lowerBound) {
+            double weight = Math.exp(-(double) (now - sampledAt) / pool.decayNanos());
+            latencyNanos = current * weight + latency * (1 - weight);
+        } else {
+            return;
+        }
+        sampledAt = now;
+    }
+
+    /**
+     * The latency estimate, decayed towards zero for the time since the last sample so
+     * an instance that was avoided for being slow is tried again.
+     */
+    double latencyNanos(long now) {
+        return latencyNanos * Math.exp(-(double) Math.max(now - sampledAt, 0) / pool.decayNanos());
+    }
+
+    /**
+     * Expected wait for a new call: the latency estimate for every call in flight and the new one.
+     */
+    double cost(long now) {
+        return (latencyNanos(now) + 1) * (inFlight.get() + 1);
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public boolean isEjected() {
+        return ejected;
+    }
+
+    @Override
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public String getServiceId() {
+        return pool.getServiceId();
+    }
+
+    @Override
+    public String getHost() {
+        return uri.getHost();
+    }
+
+    @Override
+    public int getPort() {
+        return uri.getPort();
+    }
+
+    @Override
+    public boolean isSecure() {
+        return "https".equalsIgnoreCase(uri.getScheme());
+    }
+
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public String getScheme() {
+        return uri.getScheme();
+    }
+
+    @Override
+    public Map<String, String> getMetadata() {
+        return Map.of();
+    }
+
+    @Override
+    public String toString() {
+        return getServiceId() + "@" + instanceId;
+    }
+}
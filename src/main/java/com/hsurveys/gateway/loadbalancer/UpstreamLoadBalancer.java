@@ -0,0 +1,28 @@
+package com.hsurveys.gateway.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import reactor.core.publisher.Mono;
+
+/**
+ * Picks the instance of an {@code lb://} route's call from its {@link UpstreamPool}. An
+ * empty pool fails the call with a 503, which the route's circuit breaker counts.
+ */
+public class UpstreamLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    private final UpstreamPool pool;
+
+    public UpstreamLoadBalancer(UpstreamPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        UpstreamInstance instance = pool.choose();
+        return Mono.just(instance != null ? new DefaultResponse(instance) : new EmptyResponse());
+    }
+}
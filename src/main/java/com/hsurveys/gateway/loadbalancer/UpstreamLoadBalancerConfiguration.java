@@ -0,0 +1,19 @@
+package com.hsurveys.gateway.loadbalancer;
+
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Load balancer of each service's child context, registered through
+ * {@code @LoadBalancerClients} in {@code GatewayConfig}. Deliberately not a
+ * {@code @Configuration}, so component scanning leaves it out of the main context.
+ */
+public class UpstreamLoadBalancerConfiguration {
+
+    @Bean
+    public ReactorServiceInstanceLoadBalancer upstreamLoadBalancer(Environment environment, UpstreamPools pools) {
+        return new UpstreamLoadBalancer(pools.pool(environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME)));
+    }
+}
@@ -0,0 +1,283 @@
+package com.hsurveys.gateway.loadbalancer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The instances of one upstream service and how a call picks one of them. Instances that
+ * fail {@code consecutive-failures} calls in a row are ejected for a while, longer each
+ * time in a row; they come back on their own once the time is up, with no health checks.
+ * <p>
+ * Metrics per instance: {@code gateway.upstream.in_flight}, {@code gateway.upstream.latency}
+ * (the estimate used for picking), {@code gateway.upstream.ejected} (0 or 1) and
+ * {@code gateway.upstream.ejections}, all tagged with {@code service} and {@code instance}.
+ */
+public final class UpstreamPool {
+
+    /** How a call picks an instance. */
+    public enum Strategy {
+        /**
+         * Power of two choices: the cheaper of two random instances, cost being the latency
+         * estimate times the calls in flight.
+         */
+        P2C,
+        /** The instance with the fewest calls in flight, then the lowest latency estimate. */
+        LEAST_OUTSTANDING
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamPool.class);
+
+    private final String serviceId;
+    private final Strategy strategy;
+    private final double decayNanos;
+    private final UpstreamProperties.Outlier outlier;
+    private final LongSupplier nanoClock;
+    private final MeterRegistry meterRegistry;
+    private volatile List<UpstreamInstance> instances = List.of();
+
+    public UpstreamPool(String serviceId, Strategy strategy, double decayNanos, UpstreamProperties.Outlier outlier,
+                        LongSupplier nanoClock, MeterRegistry meterRegistry) {
+        this.serviceId = serviceId;
+        this.strategy = strategy;
+        this.decayNanos = decayNanos;
+        this.outlier = outlier;
+        this.nanoClock = nanoClock;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Replaces the instances, keeping the state of those still listed. New instances start
+     * with the pool's average latency estimate, so they are neither flooded nor avoided.
+     */
+    public synchronized void setInstances(List<URI> uris) {
+        long now = nanoTime();
+        Map<URI, UpstreamInstance> current = new LinkedHashMap<>();
+        double latencySum = 0;
+        for (UpstreamInstance instance : instances) {
+            current.put(instance.getUri(), instance);
+            latencySum += instance.latencyNanos(now);
+        }
+        double initialLatency = current.isEmpty() ? 0 : latencySum / current.size();
+
+        List<UpstreamInstance> updated = new ArrayList<>(uris.size());
+        for (URI uri : uris) {
+            URI normalized = normalize(uri);
+            UpstreamInstance instance = current.remove(normalized);
+            if (instance == null) {
+                instance = new UpstreamInstance(this, normalized, initialLatency, now);
+                register(instance);
+            }
+            if (!updated.contains(instance)) {
+                updated.add(instance);
+            }
+        }
+        for (UpstreamInstance removed : current.values()) {
+            removed.meters.forEach(meterRegistry::remove);
+        }
+        if (!current.isEmpty() || updated.size() != instances.size()) {
+            logger.info("Upstream {} instances: {}", serviceId,
+                    updated.stream().map(UpstreamInstance::getInstanceId).toList());
+        }
+        instances = List.copyOf(updated);
+    }
+
+    /**
+     * Picks an instance for a call, or null if the pool is empty.
+     */
+    public UpstreamInstance choose() {
+        return choose(null);
+    }
+
+    /**
+     * Picks an instance other than {@code exclude}, e.g. for a second attempt of a call;
+     * null if there is none.
+     */
+    public UpstreamInstance choose(UpstreamInstance exclude) {
+        List<UpstreamInstance> all = instances;
+        long now = nanoTime();
+        int[] candidates = new int[all.size()];
+        int count = 0;
+        for (int i = 0; i < all.size(); i++) {
+            UpstreamInstance instance = all.get(i);
+            if (instance != exclude && isAvailable(instance, now)) {
+                candidates[count++] = i;
+            }
+        }
+        if (count == 0) {
+            // everything left is ejected (the pool shrank since); better an instance than none
+            for (int i = 0; i < all.size(); i++) {
+                if (all.get(i) != exclude) {
+                    candidates[count++] = i;
+                }
+            }
+            if (count == 0) {
+                return null;
+            }
+        }
+        if (count == 1) {
+            return all.get(candidates[0]);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (strategy == Strategy.P2C) {
+            int a = random.nextInt(count);
+            int b = random.nextInt(count - 1);
+            if (b >= a) {
+                b++;
+            }
+            UpstreamInstance first = all.get(candidates[a]);
+            UpstreamInstance second = all.get(candidates[b]);
+            return first.cost(now) <= second.cost(now) ? first : second;
+        }
+
+        // least outstanding, starting at a random offset so ties are spread
+        int offset = random.nextInt(count);
+        UpstreamInstance best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        double bestLatency = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            UpstreamInstance instance = all.get(candidates[(offset + i) % count]);
+            int inFlight = instance.getInFlight();
+            double latency = instance.latencyNanos(now);
+            if (inFlight < bestInFlight || inFlight == bestInFlight && latency < bestLatency) {
+                best = instance;
+                bestInFlight = inFlight;
+                bestLatency = latency;
+            }
+        }
+        return best;
+    }
+
+    private boolean isAvailable(UpstreamInstance instance, long now) {
+        if (!instance.ejected) {
+            return true;
+        }
+        if (now - instance.ejectedUntil < 0) {
+            return false;
+        }
+        synchronized (this) {
+            if (instance.ejected) {
+                instance.ejected = false;
+                logger.info("Upstream {} reinstated", instance);
+            }
+        }
+        return true;
+    }
+
+    void failed(UpstreamInstance instance, int consecutiveFailures, long now) {
+        if (consecutiveFailures < outlier.getConsecutiveFailures() || instance.ejected) {
+            return;
+        }
+        synchronized (this) {
+            List<UpstreamInstance> all = instances;
+            if (instance.ejected || !all.contains(instance)) {
+                return;
+            }
+            int ejected = 0;
+            for (UpstreamInstance other : all) {
+                if (other.ejected && now - other.ejectedUntil < 0) {
+                    ejected++;
+                }
+            }
+            int maxEjected = Math.min(Math.max(1, all.size() * outlier.getMaxEjectionPercent() / 100),
+                    all.size() - 1);
+            if (ejected >= maxEjected) {
+                return;
+            }
+            int ejections = instance.ejections + 1;
+            long duration = Math.min(outlier.getBaseEjectionTime().toNanos() * ejections,
+                    outlier.getMaxEjectionTime().toNanos());
+            instance.ejections = ejections;
+            instance.ejectedUntil = now + duration;
+            instance.ejected = true;
+            instance.consecutiveFailures.set(0);
+            instance.ejectionCounter.increment();
+            logger.warn("Upstream {} ejected for {}ms after {} failures in a row", instance,
+                    TimeUnit.NANOSECONDS.toMillis(duration), consecutiveFailures);
+        }
+    }
+
+    void succeeded(UpstreamInstance instance, long now) {
+        // healthy for a whole base ejection time since it came back: the next ejection starts over
+        if (instance.ejections > 0 && !instance.ejected
+                && now - instance.ejectedUntil >= outlier.getBaseEjectionTime().toNanos()) {
+            synchronized (this) {
+                instance.ejections = 0;
+            }
+        }
+    }
+
+    private void register(UpstreamInstance instance) {
+        List<Meter> meters = new ArrayList<>();
+        meters.add(Gauge.builder("gateway.upstream.in_flight", instance, UpstreamInstance::getInFlight)
+                .description("Calls in flight to the upstream instance")
+                .tag("service", serviceId)
+                .tag("instance", instance.getInstanceId())
+                .strongReference(true)
+                .register(meterRegistry));
+        meters.add(TimeGauge.builder("gateway.upstream.latency", instance, TimeUnit.NANOSECONDS,
+                        i -> i.latencyNanos(nanoTime()))
+                .description("Latency estimate the load balancer uses for the upstream instance")
+                .tag("service", serviceId)
+                .tag("instance", instance.getInstanceId())
+                .strongReference(true)
+                .register(meterRegistry));
+        meters.add(Gauge.builder("gateway.upstream.ejected", instance, i -> i.ejected ? 1 : 0)
+                .description("Whether the upstream instance is ejected by outlier detection")
+                .tag("service", serviceId)
+                .tag("instance", instance.getInstanceId())
+                .strongReference(true)
+                .register(meterRegistry));
+        instance.ejectionCounter = Counter.builder("gateway.upstream.ejections")
+                .description("Times the upstream instance was ejected by outlier detection")
+                .tag("service", serviceId)
+                .tag("instance", instance.getInstanceId())
+                .register(meterRegistry);
+        meters.add(instance.ejectionCounter);
+        instance.meters = List.copyOf(meters);
+    }
+
+    // scheme://host:port, as the load balancer only takes those from the instance
+    private static URI normalize(URI uri) {
+        if (uri.getHost() == null) {
+            throw new IllegalArgumentException("Invalid upstream instance " + uri);
+        }
+        try {
+            int port = uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+            return new URI(uri.getScheme(), null, uri.getHost(), port, null, null, null);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid upstream instance " + uri, e);
+        }
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    public List<UpstreamInstance> getInstances() {
+        return instances;
+    }
+
+    long nanoTime() {
+        return nanoClock.getAsLong();
+    }
+
+    double decayNanos() {
+        return decayNanos;
+    }
+}
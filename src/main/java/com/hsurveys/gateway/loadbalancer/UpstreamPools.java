@@ -0,0 +1,156 @@
+package com.hsurveys.gateway.loadbalancer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link UpstreamPool} of every {@code lb://} service, filled from
+ * {@code upstreams.services} and from {@code upstreams.file} if set. The file is polled
+ * rather than watched with a {@code WatchService}, which misses the symlink swaps of
+ * mounted config maps; a file that cannot be read or parsed leaves the pools as they were.
+ */
+@Component
+public class UpstreamPools implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamPools.class);
+
+    private final UpstreamProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, UpstreamPool> pools = new ConcurrentHashMap<>();
+    private final Path file;
+    private Set<String> fileServices = Set.of();
+    private BasicFileAttributes fileVersion;
+    private boolean missingLogged;
+    private volatile Disposable watch;
+
+    public UpstreamPools(UpstreamProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.file = StringUtils.hasText(properties.getFile()) ? Path.of(properties.getFile()) : null;
+        properties.getServices().forEach((serviceId, service) -> pool(serviceId).setInstances(service.getInstances()));
+        if (file != null) {
+            reload();
+        }
+    }
+
+    /**
+     * The pool of a service, empty until instances are configured for it.
+     */
+    public UpstreamPool pool(String serviceId) {
+        return pools.computeIfAbsent(serviceId, id -> new UpstreamPool(id, properties.getStrategy(),
+                properties.getLatencyDecay().toNanos(), properties.getOutlier(), System::nanoTime, meterRegistry));
+    }
+
+    synchronized void reload() {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            if (!missingLogged) {
+                logger.warn("Upstreams file {} not found, keeping the current instances", file);
+                missingLogged = true;
+            }
+            return;
+        } catch (IOException e) {
+            logger.warn("Cannot read upstreams file {}: {}", file, e.getMessage());
+            return;
+        }
+        if (fileVersion != null && attributes.lastModifiedTime().equals(fileVersion.lastModifiedTime())
+                && attributes.size() == fileVersion.size()) {
+            return;
+        }
+        missingLogged = false;
+
+        Map<String, List<URI>> instances = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            Properties entries = new Properties();
+            entries.load(reader);
+            for (String serviceId : entries.stringPropertyNames()) {
+                List<URI> uris = new ArrayList<>();
+                for (String uri : StringUtils.commaDelimitedListToStringArray(entries.getProperty(serviceId))) {
+                    if (StringUtils.hasText(uri)) {
+                        URI instance = URI.create(uri.trim());
+                        if (instance.getHost() == null) {
+                            throw new IllegalArgumentException("no host in " + serviceId + " instance " + uri);
+                        }
+                        uris.add(instance);
+                    }
+                }
+                instances.put(serviceId, uris);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Cannot load upstreams file {}, keeping the current instances: {}", file, e.getMessage());
+            // tried again once the file changes
+            fileVersion = attributes;
+            return;
+        }
+
+        for (String serviceId : fileServices) {
+            // no longer in the file: back to the configured instances
+            if (!instances.containsKey(serviceId) && pools.containsKey(serviceId)) {
+                UpstreamProperties.Service configured = properties.getServices().get(serviceId);
+                pool(serviceId).setInstances(configured != null ? configured.getInstances() : List.of());
+            }
+        }
+        instances.forEach((serviceId, uris) -> pool(serviceId).setInstances(uris));
+        fileServices = new HashSet<>(instances.keySet());
+        fileVersion = attributes;
+    }
+
+    @Override
+    public void start() {
+        if (file != null) {
+            watch = Flux.interval(properties.getRefreshInterval(), Schedulers.boundedElastic())
+                    // a reload slower than the interval skips ticks instead of failing the interval
+                    .onBackpressureDrop()
+                    .subscribe(tick -> poll(),
+                            e -> logger.error("Stopped polling upstreams file {}", file, e));
+        }
+    }
+
+    // one failed reload must not end the polling
+    private void poll() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            logger.warn("Cannot reload upstreams file {}, keeping the current instances", file, e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        Disposable current = watch;
+        if (current != null) {
+            current.dispose();
+            watch = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return watch != null;
+    }
+}
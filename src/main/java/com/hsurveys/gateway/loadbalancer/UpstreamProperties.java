@@ -0,0 +1,142 @@
+package com.hsurveys.gateway.loadbalancer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code upstreams.*}: the instances behind each {@code lb://<service>} route and how
+ * calls are spread over them. Services listed in {@code file} take their instances from
+ * it instead, and follow its changes; see {@link UpstreamPools}.
+ */
+@ConfigurationProperties(prefix = "upstreams")
+public class UpstreamProperties {
+
+    private Map<String, Service> services = new LinkedHashMap<>();
+    private String file;
+    private Duration refreshInterval = Duration.ofSeconds(2);
+    private UpstreamPool.Strategy strategy = UpstreamPool.Strategy.P2C;
+    private Duration latencyDecay = Duration.ofSeconds(10);
+    private Outlier outlier = new Outlier();
+
+    public Map<String, Service> getServices() {
+        return services;
+    }
+
+    public void setServices(Map<String, Service> services) {
+        this.services = services;
+    }
+
+    /**
+     * Properties file of {@code <service>=<uri>,<uri>...} lines, checked for changes
+     * every {@code refresh-interval}. Empty for none.
+     */
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public void setRefreshInterval(Duration refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    public UpstreamPool.Strategy getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(UpstreamPool.Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * How fast an instance's latency estimate decays towards recent samples, and towards
+     * zero while it gets no calls.
+     */
+    public Duration getLatencyDecay() {
+        return latencyDecay;
+    }
+
+    public void setLatencyDecay(Duration latencyDecay) {
+        this.latencyDecay = latencyDecay;
+    }
+
+    public Outlier getOutlier() {
+        return outlier;
+    }
+
+    public void setOutlier(Outlier outlier) {
+        this.outlier = outlier;
+    }
+
+    public static class Service {
+        private List<URI> instances = new ArrayList<>();
+
+        public List<URI> getInstances() {
+            return instances;
+        }
+
+        public void setInstances(List<URI> instances) {
+            this.instances = instances;
+        }
+    }
+
+    public static class Outlier {
+        private int consecutiveFailures = 5;
+        private Duration baseEjectionTime = Duration.ofSeconds(30);
+        private Duration maxEjectionTime = Duration.ofMinutes(5);
+        private int maxEjectionPercent = 50;
+
+        /**
+         * Failed calls in a row (errors or 5xx responses) that eject an instance.
+         */
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public void setConsecutiveFailures(int consecutiveFailures) {
+            this.consecutiveFailures = consecutiveFailures;
+        }
+
+        /**
+         * Ejection time, multiplied by the number of times in a row the instance was ejected.
+         */
+        public Duration getBaseEjectionTime() {
+            return baseEjectionTime;
+        }
+
+        public void setBaseEjectionTime(Duration baseEjectionTime) {
+            this.baseEjectionTime = baseEjectionTime;
+        }
+
+        public Duration getMaxEjectionTime() {
+            return maxEjectionTime;
+        }
+
+        public void setMaxEjectionTime(Duration maxEjectionTime) {
+            this.maxEjectionTime = maxEjectionTime;
+        }
+
+        /**
+         * Most of a pool's instances that may be ejected at once; one is always left in.
+         */
+        public int getMaxEjectionPercent() {
+            return maxEjectionPercent;
+        }
+
+        public void setMaxEjectionPercent(int maxEjectionPercent) {
+            this.maxEjectionPercent = maxEjectionPercent;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.hsurveys.gateway.logging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured access log kept off the request path. Request threads only copy a fixed set
+ * of fields into a preallocated ring buffer; a background writer drains it in batches and
+ * writes one JSON line per request to stdout or a rolling file.
+ * <p>
+ * Successful requests are sampled at {@code access-log.sample-rate}; responses with a
+ * status of 400 or above are always kept. When the buffer is full the event is dropped,
+ * or with the {@code block} overflow policy the caller waits up to
+ * {@code access-log.overflow-wait} for room first.
+ */
+@Component
+public class AccessLog implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessLog.class);
+
+    public enum Destination { STDOUT, FILE }
+
+    public enum OverflowPolicy { DROP, BLOCK }
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final OverflowPolicy overflowPolicy;
+    private final long overflowWaitNanos;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final AccessLogRingBuffer buffer;
+    private final AccessLogSink sink;
+    private final StringBuilder batch = new StringBuilder(16 * 1024);
+
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter sampledOut;
+    private final Counter writeFailures;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    @Autowired
+    public AccessLog(MeterRegistry meterRegistry,
+                     @Value("${access-log.enabled:true}") boolean enabled,
+                     @Value("${access-log.destination:stdout}") Destination destination,
+                     @Value("${access-log.file.path:logs/access.log}") Path file,
+                     @Value("${access-log.file.max-size:100MB}") DataSize maxFileSize,
+                     @Value("${access-log.file.max-history:5}") int maxHistory,
+                     @Value("${access-log.buffer-size:8192}") int bufferSize,
+                     @Value("${access-log.batch-size:256}") int batchSize,
+                     @Value("${access-log.flush-interval:200ms}") Duration flushInterval,
+                     @Value("${access-log.sample-rate:1.0}") double sampleRate,
+                     @Value("${access-log.overflow:drop}") OverflowPolicy overflowPolicy,
+                     @Value("${access-log.overflow-wait:1ms}") Duration overflowWait) throws IOException {
+        this(meterRegistry, enabled,
+                enabled && destination == Destination.FILE
+                        ? new RollingFileAccessLogSink(file, maxFileSize.toBytes(), maxHistory)
+                        : new StdoutAccessLogSink(),
+                bufferSize, batchSize, flushInterval, sampleRate, overflowPolicy, overflowWait);
+    }
+
+    AccessLog(MeterRegistry meterRegistry, boolean enabled, AccessLogSink sink, int bufferSize, int batchSize,
+              Duration flushInterval, double sampleRate, OverflowPolicy overflowPolicy, Duration overflowWait) {
+        this.enabled = enabled;
+        this.sink = sink;
+        this.buffer = new AccessLogRingBuffer(bufferSize);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.sampleRate = sampleRate;
+        this.overflowPolicy = overflowPolicy;
+        this.overflowWaitNanos = overflowWait.toNanos();
+        this.written = events(meterRegistry, "written");
+        this.dropped = events(meterRegistry, "dropped");
+        this.sampledOut = events(meterRegistry, "sampled_out");
+        this.writeFailures = Counter.builder("gateway.access_log.write_failures")
+                .description("Access log batches that could not be written")
+                .register(meterRegistry);
+        Gauge.builder("gateway.access_log.backlog", buffer, AccessLogRingBuffer::size)
+                .description("Access log events waiting for the writer")
+                .register(meterRegistry);
+    }
+
+    private static Counter events(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.access_log.events")
+                .description("Access log events by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records one completed request. Never blocks unless the {@code block} overflow policy
+     * is configured, and never performs I/O.
+     */
+    public void record(String method, String routeId, int status, long latencyNanos,
+                       String requestId, String principal, long bytes) {
+        if (!enabled) {
+            return;
+        }
+        if (status < 400 && sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            sampledOut.increment();
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        if (buffer.offer(timestamp, method, routeId, status, latencyNanos, requestId, principal, bytes)) {
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            long deadline = System.nanoTime() + overflowWaitNanos;
+            while (System.nanoTime() < deadline) {
+                LockSupport.unpark(writer);
+                Thread.onSpinWait();
+                if (buffer.offer(timestamp, method, routeId, status, latencyNanos, requestId, principal, bytes)) {
+                    return;
+                }
+            }
+        }
+        dropped.increment();
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (drainBatch() == 0) {
+                flush();
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+        while (drainBatch() > 0) {
+            // write whatever was recorded before shutdown
+        }
+        flush();
+    }
+
+    private int drainBatch() {
+        batch.setLength(0);
+        int drained = buffer.drain(event -> event.appendJson(batch), batchSize);
+        if (drained > 0) {
+            try {
+                sink.write(batch);
+                written.increment(drained);
+            } catch (IOException e) {
+                writeFailures.increment();
+                logger.warn("Failed to write {} access log events: {}", drained, e.toString());
+            }
+        }
+        return drained;
+    }
+
+    private void flush() {
+        try {
+            sink.flush();
+        } catch (IOException e) {
+            writeFailures.increment();
+            logger.warn("Failed to flush access log: {}", e.toString());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::drainLoop, "access-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+            sink.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("Failed to close access log: {}", e.toString());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // stop after the web server so in-flight requests are still logged
+        return Integer.MIN_VALUE + 1000;
+    }
+}
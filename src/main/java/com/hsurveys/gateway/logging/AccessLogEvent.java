@@ -0,0 +1,80 @@
+package com.hsurveys.gateway.logging;
+
+/**
+ * One preallocated slot of the {@link AccessLogRingBuffer}. Slots are written by the
+ * request thread that claimed them and read by the writer thread once published, so
+ * they are reused for the lifetime of the gateway instead of allocated per request.
+ */
+final class AccessLogEvent {
+
+    long timestampMillis;
+    String method;
+    String routeId;
+    int status;
+    long latencyNanos;
+    String requestId;
+    String principal;
+    long bytes;
+
+    void set(long timestampMillis, String method, String routeId, int status, long latencyNanos,
+             String requestId, String principal, long bytes) {
+        this.timestampMillis = timestampMillis;
+        this.method = method;
+        this.routeId = routeId;
+        this.status = status;
+        this.latencyNanos = latencyNanos;
+        this.requestId = requestId;
+        this.principal = principal;
+        this.bytes = bytes;
+    }
+
+    void clear() {
+        // drop references so reused slots do not keep request strings alive
+        method = null;
+        routeId = null;
+        requestId = null;
+        principal = null;
+    }
+
+    /**
+     * Appends the event as one JSON line with a fixed field order.
+     */
+    void appendJson(StringBuilder line) {
+        line.append("{\"ts\":");
+        line.append(timestampMillis);
+        line.append(",\"method\":");
+        appendString(line, method);
+        line.append(",\"route\":");
+        appendString(line, routeId);
+        line.append(",\"status\":");
+        line.append(status);
+        line.append(",\"latency_ns\":");
+        line.append(latencyNanos);
+        line.append(",\"request_id\":");
+        appendString(line, requestId);
+        line.append(",\"principal\":");
+        appendString(line, principal);
+        line.append(",\"bytes\":");
+        line.append(bytes);
+        line.append("}\n");
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
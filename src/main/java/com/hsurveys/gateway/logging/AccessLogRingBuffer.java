@@ -0,0 +1,85 @@
+package com.hsurveys.gateway.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer, single-consumer ring of preallocated {@link AccessLogEvent}s.
+ * Producers claim a sequence with a CAS and publish the slot once written; the single
+ * consumer drains published slots in order and frees them for reuse.
+ */
+final class AccessLogRingBuffer {
+
+    private final AccessLogEvent[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    AccessLogRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Access log buffer size must be a power of two, was " + capacity);
+        }
+        this.slots = new AccessLogEvent[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new AccessLogEvent();
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * @return {@code false} without blocking when the ring is full
+     */
+    boolean offer(long timestampMillis, String method, String routeId, int status, long latencyNanos,
+                  String requestId, String principal, long bytes) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= slots.length) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & mask;
+        slots[index].set(timestampMillis, method, routeId, status, latencyNanos, requestId, principal, bytes);
+        published.lazySet(index, sequence);
+        return true;
+    }
+
+    /**
+     * Hands up to {@code max} published events to {@code consumer}, in claim order. Must only
+     * be called from the single consumer thread.
+     *
+     * @return the number of events drained
+     */
+    int drain(Consumer<AccessLogEvent> consumer, int max) {
+        long sequence = head.get();
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) sequence & mask;
+            if (published.get(index) != sequence) {
+                // empty, or the producer that claimed this slot has not finished writing it
+                break;
+            }
+            AccessLogEvent event = slots[index];
+            consumer.accept(event);
+            event.clear();
+            sequence++;
+            drained++;
+            head.lazySet(sequence);
+        }
+        return drained;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,15 @@
+package com.hsurveys.gateway.logging;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of formatted access log lines. Only ever called from the access log
+ * writer thread.
+ */
+interface AccessLogSink extends Closeable {
+
+    void write(CharSequence lines) throws IOException;
+
+    void flush() throws IOException;
+}
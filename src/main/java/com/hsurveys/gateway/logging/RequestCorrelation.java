@@ -0,0 +1,56 @@
+package com.hsurveys.gateway.logging;
+
+import org.slf4j.MDC;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.util.context.ContextView;
+
+/**
+ * Carries the request id of an exchange through the Reactor {@code Context} and the
+ * {@link #REQUEST_ID_ATTRIBUTE} exchange attribute instead of a thread-bound MDC, which
+ * is wrong as soon as a reactive pipeline hops threads. The id is copied into the MDC
+ * only around a log call that is actually emitted, so {@code %X{requestId}} in the log
+ * pattern keeps working.
+ */
+public final class RequestCorrelation {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-ID";
+    public static final String REQUEST_ID_KEY = "requestId";
+    public static final String REQUEST_ID_ATTRIBUTE = RequestCorrelation.class.getName() + ".requestId";
+
+    private RequestCorrelation() {
+    }
+
+    public static String requestId(ServerWebExchange exchange) {
+        return exchange.getAttribute(REQUEST_ID_ATTRIBUTE);
+    }
+
+    public static String requestId(ContextView context) {
+        return context.getOrDefault(REQUEST_ID_KEY, null);
+    }
+
+    public static void log(ServerWebExchange exchange, Runnable logStatement) {
+        log(requestId(exchange), logStatement);
+    }
+
+    public static void log(ContextView context, Runnable logStatement) {
+        log(requestId(context), logStatement);
+    }
+
+    private static void log(String requestId, Runnable logStatement) {
+        if (requestId == null) {
+            logStatement.run();
+            return;
+        }
+        String previous = MDC.get(REQUEST_ID_KEY);
+        MDC.put(REQUEST_ID_KEY, requestId);
+        try {
+            logStatement.run();
+        } finally {
+            if (previous != null) {
+                MDC.put(REQUEST_ID_KEY, previous);
+            } else {
+                MDC.remove(REQUEST_ID_KEY);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.hsurveys.gateway.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates request ids in the ULID layout: 48 bits of epoch milliseconds followed by 80
+ * random bits, encoded as 26 Crockford base32 characters. Ids sort by creation time and
+ * are drawn from {@link ThreadLocalRandom}, so unlike {@link java.util.UUID#randomUUID()}
+ * request threads never contend on a shared {@code SecureRandom}. They correlate log
+ * lines and are not meant to be unguessable.
+ */
+public final class RequestIds {
+
+    public static final int MAX_LENGTH = 128;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private RequestIds() {
+    }
+
+    public static String next() {
+        return next(System.currentTimeMillis(), ThreadLocalRandom.current());
+    }
+
+    static String next(long timestampMillis, ThreadLocalRandom random) {
+        char[] id = new char[26];
+        // 10 characters of timestamp, the top 2 bits of the first one are always zero
+        long time = timestampMillis;
+        for (int i = 9; i >= 0; i--) {
+            id[i] = ALPHABET[(int) (time & 31)];
+            time >>>= 5;
+        }
+        // 16 characters of randomness, 40 bits at a time
+        long high = random.nextLong() & 0xFFFFFFFFFFL;
+        long low = random.nextLong() & 0xFFFFFFFFFFL;
+        for (int i = 17; i >= 10; i--) {
+            id[i] = ALPHABET[(int) (high & 31)];
+            high >>>= 5;
+        }
+        for (int i = 25; i >= 18; i--) {
+            id[i] = ALPHABET[(int) (low & 31)];
+            low >>>= 5;
+        }
+        return new String(id);
+    }
+
+    /**
+     * Whether a client-supplied id is short and plain enough to be echoed into headers
+     * and log lines as is.
+     */
+    public static boolean isAcceptable(String requestId) {
+        if (requestId == null || requestId.isEmpty() || requestId.length() > MAX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < requestId.length(); i++) {
+            char c = requestId.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == ':';
+            if (!allowed) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+package com.hsurveys.gateway.logging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends access log lines to a local file, rolling it to {@code <file>.1 .. <file>.N}
+ * once it grows past {@code maxSize} bytes.
+ */
+final class RollingFileAccessLogSink implements AccessLogSink {
+
+    private final Path file;
+    private final long maxSize;
+    private final int maxHistory;
+
+    private Writer out;
+    private long size;
+
+    RollingFileAccessLogSink(Path file, long maxSize, int maxHistory) throws IOException {
+        this.file = file;
+        this.maxSize = maxSize;
+        this.maxHistory = maxHistory;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        open();
+    }
+
+    @Override
+    public void write(CharSequence lines) throws IOException {
+        if (size >= maxSize) {
+            roll();
+        }
+        out.append(lines);
+        // access log lines are ASCII apart from rare escaped input, so chars approximate bytes
+        size += lines.length();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void open() throws IOException {
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        size = Files.size(file);
+    }
+
+    private void roll() throws IOException {
+        out.close();
+        Files.deleteIfExists(rolled(maxHistory));
+        for (int i = maxHistory - 1; i >= 1; i--) {
+            Path source = rolled(i);
+            if (Files.exists(source)) {
+                Files.move(source, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxHistory > 0) {
+            Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        open();
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
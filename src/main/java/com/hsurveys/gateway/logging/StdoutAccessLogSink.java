@@ -0,0 +1,35 @@
+package com.hsurveys.gateway.logging;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes access log lines to the process standard output, bypassing {@code System.out}
+ * and its per-call locking.
+ */
+final class StdoutAccessLogSink implements AccessLogSink {
+
+    private final Writer out = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 64 * 1024);
+
+    @Override
+    public void write(CharSequence lines) throws IOException {
+        out.append(lines);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // never close the process stdout
+        out.flush();
+    }
+}
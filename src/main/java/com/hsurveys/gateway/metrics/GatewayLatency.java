@@ -0,0 +1,96 @@
+package com.hsurveys.gateway.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-route, per-phase latency timers, published as {@code gateway.latency{route,phase}}.
+ * Histogram buckets and client-side percentiles are switched on for the meter through
+ * {@code management.metrics.distribution.*}, so the same timers back the prometheus
+ * scrape and the {@code latency} actuator endpoint.
+ */
+@Component
+public class GatewayLatency {
+
+    public static final String METER_NAME = "gateway.latency";
+
+    private static final LatencyPhase[] PHASES = LatencyPhase.values();
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+    public GatewayLatency(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void record(String routeId, LatencyPhase phase, long nanos) {
+        if (routeId == null) {
+            return;
+        }
+        timers.computeIfAbsent(routeId, this::register)[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer[] register(String routeId) {
+        Timer[] routeTimers = new Timer[PHASES.length];
+        for (LatencyPhase phase : PHASES) {
+            routeTimers[phase.ordinal()] = Timer.builder(METER_NAME)
+                    .description("Time spent per route in each phase of a proxied request")
+                    .tag("route", routeId)
+                    .tag("phase", phase.tag)
+                    .register(meterRegistry);
+        }
+        return routeTimers;
+    }
+
+    /**
+     * Live view of every route's phases: count, mean, max and the configured percentiles,
+     * all in milliseconds.
+     */
+    public Map<String, Map<String, Map<String, Object>>> snapshot() {
+        Map<String, Map<String, Map<String, Object>>> routes = new TreeMap<>();
+        timers.forEach((routeId, routeTimers) -> routes.put(routeId, snapshot(routeTimers)));
+        return routes;
+    }
+
+    public Map<String, Map<String, Object>> snapshot(String routeId) {
+        Timer[] routeTimers = timers.get(routeId);
+        return routeTimers != null ? snapshot(routeTimers) : null;
+    }
+
+    private static Map<String, Map<String, Object>> snapshot(Timer[] routeTimers) {
+        Map<String, Map<String, Object>> phases = new LinkedHashMap<>();
+        for (LatencyPhase phase : PHASES) {
+            HistogramSnapshot snapshot = routeTimers[phase.ordinal()].takeSnapshot();
+            if (snapshot.count() == 0) {
+                continue;
+            }
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", snapshot.count());
+            values.put("mean", snapshot.mean(TimeUnit.MILLISECONDS));
+            values.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                values.put(percentileName(percentile.percentile()), percentile.value(TimeUnit.MILLISECONDS));
+            }
+            phases.put(phase.tag, values);
+        }
+        return phases;
+    }
+
+    private static String percentileName(double percentile) {
+        // 0.5 -> p50, 0.99 -> p99, 0.999 -> p999
+        String digits = Long.toString(Math.round(percentile * 10_000));
+        while (digits.length() > 2 && digits.endsWith("0")) {
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        return "p" + digits;
+    }
+}
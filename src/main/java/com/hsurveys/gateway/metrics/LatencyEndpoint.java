@@ -0,0 +1,33 @@
+package com.hsurveys.gateway.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/latency} and {@code /actuator/latency/{route}}: live per-phase latency
+ * percentiles of each route, in milliseconds.
+ */
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+
+    private final GatewayLatency gatewayLatency;
+
+    public LatencyEndpoint(GatewayLatency gatewayLatency) {
+        this.gatewayLatency = gatewayLatency;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Map<String, Object>>> routes() {
+        return gatewayLatency.snapshot();
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> route(@Selector String route) {
+        return gatewayLatency.snapshot(route);
+    }
+}
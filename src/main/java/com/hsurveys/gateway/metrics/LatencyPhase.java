@@ -0,0 +1,20 @@
+package com.hsurveys.gateway.metrics;
+
+/**
+ * Stages of a proxied request that are timed separately in {@code gateway.latency}.
+ */
+public enum LatencyPhase {
+
+    /** Token extraction, verification and identity header rendering. */
+    AUTHENTICATION,
+    /** Rate limiter decision, including any wait for a Redis lease. */
+    RATE_LIMIT,
+    /** Everything the gateway does before the request is handed to the upstream call. */
+    FILTERS,
+    /** From handing the request to the routing filter until the upstream response arrives. */
+    UPSTREAM,
+    /** The whole exchange as seen by the gateway. */
+    TOTAL;
+
+    final String tag = name().toLowerCase();
+}
@@ -0,0 +1,448 @@
+package com.hsurveys.gateway.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hsurveys.gateway.metrics.GatewayLatency;
+import com.hsurveys.gateway.metrics.LatencyPhase;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token-bucket rate limiter that answers most requests from memory.
+ * <p>
+ * Keys are {@link RateLimitKey}s. Besides the per-subject bucket configured by
+ * {@code replenishRate}/{@code burstCapacity}, a key may be limited by its organization's
+ * bucket and by the route's bucket; all levels are checked atomically by each lease.
+ * <p>
+ * Each key holds a block of tokens leased from the buckets shared in Redis; requests spend
+ * leased tokens locally and a new lease is fetched in the background once the block runs
+ * low. A lease is sized to what the key requested over the last leases, projected over the
+ * lease ttl and capped at {@code maxLeaseSize}, so a light user leases one request's worth
+ * at a time and does not hold quota the rest of its organization could use. Tokens still
+ * unused when the lease expires are released back to Redis. Only a key with no tokens left
+ * waits for Redis, and never longer than the lease timeout. While Redis is slow or down,
+ * keys fall back to a local lock-free GCRA bucket with the subject's rate and burst,
+ * enforced per node, until the Redis backoff expires.
+ * <p>
+ * Drop-in replacement for {@link RedisRateLimiter}: routes reference it as
+ * {@code #{@leasingRateLimiter}} and may override its settings with
+ * {@code leasing-rate-limiter.*} arguments.
+ */
+public class LeasingRateLimiter extends AbstractRateLimiter<LeasingRateLimiter.Config> {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "leasing-rate-limiter";
+
+    private static final Logger logger = LoggerFactory.getLogger(LeasingRateLimiter.class);
+
+    private final RedisTokenLeases leases;
+    private final Config defaultConfig;
+    private final Settings settings;
+    private final Cache<String, KeyState> states;
+    private final Counters counters;
+    private final GatewayLatency gatewayLatency;
+
+    private volatile long redisRetryAt;
+    private volatile boolean redisUnavailable;
+
+    public LeasingRateLimiter(RedisTokenLeases leases,
+                              ConfigurationService configurationService,
+                              Config defaultConfig,
+                              Settings settings,
+                              MeterRegistry meterRegistry,
+                              GatewayLatency gatewayLatency) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.leases = leases;
+        this.gatewayLatency = gatewayLatency;
+        this.defaultConfig = defaultConfig;
+        this.settings = settings;
+        this.states = Caffeine.newBuilder()
+                .maximumSize(settings.maxKeys())
+                .expireAfterAccess(settings.idleKeyExpiry())
+                .build();
+        this.counters = new Counters(meterRegistry);
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Config config = getConfig().getOrDefault(routeId, defaultConfig);
+        KeyState state = states.get(routeId + ":" + id, key -> new KeyState(routeId, RateLimitKey.parse(id), config));
+        long now = System.nanoTime();
+
+        if (!isRedisAvailable(now)) {
+            Response response = fallback(state, config, now);
+            gatewayLatency.record(routeId, LatencyPhase.RATE_LIMIT, System.nanoTime() - now);
+            return Mono.just(response);
+        }
+
+        state.demand(config.getRequestedTokens());
+        long remaining = state.take(config.getRequestedTokens(), now);
+        if (remaining >= 0) {
+            if (remaining < state.lowWatermark) {
+                state.lease(config).subscribe(granted -> { }, this::onLeaseFailure);
+            }
+            counters.local(true).increment();
+            gatewayLatency.record(routeId, LatencyPhase.RATE_LIMIT, System.nanoTime() - now);
+            return Mono.just(response(true, remaining, config));
+        }
+
+        return state.lease(config)
+                .timeout(settings.leaseTimeout())
+                .map(granted -> {
+                    long left = state.take(config.getRequestedTokens(), System.nanoTime());
+                    counters.lease(left >= 0).increment();
+                    return response(left >= 0, Math.max(left, 0), config);
+                })
+                .onErrorResume(e -> {
+                    onLeaseFailure(e);
+                    return Mono.just(fallback(state, config, System.nanoTime()));
+                })
+                .doFinally(signalType -> gatewayLatency.record(routeId, LatencyPhase.RATE_LIMIT,
+                        System.nanoTime() - now));
+    }
+
+    private Response fallback(KeyState state, Config config, long now) {
+        long remaining = state.takeLocal(config, now);
+        counters.fallback(remaining >= 0).increment();
+        return response(remaining >= 0, Math.max(remaining, 0), config);
+    }
+
+    private boolean isRedisAvailable(long now) {
+        if (!redisUnavailable) {
+            return true;
+        }
+        if (now - redisRetryAt >= 0) {
+            redisUnavailable = false;
+            logger.info("Retrying Redis for rate limit leases");
+            return true;
+        }
+        return false;
+    }
+
+    private void onLeaseFailure(Throwable e) {
+        counters.leaseFailures.increment();
+        if (!redisUnavailable) {
+            redisRetryAt = System.nanoTime() + settings.redisBackoff().toNanos();
+            redisUnavailable = true;
+            logger.warn("Rate limit leases unavailable, using local limits for {}: {}",
+                    settings.redisBackoff(), e.toString());
+        }
+    }
+
+    private Response response(boolean allowed, long remaining, Config config) {
+        if (!config.isIncludeHeaders()) {
+            return new Response(allowed, Map.of());
+        }
+        return new Response(allowed, Map.of(
+                RedisRateLimiter.REMAINING_HEADER, Long.toString(remaining),
+                RedisRateLimiter.REPLENISH_RATE_HEADER, Integer.toString(config.getReplenishRate()),
+                RedisRateLimiter.BURST_CAPACITY_HEADER, Integer.toString(config.getBurstCapacity()),
+                RedisRateLimiter.REQUESTED_TOKENS_HEADER, Integer.toString(config.getRequestedTokens())));
+    }
+
+    long trackedKeys() {
+        states.cleanUp();
+        return states.estimatedSize();
+    }
+
+    /**
+     * Per-key state: the unspent part of the current lease, the key's recent demand that
+     * sizes the next one, and the local fallback bucket.
+     */
+    private final class KeyState {
+
+        // demand is measured over at least this long, so back-to-back leases do not see a burst rate
+        private static final long MIN_DEMAND_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+        private static final double DEMAND_SMOOTHING = 0.5;
+
+        private final String routeId;
+        private final RateLimitKey key;
+        private final int minLeaseSize;
+        private final int maxLeaseSize;
+        private final double leaseTtlSeconds;
+        private final long nanosPerToken;
+        private final long burstNanos;
+
+        private volatile Config config;
+        private final AtomicLong leased = new AtomicLong();
+        private volatile long leaseExpiresAt;
+        // remaining tokens below which the next lease is fetched ahead; 0 for leases of one request
+        private volatile int lowWatermark;
+        private final AtomicReference<Mono<Long>> pendingLease = new AtomicReference<>();
+        // tokens requested since demandSince, folded into tokensPerSecond when a lease is sized
+        private final AtomicLong demand = new AtomicLong();
+        private volatile long demandSince;
+        private volatile double tokensPerSecond;
+        // false until the first lease starts measuring demand
+        private volatile boolean measuring;
+        // GCRA theoretical arrival time of the next request
+        private final AtomicLong theoreticalArrival;
+
+        private KeyState(String routeId, RateLimitKey key, Config config) {
+            this.routeId = routeId;
+            this.key = key;
+            this.config = config;
+            this.minLeaseSize = config.getRequestedTokens();
+            this.maxLeaseSize = Math.max(config.getRequestedTokens(),
+                    Math.min(settings.maxLeaseSize(), config.getBurstCapacity()));
+            this.leaseTtlSeconds = settings.leaseTtl().toNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+            this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / Math.max(1, config.getReplenishRate());
+            this.burstNanos = nanosPerToken * config.getBurstCapacity();
+            this.theoreticalArrival = new AtomicLong(System.nanoTime());
+        }
+
+        void demand(int requested) {
+            demand.addAndGet(requested);
+        }
+
+        /**
+         * Spends leased tokens; returns the tokens left, or -1 if the lease cannot cover the request.
+         */
+        long take(int requested, long now) {
+            expireLease(now);
+            while (true) {
+                long current = leased.get();
+                if (current < requested) {
+                    return -1;
+                }
+                if (leased.compareAndSet(current, current - requested)) {
+                    return current - requested;
+                }
+            }
+        }
+
+        Mono<Long> lease(Config config) {
+            Mono<Long> pending = pendingLease.get();
+            if (pending != null) {
+                return pending;
+            }
+            this.config = config;
+            int size = nextLeaseSize(System.nanoTime());
+            AtomicReference<Mono<Long>> self = new AtomicReference<>();
+            Mono<Long> created = leases.lease(routeId, key, config, size)
+                    .defaultIfEmpty(0L)
+                    .doOnNext(granted -> {
+                        if (granted > 0) {
+                            leaseExpiresAt = System.nanoTime() + settings.leaseTtl().toNanos();
+                            lowWatermark = size > minLeaseSize ? Math.max(1, size / 4) : 0;
+                            leased.addAndGet(granted);
+                            Mono.delay(settings.leaseTtl())
+                                    .subscribe(tick -> expireLease(System.nanoTime()));
+                        } else {
+                            counters.leasesExhausted.increment();
+                        }
+                    })
+                    .doFinally(signal -> pendingLease.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(created);
+            return pendingLease.compareAndSet(null, created) ? created : pendingLease.get();
+        }
+
+        /**
+         * The key's demand rate over the lease ttl, between one request's tokens and the
+         * maximum lease size.
+         */
+        private int nextLeaseSize(long now) {
+            if (!measuring) {
+                // no history yet: however long the key took to get here, one request is no rate
+                measuring = true;
+                demandSince = now;
+                demand.set(0);
+                return minLeaseSize;
+            }
+            long elapsed = now - demandSince;
+            if (elapsed >= MIN_DEMAND_INTERVAL) {
+                demandSince = now;
+                double rate = demand.getAndSet(0) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+                tokensPerSecond += DEMAND_SMOOTHING * (rate - tokensPerSecond);
+            }
+            long expected = (long) Math.ceil(tokensPerSecond * leaseTtlSeconds);
+            return (int) Math.max(minLeaseSize, Math.min(maxLeaseSize, expected));
+        }
+
+        /**
+         * Releases what is left of an expired lease, so idle keys do not hold back quota
+         * shared with their organization and route.
+         */
+        private void expireLease(long now) {
+            if (leased.get() <= 0 || now - leaseExpiresAt < 0) {
+                return;
+            }
+            long unused = leased.getAndSet(0);
+            if (unused > 0) {
+                counters.tokensReleased.increment(unused);
+                leases.release(routeId, key, config, (int) unused)
+                        .subscribe(done -> { }, e -> logger.debug("Releasing {} unused tokens of {} failed: {}",
+                                unused, key, e.toString()));
+            }
+        }
+
+        /**
+         * Local-only GCRA bucket; returns the tokens left, or -1 if the request is refused.
+         */
+        long takeLocal(Config config, long now) {
+            long cost = nanosPerToken * config.getRequestedTokens();
+            while (true) {
+                long current = theoreticalArrival.get();
+                long next = Math.max(current - now, 0) + now + cost;
+                long debt = next - now;
+                if (debt > burstNanos) {
+                    return -1;
+                }
+                if (theoreticalArrival.compareAndSet(current, next)) {
+                    return (burstNanos - debt) / nanosPerToken;
+                }
+            }
+        }
+    }
+
+    private static final class Counters {
+
+        private final Counter localAllowed;
+        private final Counter localDenied;
+        private final Counter leaseAllowed;
+        private final Counter leaseDenied;
+        private final Counter fallbackAllowed;
+        private final Counter fallbackDenied;
+        private final Counter leasesExhausted;
+        private final Counter leaseFailures;
+        private final Counter tokensReleased;
+
+        private Counters(MeterRegistry registry) {
+            localAllowed = decision(registry, "local", true);
+            localDenied = decision(registry, "local", false);
+            leaseAllowed = decision(registry, "lease", true);
+            leaseDenied = decision(registry, "lease", false);
+            fallbackAllowed = decision(registry, "fallback", true);
+            fallbackDenied = decision(registry, "fallback", false);
+            leasesExhausted = Counter.builder("gateway.ratelimit.leases")
+                    .description("Token leases that Redis could not grant")
+                    .tag("result", "exhausted")
+                    .register(registry);
+            leaseFailures = Counter.builder("gateway.ratelimit.leases")
+                    .description("Token leases that failed or timed out")
+                    .tag("result", "failed")
+                    .register(registry);
+            tokensReleased = Counter.builder("gateway.ratelimit.tokens.released")
+                    .description("Leased tokens returned to Redis unused when their lease expired")
+                    .register(registry);
+        }
+
+        private static Counter decision(MeterRegistry registry, String source, boolean allowed) {
+            return Counter.builder("gateway.ratelimit.decisions")
+                    .description("Rate limit decisions by where they were answered")
+                    .tag("source", source)
+                    .tag("allowed", Boolean.toString(allowed))
+                    .register(registry);
+        }
+
+        Counter local(boolean allowed) {
+            return allowed ? localAllowed : localDenied;
+        }
+
+        Counter lease(boolean allowed) {
+            return allowed ? leaseAllowed : leaseDenied;
+        }
+
+        Counter fallback(boolean allowed) {
+            return allowed ? fallbackAllowed : fallbackDenied;
+        }
+    }
+
+    /**
+     * Node-wide leasing settings. Leases are sized per key up to {@code maxLeaseSize}.
+     */
+    public record Settings(int maxLeaseSize,
+                           Duration leaseTtl,
+                           Duration leaseTimeout,
+                           Duration redisBackoff,
+                           long maxKeys,
+                           Duration idleKeyExpiry) {
+    }
+
+    public static class Config {
+        private int replenishRate;
+        private int burstCapacity;
+        private int requestedTokens = 1;
+        private int organizationReplenishRate;
+        private int organizationBurstCapacity;
+        private int routeReplenishRate;
+        private int routeBurstCapacity;
+        private boolean includeHeaders = true;
+
+        public int getReplenishRate() {
+            return replenishRate;
+        }
+
+        public void setReplenishRate(int replenishRate) {
+            this.replenishRate = replenishRate;
+        }
+
+        public int getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        public void setBurstCapacity(int burstCapacity) {
+            this.burstCapacity = burstCapacity;
+        }
+
+        public int getRequestedTokens() {
+            return requestedTokens;
+        }
+
+        public void setRequestedTokens(int requestedTokens) {
+            this.requestedTokens = requestedTokens;
+        }
+
+        public int getOrganizationReplenishRate() {
+            return organizationReplenishRate;
+        }
+
+        public void setOrganizationReplenishRate(int organizationReplenishRate) {
+            this.organizationReplenishRate = organizationReplenishRate;
+        }
+
+        public int getOrganizationBurstCapacity() {
+            return organizationBurstCapacity;
+        }
+
+        public void setOrganizationBurstCapacity(int organizationBurstCapacity) {
+            this.organizationBurstCapacity = organizationBurstCapacity;
+        }
+
+        public int getRouteReplenishRate() {
+            return routeReplenishRate;
+        }
+
+        public void setRouteReplenishRate(int routeReplenishRate) {
+            this.routeReplenishRate = routeReplenishRate;
+        }
+
+        public int getRouteBurstCapacity() {
+            return routeBurstCapacity;
+        }
+
+        public void setRouteBurstCapacity(int routeBurstCapacity) {
+            this.routeBurstCapacity = routeBurstCapacity;
+        }
+
+        public boolean isIncludeHeaders() {
+            return includeHeaders;
+        }
+
+        public void setIncludeHeaders(boolean includeHeaders) {
+            this.includeHeaders = includeHeaders;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.hsurveys.gateway.ratelimit;
+
+import com.hsurveys.gateway.utils.JwtPrincipal;
+
+/**
+ * Rate limit key resolved from the verified principal: the subject (user id, or client
+ * address for anonymous requests) and the organization it belongs to, if any.
+ * <p>
+ * Key resolvers can only hand a single string to the rate limiter, so the key travels as
+ * {@code u:<user>|o:<organization>} or {@code ip:<address>} and is parsed back here.
+ */
+public record RateLimitKey(String subject, String organization) {
+
+    private static final String ORGANIZATION_SEPARATOR = "|o:";
+
+    public static String of(JwtPrincipal principal) {
+        String user = principal.userId() != null ? principal.userId().toString() : principal.username();
+        if (principal.organizationId() == null) {
+            return "u:" + user;
+        }
+        return "u:" + user + ORGANIZATION_SEPARATOR + principal.organizationId();
+    }
+
+    public static String anonymous(String clientAddress) {
+        return "ip:" + clientAddress;
+    }
+
+    public static RateLimitKey parse(String id) {
+        int separator = id.indexOf(ORGANIZATION_SEPARATOR);
+        if (separator < 0) {
+            return new RateLimitKey(id, null);
+        }
+        return new RateLimitKey(id.substring(0, separator), id.substring(separator + ORGANIZATION_SEPARATOR.length()));
+    }
+}
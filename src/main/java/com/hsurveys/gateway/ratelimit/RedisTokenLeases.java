@@ -0,0 +1,205 @@
+package com.hsurveys.gateway.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leases blocks of tokens from the token buckets kept in Redis and shared by every
+ * gateway node. A lease checks the subject, organization and route buckets of a key in
+ * a single script call and only grants what all of them can cover; the part of a lease
+ * that goes unused is {@linkplain #release released} back to all of them.
+ * <p>
+ * Leases requested within {@code window} of each other, up to {@code maxBatchSize}, are
+ * sent to Redis as one script call per route and the grants are fanned back to each
+ * caller. A zero window sends every lease on its own.
+ */
+public class RedisTokenLeases {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisTokenLeases.class);
+
+    private static final int MAX_CONCURRENT_BATCHES = 16;
+    private static final int MAX_WAITING_LEASES = 10_000;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final RedisScript<List<Long>> script;
+    private final Duration batchTimeout;
+    private volatile FluxSink<PendingLease> pending;
+
+    private final DistributionSummary batchSize;
+    private final Counter redisCalls;
+    private final Timer redisLatency;
+    private final Counter leasesRefused;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RedisTokenLeases(ReactiveStringRedisTemplate redisTemplate,
+                            int maxBatchSize,
+                            Duration window,
+                            Duration batchTimeout,
+                            MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.script = (RedisScript) RedisScript.of(new ClassPathResource("scripts/lease_tokens.lua"), List.class);
+        this.batchTimeout = batchTimeout;
+        this.batchSize = DistributionSummary.builder("gateway.ratelimit.redis.batch.size")
+                .description("Token leases sent to Redis in one script call")
+                .register(meterRegistry);
+        this.redisCalls = Counter.builder("gateway.ratelimit.redis.calls")
+                .description("Script calls sent to Redis for token leases")
+                .register(meterRegistry);
+        this.redisLatency = Timer.builder("gateway.ratelimit.redis.latency")
+                .description("Round trip of one batched token lease call")
+                .register(meterRegistry);
+        this.leasesRefused = Counter.builder("gateway.ratelimit.redis.refused")
+                .description("Token leases refused because too many were already waiting for Redis")
+                .register(meterRegistry);
+
+        // a Flux.create sink serializes emissions, so event loop threads can enqueue concurrently;
+        // it is handed over synchronously each time the pipeline is subscribed below
+        Flux<PendingLease> leases = Flux.<PendingLease>create(created -> pending = created)
+                // while Redis stalls, leases wait here up to a bound and are refused beyond it
+                .onBackpressureBuffer(MAX_WAITING_LEASES, this::refuse, BufferOverflowStrategy.DROP_LATEST);
+        Flux<List<PendingLease>> batches = window.isZero()
+                ? leases.map(List::of)
+                // fair backpressure: a timed flush waits for demand instead of failing the pipeline
+                : leases.bufferTimeout(maxBatchSize, window, true);
+        batches.flatMap(this::execute, MAX_CONCURRENT_BATCHES)
+                .doOnError(e -> logger.error("Token lease pipeline failed, restarting it", e))
+                .retry()
+                .subscribe();
+    }
+
+    /**
+     * Takes up to {@code tokens} tokens from every bucket level that applies to {@code key}.
+     *
+     * @return the number of tokens granted, possibly zero when any shared quota is exhausted
+     */
+    public Mono<Long> lease(String routeId, RateLimitKey key, LeasingRateLimiter.Config config, int tokens) {
+        return Mono.defer(() -> {
+            PendingLease lease = new PendingLease(routeId, key, config, tokens);
+            pending.next(lease);
+            return lease.result.asMono();
+        });
+    }
+
+    /**
+     * Credits {@code tokens} unused tokens of an expired lease back to every bucket level
+     * of {@code key}, batched with the leases of the same window.
+     */
+    public Mono<Void> release(String routeId, RateLimitKey key, LeasingRateLimiter.Config config, int tokens) {
+        return lease(routeId, key, config, -tokens).then();
+    }
+
+    private Mono<Void> execute(List<PendingLease> batch) {
+        return Mono.defer(() -> {
+                    // keys of one script call must share a hash slot, and each route is its own hash tag
+                    Map<String, List<PendingLease>> byRoute = new LinkedHashMap<>();
+                    for (PendingLease lease : batch) {
+                        byRoute.computeIfAbsent(lease.routeId, routeId -> new ArrayList<>()).add(lease);
+                    }
+                    return Flux.fromIterable(byRoute.values())
+                            .flatMap(this::executeRoute)
+                            .then();
+                })
+                // a failed batch fails its own leases, never the pipeline shared by all of them
+                .onErrorResume(e -> {
+                    logger.warn("Token lease batch of {} failed", batch.size(), e);
+                    for (PendingLease lease : batch) {
+                        lease.result.tryEmitError(e);
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    private void refuse(PendingLease lease) {
+        leasesRefused.increment();
+        lease.result.tryEmitError(new IllegalStateException(
+                "More than " + MAX_WAITING_LEASES + " token leases waiting for Redis"));
+    }
+
+    private Mono<Void> executeRoute(List<PendingLease> leases) {
+        List<String> keys = new ArrayList<>(leases.size() * 6);
+        List<String> args = new ArrayList<>(leases.size() * 8 + 1);
+        args.add(Integer.toString(leases.size()));
+        for (PendingLease lease : leases) {
+            lease.appendTo(keys, args);
+        }
+        batchSize.record(leases.size());
+        redisCalls.increment();
+        long start = System.nanoTime();
+        return redisTemplate.execute(script, keys, args)
+                .next()
+                .defaultIfEmpty(List.of())
+                .timeout(batchTimeout)
+                .doOnNext(grants -> {
+                    redisLatency.record(Duration.ofNanos(System.nanoTime() - start));
+                    for (int i = 0; i < leases.size(); i++) {
+                        leases.get(i).result.tryEmitValue(i < grants.size() ? grants.get(i) : 0L);
+                    }
+                })
+                .doOnError(e -> {
+                    logger.debug("Token lease batch of {} failed: {}", leases.size(), e.toString());
+                    for (PendingLease lease : leases) {
+                        lease.result.tryEmitError(e);
+                    }
+                })
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private static final class PendingLease {
+
+        private final String routeId;
+        private final RateLimitKey key;
+        private final LeasingRateLimiter.Config config;
+        private final int tokens;
+        private final Sinks.One<Long> result = Sinks.one();
+
+        private PendingLease(String routeId, RateLimitKey key, LeasingRateLimiter.Config config, int tokens) {
+            this.routeId = routeId;
+            this.key = key;
+            this.config = config;
+            this.tokens = tokens;
+        }
+
+        void appendTo(List<String> keys, List<String> args) {
+            boolean organization = key.organization() != null && config.getOrganizationReplenishRate() > 0;
+            boolean route = config.getRouteReplenishRate() > 0;
+            args.add(Integer.toString(1 + (organization ? 1 : 0) + (route ? 1 : 0)));
+            args.add(Integer.toString(tokens));
+            addLevel(keys, args, key.subject(), config.getReplenishRate(), config.getBurstCapacity());
+            if (organization) {
+                addLevel(keys, args, "o:" + key.organization(),
+                        config.getOrganizationReplenishRate(), config.getOrganizationBurstCapacity());
+            }
+            if (route) {
+                addLevel(keys, args, "route", config.getRouteReplenishRate(), config.getRouteBurstCapacity());
+            }
+        }
+
+        private void addLevel(List<String> keys, List<String> args, String level, int replenishRate, int burstCapacity) {
+            // the route id is the hash tag so every level of a route lives in the same cluster slot
+            String prefix = "lease_rate_limiter.{" + routeId + "}." + level;
+            keys.add(prefix + ".tokens");
+            keys.add(prefix + ".timestamp");
+            args.add(Integer.toString(replenishRate));
+            args.add(Integer.toString(burstCapacity));
+        }
+    }
+}
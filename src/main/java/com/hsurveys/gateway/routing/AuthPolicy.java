@@ -0,0 +1,14 @@
+package com.hsurveys.gateway.routing;
+
+/**
+ * What the JwtAuthentication filter requires of a request.
+ */
+public enum AuthPolicy {
+
+    /** No token needed. */
+    PUBLIC,
+    /** A valid token. */
+    AUTHENTICATED,
+    /** A valid token carrying at least one of the rule's roles or authorities. */
+    ROLE
+}
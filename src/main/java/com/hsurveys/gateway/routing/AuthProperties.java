@@ -0,0 +1,98 @@
+package com.hsurveys.gateway.routing;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code auth.*}: the auth policy of request paths, indexed together with the route
+ * predicates by {@link RouteIndex}. Paths without a rule use {@code default-policy}.
+ * Binding fails for a {@code ROLE} rule without roles, which no principal could satisfy.
+ */
+@ConfigurationProperties(prefix = "auth")
+public class AuthProperties implements Validator {
+
+    private AuthPolicy defaultPolicy = AuthPolicy.AUTHENTICATED;
+    private List<Rule> rules = new ArrayList<>();
+
+    public AuthPolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    public void setDefaultPolicy(AuthPolicy defaultPolicy) {
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return AuthProperties.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        List<Rule> boundRules = ((AuthProperties) target).getRules();
+        for (int i = 0; i < boundRules.size(); i++) {
+            Rule rule = boundRules.get(i);
+            if (rule.getPolicy() == AuthPolicy.ROLE && rule.getRoles().isEmpty()) {
+                errors.rejectValue("rules[" + i + "].roles", "auth.rules.roles.empty",
+                        "A ROLE rule must list at least one role");
+            }
+        }
+    }
+
+    public static class Rule {
+        private List<String> paths = new ArrayList<>();
+        private AuthPolicy policy = AuthPolicy.AUTHENTICATED;
+        private List<String> roles = new ArrayList<>();
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public void setPaths(List<String> paths) {
+            this.paths = paths;
+        }
+
+        public AuthPolicy getPolicy() {
+            return policy;
+        }
+
+        public void setPolicy(AuthPolicy policy) {
+            this.policy = policy;
+        }
+
+        public List<String> getRoles() {
+            return roles;
+        }
+
+        public void setRoles(List<String> roles) {
+            this.roles = roles;
+        }
+
+        /**
+         * Whether a principal with these roles and authorities satisfies the rule.
+         */
+        public boolean permits(List<String> principalRoles, List<String> principalAuthorities) {
+            if (policy != AuthPolicy.ROLE) {
+                return true;
+            }
+            for (String role : roles) {
+                if (principalRoles.contains(role) || principalAuthorities.contains(role)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
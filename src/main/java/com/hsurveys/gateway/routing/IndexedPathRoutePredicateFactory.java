@@ -0,0 +1,65 @@
+package com.hsurveys.gateway.routing;
+
+import org.springframework.cloud.gateway.handler.predicate.AbstractRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.GatewayPredicate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * {@code IndexedPath=/api/users/**,/api/auth/**}: drop-in for the {@code Path} predicate
+ * for literal, {@code *} and trailing {@code **} patterns. Instead of each route matching
+ * its own patterns in turn, all routes share one {@link RouteIndex} lookup per request.
+ */
+@Component
+public class IndexedPathRoutePredicateFactory extends AbstractRoutePredicateFactory<IndexedPathRoutePredicateFactory.Config> {
+
+    private final RouteIndex routeIndex;
+
+    public IndexedPathRoutePredicateFactory(RouteIndex routeIndex) {
+        super(Config.class);
+        this.routeIndex = routeIndex;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("patterns");
+    }
+
+    @Override
+    public ShortcutType shortcutType() {
+        return ShortcutType.GATHER_LIST;
+    }
+
+    @Override
+    public Predicate<ServerWebExchange> apply(Config config) {
+        Object routeKey = routeIndex.register(config.getPatterns());
+        List<String> patterns = List.copyOf(config.getPatterns());
+        return new GatewayPredicate() {
+            @Override
+            public boolean test(ServerWebExchange exchange) {
+                return routeIndex.resolve(exchange).matchesRoute(routeKey);
+            }
+
+            @Override
+            public String toString() {
+                return String.format("IndexedPath: %s", patterns);
+            }
+        };
+    }
+
+    public static class Config {
+        private List<String> patterns = new ArrayList<>();
+
+        public List<String> getPatterns() {
+            return patterns;
+        }
+
+        public void setPatterns(List<String> patterns) {
+            this.patterns = patterns;
+        }
+    }
+}
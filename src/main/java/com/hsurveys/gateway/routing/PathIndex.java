@@ -0,0 +1,122 @@
+package com.hsurveys.gateway.routing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable segment trie over path patterns. A pattern is a sequence of literal segments,
+ * {@code *} (exactly one segment) and an optional trailing {@code **} (zero or more
+ * segments), e.g. {@code /api/users/**} or {@code /api/auth/login}.
+ * <p>
+ * {@link #match(String)} walks the path once and returns the values of every matching
+ * pattern, most specific first: at each depth a literal segment beats {@code *}, which
+ * beats {@code **}. Matching cost depends on the depth of the path, not on how many
+ * patterns are indexed.
+ */
+public final class PathIndex<T> {
+
+    private static final String ANY_SEGMENT = "*";
+    private static final String ANY_SUFFIX = "**";
+
+    private final Node<T> root;
+
+    private PathIndex(Node<T> root) {
+        this.root = root;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    public List<T> match(String path) {
+        List<T> matches = new ArrayList<>(2);
+        match(root, path, skipSlashes(path, 0), matches);
+        return matches;
+    }
+
+    private static <T> void match(Node<T> node, String path, int from, List<T> matches) {
+        if (from >= path.length()) {
+            matches.addAll(node.exact);
+            matches.addAll(node.suffix);
+            return;
+        }
+        int end = path.indexOf('/', from);
+        if (end < 0) {
+            end = path.length();
+        }
+        int next = skipSlashes(path, end);
+        if (node.literals != null) {
+            Node<T> literal = node.literals.get(path.substring(from, end));
+            if (literal != null) {
+                match(literal, path, next, matches);
+            }
+        }
+        if (node.anySegment != null) {
+            match(node.anySegment, path, next, matches);
+        }
+        matches.addAll(node.suffix);
+    }
+
+    private static int skipSlashes(String path, int from) {
+        while (from < path.length() && path.charAt(from) == '/') {
+            from++;
+        }
+        return from;
+    }
+
+    private static final class Node<T> {
+
+        private Map<String, Node<T>> literals;
+        private Node<T> anySegment;
+        // values of patterns ending exactly here, and of patterns ending here with /**
+        private final List<T> exact = new ArrayList<>(1);
+        private final List<T> suffix = new ArrayList<>(1);
+    }
+
+    public static final class Builder<T> {
+
+        private final Node<T> root = new Node<>();
+
+        private Builder() {
+        }
+
+        public Builder<T> add(String pattern, T value) {
+            String[] segments = pattern.split("/");
+            Node<T> node = root;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if (ANY_SUFFIX.equals(segment)) {
+                    if (i != segments.length - 1) {
+                        throw new IllegalArgumentException("'**' is only supported at the end of a pattern: " + pattern);
+                    }
+                    node.suffix.add(value);
+                    return this;
+                }
+                if (ANY_SEGMENT.equals(segment)) {
+                    if (node.anySegment == null) {
+                        node.anySegment = new Node<>();
+                    }
+                    node = node.anySegment;
+                } else if (segment.indexOf('*') >= 0 || segment.indexOf('{') >= 0) {
+                    throw new IllegalArgumentException("Unsupported path pattern segment '" + segment + "' in " + pattern);
+                } else {
+                    if (node.literals == null) {
+                        node.literals = new HashMap<>();
+                    }
+                    node = node.literals.computeIfAbsent(segment, s -> new Node<>());
+                }
+            }
+            node.exact.add(value);
+            return this;
+        }
+
+        public PathIndex<T> build() {
+            return new PathIndex<>(root);
+        }
+    }
+}
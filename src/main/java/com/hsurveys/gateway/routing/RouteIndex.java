@@ -0,0 +1,193 @@
+package com.hsurveys.gateway.routing;
+
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single compiled {@link PathIndex} over the {@code IndexedPath} patterns of every route
+ * and the {@code auth.rules} paths. One walk over the request path yields both the routes
+ * it can match and the most specific auth rule; the result is cached on the exchange, so
+ * every route predicate and the JwtAuthentication filter share it.
+ * <p>
+ * Paths are matched the way the upstream will read them: decoded, without path
+ * parameters, and with {@code .} and {@code ..} segments resolved, so neither
+ * {@code /api/public/..%2Fadmin} nor {@code /api/%61dmin} escapes the rule for
+ * {@code /api/admin/**}.
+ * <p>
+ * A full route refresh starts a new generation of patterns; once the refreshed routes
+ * are in place, patterns no route registered again are dropped from the index.
+ */
+@Component
+public class RouteIndex implements ApplicationListener<ApplicationEvent>, Ordered {
+
+    static final String MATCH_ATTRIBUTE = RouteIndex.class.getName() + ".match";
+
+    private final AuthProperties.Rule defaultRule;
+    private final List<AuthProperties.Rule> authRules;
+    // keyed by the pattern list itself: predicate configs do not carry their route id
+    private Map<List<String>, List<String>> routePatterns = new LinkedHashMap<>();
+    // patterns registered since a full refresh started, null when none is running
+    private Map<List<String>, List<String>> refreshedPatterns;
+
+    private volatile PathIndex<Target> index;
+
+    public RouteIndex(AuthProperties authProperties) {
+        this.defaultRule = new AuthProperties.Rule();
+        this.defaultRule.setPolicy(authProperties.getDefaultPolicy());
+        this.authRules = List.copyOf(authProperties.getRules());
+        this.index = build();
+    }
+
+    /**
+     * Adds a route's patterns to the index, called whenever routes are (re)loaded.
+     *
+     * @return the key that {@link Match#matchesRoute(Object)} reports for these patterns;
+     * routes with the same patterns share it
+     */
+    public synchronized Object register(List<String> patterns) {
+        List<String> key = routePatterns.get(patterns);
+        if (key == null && refreshedPatterns != null) {
+            key = refreshedPatterns.get(patterns);
+        }
+        if (key == null) {
+            key = List.copyOf(patterns);
+            // the routes still being served keep matching until the refresh completes
+            routePatterns.put(key, key);
+            index = build();
+        }
+        if (refreshedPatterns != null) {
+            refreshedPatterns.put(key, key);
+        }
+        return key;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof RefreshRoutesEvent refresh && !refresh.isScoped()) {
+            // a scoped refresh rebuilds only some routes, so nothing can be dropped after it
+            startRefresh();
+        } else if (event instanceof RefreshRoutesResultEvent result) {
+            completeRefresh(result.isSuccess());
+        }
+    }
+
+    synchronized void startRefresh() {
+        if (refreshedPatterns == null) {
+            refreshedPatterns = new LinkedHashMap<>();
+        }
+    }
+
+    synchronized void completeRefresh(boolean success) {
+        if (refreshedPatterns == null) {
+            return;
+        }
+        if (success) {
+            routePatterns = refreshedPatterns;
+            index = build();
+        }
+        refreshedPatterns = null;
+    }
+
+    @Override
+    public int getOrder() {
+        // the generation must be open before CachingRouteLocator (order 0) rebuilds the routes
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    private PathIndex<Target> build() {
+        PathIndex.Builder<Target> builder = PathIndex.builder();
+        routePatterns.keySet().forEach(patterns -> {
+            Target target = new Target(patterns, null);
+            patterns.forEach(pattern -> builder.add(pattern, target));
+        });
+        for (AuthProperties.Rule rule : authRules) {
+            Target target = new Target(null, rule);
+            rule.getPaths().forEach(path -> builder.add(path, target));
+        }
+        return builder.build();
+    }
+
+    public Match resolve(ServerWebExchange exchange) {
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        Match match = exchange.getAttribute(MATCH_ATTRIBUTE);
+        // forwards (e.g. to a fallback) reuse the exchange with a different path
+        if (match == null || !match.path().equals(path)) {
+            match = resolve(path);
+            exchange.getAttributes().put(MATCH_ATTRIBUTE, match);
+        }
+        return match;
+    }
+
+    public Match resolve(String path) {
+        List<Object> routeKeys = new ArrayList<>(2);
+        AuthProperties.Rule authRule = null;
+        for (Target target : index.match(normalize(path))) {
+            if (target.routeKey() != null) {
+                routeKeys.add(target.routeKey());
+            } else if (authRule == null) {
+                authRule = target.authRule();
+            }
+        }
+        return new Match(path, routeKeys, authRule != null ? authRule : defaultRule);
+    }
+
+    /**
+     * The path as the upstream resolves it: path parameters removed, percent-escapes
+     * (including {@code %2F}) decoded, and {@code .} and {@code ..} segments resolved.
+     * A path with malformed escapes is matched as it is.
+     */
+    static String normalize(String path) {
+        if (path.indexOf('%') < 0 && path.indexOf(';') < 0 && path.indexOf('.') < 0) {
+            return path;
+        }
+        StringBuilder stripped = new StringBuilder(path.length());
+        for (String segment : path.split("/", -1)) {
+            int parameters = segment.indexOf(';');
+            stripped.append(parameters >= 0 ? segment.substring(0, parameters) : segment).append('/');
+        }
+        String decoded;
+        try {
+            decoded = UriUtils.decode(stripped.toString(), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return path;
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : decoded.split("/")) {
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.addLast(segment);
+            }
+        }
+        return segments.isEmpty() ? "/" : "/" + String.join("/", segments);
+    }
+
+    public record Match(String path, List<Object> routeKeys, AuthProperties.Rule authRule) {
+
+        public boolean matchesRoute(Object routeKey) {
+            for (Object key : routeKeys) {
+                if (key == routeKey) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private record Target(Object routeKey, AuthProperties.Rule authRule) {
+    }
+}
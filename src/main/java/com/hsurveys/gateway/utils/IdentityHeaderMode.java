@@ -0,0 +1,13 @@
+package com.hsurveys.gateway.utils;
+
+/**
+ * Which identity headers are forwarded to a route's upstream service.
+ */
+public enum IdentityHeaderMode {
+    /** The individual X-User-Id, X-Roles, ... headers. */
+    LEGACY,
+    /** Only the versioned X-Identity envelope. */
+    ENVELOPE,
+    /** Both, for services that are part-way through migrating. */
+    BOTH
+}
@@ -0,0 +1,169 @@
+package com.hsurveys.gateway.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.http.HttpHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Identity headers forwarded to downstream services, rendered once per principal
+ * so that repeat requests with the same token only copy pre-built strings.
+ */
+public final class IdentityHeaders {
+
+    public static final String USER_ID = "X-User-Id";
+    public static final String USERNAME = "X-Username";
+    public static final String USER_NAME = "X-User-Name";
+    public static final String ORGANIZATION_ID = "X-Organization-Id";
+    public static final String DEPARTMENT_ID = "X-Department-Id";
+    public static final String TEAM_ID = "X-Team-Id";
+    public static final String AUTHORITIES = "X-Authorities";
+    public static final String USER_AUTHORITIES = "X-User-Authorities";
+    public static final String ROLES = "X-Roles";
+    public static final String USER_ROLES = "X-User-Roles";
+    public static final String AUTHENTICATED = "X-Authenticated";
+
+    /**
+     * Single header carrying the whole identity as {@code v1.<base64url(json)>}, where the
+     * JSON object uses the short keys sub, uid, org, dep, team, roles and auth.
+     */
+    public static final String IDENTITY = "X-Identity";
+    public static final String ENVELOPE_VERSION = "v1";
+
+    private static final String[] ALL_NAMES = {
+            USER_ID, USERNAME, USER_NAME, ORGANIZATION_ID, DEPARTMENT_ID, TEAM_ID,
+            AUTHORITIES, USER_AUTHORITIES, ROLES, USER_ROLES, AUTHENTICATED, IDENTITY
+    };
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String[] names;
+    private final String[] values;
+    private final int estimatedSize;
+
+    private IdentityHeaders(List<String> names, List<String> values) {
+        this.names = names.toArray(new String[0]);
+        this.values = values.toArray(new String[0]);
+        int size = 0;
+        for (int i = 0; i < this.names.length; i++) {
+            size += this.names[i].length() + this.values[i].length();
+        }
+        this.estimatedSize = size;
+    }
+
+    public static IdentityHeaders legacy(JwtPrincipal principal) {
+        List<String> names = new ArrayList<>(11);
+        List<String> values = new ArrayList<>(11);
+        if (principal.userId() != null) {
+            put(names, values, USER_ID, principal.userId().toString());
+        }
+        if (principal.username() != null) {
+            put(names, values, USERNAME, principal.username());
+            put(names, values, USER_NAME, principal.username());
+        }
+        if (principal.organizationId() != null) {
+            put(names, values, ORGANIZATION_ID, principal.organizationId().toString());
+        }
+        if (principal.departmentId() != null) {
+            put(names, values, DEPARTMENT_ID, principal.departmentId().toString());
+        }
+        if (principal.teamId() != null) {
+            put(names, values, TEAM_ID, principal.teamId().toString());
+        }
+        if (!principal.authorities().isEmpty()) {
+            String authorities = String.join(",", principal.authorities());
+            put(names, values, AUTHORITIES, authorities);
+            put(names, values, USER_AUTHORITIES, authorities);
+        }
+        if (!principal.roles().isEmpty()) {
+            String roles = String.join(",", principal.roles());
+            put(names, values, ROLES, roles);
+            put(names, values, USER_ROLES, roles);
+        }
+        put(names, values, AUTHENTICATED, "true");
+        return new IdentityHeaders(names, values);
+    }
+
+    public static IdentityHeaders envelope(JwtPrincipal principal) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream(256);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(json)) {
+            generator.writeStartObject();
+            writeIfPresent(generator, "sub", principal.username());
+            writeIfPresent(generator, "uid", principal.userId());
+            writeIfPresent(generator, "org", principal.organizationId());
+            writeIfPresent(generator, "dep", principal.departmentId());
+            writeIfPresent(generator, "team", principal.teamId());
+            writeArray(generator, "roles", principal.roles());
+            writeArray(generator, "auth", principal.authorities());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String value = ENVELOPE_VERSION + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(json.toByteArray());
+        return new IdentityHeaders(List.of(IDENTITY), List.of(value));
+    }
+
+    private static void writeIfPresent(JsonGenerator generator, String name, Object value) throws IOException {
+        if (value instanceof UUID || value instanceof String) {
+            generator.writeStringField(name, value.toString());
+        }
+    }
+
+    private static void writeArray(JsonGenerator generator, String name, List<String> values) throws IOException {
+        if (values.isEmpty()) {
+            return;
+        }
+        generator.writeArrayFieldStart(name);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Removes every identity header, so that none can be supplied by the client
+     * whatever mode the route forwards.
+     */
+    public static void removeAll(HttpHeaders headers) {
+        for (String name : ALL_NAMES) {
+            headers.remove(name);
+        }
+    }
+
+    private static void put(List<String> names, List<String> values, String name, String value) {
+        names.add(name);
+        values.add(value);
+    }
+
+    /**
+     * Writes the headers, replacing any client-supplied value with the same name.
+     */
+    public void applyTo(HttpHeaders headers) {
+        for (int i = 0; i < names.length; i++) {
+            headers.set(names[i], values[i]);
+        }
+    }
+
+    public String get(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rough number of characters held by the rendered names and values.
+     */
+    public int estimatedSize() {
+        return estimatedSize;
+    }
+}
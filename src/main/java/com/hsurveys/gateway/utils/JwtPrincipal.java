@@ -0,0 +1,37 @@
+package com.hsurveys.gateway.utils;
+
+import org.springframework.web.server.ServerWebExchange;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Verified identity extracted from an access token. Built once per token by
+ * {@link JwtUtil#parsePrincipal(String)} and shared with later filters through
+ * the {@link #EXCHANGE_ATTRIBUTE} exchange attribute.
+ */
+public record JwtPrincipal(String username,
+                           UUID userId,
+                           UUID organizationId,
+                           UUID departmentId,
+                           UUID teamId,
+                           List<String> authorities,
+                           List<String> roles,
+                           Instant expiresAt) {
+
+    public static final String EXCHANGE_ATTRIBUTE = JwtPrincipal.class.getName();
+
+    public JwtPrincipal {
+        authorities = authorities != null ? List.copyOf(authorities) : List.of();
+        roles = roles != null ? List.copyOf(roles) : List.of();
+    }
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+
+    public static JwtPrincipal from(ServerWebExchange exchange) {
+        return exchange.getAttribute(EXCHANGE_ATTRIBUTE);
+    }
+}
@@ -1,33 +1,208 @@
 package com.hsurveys.gateway.utils;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MissingClaimException;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 @Component
 public class JwtUtil {
+    public static final int DEFAULT_MAX_TOKEN_LENGTH = 8192;
+
+    private static final Set<String> SUPPORTED_ALGORITHMS = Set.of("HS256", "HS384", "HS512");
+    private static final int MAX_ACCEPTED_HEADERS = 32;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     private final String secret;
     private final long expiration;
+    private final int maxTokenLength;
     private final SecretKey signingKey;
+    private final JwtParser jwtParser;
+    // encoded headers already known to carry a supported alg; issuers use one or two at most
+    private final Map<String, Boolean> acceptedHeaders = new ConcurrentHashMap<>();
 
+    public JwtUtil(String secret, long expiration) {
+        this(secret, expiration, DEFAULT_MAX_TOKEN_LENGTH);
+    }
+
+    @Autowired
     public JwtUtil(@Value("${jwt.secret}") String secret,
-                   @Value("${jwt.expiration}") long expiration) {
+                   @Value("${jwt.expiration}") long expiration,
+                   @Value("${jwt.max-token-length:" + DEFAULT_MAX_TOKEN_LENGTH + "}") int maxTokenLength) {
         this.secret = secret;
         this.expiration = expiration;
+        this.maxTokenLength = maxTokenLength;
         this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+        // JwtParser is immutable and thread-safe, so one instance serves every request
+        this.jwtParser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
     }
 
+    /**
+     * Verifies the signature and expiry of the token and extracts every claim the
+     * gateway needs in a single pass.
+     *
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, forged, expired or
+     * has no {@code exp}
+     */
+    public JwtPrincipal parsePrincipal(String token) {
+        Jws<Claims> jws = jwtParser.parseSignedClaims(token);
+        Claims claims = jws.getPayload();
+        Date expiresAt = claims.getExpiration();
+        if (expiresAt == null) {
+            // a token that never expires would stay valid, and cached, for good
+            throw new MissingClaimException(jws.getHeader(), claims, Claims.EXPIRATION, null,
+                    "Access tokens must have an exp claim");
+        }
+        return new JwtPrincipal(
+                claims.getSubject(),
+                uuidClaim(claims, "userId"),
+                uuidClaim(claims, "organizationId"),
+                uuidClaim(claims, "departmentId"),
+                uuidClaim(claims, "teamId"),
+                stringListClaim(claims, "authorities"),
+                stringListClaim(claims, "roles"),
+                expiresAt.toInstant());
+    }
+
+    /**
+     * Cheap structural checks run before signature verification: size, segment count,
+     * header {@code alg} and an unverified {@code exp}, which must be present. A non-null
+     * result means the token can never verify; {@code null} only means it is worth
+     * verifying.
+     */
+    public TokenRejection precheck(String token) {
+        if (token == null || token.isEmpty()) {
+            return TokenRejection.MALFORMED;
+        }
+        if (token.length() > maxTokenLength) {
+            return TokenRejection.TOO_LARGE;
+        }
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = headerEnd > 0 ? token.indexOf('.', headerEnd + 1) : -1;
+        if (payloadEnd <= headerEnd + 1 || payloadEnd == token.length() - 1
+                || token.indexOf('.', payloadEnd + 1) >= 0 || !isBase64Url(token)) {
+            return TokenRejection.MALFORMED;
+        }
+
+        byte[] bytes = token.getBytes(StandardCharsets.US_ASCII);
+        String header = token.substring(0, headerEnd);
+        if (!acceptedHeaders.containsKey(header)) {
+            Object alg = readTopLevelField(bytes, 0, headerEnd, "alg");
+            if (alg == null) {
+                return TokenRejection.MALFORMED;
+            }
+            if (!SUPPORTED_ALGORITHMS.contains(alg)) {
+                return TokenRejection.UNSUPPORTED_ALGORITHM;
+            }
+            if (acceptedHeaders.size() < MAX_ACCEPTED_HEADERS) {
+                acceptedHeaders.put(header, Boolean.TRUE);
+            }
+        }
+
+        Object exp = readTopLevelField(bytes, headerEnd + 1, payloadEnd - headerEnd - 1, "exp");
+        if (exp == null) {
+            return TokenRejection.INVALID;
+        }
+        if (exp instanceof Number seconds && seconds.longValue() * 1000 <= System.currentTimeMillis()) {
+            return TokenRejection.EXPIRED;
+        }
+        return null;
+    }
 
+    public int getMaxTokenLength() {
+        return maxTokenLength;
+    }
+
+    private static boolean isBase64Url(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes one Base64URL segment and returns the scalar value of a top-level JSON
+     * field, or {@code null} if the segment is not a JSON object or lacks the field.
+     */
+    private static Object readTopLevelField(byte[] token, int offset, int length, String name) {
+        try {
+            ByteBuffer json = Base64.getUrlDecoder().decode(ByteBuffer.wrap(token, offset, length));
+            try (JsonParser parser = JSON_FACTORY.createParser(json.array(), json.arrayOffset(), json.remaining())) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (name.equals(field)) {
+                        if (value == JsonToken.VALUE_STRING) {
+                            return parser.getText();
+                        }
+                        return value.isNumeric() ? parser.getNumberValue() : null;
+                    }
+                    parser.skipChildren();
+                }
+                return null;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static UUID uuidClaim(Claims claims, String name) {
+        Object value = claims.get(name);
+        if (!(value instanceof String str)) {
+            return null;
+        }
+        try {
+            return UUID.fromString(str);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static List<String> stringListClaim(Claims claims, String name) {
+        if (!(claims.get(name) instanceof List<?> values)) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value != null) {
+                result.add(value.toString());
+            }
+        }
+        return result;
+    }
 
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
@@ -105,11 +280,7 @@ public class JwtUtil {
     }
 
     public Claims getAllClaimsFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(signingKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return jwtParser.parseSignedClaims(token).getPayload();
     }
 
     public Boolean validateToken(String token) {
@@ -0,0 +1,58 @@
+package com.hsurveys.gateway.utils;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.SecurityException;
+
+/**
+ * Reason an access token was refused, used as a metric tag instead of logging
+ * every rejected token individually.
+ */
+public enum TokenRejection {
+    MALFORMED,
+    TOO_LARGE,
+    UNSUPPORTED_ALGORITHM,
+    EXPIRED,
+    /** Before its {@code nbf}: the same token becomes valid later, so it is not remembered. */
+    NOT_YET_VALID(false),
+    INVALID_SIGNATURE,
+    INVALID;
+
+    public final String tag = name().toLowerCase();
+
+    /** Whether the token is refused for good and the rejection may be cached. */
+    public final boolean permanent;
+
+    TokenRejection() {
+        this(true);
+    }
+
+    TokenRejection(boolean permanent) {
+        this.permanent = permanent;
+    }
+
+    public static TokenRejection of(RuntimeException e) {
+        if (e instanceof ExpiredJwtException) {
+            return EXPIRED;
+        }
+        if (e instanceof PrematureJwtException) {
+            return NOT_YET_VALID;
+        }
+        if (e instanceof SecurityException) {
+            return INVALID_SIGNATURE;
+        }
+        if (e instanceof MalformedJwtException || e instanceof IllegalArgumentException) {
+            return MALFORMED;
+        }
+        if (e instanceof UnsupportedJwtException) {
+            return UNSUPPORTED_ALGORITHM;
+        }
+        if (e instanceof JwtException) {
+            return INVALID;
+        }
+        throw e;
+    }
+}
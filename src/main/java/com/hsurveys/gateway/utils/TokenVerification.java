@@ -0,0 +1,32 @@
+package com.hsurveys.gateway.utils;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Outcome of {@link TokenVerifier#verify(String)}: either a verified token or the
+ * reason it was rejected. Rejections are shared constants so the rejection path
+ * does not allocate.
+ */
+public record TokenVerification(VerifiedToken token, TokenRejection rejection) {
+
+    private static final Map<TokenRejection, TokenVerification> REJECTED = new EnumMap<>(TokenRejection.class);
+
+    static {
+        for (TokenRejection rejection : TokenRejection.values()) {
+            REJECTED.put(rejection, new TokenVerification(null, rejection));
+        }
+    }
+
+    public static TokenVerification verified(VerifiedToken token) {
+        return new TokenVerification(token, null);
+    }
+
+    public static TokenVerification rejected(TokenRejection rejection) {
+        return REJECTED.get(rejection);
+    }
+
+    public boolean isVerified() {
+        return token != null;
+    }
+}
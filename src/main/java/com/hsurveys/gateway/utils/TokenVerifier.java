@@ -0,0 +1,173 @@
+package com.hsurveys.gateway.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns raw access tokens into {@link VerifiedToken}s as cheaply as possible:
+ * <ol>
+ *     <li>recently verified tokens are served from a cache keyed by the SHA-256 digest
+ *     of the token and expiring no later than the token's own {@code exp};</li>
+ *     <li>recently rejected tokens are refused from a bounded negative cache, unless
+ *     they were only refused for being used before their {@code nbf};</li>
+ *     <li>everything else goes through {@link JwtUtil#precheck(String)} and only then
+ *     through full signature verification.</li>
+ * </ol>
+ * Rejections are counted per reason in {@code gateway.jwt.rejections}.
+ */
+@Component
+public class TokenVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenVerifier.class);
+
+    static final String VERIFIED_CACHE_NAME = "jwt.verified-tokens";
+    static final String REJECTED_CACHE_NAME = "jwt.rejected-tokens";
+
+    // digest key, record headers and principal fields that are not rendered into headers
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+
+    private final JwtUtil jwtUtil;
+    private final boolean enabled;
+    private final Cache<TokenDigest, VerifiedToken> verifiedTokens;
+    private final Cache<TokenDigest, TokenRejection> rejectedTokens;
+    private final Map<TokenRejection, Counter> rejectionCounters = new EnumMap<>(TokenRejection.class);
+
+    public TokenVerifier(JwtUtil jwtUtil,
+                         MeterRegistry meterRegistry,
+                         @Value("${jwt.cache.enabled:true}") boolean enabled,
+                         @Value("${jwt.cache.max-memory:16MB}") DataSize maxMemory,
+                         @Value("${jwt.expiration}") long maxTtlMillis,
+                         @Value("${jwt.negative-cache.max-entries:10000}") long maxRejectedEntries,
+                         @Value("${jwt.negative-cache.ttl:5m}") Duration rejectedTtl) {
+        this.jwtUtil = jwtUtil;
+        this.enabled = enabled;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumWeight(maxMemory.toBytes())
+                .weigher((TokenDigest key, VerifiedToken value) ->
+                        ENTRY_OVERHEAD_BYTES + 2 * value.estimatedSize())
+                .expireAfter(new TokenExpiry(Duration.ofMillis(maxTtlMillis)))
+                .recordStats()
+                .build();
+        this.rejectedTokens = Caffeine.newBuilder()
+                .maximumSize(maxRejectedEntries)
+                .expireAfterWrite(rejectedTtl)
+                .recordStats()
+                .build();
+        if (enabled) {
+            CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, VERIFIED_CACHE_NAME);
+            CaffeineCacheMetrics.monitor(meterRegistry, rejectedTokens, REJECTED_CACHE_NAME);
+        }
+        for (TokenRejection rejection : TokenRejection.values()) {
+            rejectionCounters.put(rejection, Counter.builder("gateway.jwt.rejections")
+                    .description("Access tokens refused by the gateway")
+                    .tag("reason", rejection.tag)
+                    .register(meterRegistry));
+        }
+        logger.info("Token caches {} (verified max memory: {}, rejected max entries: {})",
+                enabled ? "enabled" : "disabled", maxMemory, maxRejectedEntries);
+    }
+
+    public TokenVerification verify(String token) {
+        if (token == null || token.length() > jwtUtil.getMaxTokenLength()) {
+            // refuse before hashing attacker-sized input
+            return reject(null, jwtUtil.precheck(token));
+        }
+        TokenRejection rejection;
+        if (!enabled) {
+            rejection = jwtUtil.precheck(token);
+            return rejection != null ? reject(null, rejection) : parse(null, token);
+        }
+
+        TokenDigest digest = TokenDigest.of(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null) {
+            return TokenVerification.verified(cached);
+        }
+        rejection = rejectedTokens.getIfPresent(digest);
+        if (rejection != null) {
+            rejectionCounters.get(rejection).increment();
+            return TokenVerification.rejected(rejection);
+        }
+        rejection = jwtUtil.precheck(token);
+        return rejection != null ? reject(digest, rejection) : parse(digest, token);
+    }
+
+    private TokenVerification parse(TokenDigest digest, String token) {
+        VerifiedToken verified;
+        try {
+            verified = VerifiedToken.of(jwtUtil.parsePrincipal(token));
+        } catch (JwtException | IllegalArgumentException e) {
+            return reject(digest, TokenRejection.of(e));
+        }
+        if (digest != null) {
+            verifiedTokens.put(digest, verified);
+        }
+        return TokenVerification.verified(verified);
+    }
+
+    private TokenVerification reject(TokenDigest digest, TokenRejection rejection) {
+        if (digest != null && rejection.permanent) {
+            rejectedTokens.put(digest, rejection);
+        }
+        rejectionCounters.get(rejection).increment();
+        return TokenVerification.rejected(rejection);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    long estimatedSize() {
+        return verifiedTokens.estimatedSize();
+    }
+
+    long estimatedRejectedSize() {
+        return rejectedTokens.estimatedSize();
+    }
+
+    private static final class TokenExpiry implements Expiry<TokenDigest, VerifiedToken> {
+
+        private final long maxTtlNanos;
+
+        private TokenExpiry(Duration maxTtl) {
+            this.maxTtlNanos = maxTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(TokenDigest key, VerifiedToken value, long currentTime) {
+            Instant expiresAt = value.principal().expiresAt();
+            if (expiresAt == null) {
+                // JwtUtil refuses tokens without exp; never keep one should it get here
+                return 0;
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(expiresAt.toEpochMilli() - System.currentTimeMillis());
+            return Math.max(0, Math.min(remaining, maxTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenDigest key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(TokenDigest key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.hsurveys.gateway.utils;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * A token whose signature and expiry have been checked, together with the
+ * identity headers rendered for it in both the legacy and the envelope form.
+ */
+public record VerifiedToken(JwtPrincipal principal, IdentityHeaders identityHeaders, IdentityHeaders identityEnvelope) {
+
+    public static VerifiedToken of(JwtPrincipal principal) {
+        return new VerifiedToken(principal, IdentityHeaders.legacy(principal), IdentityHeaders.envelope(principal));
+    }
+
+    /**
+     * Replaces any identity headers on the request with the ones selected by {@code mode}.
+     */
+    public void applyTo(HttpHeaders headers, IdentityHeaderMode mode) {
+        IdentityHeaders.removeAll(headers);
+        if (mode != IdentityHeaderMode.ENVELOPE) {
+            identityHeaders.applyTo(headers);
+        }
+        if (mode != IdentityHeaderMode.LEGACY) {
+            identityEnvelope.applyTo(headers);
+        }
+    }
+
+    int estimatedSize() {
+        return identityHeaders.estimatedSize() + identityEnvelope.estimatedSize();
+    }
+}
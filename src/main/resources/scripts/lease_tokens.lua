@@ -0,0 +1,82 @@
+-- Leases tokens for a batch of rate limit keys in one call. Each lease draws from a hierarchy
+-- of token buckets shared by all gateway nodes (for example user, organization and route).
+--
+-- ARGV[1] is the number of leases in the batch. Each lease then contributes to ARGV:
+--   levels, requested, rate_1, capacity_1, ..., rate_n, capacity_n
+-- and a tokens/timestamp key pair per level to KEYS, in the same order.
+--
+-- Each bucket uses the same arithmetic as Spring Cloud Gateway's request_rate_limiter.lua, except
+-- that a partial grant is allowed: a lease receives the smallest amount every one of its levels
+-- can cover, and that amount is taken from every level. Leases are applied in order, so keys
+-- shared by several leases of the batch (an organization, a route) see the earlier grants.
+--
+-- A negative requested amount returns the unused part of an expired lease: it is credited back
+-- to every level, up to each level's capacity, and grants nothing.
+-- Returns { granted_1, ..., granted_n }.
+
+redis.replicate_commands()
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) + tonumber(time[2]) / 1000000
+
+local leases = tonumber(ARGV[1])
+local arg = 2
+local key = 1
+local results = {}
+
+for lease = 1, leases do
+  local levels = tonumber(ARGV[arg])
+  local requested = tonumber(ARGV[arg + 1])
+  arg = arg + 2
+
+  local filled = {}
+  local capacities = {}
+  local ttls = {}
+  local granted = requested
+
+  for i = 1, levels do
+    local tokens_key = KEYS[key + 2 * (i - 1)]
+    local timestamp_key = KEYS[key + 2 * (i - 1) + 1]
+    local rate = tonumber(ARGV[arg + 2 * (i - 1)])
+    local capacity = tonumber(ARGV[arg + 2 * (i - 1) + 1])
+
+    local last_tokens = tonumber(redis.call('get', tokens_key))
+    if last_tokens == nil then
+      last_tokens = capacity
+    end
+
+    local last_refreshed = tonumber(redis.call('get', timestamp_key))
+    if last_refreshed == nil then
+      last_refreshed = 0
+    end
+
+    local delta = math.max(0, now - last_refreshed)
+    filled[i] = math.min(capacity, last_tokens + (delta * rate))
+    capacities[i] = capacity
+    ttls[i] = math.floor(capacity / rate * 2)
+    granted = math.min(granted, math.floor(filled[i]))
+  end
+
+  for i = 1, levels do
+    local new_tokens
+    if requested < 0 then
+      new_tokens = math.min(capacities[i], filled[i] - requested)
+    else
+      new_tokens = filled[i] - granted
+    end
+    if ttls[i] > 0 then
+      redis.call('setex', KEYS[key + 2 * (i - 1)], ttls[i], new_tokens)
+      redis.call('setex', KEYS[key + 2 * (i - 1) + 1], ttls[i], now)
+    end
+  end
+
+  if requested < 0 then
+    granted = 0
+  end
+
+  results[lease] = granted
+  arg = arg + 2 * levels
+  key = key + 2 * levels
+end
+
+return results
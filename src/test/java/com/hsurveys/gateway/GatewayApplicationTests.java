@@ -1,20 +1,30 @@
 package com.hsurveys.gateway;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
 import org.springframework.test.context.TestPropertySource;
 
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @TestPropertySource(properties = {
     "spring.cloud.gateway.routes[0].id=test-route",
     "spring.cloud.gateway.routes[0].uri=http://localhost:8081",
     "spring.cloud.gateway.routes[0].predicates[0]=Path=/test/**",
-    "jwt.secret=test-secret-key-for-testing-purposes-only",
+    "jwt.secret=dGVzdC1zZWNyZXQta2V5LWZvci10ZXN0aW5nLXB1cnBvc2VzLW9ubHktMzJieXRlcw==",
     "redis.host=localhost",
     "redis.port=6379"
 })
 class GatewayApplicationTests {
 
+    @Autowired
+    private List<GlobalFilter> globalFilters;
+
     @Test
     void contextLoads() {
         // Test that the Spring context loads successfully
@@ -24,4 +34,10 @@ class GatewayApplicationTests {
     void gatewayStartsSuccessfully() {
         // Test that the gateway application starts without errors
     }
+
+    @Test
+    void writesUpstreamResponseBodies() {
+        // registered by the gateway only with the Netty routing filter, which is replaced
+        assertThat(globalFilters).filteredOn(NettyWriteResponseFilter.class::isInstance).hasSize(1);
+    }
 }
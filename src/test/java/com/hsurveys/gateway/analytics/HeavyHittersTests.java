@@ -0,0 +1,43 @@
+package com.hsurveys.gateway.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeavyHittersTests {
+
+    @Test
+    void keepsTheHeavyKeysOfALongTailInFixedSpace() {
+        HeavyHitters<String> sketch = new HeavyHitters<>(10);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add("noisy", 1);
+            if (i % 4 == 0) {
+                sketch.add("busy", 1);
+            }
+            sketch.add("tenant-" + i, 1);
+        }
+
+        List<HeavyHitters.Estimate<String>> top = sketch.top();
+        assertThat(top).hasSize(10);
+        assertThat(top.get(0).key()).isEqualTo("noisy");
+        assertThat(top.get(1).key()).isEqualTo("busy");
+        // never below the true weight, and at most error above it
+        assertThat(top.get(0).weight()).isGreaterThanOrEqualTo(10_000);
+        assertThat(top.get(0).weight() - top.get(0).error()).isLessThanOrEqualTo(10_000);
+        assertThat(top.get(1).weight() - top.get(1).error()).isLessThanOrEqualTo(2_500);
+        assertThat(sketch.total()).isEqualTo(22_500);
+    }
+
+    @Test
+    void decayLetsANewHeavyKeyOvertakeAQuietOne() {
+        HeavyHitters<String> sketch = new HeavyHitters<>(2);
+        sketch.add("yesterday", 80);
+        sketch.decay(0.5);
+        sketch.add("today", 50);
+
+        assertThat(sketch.top()).extracting(HeavyHitters.Estimate::key).containsExactly("today", "yesterday");
+        assertThat(sketch.top().get(1).weight()).isEqualTo(40);
+    }
+}
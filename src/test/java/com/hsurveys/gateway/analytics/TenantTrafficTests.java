@@ -0,0 +1,89 @@
+package com.hsurveys.gateway.analytics;
+
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TenantTrafficTests {
+
+    private static final UUID ORGANIZATION = UUID.randomUUID();
+
+    private final AtomicLong clock = new AtomicLong();
+    private final TenantTraffic traffic = new TenantTraffic(true, 4, Duration.ofMinutes(1), Duration.ofSeconds(10),
+            clock::get);
+
+    @Test
+    void ranksOrganizationsAndUsersByRequestsBytesAndTime() {
+        UUID user = UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            traffic.record("survey-service", principal(user), 1000, TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        traffic.record("survey-service", principal(UUID.randomUUID()), 100, TimeUnit.MILLISECONDS.toNanos(5));
+
+        Map<String, Map<String, Object>> route = traffic.snapshot("survey-service");
+        assertThat(top(route, "organizations", "requests").get(0))
+                .containsEntry("id", ORGANIZATION.toString())
+                .containsEntry("estimate", 4.0)
+                .containsEntry("share", 1.0);
+        assertThat(top(route, "users", "bytes").get(0))
+                .containsEntry("id", user.toString())
+                .containsEntry("estimate", 3000.0)
+                .containsEntry("share", 3000.0 / 3100);
+        assertThat(top(route, "users", "time_ms").get(0)).containsEntry("estimate", 60.0);
+        assertThat(traffic.snapshot("user-service")).isNull();
+    }
+
+    @Test
+    void halvesTheWeightsEveryHalfLife() {
+        traffic.record("survey-service", principal(UUID.randomUUID()), 0, 0);
+        traffic.record("survey-service", principal(UUID.randomUUID()), 0, 0);
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        Map<String, Map<String, Object>> route = traffic.snapshot("survey-service");
+        assertThat(top(route, "organizations", "requests").get(0)).containsEntry("estimate", 1.0);
+        assertThat(top(route, "organizations", "bytes")).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void countsEveryRequestRecordedConcurrently() throws InterruptedException {
+        int threads = 8;
+        int requests = TenantTraffic.BATCH * 10 + 3;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < requests; i++) {
+                    traffic.record("survey-service", principal(UUID.randomUUID()), 10, 0);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        Map<String, Map<String, Object>> route = traffic.snapshot("survey-service");
+        assertThat(top(route, "organizations", "requests").get(0))
+                .containsEntry("estimate", (double) threads * requests);
+        assertThat(((Map<String, Object>) route.get("users").get("bytes")).get("total"))
+                .isEqualTo(10.0 * threads * requests);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> top(Map<String, Map<String, Object>> route, String dimension,
+                                                 String measure) {
+        return (List<Map<String, Object>>) ((Map<String, Object>) route.get(dimension).get(measure)).get("top");
+    }
+
+    private static JwtPrincipal principal(UUID userId) {
+        return new JwtPrincipal("user", userId, ORGANIZATION, null, null, List.of(), List.of("USER"), null);
+    }
+}
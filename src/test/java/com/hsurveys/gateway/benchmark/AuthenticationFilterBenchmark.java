@@ -0,0 +1,81 @@
+package com.hsurveys.gateway.benchmark;
+
+import com.hsurveys.gateway.filter.JwtAuthenticationGatewayFilterFactory;
+import com.hsurveys.gateway.support.TestTokens;
+import com.hsurveys.gateway.utils.IdentityHeaderMode;
+import com.hsurveys.gateway.utils.TokenVerifier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full JwtAuthentication filter pass for an authenticated request: policy lookup, token
+ * extraction from the Bearer header or the cookie list, verification (cached or not) and
+ * identity header mutation. {@link #exchangeOnly()} is the cost of building the fixture
+ * exchange, to subtract from the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationFilterBenchmark {
+
+    @Param({"BEARER", "COOKIE"})
+    public GatewayFixtures.TokenSource source;
+
+    @Param({"true", "false"})
+    public boolean tokenCache;
+
+    @Param({"LEGACY", "ENVELOPE"})
+    public IdentityHeaderMode identityHeaders;
+
+    private GatewayFilter filter;
+    private String token;
+
+    private final GatewayFilterChain chain = new GatewayFilterChain() {
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange) {
+            return Mono.empty();
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        TokenVerifier tokenVerifier = GatewayFixtures.tokenVerifier(new SimpleMeterRegistry(), tokenCache);
+        JwtAuthenticationGatewayFilterFactory factory = new JwtAuthenticationGatewayFilterFactory(
+                tokenVerifier, GatewayFixtures.gatewayLatency(), GatewayFixtures.routeIndex(),
+                GatewayFixtures.tenantTraffic());
+        JwtAuthenticationGatewayFilterFactory.Config config = new JwtAuthenticationGatewayFilterFactory.Config();
+        config.setIdentityHeaders(identityHeaders);
+        filter = factory.apply(config);
+        token = TestTokens.valid();
+    }
+
+    @Benchmark
+    public MockServerWebExchange exchangeOnly() {
+        return GatewayFixtures.exchange(token, source);
+    }
+
+    @Benchmark
+    public Void authenticate() {
+        return filter.filter(GatewayFixtures.exchange(token, source), chain).block();
+    }
+}
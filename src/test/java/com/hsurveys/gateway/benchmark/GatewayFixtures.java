@@ -0,0 +1,97 @@
+package com.hsurveys.gateway.benchmark;
+
+import com.hsurveys.gateway.analytics.TenantTraffic;
+import com.hsurveys.gateway.metrics.GatewayLatency;
+import com.hsurveys.gateway.routing.AuthPolicy;
+import com.hsurveys.gateway.routing.AuthProperties;
+import com.hsurveys.gateway.routing.RouteIndex;
+import com.hsurveys.gateway.support.TestTokens;
+import com.hsurveys.gateway.utils.JwtUtil;
+import com.hsurveys.gateway.utils.TokenVerifier;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Requests and collaborators shaped like production traffic from the survey front end:
+ * a browser header set, the access token either as a Bearer header or among other cookies,
+ * and a matched route.
+ */
+public final class GatewayFixtures {
+
+    static final String ROUTE_ID = "survey-service";
+    static final String PATH = "/api/surveys/3f2a9c1e-7b6d-4e5f-8a9b-0c1d2e3f4a5b/questions";
+
+    private static final Route ROUTE = Route.async()
+            .id(ROUTE_ID)
+            .uri("http://survey-service:8080")
+            .predicate(exchange -> true)
+            .build();
+
+    private GatewayFixtures() {
+    }
+
+    public enum TokenSource { BEARER, COOKIE }
+
+    static MockServerWebExchange exchange(String token, TokenSource source) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get(PATH)
+                .remoteAddress(new InetSocketAddress("10.12.0.41", 53122))
+                .header(HttpHeaders.HOST, "api.hsurveys.example")
+                .header(HttpHeaders.USER_AGENT, "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 "
+                        + "(KHTML, like Gecko) Chrome/129.0.0.0 Safari/537.36")
+                .header(HttpHeaders.ACCEPT, "application/json, text/plain, */*")
+                .header(HttpHeaders.ACCEPT_LANGUAGE, "fr-FR,fr;q=0.9,en-US;q=0.8,en;q=0.7")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br, zstd")
+                .header(HttpHeaders.ORIGIN, "http://localhost:3000")
+                .header(HttpHeaders.REFERER, "http://localhost:3000/surveys/3f2a9c1e")
+                .header("X-Forwarded-For", "203.0.113.24")
+                .header("sec-ch-ua-platform", "\"Linux\"");
+        if (source == TokenSource.BEARER) {
+            request.header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        } else {
+            request.header(HttpHeaders.COOKIE, "_ga=GA1.1.1873459021.1729000000; theme=dark; "
+                    + "access_token=" + token + "; refresh_token=8c1f0e4a9b7d2c6e5f3a1b0d9e8c7f6a5b4c3d2e1f0a9b8c");
+        }
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, ROUTE);
+        return exchange;
+    }
+
+    static TokenVerifier tokenVerifier(MeterRegistry meterRegistry, boolean cacheEnabled) {
+        JwtUtil jwtUtil = new JwtUtil(TestTokens.SECRET, TestTokens.EXPIRATION);
+        return new TokenVerifier(jwtUtil, meterRegistry, cacheEnabled, DataSize.ofMegabytes(16),
+                TestTokens.EXPIRATION, 10_000, Duration.ofMinutes(5));
+    }
+
+    static RouteIndex routeIndex() {
+        AuthProperties.Rule publicPaths = new AuthProperties.Rule();
+        publicPaths.setPolicy(AuthPolicy.PUBLIC);
+        publicPaths.setPaths(List.of("/api/auth/login/**", "/api/auth/register/**", "/api/auth/refresh/**",
+                "/api/organizations/register/**", "/actuator/**"));
+        AuthProperties properties = new AuthProperties();
+        properties.setRules(List.of(publicPaths));
+        RouteIndex routeIndex = new RouteIndex(properties);
+        routeIndex.register(List.of("/api/users/**", "/api/auth/**", "/api/roles/**", "/api/permissions/**"));
+        routeIndex.register(List.of("/api/organizations/**", "/api/departments/**", "/api/teams/**"));
+        routeIndex.register(List.of("/api/surveys/**", "/api/questions/**", "/api/options/**",
+                "/api/survey-response/**", "/api/question-response/**", "/api/option-responses/**"));
+        return routeIndex;
+    }
+
+    static GatewayLatency gatewayLatency() {
+        return new GatewayLatency(new SimpleMeterRegistry());
+    }
+
+    static TenantTraffic tenantTraffic() {
+        return new TenantTraffic(true, 50, Duration.ofMinutes(5), Duration.ofSeconds(10));
+    }
+}
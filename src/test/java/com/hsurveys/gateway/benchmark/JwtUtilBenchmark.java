@@ -0,0 +1,93 @@
+package com.hsurveys.gateway.benchmark;
+
+import com.hsurveys.gateway.support.TestTokens;
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import com.hsurveys.gateway.utils.JwtUtil;
+import com.hsurveys.gateway.utils.TokenRejection;
+import com.hsurveys.gateway.utils.TokenVerification;
+import com.hsurveys.gateway.utils.TokenVerifier;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.crypto.SecretKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of turning an access token into the identity headers, comparing
+ * the former claim-by-claim extraction with the single {@link JwtUtil#parsePrincipal} call,
+ * next to the structural precheck and a verification served from the token cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private static final String[] CLAIMS = {
+            "exp", "sub", "userId", "organizationId", "departmentId", "teamId", "authorities", "roles"
+    };
+
+    private JwtUtil jwtUtil;
+    private SecretKey signingKey;
+    private String token;
+    private TokenVerifier tokenVerifier;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(TestTokens.SECRET, TestTokens.EXPIRATION);
+        signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(TestTokens.SECRET));
+        token = TestTokens.valid();
+        tokenVerifier = GatewayFixtures.tokenVerifier(new SimpleMeterRegistry(), true);
+    }
+
+    /**
+     * Reproduces the previous filter behaviour: one freshly built parser and one full
+     * signature verification per extracted claim.
+     */
+    @Benchmark
+    public void perClaimParsing(Blackhole blackhole) {
+        for (String claim : CLAIMS) {
+            Claims claims = Jwts.parser()
+                    .verifyWith(signingKey)
+                    .build()
+                    .parseSignedClaims(token)
+                    .getPayload();
+            blackhole.consume(claims.get(claim));
+        }
+    }
+
+    @Benchmark
+    public JwtPrincipal parsePrincipal() {
+        return jwtUtil.parsePrincipal(token);
+    }
+
+    @Benchmark
+    public TokenRejection precheck() {
+        return jwtUtil.precheck(token);
+    }
+
+    @Benchmark
+    public TokenVerification cachedVerify() {
+        return tokenVerifier.verify(token);
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args.length > 0 ? args : new String[] {JwtUtilBenchmark.class.getSimpleName()});
+    }
+}
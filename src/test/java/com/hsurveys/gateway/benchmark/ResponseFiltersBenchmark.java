@@ -0,0 +1,111 @@
+package com.hsurveys.gateway.benchmark;
+
+import com.hsurveys.gateway.filter.NormalizeResponseHeadersGatewayFilterFactory;
+import com.hsurveys.gateway.filter.RequestLoggingFilter;
+import com.hsurveys.gateway.logging.AccessLog;
+import com.hsurveys.gateway.support.TestTokens;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of the filters that run on every response: request id and access log
+ * recording in {@link RequestLoggingFilter}, and the CORS header normalization of
+ * {@link NormalizeResponseHeadersGatewayFilterFactory}. The access log writes to a
+ * temporary file so the background writer does real work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseFiltersBenchmark {
+
+    private Path logDirectory;
+    private AccessLog accessLog;
+    private RequestLoggingFilter requestLoggingFilter;
+    private GatewayFilter headersFilter;
+    private String token;
+
+    private final GatewayFilterChain upstream = exchange -> {
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        // the gateway and the service both add CORS headers
+        headers.add(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "http://localhost:3000");
+        headers.add(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "http://localhost:3000");
+        headers.add(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+        headers.add(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+        headers.add(HttpHeaders.VARY, "Origin");
+        headers.add(HttpHeaders.VARY, "Origin");
+        headers.setContentLength(2048);
+        return Mono.empty();
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        logDirectory = Files.createTempDirectory("access-log-benchmark");
+        accessLog = new AccessLog(new SimpleMeterRegistry(), true, AccessLog.Destination.FILE,
+                logDirectory.resolve("access.log"), DataSize.ofMegabytes(64), 1, 8192, 256,
+                Duration.ofMillis(200), 1.0, AccessLog.OverflowPolicy.DROP, Duration.ZERO);
+        accessLog.start();
+        requestLoggingFilter = new RequestLoggingFilter(accessLog);
+
+        NormalizeResponseHeadersGatewayFilterFactory.Config config = new NormalizeResponseHeadersGatewayFilterFactory.Config();
+        config.setCors(true);
+        headersFilter = new NormalizeResponseHeadersGatewayFilterFactory().apply(config);
+        token = TestTokens.valid();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        accessLog.stop();
+        try (var files = Files.list(logDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(logDirectory);
+    }
+
+    @Benchmark
+    public MockServerWebExchange exchangeOnly() {
+        return GatewayFixtures.exchange(token, GatewayFixtures.TokenSource.BEARER);
+    }
+
+    @Benchmark
+    public Void requestLogging() {
+        return requestLoggingFilter.filter(GatewayFixtures.exchange(token, GatewayFixtures.TokenSource.BEARER), upstream)
+                .block();
+    }
+
+    @Benchmark
+    public Void normalizeResponseHeaders() {
+        MockServerWebExchange exchange = GatewayFixtures.exchange(token, GatewayFixtures.TokenSource.BEARER);
+        return headersFilter.filter(exchange, upstream)
+                .then(exchange.getResponse().setComplete())
+                .block();
+    }
+}
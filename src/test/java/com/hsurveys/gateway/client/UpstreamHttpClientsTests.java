@@ -0,0 +1,114 @@
+package com.hsurveys.gateway.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.gateway.route.Route;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamHttpClientsTests {
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final DisposableServer upstream = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            .protocol(HttpProtocol.H2C, HttpProtocol.HTTP11)
+            .doOnChannelInit((observer, channel, remoteAddress) -> connections.incrementAndGet())
+            .handle((request, response) -> Mono.delay(Duration.ofMillis(200))
+                    .then(response.sendString(Mono.just("ok")).then()))
+            .bindNow();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UpstreamClientProperties.Client config = new UpstreamClientProperties.Client();
+    private ConnectionProvider provider;
+
+    @AfterEach
+    void stop() {
+        upstream.disposeNow();
+        if (provider != null) {
+            provider.disposeLater().block(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    void multiplexesConcurrentCallsOverOneH2cConnection() {
+        config.setProtocols(List.of("H2C"));
+        config.setMaxConnections(1);
+        HttpClient client = client();
+
+        long start = System.nanoTime();
+        List<String> bodies = Flux.range(0, 20)
+                .flatMap(i -> client.get().uri(url()).responseContent().aggregate().asString())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(bodies).hasSize(20).containsOnly("ok");
+        // one connection, and the calls were not queued behind each other
+        assertThat(connections).hasValue(1);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void timesTheWaitForAConnectionPerRoute() {
+        UpstreamHttpClients clients = new UpstreamHttpClients(Map.of("survey-service", client()), List.of(provider),
+                meterRegistry);
+        Route route = Route.async()
+                .id("survey-service")
+                .uri("http://127.0.0.1:" + upstream.port())
+                .predicate(exchange -> true)
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            UpstreamHttpClients.timingAcquire(clients.forRoute(route, HttpClient.create()).get().uri(url())
+                    .responseContent().aggregate().asString())
+                    // the connection goes back to the pool just after the body is read
+                    .delayElement(Duration.ofMillis(100))
+                    .block(Duration.ofSeconds(5));
+        }
+
+        assertThat(meterRegistry.get("gateway.upstream.connection.acquire").tag("route", "survey-service")
+                .timer().count()).isEqualTo(2);
+        // the second call reused the first connection
+        assertThat(connections).hasValue(1);
+    }
+
+    @Test
+    void rejectsUnknownProtocols() {
+        ApplicationContextRunner runner = new ApplicationContextRunner()
+                .withUserConfiguration(UpstreamClientPropertiesConfiguration.class)
+                .withPropertyValues("upstream-clients.routes.survey-service.protocols=H2C,SPDY");
+
+        runner.run(context -> assertThat(context).hasFailed()
+                .getFailure().rootCause().hasMessageContaining("Unknown protocol SPDY"));
+        runner.withPropertyValues("upstream-clients.routes.survey-service.protocols=h2c,HTTP11")
+                .run(context -> assertThat(context).hasNotFailed());
+    }
+
+    private HttpClient client() {
+        provider = UpstreamHttpClients.connectionProvider("survey-service", config);
+        return UpstreamHttpClients.withProtocols(HttpClient.create(provider), config);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + upstream.port() + "/api/surveys/1";
+    }
+
+    @EnableConfigurationProperties(UpstreamClientProperties.class)
+    static class UpstreamClientPropertiesConfiguration {
+    }
+}
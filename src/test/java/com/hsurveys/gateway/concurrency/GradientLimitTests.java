@@ -0,0 +1,80 @@
+package com.hsurveys.gateway.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GradientLimitTests {
+
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final GradientLimit limit = new GradientLimit(20, 5, 200, 1.5, 0.05, WINDOW, clock::get);
+
+    @Test
+    void growsWhileLatencyHoldsAndShrinksWhenItRises() {
+        for (int window = 0; window < 10; window++) {
+            saturatedWindow(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        int grown = limit.getLimit();
+        assertThat(grown).isGreaterThan(20);
+
+        for (int window = 0; window < 5; window++) {
+            saturatedWindow(TimeUnit.MILLISECONDS.toNanos(60));
+        }
+        assertThat(limit.getLimit()).isLessThan(grown);
+    }
+
+    @Test
+    void backsOffOnDropsAndStaysWithinBounds() {
+        for (int window = 0; window < 50; window++) {
+            for (int i = 0; i < 10; i++) {
+                assertThat(limit.tryAcquire(1.0)).isTrue();
+                limit.release(-1, true);
+            }
+            clock.addAndGet(WINDOW);
+        }
+        assertThat(limit.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void backsOffOnlyWhenTheDropRatePassesTheThreshold() {
+        GradientLimit tolerant = new GradientLimit(20, 5, 200, 1.5, 0.2, WINDOW, clock::get);
+        // one failure in 20 calls per window, at steady latency
+        for (int window = 0; window < 10; window++) {
+            for (int i = 0; i < 20; i++) {
+                tolerant.tryAcquire(1.0);
+            }
+            clock.addAndGet(WINDOW);
+            tolerant.release(-1, true);
+            for (int i = 1; i < 20; i++) {
+                tolerant.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+            }
+        }
+        assertThat(tolerant.getLimit()).isGreaterThan(20);
+    }
+
+    @Test
+    void admitsLowerSharesOnlyBelowTheirPartOfTheLimit() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(limit.tryAcquire(0.5)).isTrue();
+        }
+        assertThat(limit.tryAcquire(0.5)).isFalse();
+        assertThat(limit.tryAcquire(1.0)).isTrue();
+        assertThat(limit.getInFlight()).isEqualTo(11);
+    }
+
+    private void saturatedWindow(long latencyNanos) {
+        int inFlight = limit.getLimit();
+        for (int i = 0; i < inFlight; i++) {
+            limit.tryAcquire(1.0);
+        }
+        clock.addAndGet(WINDOW);
+        for (int i = 0; i < inFlight; i++) {
+            limit.release(latencyNanos, false);
+        }
+    }
+}
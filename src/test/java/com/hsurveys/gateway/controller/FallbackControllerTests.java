@@ -0,0 +1,68 @@
+package com.hsurveys.gateway.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FallbackControllerTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WebTestClient client = WebTestClient.bindToController(new FallbackController(properties()))
+            .build();
+
+    @Test
+    void servesTheDefaultFallbackOfAConfiguredService() throws Exception {
+        String body = client.get().uri("/fallback/user-service")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        JsonNode json = objectMapper.readTree(body);
+        assertThat(json.get("error").asText()).isEqualTo("Service Unavailable");
+        assertThat(json.get("message").asText())
+                .isEqualTo("User Service is temporarily unavailable. Please try again later.");
+        assertThat(json.get("status").asInt()).isEqualTo(503);
+        assertThat(Instant.parse(json.get("timestamp").asText())).isAfter(Instant.now().minusSeconds(60));
+    }
+
+    @Test
+    void servesAConfiguredStatusAndMessageForAnyMethod() throws Exception {
+        String body = client.post().uri("/fallback/survey-service")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.GATEWAY_TIMEOUT)
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        JsonNode json = objectMapper.readTree(body);
+        assertThat(json.get("error").asText()).isEqualTo("Gateway Timeout");
+        assertThat(json.get("message").asText()).isEqualTo("Surveys are slow, try again shortly");
+        assertThat(json.get("status").asInt()).isEqualTo(504);
+    }
+
+    @Test
+    void answersNotFoundForAnUnknownService() {
+        client.get().uri("/fallback/billing-service")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private static FallbackProperties properties() {
+        FallbackProperties.Service users = new FallbackProperties.Service();
+        users.setName("User Service");
+        FallbackProperties.Service surveys = new FallbackProperties.Service();
+        surveys.setName("Survey Service");
+        surveys.setMessage("Surveys are slow, try again shortly");
+        surveys.setStatus(HttpStatus.GATEWAY_TIMEOUT);
+        FallbackProperties properties = new FallbackProperties();
+        properties.setServices(Map.of("user-service", users, "survey-service", surveys));
+        return properties;
+    }
+}
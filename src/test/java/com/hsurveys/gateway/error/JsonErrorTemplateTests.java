@@ -0,0 +1,59 @@
+package com.hsurveys.gateway.error;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonErrorTemplateTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void rendersFieldsInOrderWithEscapingAndACurrentTimestamp() throws Exception {
+        JsonErrorTemplate template = JsonErrorTemplate.builder(HttpStatus.UNAUTHORIZED)
+                .field("details", "")
+                .field("error", "Unauthorized")
+                .field("message", "Token \"x\" rejected")
+                .timestamp("timestamp", TimestampFormat.LOCAL_DATE_TIME)
+                .field("status", 401)
+                .build();
+
+        JsonNode body = objectMapper.readTree(template.render());
+
+        List<String> names = new ArrayList<>();
+        body.fieldNames().forEachRemaining(names::add);
+        assertThat(names).containsExactly("details", "error", "message", "timestamp", "status");
+        assertThat(body.get("message").asText()).isEqualTo("Token \"x\" rejected");
+        assertThat(body.get("status").isInt()).isTrue();
+        assertThat(LocalDateTime.parse(body.get("timestamp").asText()))
+                .isAfter(LocalDateTime.now().minusMinutes(1));
+    }
+
+    @Test
+    void writesStatusHeadersAndBodyToTheResponse() throws Exception {
+        JsonErrorTemplate template = JsonErrorTemplate.builder(HttpStatus.SERVICE_UNAVAILABLE)
+                .field("error", "Service Unavailable")
+                .timestamp("timestamp", TimestampFormat.INSTANT)
+                .field("status", 503)
+                .build();
+        MockServerHttpResponse response = new MockServerHttpResponse();
+
+        template.write(response).block();
+
+        String body = response.getBodyAsString().block();
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(body.length());
+        assertThat(Instant.parse(objectMapper.readTree(body).get("timestamp").asText())).isNotNull();
+    }
+}
@@ -0,0 +1,108 @@
+package com.hsurveys.gateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyGatewayFilterFactoryTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Sinks.Empty<Void> upstreamResponds = Sinks.empty();
+    private final GatewayFilterChain upstream = exchange -> upstreamResponds.asMono();
+
+    @Test
+    void shedsBulkAndNormalCallsBeforeCriticalOnes() {
+        AdaptiveConcurrencyGatewayFilterFactory.Config config = new AdaptiveConcurrencyGatewayFilterFactory.Config();
+        config.setRouteId("survey-service");
+        config.setInitialLimit(2);
+        config.setMinLimit(1);
+        config.setCriticalPaths(List.of("/api/auth/**"));
+        config.setBulkPaths(List.of("/api/survey-response/**"));
+        GatewayFilter filter = new AdaptiveConcurrencyGatewayFilterFactory(meterRegistry).apply(config);
+
+        MockServerWebExchange bulk = exchange(HttpMethod.POST, "/api/survey-response");
+        MockServerWebExchange secondBulk = exchange(HttpMethod.POST, "/api/survey-response");
+        MockServerWebExchange login = exchange(HttpMethod.POST, "/api/auth/login");
+        MockServerWebExchange normal = exchange(HttpMethod.GET, "/api/surveys/1");
+        filter.filter(bulk, upstream).subscribe();
+        filter.filter(secondBulk, upstream).block();
+        filter.filter(login, upstream).subscribe();
+        filter.filter(normal, upstream).block();
+
+        assertThat(bulk.getResponse().getStatusCode()).isNull();
+        assertThat(login.getResponse().getStatusCode()).isNull();
+        assertThat(secondBulk.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(secondBulk.getResponse().getHeaders().getFirst("Retry-After")).isEqualTo("1");
+        assertThat(normal.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(filter.toString())
+                .contains("AdaptiveConcurrency limit = 2, inFlight = 2, shed = map['critical' -> 0, 'normal' -> 1, 'bulk' -> 1]");
+        assertThat(meterRegistry.get("gateway.concurrency.requests")
+                .tags("route", "survey-service", "priority", "bulk", "result", "shed").counter().count())
+                .isEqualTo(1);
+
+        upstreamResponds.tryEmitEmpty();
+        assertThat(meterRegistry.get("gateway.concurrency.in_flight").gauge().value()).isZero();
+    }
+
+    @Test
+    void freesTheSlotOfCancelledCallsWithoutBackingOff() {
+        AdaptiveConcurrencyGatewayFilterFactory.Config config = new AdaptiveConcurrencyGatewayFilterFactory.Config();
+        config.setRouteId("organization-service");
+        config.setInitialLimit(20);
+        config.setMinLimit(1);
+        config.setWindow(Duration.ofNanos(1));
+        GatewayFilter filter = new AdaptiveConcurrencyGatewayFilterFactory(meterRegistry).apply(config);
+
+        // clients giving up on calls the upstream has not answered yet
+        for (int i = 0; i < 40; i++) {
+            filter.filter(exchange(HttpMethod.GET, "/api/organizations/1"), upstream).subscribe().dispose();
+        }
+
+        assertThat(meterRegistry.get("gateway.concurrency.in_flight").gauge().value()).isZero();
+        assertThat(meterRegistry.get("gateway.concurrency.limit").gauge().value()).isEqualTo(20);
+    }
+
+    @Test
+    void backsOffWhenTheTimeLimiterCutsSlowCalls() {
+        AdaptiveConcurrencyGatewayFilterFactory.Config config = new AdaptiveConcurrencyGatewayFilterFactory.Config();
+        config.setRouteId("survey-service");
+        config.setInitialLimit(20);
+        config.setMinLimit(1);
+        config.setWindow(Duration.ofNanos(1));
+        GatewayFilter filter = new AdaptiveConcurrencyGatewayFilterFactory(meterRegistry).apply(config);
+        GatewayFilterChain answering = exchange -> Mono.fromRunnable(() ->
+                exchange.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR, new Object()));
+        for (int i = 0; i < 10; i++) {
+            filter.filter(exchange(HttpMethod.GET, "/api/surveys/1"), answering).block();
+        }
+
+        // the route's CircuitBreaker runs the rest of the chain under a timeout and falls back
+        for (int i = 0; i < 10; i++) {
+            filter.filter(exchange(HttpMethod.GET, "/api/surveys/1"), exchange -> Mono.never())
+                    .timeout(Duration.ofMillis(20))
+                    .onErrorResume(TimeoutException.class, e -> Mono.empty())
+                    .block();
+        }
+
+        assertThat(meterRegistry.get("gateway.concurrency.in_flight").gauge().value()).isZero();
+        assertThat(meterRegistry.get("gateway.concurrency.limit").gauge().value()).isEqualTo(18);
+    }
+
+    private static MockServerWebExchange exchange(HttpMethod method, String path) {
+        return MockServerWebExchange.from(MockServerHttpRequest.method(method, path));
+    }
+}
@@ -0,0 +1,89 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.routing.AuthProperties;
+import com.hsurveys.gateway.routing.RouteIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CorsPreflightFilterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<MockServerWebExchange> passedOn = new ArrayList<>();
+    private final WebFilterChain gateway = exchange -> {
+        passedOn.add((MockServerWebExchange) exchange);
+        return Mono.empty();
+    };
+    private final CorsPreflightFilter filter = filter();
+
+    @Test
+    void answersAllowedPreflightsWithoutRouting() {
+        MockServerWebExchange exchange = preflight("/api/surveys/1", "http://localhost:3000", HttpMethod.PUT,
+                "authorization, content-type");
+
+        filter.filter(exchange, gateway).block();
+
+        assertThat(passedOn).isEmpty();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(headers.getAccessControlAllowOrigin()).isEqualTo("http://localhost:3000");
+        assertThat(headers.getAccessControlAllowMethods()).containsExactly(HttpMethod.GET, HttpMethod.PUT);
+        assertThat(headers.getAccessControlAllowHeaders()).containsExactly("authorization", "content-type");
+        assertThat(headers.getAccessControlAllowCredentials()).isTrue();
+        assertThat(headers.getAccessControlMaxAge()).isEqualTo(3600);
+        assertThat(headers.getVary()).contains(HttpHeaders.ORIGIN);
+        assertThat(meterRegistry.get("gateway.cors.preflights").tag("result", "answered").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void leavesDisallowedAndUnroutedPreflightsToTheGateway() {
+        filter.filter(preflight("/api/surveys/1", "http://evil.example", HttpMethod.GET, null), gateway).block();
+        filter.filter(preflight("/api/surveys/1", "http://localhost:3000", HttpMethod.DELETE, null), gateway).block();
+        filter.filter(preflight("/unrouted", "http://localhost:3000", HttpMethod.GET, null), gateway).block();
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/api/surveys/1")
+                .header(HttpHeaders.ORIGIN, "http://localhost:3000")), gateway).block();
+
+        assertThat(passedOn).hasSize(4);
+        assertThat(passedOn.get(0).getResponse().getHeaders().getAccessControlAllowOrigin()).isNull();
+        assertThat(meterRegistry.get("gateway.cors.preflights").tag("result", "passed").counter().count())
+                .isEqualTo(3);
+    }
+
+    private CorsPreflightFilter filter() {
+        CorsConfiguration configuration = new CorsConfiguration();
+        configuration.setAllowedOriginPatterns(List.of("http://localhost:3000"));
+        configuration.setAllowedMethods(List.of("GET", "PUT"));
+        configuration.setAllowedHeaders(List.of("*"));
+        configuration.setAllowCredentials(true);
+        configuration.setMaxAge(3600L);
+        GlobalCorsProperties corsProperties = new GlobalCorsProperties();
+        corsProperties.getCorsConfigurations().put("/**", configuration);
+        RouteIndex routeIndex = new RouteIndex(new AuthProperties());
+        routeIndex.register(List.of("/api/surveys/**"));
+        return new CorsPreflightFilter(corsProperties, routeIndex, meterRegistry);
+    }
+
+    private static MockServerWebExchange preflight(String path, String origin, HttpMethod method, String headers) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.options(path)
+                .header(HttpHeaders.ORIGIN, origin)
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, method.name());
+        if (headers != null) {
+            request.header(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS, headers);
+        }
+        return MockServerWebExchange.from(request);
+    }
+}
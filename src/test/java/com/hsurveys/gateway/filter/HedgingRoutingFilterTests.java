@@ -0,0 +1,162 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.client.UpstreamHttpClients;
+import com.hsurveys.gateway.hedging.HedgeDelay;
+import com.hsurveys.gateway.hedging.HedgePolicy;
+import com.hsurveys.gateway.hedging.RetryBudget;
+import com.hsurveys.gateway.loadbalancer.UpstreamInstance;
+import com.hsurveys.gateway.loadbalancer.UpstreamPool;
+import com.hsurveys.gateway.loadbalancer.UpstreamProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HedgingRoutingFilterTests {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    // the first call hangs like a stuck instance, later ones answer at once
+    private final DisposableServer upstream = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            .handle((request, response) -> {
+                boolean slow = calls.incrementAndGet() == 1;
+                return Mono.delay(slow ? Duration.ofSeconds(3) : Duration.ZERO)
+                        .then(response.header(HttpHeaderNames.CONTENT_TYPE, "text/plain")
+                                .sendString(Mono.just(slow ? "slow" : "fast"))
+                                .then());
+            })
+            .bindNow();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HedgingRoutingFilter routing = new HedgingRoutingFilter(HttpClient.create(),
+            new UpstreamHttpClients(Map.of(), List.of(), meterRegistry), noHeadersFilters(), new HttpClientProperties());
+    private final NettyWriteResponseFilter write = new NettyWriteResponseFilter(List.of());
+
+    @AfterEach
+    void stopUpstream() {
+        upstream.disposeNow();
+    }
+
+    @Test
+    void answersWithTheHedgeWhenTheFirstAttemptIsSlow() {
+        HedgePolicy policy = spy(policy(20));
+        MockServerWebExchange exchange = exchange(policy);
+
+        long start = System.nanoTime();
+        write.filter(exchange, routed -> routing.filter(routed, done -> Mono.empty())).block(Duration.ofSeconds(5));
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("fast");
+        assertThat(calls).hasValue(2);
+        assertThat(meterRegistry.get("gateway.hedging.wins").counter().count()).isEqualTo(1);
+        // the first attempt was cancelled before its response
+        verify(policy, never()).recordLatency(anyLong());
+    }
+
+    @Test
+    void waitsForTheFirstAttemptWhenTheBudgetIsSpent() {
+        HedgePolicy policy = spy(policy(0));
+        MockServerWebExchange exchange = exchange(policy);
+
+        write.filter(exchange, routed -> routing.filter(routed, done -> Mono.empty())).block(Duration.ofSeconds(5));
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("slow");
+        assertThat(calls).hasValue(1);
+        assertThat(meterRegistry.get("gateway.hedging.budget_exhausted").counter().count()).isEqualTo(1);
+        verify(policy).recordLatency(longThat(nanos -> nanos >= Duration.ofSeconds(3).toNanos()));
+    }
+
+    @Test
+    void reportsEachAttemptToTheInstanceItWentTo() {
+        DisposableServer failing = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle((request, response) -> response.status(HttpStatus.INTERNAL_SERVER_ERROR.value()).send())
+                .bindNow();
+        try {
+            UpstreamProperties.Outlier outlier = new UpstreamProperties.Outlier();
+            outlier.setConsecutiveFailures(1);
+            outlier.setMaxEjectionPercent(100);
+            UpstreamPool pool = new UpstreamPool("survey-service", UpstreamPool.Strategy.LEAST_OUTSTANDING,
+                    Duration.ofSeconds(10).toNanos(), outlier, System::nanoTime, meterRegistry);
+            pool.setInstances(List.of(URI.create("http://127.0.0.1:" + upstream.port()),
+                    URI.create("http://127.0.0.1:" + failing.port()), URI.create("http://busy:8080")));
+            UpstreamInstance slow = pool.getInstances().get(0);
+            UpstreamInstance hedged = pool.getInstances().get(1);
+            // keeps the hedge off the third instance
+            pool.getInstances().get(2).start();
+            MockServerWebExchange exchange = exchange(policy(20));
+            exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR,
+                    new DefaultResponse(slow));
+            LoadBalancerStatsFilter stats = new LoadBalancerStatsFilter();
+
+            write.filter(exchange, routed -> stats.filter(routed, picked -> routing.filter(picked, done -> Mono.empty())))
+                    .block(Duration.ofSeconds(5));
+
+            assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+            // reported once the exchange is done, which may be just after block() returns
+            await().atMost(Duration.ofSeconds(1)).untilAsserted(() -> {
+                assertThat(slow.getInFlight()).isZero();
+                assertThat(hedged.getInFlight()).isZero();
+            });
+            // the 5xx is the hedge's; the slow instance only lost the race
+            assertThat(hedged.isEjected()).isTrue();
+            assertThat(slow.isEjected()).isFalse();
+        } finally {
+            failing.disposeNow();
+        }
+    }
+
+    private HedgePolicy policy(int budgetCapacity) {
+        long delay = Duration.ofMillis(50).toNanos();
+        return new HedgePolicy("survey-service", new HedgeDelay(95, delay, delay, delay, System::nanoTime),
+                new RetryBudget(0, 0, budgetCapacity, System::nanoTime), meterRegistry);
+    }
+
+    private MockServerWebExchange exchange(HedgePolicy policy) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/surveys/1"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+                URI.create("http://127.0.0.1:" + upstream.port() + "/api/surveys/1"));
+        exchange.getAttributes().put(HedgingRoutingFilter.POLICY_ATTRIBUTE, policy);
+        return exchange;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<List<HttpHeadersFilter>> noHeadersFilters() {
+        ObjectProvider<List<HttpHeadersFilter>> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable(any())).thenReturn(List.of());
+        return provider;
+    }
+}
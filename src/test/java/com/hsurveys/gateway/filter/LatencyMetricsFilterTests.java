@@ -0,0 +1,87 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.metrics.GatewayLatency;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyMetricsFilterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GatewayLatency gatewayLatency = new GatewayLatency(meterRegistry);
+    private final LatencyMetricsFilter latencyMetrics = new LatencyMetricsFilter(gatewayLatency);
+    private final UpstreamLatencyFilter upstreamLatency = new UpstreamLatencyFilter(gatewayLatency);
+
+    @Test
+    void splitsTheExchangeIntoGatewayFiltersAndTheUpstreamCall() {
+        MockServerWebExchange exchange = routed("surveys");
+        // 30ms of gateway filters, then a 50ms upstream call; both run on this thread, so every
+        // doFinally has recorded by the time block() returns
+        GatewayFilterChain upstream = routedExchange -> pause(50);
+        GatewayFilterChain filters = filteredExchange -> pause(30)
+                .then(Mono.defer(() -> upstreamLatency.filter(filteredExchange, upstream)));
+
+        latencyMetrics.filter(exchange, filters).block();
+
+        Timer total = timer("surveys", "total");
+        Timer gatewayFilters = timer("surveys", "filters");
+        Timer upstreamCall = timer("surveys", "upstream");
+        assertThat(total.count()).isEqualTo(1);
+        assertThat(gatewayFilters.count()).isEqualTo(1);
+        assertThat(upstreamCall.count()).isEqualTo(1);
+        assertThat(gatewayFilters.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(30);
+        assertThat(upstreamCall.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(50);
+        assertThat(total.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(80);
+    }
+
+    @Test
+    void recordsFailedExchangesOnTheirRoute() {
+        latencyMetrics.filter(routed("users"), exchange -> Mono.error(new IllegalStateException("boom")))
+                .onErrorResume(e -> Mono.empty())
+                .block();
+
+        assertThat(timer("users", "total").count()).isEqualTo(1);
+    }
+
+    @Test
+    void ignoresExchangesWithoutARoute() {
+        latencyMetrics.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/unrouted")),
+                exchange -> Mono.empty()).block();
+
+        assertThat(meterRegistry.find(GatewayLatency.METER_NAME).timers()).isEmpty();
+    }
+
+    private Timer timer(String route, String phase) {
+        return meterRegistry.get(GatewayLatency.METER_NAME).tag("route", route).tag("phase", phase).timer();
+    }
+
+    private static Mono<Void> pause(long millis) {
+        return Mono.fromRunnable(() -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private static MockServerWebExchange routed(String routeId) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/" + routeId));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+                .id(routeId)
+                .uri("http://localhost")
+                .predicate(routedExchange -> true)
+                .build());
+        return exchange;
+    }
+}
@@ -0,0 +1,128 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.loadbalancer.UpstreamInstance;
+import com.hsurveys.gateway.loadbalancer.UpstreamPool;
+import com.hsurveys.gateway.loadbalancer.UpstreamProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadBalancerStatsFilterTests {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UpstreamPool pool = pool();
+    private final UpstreamInstance instance = pool.getInstances().get(0);
+    private final LoadBalancerStatsFilter filter = new LoadBalancerStatsFilter();
+
+    @Test
+    void keepsTheCallInFlightUntilTheResponse() {
+        MockServerWebExchange exchange = exchange();
+
+        filter.filter(exchange, routed -> {
+            assertThat(instance.getInFlight()).isEqualTo(1);
+            return respond(routed, HttpStatus.OK, 200);
+        }).block();
+
+        assertThat(instance.getInFlight()).isZero();
+        assertThat(latencyMillis()).isEqualTo(200);
+    }
+
+    @Test
+    void countsErrorsAnd5xxResponsesAsFailures() {
+        filter.filter(exchange(), routed -> respond(routed, HttpStatus.BAD_GATEWAY, 1)).block();
+        assertThat(instance.isEjected()).isFalse();
+
+        filter.filter(exchange(), routed -> Mono.error(new IllegalStateException("connection refused")))
+                .onErrorComplete()
+                .block();
+
+        assertThat(instance.isEjected()).isTrue();
+        assertThat(instance.getInFlight()).isZero();
+    }
+
+    @Test
+    void takesASuccessAsTheEndOfAFailureStreak() {
+        filter.filter(exchange(), routed -> respond(routed, HttpStatus.SERVICE_UNAVAILABLE, 1)).block();
+        filter.filter(exchange(), routed -> respond(routed, HttpStatus.NOT_FOUND, 1)).block();
+        filter.filter(exchange(), routed -> respond(routed, HttpStatus.SERVICE_UNAVAILABLE, 1)).block();
+
+        assertThat(instance.isEjected()).isFalse();
+    }
+
+    @Test
+    void doesNotCountCancelledCallsAsFailures() {
+        for (int i = 0; i < 3; i++) {
+            filter.filter(exchange(), routed -> Mono.never()).timeout(Duration.ofMillis(10)).onErrorComplete().block();
+        }
+
+        assertThat(instance.isEjected()).isFalse();
+        assertThat(instance.getInFlight()).isZero();
+    }
+
+    @Test
+    void leavesTheReportToARoutingFilterThatTakesItOver() {
+        MockServerWebExchange exchange = exchange();
+
+        filter.filter(exchange, routed -> {
+            assertThat(LoadBalancerStatsFilter.takeOver(routed)).isNotNull();
+            return Mono.empty();
+        }).block();
+
+        // still in flight until the routing filter reports it
+        assertThat(instance.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void ignoresExchangesNotBalancedOverAPool() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/surveys/1"));
+
+        filter.filter(exchange, routed -> Mono.empty()).block();
+
+        assertThat(exchange.getAttributes()).doesNotContainKey(LoadBalancerStatsFilter.START_ATTRIBUTE);
+    }
+
+    private Mono<Void> respond(ServerWebExchange exchange, HttpStatus status, long millis) {
+        return Mono.fromRunnable(() -> {
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+            exchange.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR, new Object());
+            exchange.getResponse().setStatusCode(status);
+        });
+    }
+
+    private MockServerWebExchange exchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/surveys/1"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR,
+                new DefaultResponse(instance));
+        return exchange;
+    }
+
+    private double latencyMillis() {
+        return meterRegistry.get("gateway.upstream.latency").tag("instance", "a:8080").timeGauge()
+                .value(TimeUnit.MILLISECONDS);
+    }
+
+    private UpstreamPool pool() {
+        UpstreamProperties.Outlier outlier = new UpstreamProperties.Outlier();
+        outlier.setConsecutiveFailures(2);
+        outlier.setMaxEjectionPercent(100);
+        UpstreamPool pool = new UpstreamPool("survey-service", UpstreamPool.Strategy.P2C,
+                Duration.ofSeconds(10).toNanos(), outlier, clock::get, meterRegistry);
+        pool.setInstances(List.of(URI.create("http://a:8080"), URI.create("http://b:8080")));
+        return pool;
+    }
+}
@@ -0,0 +1,96 @@
+package com.hsurveys.gateway.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.DedupeResponseHeaderGatewayFilterFactory.Strategy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NormalizeResponseHeadersGatewayFilterFactoryTests {
+
+    private final NormalizeResponseHeadersGatewayFilterFactory factory =
+            new NormalizeResponseHeadersGatewayFilterFactory();
+
+    @Test
+    void normalizesCorsHeadersOfErrorResponsesBeforeCommit() {
+        NormalizeResponseHeadersGatewayFilterFactory.Config config = new NormalizeResponseHeadersGatewayFilterFactory.Config();
+        config.setCors(true);
+        GatewayFilter filter = factory.apply(config);
+        MockServerWebExchange exchange = exchange();
+
+        // like the JWT filter rejecting a request after the gateway's CORS headers were added
+        GatewayFilterChain unauthorized = hooked -> {
+            HttpHeaders headers = hooked.getResponse().getHeaders();
+            headers.add(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "http://localhost:3000");
+            headers.add(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+            headers.add(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+            headers.add(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+            headers.add(HttpHeaders.VARY, "Origin, Access-Control-Request-Method");
+            headers.add(HttpHeaders.VARY, "origin");
+            headers.add(HttpHeaders.VARY, "Accept-Encoding");
+            hooked.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+            return hooked.getResponse().writeWith(Mono.just(hooked.getResponse().bufferFactory()
+                    .wrap("{}".getBytes(StandardCharsets.UTF_8))));
+        };
+        filter.filter(exchange, unauthorized).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(headers.get(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN)).containsExactly("http://localhost:3000");
+        assertThat(headers.get(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS)).containsExactly("true");
+        assertThat(headers.get(HttpHeaders.VARY))
+                .containsExactly("Origin, Access-Control-Request-Method, Accept-Encoding");
+    }
+
+    @Test
+    void removesAndDedupesConfiguredHeaders() {
+        NormalizeResponseHeadersGatewayFilterFactory.Config config = new NormalizeResponseHeadersGatewayFilterFactory.Config();
+        config.setRemove(List.of("X-Powered-By"));
+        config.setDedupe(List.of("x-trace"));
+        config.setStrategy(Strategy.RETAIN_UNIQUE);
+        GatewayFilter filter = factory.apply(config);
+        MockServerWebExchange exchange = exchange();
+
+        filter.filter(exchange, hooked -> {
+            HttpHeaders headers = hooked.getResponse().getHeaders();
+            headers.add("X-Powered-By", "Express");
+            headers.add("X-Trace", "a");
+            headers.add("X-Trace", "b");
+            headers.add("X-Trace", "a");
+            headers.add("X-Other", "1");
+            headers.add("X-Other", "1");
+            return hooked.getResponse().setComplete();
+        }).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(headers.containsKey("X-Powered-By")).isFalse();
+        assertThat(headers.get("X-Trace")).containsExactly("a", "b");
+        assertThat(headers.get("X-Other")).containsExactly("1", "1");
+    }
+
+    @Test
+    void configuredRulesTakePrecedenceOverTheCorsDefaults() {
+        NormalizeResponseHeadersGatewayFilterFactory.Config config = new NormalizeResponseHeadersGatewayFilterFactory.Config();
+        config.setRemove(List.of("vary"));
+        config.setCors(true);
+
+        NormalizeResponseHeadersGatewayFilterFactory.Rule[] rules = NormalizeResponseHeadersGatewayFilterFactory.compile(config);
+
+        assertThat(rules).contains(new NormalizeResponseHeadersGatewayFilterFactory.Rule("vary",
+                NormalizeResponseHeadersGatewayFilterFactory.Action.REMOVE));
+        assertThat(rules).hasSize(7);
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/surveys/1")
+                .header(HttpHeaders.ORIGIN, "http://localhost:3000"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCoalescingGatewayFilterFactoryTests {
+
+    private static final Route ROUTE = Route.async()
+            .id("survey-service")
+            .uri("http://survey-service:8080")
+            .predicate(exchange -> true)
+            .build();
+
+    private static final UUID ORGANIZATION = UUID.fromString("6b1f0c2e-3a4d-4e5f-8a9b-0c1d2e3f4a5b");
+    private static final String BODY = "{\"id\":\"3f2a9c1e\",\"title\":\"Onboarding survey\"}";
+
+    private final RequestCoalescingGatewayFilterFactory factory =
+            new RequestCoalescingGatewayFilterFactory(new SimpleMeterRegistry());
+    private final Sinks.Empty<Void> upstreamResponds = Sinks.empty();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    private final GatewayFilterChain upstream = exchange -> {
+        upstreamCalls.incrementAndGet();
+        return upstreamResponds.asMono().then(Mono.defer(() -> {
+            byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            exchange.getResponse().getHeaders().setContentLength(bytes.length);
+            exchange.getResponse().getHeaders().set(HttpHeaders.CONTENT_TYPE, "application/json");
+            return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(bytes)));
+        }));
+    };
+
+    @Test
+    void sharesOneUpstreamCallBetweenConcurrentIdenticalRequests() {
+        GatewayFilter filter = factory.apply(new RequestCoalescingGatewayFilterFactory.Config());
+        MockServerWebExchange leader = exchange(ORGANIZATION, List.of("ROLE_USER"));
+        MockServerWebExchange follower = exchange(ORGANIZATION, List.of("ROLE_USER"));
+
+        CompletableFuture<Void> leading = filter.filter(leader, upstream).toFuture();
+        CompletableFuture<Void> following = filter.filter(follower, upstream).toFuture();
+        upstreamResponds.tryEmitEmpty();
+        CompletableFuture.allOf(leading, following).join();
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(follower.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(follower.getResponse().getHeaders().getContentType()).hasToString("application/json");
+        assertThat(follower.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+        assertThat(leader.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+    }
+
+    @Test
+    void keepsTenantsAndAuthorizationScopesApart() {
+        GatewayFilter filter = factory.apply(new RequestCoalescingGatewayFilterFactory.Config());
+
+        CompletableFuture<Void> user = filter.filter(exchange(ORGANIZATION, List.of("ROLE_USER")), upstream).toFuture();
+        CompletableFuture<Void> admin = filter.filter(exchange(ORGANIZATION, List.of("ROLE_ORG_ADMIN")), upstream).toFuture();
+        CompletableFuture<Void> otherTenant = filter.filter(exchange(UUID.randomUUID(), List.of("ROLE_USER")), upstream)
+                .toFuture();
+        upstreamResponds.tryEmitEmpty();
+        CompletableFuture.allOf(user, admin, otherTenant).join();
+
+        assertThat(upstreamCalls).hasValue(3);
+    }
+
+    @Test
+    void sendsWaitingRequestsUpstreamWhenTheResponseIsTooLargeToShare() {
+        RequestCoalescingGatewayFilterFactory.Config config = new RequestCoalescingGatewayFilterFactory.Config();
+        config.setMaxBodySize(DataSize.ofBytes(16));
+        GatewayFilter filter = factory.apply(config);
+        MockServerWebExchange follower = exchange(ORGANIZATION, List.of("ROLE_USER"));
+
+        CompletableFuture<Void> leading = filter.filter(exchange(ORGANIZATION, List.of("ROLE_USER")), upstream).toFuture();
+        CompletableFuture<Void> following = filter.filter(follower, upstream).toFuture();
+        upstreamResponds.tryEmitEmpty();
+        CompletableFuture.allOf(leading, following).join();
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(follower.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+    }
+
+    private static MockServerWebExchange exchange(UUID organization, List<String> roles) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/api/surveys/3f2a9c1e").header(HttpHeaders.ACCEPT, "application/json"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, ROUTE);
+        exchange.getAttributes().put(JwtPrincipal.EXCHANGE_ATTRIBUTE, new JwtPrincipal("jane.doe@example.com",
+                UUID.randomUUID(), organization, null, null, List.of("SURVEY_READ"), roles, null));
+        return exchange;
+    }
+}
@@ -0,0 +1,76 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.logging.AccessLog;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RequestLoggingFilterTests {
+
+    private final AccessLog accessLog = mock(AccessLog.class);
+    private final RequestLoggingFilter filter = new RequestLoggingFilter(accessLog);
+
+    @Test
+    void logsTheBytesOfAChunkedBody() {
+        when(accessLog.isEnabled()).thenReturn(true);
+        MockServerWebExchange exchange = exchange();
+
+        filter.filter(exchange, routed -> routed.getResponse().writeWith(Flux.just(buffer("{\"id\":"), buffer("1}"))))
+                .block();
+
+        assertThat(exchange.getResponse().getHeaders().getContentLength()).isEqualTo(-1);
+        verify(accessLog).record(eq("GET"), any(), eq(200), anyLong(), any(), any(), eq(8L));
+    }
+
+    @Test
+    void logsWhatRouteFiltersWriteInsteadOfTheUpstreamBody() {
+        when(accessLog.isEnabled()).thenReturn(true);
+        MockServerWebExchange exchange = exchange();
+        // like compression, a route filter's decorator rewrites the body on its way out
+        filter.filter(exchange, routed -> new ResponseDecorationFilter().filter(routed, decorated -> {
+            ResponseDecorationFilter.decorate(decorated, FirstBufferOnly::new);
+            return decorated.getResponse().writeWith(Flux.just(buffer("abc"), buffer("defgh")));
+        })).block();
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("abc");
+        verify(accessLog).record(eq("GET"), any(), anyInt(), anyLong(), any(), any(), eq(3L));
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/surveys/1"));
+    }
+
+    private static DataBuffer buffer(String content) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class FirstBufferOnly extends ServerHttpResponseDecorator {
+
+        private FirstBufferOnly(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.from(body).take(1));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.cache.ResponseCacheStore;
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheGatewayFilterFactoryTests {
+
+    private static final Route ROUTE = Route.async()
+            .id("survey-service")
+            .uri("http://survey-service:8080")
+            .predicate(exchange -> true)
+            .build();
+
+    private static final UUID ORGANIZATION = UUID.fromString("6b1f0c2e-3a4d-4e5f-8a9b-0c1d2e3f4a5b");
+    private static final UUID OTHER_ORGANIZATION = UUID.fromString("0d9e8c7f-6a5b-4c3d-8e1f-0a9b8c7d6e5f");
+
+    private final ResponseCacheStore store = new ResponseCacheStore(new SimpleMeterRegistry(),
+            DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), Duration.ofMinutes(5));
+    private final GatewayFilter filter = filter("/api/surveys/**");
+    private final List<ServerWebExchange> upstreamCalls = new ArrayList<>();
+
+    @Test
+    void servesRepeatedReadsPerOrganization() {
+        GatewayFilterChain upstream = upstream(exchange -> ok(exchange, "public, max-age=60", null, "{\"id\":1}"));
+
+        MockServerWebExchange first = exchange("/api/surveys/1", ORGANIZATION);
+        MockServerWebExchange second = exchange("/api/surveys/1", ORGANIZATION);
+        MockServerWebExchange otherTenant = exchange("/api/surveys/1", OTHER_ORGANIZATION);
+        filter.filter(first, upstream).block();
+        filter.filter(second, upstream).block();
+        filter.filter(otherTenant, upstream).block();
+
+        assertThat(upstreamCalls).hasSize(2);
+        assertThat(second.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER))
+                .isEqualTo("HIT");
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("{\"id\":1}");
+        assertThat(otherTenant.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER))
+                .isEqualTo("MISS");
+    }
+
+    @Test
+    void capturesBodiesWrittenAfterTheRouteFiltersComplete() {
+        // like NettyWriteResponseFilter, which writes once the rest of the chain has completed
+        ResponseDecorationFilter decoration = new ResponseDecorationFilter();
+        GatewayFilterChain writeAfterChain = hooked -> filter.filter(hooked, upstream(exchange -> Mono.empty()))
+                .then(Mono.defer(() -> ok(hooked, "public, max-age=60", null, "{\"id\":5}")));
+
+        decoration.filter(exchange("/api/surveys/5", ORGANIZATION), writeAfterChain).block();
+        MockServerWebExchange second = exchange("/api/surveys/5", ORGANIZATION);
+        filter.filter(second, upstream(exchange -> Mono.error(new IllegalStateException("not cached")))).block();
+
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("{\"id\":5}");
+    }
+
+    @Test
+    void revalidatesStaleEntriesWithTheirETag() {
+        filter.filter(exchange("/api/surveys/2", ORGANIZATION),
+                upstream(exchange -> ok(exchange, "public, no-cache", "\"v1\"", "{\"id\":2}"))).block();
+
+        MockServerWebExchange revalidated = exchange("/api/surveys/2", ORGANIZATION);
+        filter.filter(revalidated, upstream(exchange -> {
+            exchange.getResponse().setStatusCode(HttpStatus.NOT_MODIFIED);
+            exchange.getResponse().getHeaders().setETag("\"v1\"");
+            return exchange.getResponse().setComplete();
+        })).block();
+
+        assertThat(upstreamCalls.get(1).getRequest().getHeaders().getIfNoneMatch()).containsExactly("\"v1\"");
+        assertThat(revalidated.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(revalidated.getResponse().getBodyAsString().block()).isEqualTo("{\"id\":2}");
+        assertThat(revalidated.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER))
+                .isEqualTo("REVALIDATED");
+    }
+
+    @Test
+    void answersMatchingConditionalRequestsWithoutTheUpstream() {
+        GatewayFilterChain upstream = upstream(exchange -> ok(exchange, "public, max-age=60", "W/\"v7\"", "{\"id\":3}"));
+        filter.filter(exchange("/api/surveys/3", ORGANIZATION), upstream).block();
+
+        MockServerWebExchange conditional = MockServerWebExchange.from(MockServerHttpRequest.get("/api/surveys/3")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"v7\""));
+        authenticate(conditional, ORGANIZATION);
+        filter.filter(conditional, upstream).block();
+
+        assertThat(upstreamCalls).hasSize(1);
+        assertThat(conditional.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void neverStoresPrivateResponsesOrOtherPaths() {
+        GatewayFilterChain privateUpstream = upstream(exchange -> ok(exchange, "private, max-age=60", null, "{}"));
+        filter.filter(exchange("/api/surveys/4", ORGANIZATION), privateUpstream).block();
+        filter.filter(exchange("/api/surveys/4", ORGANIZATION), privateUpstream).block();
+
+        GatewayFilterChain responses = upstream(exchange -> ok(exchange, "public, max-age=60", null, "{}"));
+        filter.filter(exchange("/api/survey-response/4", ORGANIZATION), responses).block();
+        filter.filter(exchange("/api/survey-response/4", ORGANIZATION), responses).block();
+
+        assertThat(upstreamCalls).hasSize(4);
+    }
+
+    @Test
+    void storesOnlyResponsesMarkedShareable() {
+        GatewayFilterChain unmarked = upstream(exchange -> ok(exchange, "max-age=60", null, "{}"));
+        filter.filter(exchange("/api/surveys/6", ORGANIZATION), unmarked).block();
+        filter.filter(exchange("/api/surveys/6", ORGANIZATION), unmarked).block();
+        assertThat(upstreamCalls).hasSize(2);
+
+        GatewayFilterChain sharedMaxAge = upstream(exchange -> ok(exchange, "max-age=0, s-maxage=60", null, "{}"));
+        filter.filter(exchange("/api/surveys/7", ORGANIZATION), sharedMaxAge).block();
+        MockServerWebExchange hit = exchange("/api/surveys/7", ORGANIZATION);
+        filter.filter(hit, sharedMaxAge).block();
+        assertThat(upstreamCalls).hasSize(3);
+        assertThat(hit.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER))
+                .isEqualTo("HIT");
+    }
+
+    @Test
+    void keepsUsersWithDifferentRolesApart() {
+        // the upstream filters the survey by the caller's roles
+        GatewayFilterChain upstream = upstream(exchange -> ok(exchange, "public, max-age=60", null,
+                JwtPrincipal.from(exchange).roles().contains("ROLE_ADMIN") ? "{\"drafts\":[1]}" : "{}"));
+
+        MockServerWebExchange admin = exchange("/api/surveys/8", ORGANIZATION, List.of("ROLE_ADMIN"));
+        MockServerWebExchange user = exchange("/api/surveys/8", ORGANIZATION, List.of("ROLE_USER"));
+        MockServerWebExchange otherAdmin = exchange("/api/surveys/8", ORGANIZATION, List.of("ROLE_ADMIN"));
+        filter.filter(admin, upstream).block();
+        filter.filter(user, upstream).block();
+        filter.filter(otherAdmin, upstream).block();
+
+        assertThat(upstreamCalls).hasSize(2);
+        assertThat(user.getResponse().getBodyAsString().block()).isEqualTo("{}");
+        assertThat(otherAdmin.getResponse().getBodyAsString().block()).isEqualTo("{\"drafts\":[1]}");
+    }
+
+    @Test
+    void servesEntriesOnlyToRequestsMatchingTheirVary() {
+        GatewayFilterChain upstream = upstream(exchange -> {
+            exchange.getResponse().getHeaders().setVary(List.of(HttpHeaders.ACCEPT_LANGUAGE));
+            return ok(exchange, "public, max-age=60", null,
+                    "{\"lang\":\"" + exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT_LANGUAGE) + "\"}");
+        });
+
+        filter.filter(exchange("/api/surveys/9", ORGANIZATION, "en"), upstream).block();
+        MockServerWebExchange french = exchange("/api/surveys/9", ORGANIZATION, "fr");
+        filter.filter(french, upstream).block();
+        MockServerWebExchange frenchAgain = exchange("/api/surveys/9", ORGANIZATION, "fr");
+        filter.filter(frenchAgain, upstream).block();
+
+        assertThat(upstreamCalls).hasSize(2);
+        assertThat(french.getResponse().getBodyAsString().block()).isEqualTo("{\"lang\":\"fr\"}");
+        assertThat(frenchAgain.getResponse().getBodyAsString().block()).isEqualTo("{\"lang\":\"fr\"}");
+        assertThat(frenchAgain.getResponse().getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_LANGUAGE);
+    }
+
+    private GatewayFilter filter(String... paths) {
+        ResponseCacheGatewayFilterFactory.Config config = new ResponseCacheGatewayFilterFactory.Config();
+        config.setPaths(List.of(paths));
+        return new ResponseCacheGatewayFilterFactory(store).apply(config);
+    }
+
+    private GatewayFilterChain upstream(Function<ServerWebExchange, Mono<Void>> response) {
+        return exchange -> {
+            upstreamCalls.add(exchange);
+            return response.apply(exchange);
+        };
+    }
+
+    private static Mono<Void> ok(ServerWebExchange exchange, String cacheControl, String etag, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        headers.setCacheControl(cacheControl);
+        if (etag != null) {
+            headers.setETag(etag);
+        }
+        headers.setContentLength(bytes.length);
+        return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(bytes)));
+    }
+
+    private static MockServerWebExchange exchange(String path, UUID organization) {
+        return exchange(path, organization, List.of("ROLE_USER"));
+    }
+
+    private static MockServerWebExchange exchange(String path, UUID organization, List<String> roles) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+        authenticate(exchange, organization, roles);
+        return exchange;
+    }
+
+    private static MockServerWebExchange exchange(String path, UUID organization, String acceptLanguage) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path)
+                .header(HttpHeaders.ACCEPT_LANGUAGE, acceptLanguage));
+        authenticate(exchange, organization);
+        return exchange;
+    }
+
+    private static void authenticate(MockServerWebExchange exchange, UUID organization) {
+        authenticate(exchange, organization, List.of("ROLE_USER"));
+    }
+
+    private static void authenticate(MockServerWebExchange exchange, UUID organization, List<String> roles) {
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, ROUTE);
+        exchange.getAttributes().put(JwtPrincipal.EXCHANGE_ATTRIBUTE, new JwtPrincipal("jane.doe@example.com",
+                UUID.randomUUID(), organization, null, null, List.of(), roles, null));
+    }
+}
@@ -0,0 +1,224 @@
+package com.hsurveys.gateway.filter;
+
+import com.hsurveys.gateway.cache.ResponseCacheStore;
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCompressionGatewayFilterFactoryTests {
+
+    private static final Route ROUTE = Route.async()
+            .id("survey-service")
+            .uri("http://survey-service:8080")
+            .predicate(exchange -> true)
+            .build();
+
+    private static final UUID ORGANIZATION = UUID.fromString("6b1f0c2e-3a4d-4e5f-8a9b-0c1d2e3f4a5b");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ResponseCompressionGatewayFilterFactory factory = new ResponseCompressionGatewayFilterFactory(
+            meterRegistry);
+    private final GatewayFilter filter = factory.apply(new ResponseCompressionGatewayFilterFactory.Config());
+
+    @Test
+    void gzipsLargeJsonBodiesChunkByChunk() throws IOException {
+        String json = "{\"questions\":[" + "{\"id\":1,\"text\":\"How satisfied are you?\"},".repeat(200) + "{}]}";
+        MockServerWebExchange exchange = exchange("gzip, deflate, br");
+
+        filter.filter(exchange, upstream(json, 3, headers -> headers.setETag("\"v1\""))).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(headers.getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(headers.getContentLength()).isEqualTo(-1);
+        assertThat(headers.getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(headers.getETag()).isEqualTo("W/\"v1\"");
+        byte[] body = body(exchange);
+        assertThat(body.length).isLessThan(json.length() / 10);
+        try (InputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertThat(new String(gunzip.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(json);
+        }
+        assertThat(meterRegistry.get("gateway.compression.responses").tag("result", "compressed").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.compression.bytes").tag("stage", "in").counter().count())
+                .isEqualTo(json.length());
+        assertThat(meterRegistry.get("gateway.compression.bytes").tag("stage", "out").counter().count())
+                .isEqualTo(body.length);
+    }
+
+    @Test
+    void passesThroughSmallAndAlreadyEncodedBodies() {
+        MockServerWebExchange small = exchange("gzip");
+        filter.filter(small, upstream("{\"id\":1}", 1, headers -> headers.setContentLength(8))).block();
+        String json = "{\"id\":1}".repeat(500);
+        MockServerWebExchange encoded = exchange("gzip");
+        filter.filter(encoded, upstream(json, 1, headers -> headers.set(HttpHeaders.CONTENT_ENCODING, "br"))).block();
+
+        assertThat(small.getResponse().getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(small.getResponse().getBodyAsString().block()).isEqualTo("{\"id\":1}");
+        assertThat(encoded.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("br");
+        assertThat(encoded.getResponse().getBodyAsString().block()).isEqualTo(json);
+        assertThat(meterRegistry.get("gateway.compression.responses").tag("result", "small").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.compression.responses").tag("result", "encoded").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void leavesBodiesAloneForClientsRefusingGzip() {
+        String json = "{\"id\":1}".repeat(500);
+        MockServerWebExchange exchange = exchange("gzip;q=0, identity");
+
+        filter.filter(exchange, upstream(json, 2, headers -> {
+        })).block();
+
+        assertThat(exchange.getResponse().getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(exchange.getResponse().getHeaders().getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(json);
+    }
+
+    @Test
+    void compressesCoalescedAndCachedResponsesOnTheirWayOut() throws IOException {
+        String json = "{\"questions\":[" + "{\"id\":1,\"text\":\"How satisfied are you?\"},".repeat(100) + "{}]}";
+        ResponseCacheStore store = new ResponseCacheStore(meterRegistry, DataSize.ofMegabytes(1),
+                DataSize.ofKilobytes(64), Duration.ofMinutes(5));
+        // the order of the survey-service route
+        List<GatewayFilter> route = List.of(filter,
+                new RequestCoalescingGatewayFilterFactory(meterRegistry)
+                        .apply(new RequestCoalescingGatewayFilterFactory.Config()),
+                new ResponseCacheGatewayFilterFactory(store).apply(new ResponseCacheGatewayFilterFactory.Config()));
+        Sinks.Empty<Void> upstreamResponds = Sinks.empty();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        MockServerWebExchange leader = authenticated(exchange("gzip"));
+        MockServerWebExchange follower = authenticated(exchange("gzip"));
+        CompletableFuture<Void> leading = route(leader, route, json, upstreamResponds.asMono(), upstreamCalls)
+                .toFuture();
+        CompletableFuture<Void> following = route(follower, route, json, upstreamResponds.asMono(), upstreamCalls)
+                .toFuture();
+        upstreamResponds.tryEmitEmpty();
+        CompletableFuture.allOf(leading, following).join();
+        MockServerWebExchange hit = authenticated(exchange("gzip"));
+        route(hit, route, json, Mono.empty(), upstreamCalls).block();
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(hit.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER))
+                .isEqualTo("HIT");
+        for (MockServerWebExchange exchange : List.of(leader, follower, hit)) {
+            HttpHeaders headers = exchange.getResponse().getHeaders();
+            assertThat(headers.getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+            assertThat(headers.getContentLength()).isEqualTo(-1);
+            assertThat(headers.getETag()).isEqualTo("W/\"v1\"");
+            try (InputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(body(exchange)))) {
+                assertThat(new String(gunzip.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(json);
+            }
+        }
+    }
+
+    @Test
+    void negotiatesAcceptEncoding() {
+        assertThat(ResponseCompressionGatewayFilterFactory.acceptsGzip(List.of("gzip, deflate"))).isTrue();
+        assertThat(ResponseCompressionGatewayFilterFactory.acceptsGzip(List.of("br;q=1.0, GZIP;q=0.5"))).isTrue();
+        assertThat(ResponseCompressionGatewayFilterFactory.acceptsGzip(List.of("*"))).isTrue();
+        assertThat(ResponseCompressionGatewayFilterFactory.acceptsGzip(List.of("*, gzip;q=0"))).isFalse();
+        assertThat(ResponseCompressionGatewayFilterFactory.acceptsGzip(List.of("identity"))).isFalse();
+        assertThat(ResponseCompressionGatewayFilterFactory.acceptsGzip(null)).isFalse();
+    }
+
+    // writes the body in chunks, as the Netty routing filter passes them on
+    private static GatewayFilterChain upstream(String body, int chunks, Consumer<HttpHeaders> headers) {
+        return exchange -> {
+            exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            headers.accept(exchange.getResponse().getHeaders());
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            int chunkSize = (bytes.length + chunks - 1) / chunks;
+            Flux<DataBuffer> buffers = Flux.range(0, chunks)
+                    .map(i -> exchange.getResponse().bufferFactory().wrap(Arrays.copyOfRange(bytes, i * chunkSize,
+                            Math.min(bytes.length, (i + 1) * chunkSize))));
+            return exchange.getResponse().writeWith(buffers);
+        };
+    }
+
+    /**
+     * Runs {@code filters} behind {@link ResponseDecorationFilter} and, like
+     * NettyWriteResponseFilter, writes the upstream body once they have completed. The
+     * upstream is only called by requests the filters let through.
+     */
+    private static Mono<Void> route(MockServerWebExchange exchange, List<GatewayFilter> filters, String body,
+                                    Mono<Void> upstreamResponds, AtomicInteger upstreamCalls) {
+        String called = "upstream.called";
+        GatewayFilterChain chain = routed -> {
+            upstreamCalls.incrementAndGet();
+            routed.getAttributes().put(called, true);
+            return upstreamResponds.then(Mono.fromRunnable(() -> {
+                HttpHeaders headers = routed.getResponse().getHeaders();
+                routed.getResponse().setStatusCode(HttpStatus.OK);
+                headers.setContentType(MediaType.APPLICATION_JSON);
+                headers.setContentLength(body.getBytes(StandardCharsets.UTF_8).length);
+                headers.setCacheControl("public, max-age=60");
+                headers.setETag("\"v1\"");
+            }));
+        };
+        for (int i = filters.size() - 1; i >= 0; i--) {
+            GatewayFilter filter = filters.get(i);
+            GatewayFilterChain next = chain;
+            chain = routed -> filter.filter(routed, next);
+        }
+        GatewayFilterChain routeFilters = chain;
+        return new ResponseDecorationFilter().filter(exchange, hooked -> routeFilters.filter(hooked)
+                .then(Mono.defer(() -> hooked.getAttributes().containsKey(called)
+                        ? upstream(body, 3, headers -> {
+                        }).filter(hooked)
+                        : Mono.empty())));
+    }
+
+    private static MockServerWebExchange authenticated(MockServerWebExchange exchange) {
+        exchange.getAttributes().put(JwtPrincipal.EXCHANGE_ATTRIBUTE, new JwtPrincipal("jane.doe@example.com",
+                UUID.randomUUID(), ORGANIZATION, null, null, List.of("SURVEY_READ"), List.of("ROLE_USER"), null));
+        return exchange;
+    }
+
+    private static byte[] body(MockServerWebExchange exchange) {
+        DataBuffer joined = DataBufferUtils.join(exchange.getResponse().getBody()).block();
+        byte[] bytes = new byte[joined.readableByteCount()];
+        joined.read(bytes);
+        DataBufferUtils.release(joined);
+        return bytes;
+    }
+
+    private static MockServerWebExchange exchange(String acceptEncoding) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/surveys/1")
+                .header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, ROUTE);
+        return exchange;
+    }
+}
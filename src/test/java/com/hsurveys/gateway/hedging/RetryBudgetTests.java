@@ -0,0 +1,40 @@
+package com.hsurveys.gateway.hedging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryBudgetTests {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void allowsExtraCallsInProportionToTrafficOnceTheReserveIsSpent() {
+        RetryBudget budget = new RetryBudget(0.1, 0, 5, clock::get);
+        int allowed = 0;
+        for (int call = 0; call < 1000; call++) {
+            budget.deposit();
+            if (budget.tryWithdraw()) {
+                allowed++;
+            }
+        }
+        // the 5 tokens it starts with, plus one in ten calls
+        assertThat(allowed).isBetween(104, 105);
+    }
+
+    @Test
+    void refillsAMinimumRateWithoutTraffic() {
+        RetryBudget budget = new RetryBudget(0.1, 2, 5, clock::get);
+        while (budget.tryWithdraw()) {
+            // drain the initial balance
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        assertThat(budget.tryWithdraw()).isTrue();
+        assertThat(budget.tryWithdraw()).isTrue();
+        assertThat(budget.tryWithdraw()).isFalse();
+    }
+}
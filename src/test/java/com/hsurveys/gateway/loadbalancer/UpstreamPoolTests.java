@@ -0,0 +1,110 @@
+package com.hsurveys.gateway.loadbalancer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamPoolTests {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void avoidsTheSlowerInstance() {
+        UpstreamPool pool = pool(UpstreamPool.Strategy.P2C, "http://a:8080", "http://b:8080");
+        call(instance(pool, "a"), 500, UpstreamInstance.Outcome.SUCCESS);
+        call(instance(pool, "b"), 5, UpstreamInstance.Outcome.SUCCESS);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(pool.choose().getHost()).isEqualTo("b");
+        }
+    }
+
+    @Test
+    void prefersTheInstanceWithFewerCallsInFlight() {
+        UpstreamPool pool = pool(UpstreamPool.Strategy.LEAST_OUTSTANDING,
+                "http://a:8080", "http://b:8080", "http://c:8080");
+        instance(pool, "a").start();
+        instance(pool, "c").start();
+
+        assertThat(pool.choose().getHost()).isEqualTo("b");
+        assertThat(pool.choose(instance(pool, "b")).getHost()).isIn("a", "c");
+    }
+
+    @Test
+    void ejectsAFailingInstanceAndTakesItBackLater() {
+        UpstreamPool pool = pool(UpstreamPool.Strategy.P2C, "http://a:8080", "http://b:8080");
+        UpstreamInstance a = instance(pool, "a");
+        for (int i = 0; i < 3; i++) {
+            call(a, 1, UpstreamInstance.Outcome.FAILURE);
+        }
+
+        assertThat(a.isEjected()).isTrue();
+        for (int i = 0; i < 20; i++) {
+            assertThat(pool.choose().getHost()).isEqualTo("b");
+        }
+        assertThat(meterRegistry.get("gateway.upstream.ejections").tag("instance", "a:8080").counter().count())
+                .isEqualTo(1);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertThat(pool.choose(instance(pool, "b"))).isSameAs(a);
+        assertThat(a.isEjected()).isFalse();
+    }
+
+    @Test
+    void neverEjectsTheLastInstance() {
+        UpstreamPool pool = pool(UpstreamPool.Strategy.P2C, "http://a:8080", "http://b:8080");
+        for (String host : List.of("a", "b")) {
+            for (int i = 0; i < 3; i++) {
+                call(instance(pool, host), 1, UpstreamInstance.Outcome.FAILURE);
+            }
+        }
+
+        assertThat(instance(pool, "a").isEjected()).isTrue();
+        assertThat(instance(pool, "b").isEjected()).isFalse();
+    }
+
+    @Test
+    void keepsTheStateOfInstancesThatStayListed() {
+        UpstreamPool pool = pool(UpstreamPool.Strategy.P2C, "http://a:8080", "http://b:8080");
+        UpstreamInstance a = instance(pool, "a");
+        a.start();
+
+        pool.setInstances(List.of(URI.create("http://a:8080"), URI.create("http://c")));
+
+        assertThat(instance(pool, "a")).isSameAs(a);
+        assertThat(a.getInFlight()).isEqualTo(1);
+        assertThat(instance(pool, "c").getPort()).isEqualTo(80);
+        assertThat(meterRegistry.find("gateway.upstream.in_flight").tag("instance", "b:8080").gauge()).isNull();
+    }
+
+    private UpstreamPool pool(UpstreamPool.Strategy strategy, String... instances) {
+        UpstreamProperties.Outlier outlier = new UpstreamProperties.Outlier();
+        outlier.setConsecutiveFailures(3);
+        outlier.setBaseEjectionTime(Duration.ofSeconds(30));
+        UpstreamPool pool = new UpstreamPool("survey-service", strategy, Duration.ofSeconds(10).toNanos(), outlier,
+                clock::get, meterRegistry);
+        pool.setInstances(List.of(instances).stream().map(URI::create).toList());
+        return pool;
+    }
+
+    private void call(UpstreamInstance instance, long millis, UpstreamInstance.Outcome outcome) {
+        long start = instance.start();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        instance.finish(start, outcome);
+    }
+
+    private static UpstreamInstance instance(UpstreamPool pool, String host) {
+        return pool.getInstances().stream()
+                .filter(instance -> instance.getHost().equals(host))
+                .findFirst()
+                .orElseThrow();
+    }
+}
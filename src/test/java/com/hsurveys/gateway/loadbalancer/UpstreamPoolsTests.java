@@ -0,0 +1,114 @@
+package com.hsurveys.gateway.loadbalancer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class UpstreamPoolsTests {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UpstreamProperties properties = new UpstreamProperties();
+
+    @Test
+    void followsChangesOfTheFile() throws IOException {
+        Path file = write("survey-service=http://a:8080, http://b:8080\n");
+        UpstreamPools pools = new UpstreamPools(properties(file), meterRegistry);
+        assertThat(hosts(pools, "survey-service")).containsExactly("a", "b");
+
+        write("survey-service=http://c:8080\nuser-service=http://d:8080\n");
+        pools.reload();
+
+        assertThat(hosts(pools, "survey-service")).containsExactly("c");
+        assertThat(hosts(pools, "user-service")).containsExactly("d");
+    }
+
+    @Test
+    void keepsTheInstancesWhenTheFileIsBroken() throws IOException {
+        Path file = write("survey-service=http://a:8080\n");
+        UpstreamPools pools = new UpstreamPools(properties(file), meterRegistry);
+
+        write("survey-service=http://a:8080, /no-host\n");
+        pools.reload();
+        assertThat(hosts(pools, "survey-service")).containsExactly("a");
+
+        Files.delete(file);
+        pools.reload();
+        assertThat(hosts(pools, "survey-service")).containsExactly("a");
+    }
+
+    @Test
+    void fallsBackToTheConfiguredInstancesOfAServiceLeavingTheFile() throws IOException {
+        UpstreamProperties.Service configured = new UpstreamProperties.Service();
+        configured.setInstances(List.of(URI.create("http://configured:8080")));
+        properties.getServices().put("survey-service", configured);
+        Path file = write("survey-service=http://a:8080\n");
+        UpstreamPools pools = new UpstreamPools(properties(file), meterRegistry);
+        assertThat(hosts(pools, "survey-service")).containsExactly("a");
+
+        write("user-service=http://d:8080\n");
+        pools.reload();
+
+        assertThat(hosts(pools, "survey-service")).containsExactly("configured");
+    }
+
+    @Test
+    void keepsPollingAfterAFailedReload() throws IOException {
+        Path file = write("survey-service=http://a:8080\n");
+        properties(file).setRefreshInterval(Duration.ofMillis(20));
+        AtomicInteger reloads = new AtomicInteger();
+        UpstreamPools pools = new UpstreamPools(properties, meterRegistry) {
+            @Override
+            synchronized void reload() {
+                if (reloads.incrementAndGet() == 2) {
+                    throw new IllegalStateException("first poll fails");
+                }
+                super.reload();
+            }
+        };
+        pools.start();
+        try {
+            await().atMost(Duration.ofSeconds(2)).until(() -> reloads.get() > 2);
+            write("survey-service=http://b:8080\n");
+
+            await().atMost(Duration.ofSeconds(2))
+                    .untilAsserted(() -> assertThat(hosts(pools, "survey-service")).containsExactly("b"));
+        } finally {
+            pools.stop();
+        }
+        assertThat(pools.isRunning()).isFalse();
+    }
+
+    private UpstreamProperties properties(Path file) {
+        properties.setFile(file.toString());
+        return properties;
+    }
+
+    // a later modification time each write, as two writes may fall in one tick of the file system's clock
+    private Path write(String content) throws IOException {
+        Path file = directory.resolve("upstreams.properties");
+        FileTime previous = Files.exists(file) ? Files.getLastModifiedTime(file) : FileTime.from(Instant.EPOCH);
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(previous.toInstant().plusSeconds(1)));
+        return file;
+    }
+
+    private static List<String> hosts(UpstreamPools pools, String serviceId) {
+        return pools.pool(serviceId).getInstances().stream().map(UpstreamInstance::getHost).toList();
+    }
+}
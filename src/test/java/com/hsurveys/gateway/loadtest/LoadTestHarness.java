@@ -0,0 +1,179 @@
+package com.hsurveys.gateway.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hsurveys.gateway.GatewayApplication;
+import com.hsurveys.gateway.support.TestTokens;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End-to-end load test on one box: starts a local Redis, stub upstreams for the three
+ * services and the gateway itself, drives open-model traffic through it and writes
+ * {@code target/loadtest/report.json}. Run with {@code mvn -Ploadtest test}.
+ * <p>
+ * Gateway, stubs and load generator share this JVM, so the heap and GC figures cover all
+ * of them; compare runs of the same harness rather than reading them as absolute numbers.
+ */
+public final class LoadTestHarness {
+
+    private static final List<OpenModelLoad.Target> TARGETS = List.of(
+            new OpenModelLoad.Target("user-service", "/api/users/{id}"),
+            new OpenModelLoad.Target("organization-service", "/api/organizations/{id}"),
+            new OpenModelLoad.Target("survey-service", "/api/surveys/{id}/questions"));
+
+    private LoadTestHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        Path outputDirectory = Path.of(System.getProperty("loadtest.output", "target/loadtest"));
+        Files.createDirectories(outputDirectory);
+
+        int redisPort = freePort();
+        RedisServer redis = RedisServer.newRedisServer().port(redisPort).bind("127.0.0.1").build();
+        redis.start();
+        List<StubUpstream> upstreams = new ArrayList<>();
+        ConfigurableApplicationContext gateway = null;
+        OpenModelLoad load = null;
+        try {
+            settings.upstreams().forEach((service, upstream) -> upstreams.add(new StubUpstream(service, upstream)));
+            gateway = startGateway(upstreams, redisPort, outputDirectory);
+            int port = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+
+            Duration tokenTtl = settings.warmup().plus(settings.duration()).plusMinutes(5);
+            TokenPool tokens = new TokenPool(settings.users(), settings.tokenMix(), tokenTtl);
+            load = new OpenModelLoad("http://127.0.0.1:" + port, TARGETS, tokens, settings.maxConnections());
+
+            JvmSnapshot before = JvmSnapshot.take();
+            Instant startedAt = Instant.now();
+            System.out.printf("Load test: %d req/s for %s after %s warm-up%n",
+                    settings.rate(), settings.duration(), settings.warmup());
+            load.run(settings.rate(), settings.warmup(), settings.duration());
+            JvmSnapshot after = JvmSnapshot.take();
+
+            Path report = outputDirectory.resolve("report.json");
+            writeReport(report, settings, startedAt, load, before, after);
+            System.out.println("Load test report written to " + report.toAbsolutePath());
+        } finally {
+            if (load != null) {
+                load.close();
+            }
+            if (gateway != null) {
+                gateway.close();
+            }
+            upstreams.forEach(StubUpstream::close);
+            redis.stop();
+        }
+        System.exit(0);
+    }
+
+    private static ConfigurableApplicationContext startGateway(List<StubUpstream> upstreams, int redisPort,
+                                                               Path outputDirectory) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", 0);
+        properties.put("redis.host", "127.0.0.1");
+        properties.put("redis.port", redisPort);
+        properties.put("jwt.secret", TestTokens.SECRET);
+        properties.put("jwt.expiration", TestTokens.EXPIRATION);
+        properties.put("access-log.destination", "file");
+        properties.put("access-log.file.path", outputDirectory.resolve("access.log").toString());
+        // as the pool of the lb:// route, so the load balancer is part of what is measured
+        for (StubUpstream upstream : upstreams) {
+            properties.put(upstream.service().toUpperCase().replace('-', '_') + "_INSTANCES", upstream.url());
+        }
+        // passed as arguments: default properties would lose against application.yml
+        String[] args = properties.entrySet().stream()
+                .map(entry -> "--" + entry.getKey() + "=" + entry.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(GatewayApplication.class).run(args);
+    }
+
+    private static void writeReport(Path report, LoadTestSettings settings, Instant startedAt, OpenModelLoad load,
+                                    JvmSnapshot before, JvmSnapshot after) throws IOException {
+        double seconds = settings.duration().toMillis() / 1000.0;
+        Map<String, Object> routes = new LinkedHashMap<>();
+        load.stats().forEach((routeId, stats) -> {
+            Histogram latency = stats.latency;
+            Map<String, Object> route = new LinkedHashMap<>();
+            route.put("requests", latency.getTotalCount());
+            route.put("throughput_rps", latency.getTotalCount() / seconds);
+            route.put("status", OpenModelLoad.RouteStats.counts(stats.statuses));
+            Map<String, Object> byToken = new LinkedHashMap<>();
+            stats.statusesByToken.forEach((kind, statuses) ->
+                    byToken.put(kind.name().toLowerCase(), OpenModelLoad.RouteStats.counts(statuses)));
+            route.put("status_by_token", byToken);
+            Map<String, Object> percentiles = new LinkedHashMap<>();
+            percentiles.put("p50", millis(latency.getValueAtPercentile(50)));
+            percentiles.put("p99", millis(latency.getValueAtPercentile(99)));
+            percentiles.put("p999", millis(latency.getValueAtPercentile(99.9)));
+            percentiles.put("max", millis(latency.getMaxValue()));
+            percentiles.put("mean", latency.getMean() / 1_000_000.0);
+            route.put("latency_ms", percentiles);
+            routes.put(routeId, route);
+        });
+
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("started_at", startedAt.toString());
+        document.put("settings", settings.toReport());
+        document.put("routes", routes);
+        document.put("jvm", after.since(before));
+        new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(report.toFile(), document);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private record JvmSnapshot(long heapUsed, long heapCommitted, long heapMax, Map<String, long[]> collectors) {
+
+        static JvmSnapshot take() {
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            Map<String, long[]> collectors = new LinkedHashMap<>();
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collectors.put(collector.getName(), new long[] {collector.getCollectionCount(), collector.getCollectionTime()});
+            }
+            return new JvmSnapshot(memory.getHeapMemoryUsage().getUsed(), memory.getHeapMemoryUsage().getCommitted(),
+                    memory.getHeapMemoryUsage().getMax(), collectors);
+        }
+
+        Map<String, Object> since(JvmSnapshot before) {
+            Map<String, Object> jvm = new LinkedHashMap<>();
+            jvm.put("heap_used_mb", heapUsed / (1024.0 * 1024));
+            jvm.put("heap_committed_mb", heapCommitted / (1024.0 * 1024));
+            jvm.put("heap_max_mb", heapMax / (1024.0 * 1024));
+            Map<String, Object> gc = new LinkedHashMap<>();
+            collectors.forEach((name, counts) -> {
+                long[] previous = before.collectors.getOrDefault(name, new long[2]);
+                gc.put(name, Map.of("collections", counts[0] - previous[0], "time_ms", counts[1] - previous[1]));
+            });
+            jvm.put("gc", gc);
+            return jvm;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.hsurveys.gateway.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load test parameters, read from {@code loadtest.*} system properties. Upstream settings
+ * can be overridden per service, e.g. {@code -Dloadtest.upstream.survey-service.error-rate=0.2}.
+ */
+record LoadTestSettings(int rate,
+                        Duration warmup,
+                        Duration duration,
+                        int users,
+                        Map<TokenKind, Integer> tokenMix,
+                        int maxConnections,
+                        Map<String, Upstream> upstreams) {
+
+    static final String[] SERVICES = {"user-service", "organization-service", "survey-service"};
+
+    enum TokenKind { VALID, EXPIRED, FORGED }
+
+    record Upstream(Duration latency, Duration jitter, double errorRate, DataSize payload) {
+    }
+
+    static LoadTestSettings fromSystemProperties() {
+        Map<String, Upstream> upstreams = new LinkedHashMap<>();
+        for (String service : SERVICES) {
+            upstreams.put(service, new Upstream(
+                    duration(upstreamKey(service, "latency"), "20ms"),
+                    duration(upstreamKey(service, "jitter"), "10ms"),
+                    Double.parseDouble(property(upstreamKey(service, "error-rate"), "0.01")),
+                    DataSize.parse(property(upstreamKey(service, "payload"), "2KB"))));
+        }
+        return new LoadTestSettings(
+                Integer.parseInt(property("loadtest.rate", "500")),
+                duration("loadtest.warmup", "10s"),
+                duration("loadtest.duration", "60s"),
+                Integer.parseInt(property("loadtest.users", "1000")),
+                tokenMix(property("loadtest.token-mix", "valid:90,expired:5,forged:5")),
+                Integer.parseInt(property("loadtest.max-connections", "1000")),
+                upstreams);
+    }
+
+    Map<String, Object> toReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("rate", rate);
+        report.put("warmup", warmup.toString());
+        report.put("duration", duration.toString());
+        report.put("users", users);
+        report.put("token_mix", tokenMix);
+        report.put("max_connections", maxConnections);
+        Map<String, Object> services = new LinkedHashMap<>();
+        upstreams.forEach((service, upstream) -> services.put(service, Map.of(
+                "latency", upstream.latency().toString(),
+                "jitter", upstream.jitter().toString(),
+                "error_rate", upstream.errorRate(),
+                "payload_bytes", upstream.payload().toBytes())));
+        report.put("upstreams", services);
+        return report;
+    }
+
+    private static String upstreamKey(String service, String name) {
+        String specific = "loadtest.upstream." + service + "." + name;
+        return System.getProperty(specific) != null ? specific : "loadtest.upstream." + name;
+    }
+
+    private static Map<TokenKind, Integer> tokenMix(String mix) {
+        Map<TokenKind, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            weights.put(TokenKind.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    private static Duration duration(String key, String defaultValue) {
+        return DurationStyle.detectAndParse(property(key, defaultValue));
+    }
+
+    private static String property(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        return value != null && !value.isBlank() ? value : defaultValue;
+    }
+}
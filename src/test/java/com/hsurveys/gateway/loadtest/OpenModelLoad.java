@@ -0,0 +1,123 @@
+package com.hsurveys.gateway.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model traffic: requests start at a fixed rate whether or not earlier ones have
+ * completed, like independent clients do. Latency is measured from each request's
+ * intended start, so a stalled gateway shows up in the percentiles instead of silently
+ * slowing the load down (coordinated omission).
+ */
+final class OpenModelLoad {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final HttpClient client;
+    private final ConnectionProvider connections;
+    private final List<Target> targets;
+    private final TokenPool tokens;
+    private final Map<String, RouteStats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    record Target(String routeId, String pathTemplate) {
+    }
+
+    OpenModelLoad(String baseUrl, List<Target> targets, TokenPool tokens, int maxConnections) {
+        this.connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.client = HttpClient.create(connections).baseUrl(baseUrl);
+        this.targets = targets;
+        this.tokens = tokens;
+        for (Target target : targets) {
+            stats.put(target.routeId(), new RouteStats());
+        }
+    }
+
+    /**
+     * Sends {@code rate} requests per second for {@code warmup + duration}, recording only
+     * requests intended to start after the warm-up, then waits for stragglers.
+     */
+    void run(int rate, Duration warmup, Duration duration) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        for (long intended = start; intended < end; intended += interval) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(intended, intended >= measureFrom);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private void send(long intended, boolean record) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Target target = targets.get(random.nextInt(targets.size()));
+        TokenPool.Token token = tokens.next(random);
+        String path = target.pathTemplate().replace("{id}", Long.toString(random.nextLong(1, 100_000)));
+        inFlight.incrementAndGet();
+        client.headers(headers -> headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + token.value()))
+                .get()
+                .uri(path)
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                .onErrorReturn(0)
+                .subscribe(status -> {
+                    inFlight.decrementAndGet();
+                    if (record) {
+                        stats.get(target.routeId()).record(token.kind(), status, System.nanoTime() - intended);
+                    }
+                });
+    }
+
+    Map<String, RouteStats> stats() {
+        return stats;
+    }
+
+    void close() {
+        connections.disposeLater().block(Duration.ofSeconds(10));
+    }
+
+    static final class RouteStats {
+
+        final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        final Map<LoadTestSettings.TokenKind, Map<Integer, LongAdder>> statusesByToken = new ConcurrentHashMap<>();
+
+        void record(LoadTestSettings.TokenKind kind, int status, long nanos) {
+            latency.recordValue(Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            statusesByToken.computeIfAbsent(kind, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+
+        static Map<String, Long> counts(Map<Integer, LongAdder> statuses) {
+            Map<String, Long> counts = new TreeMap<>();
+            // status 0 means the request failed without a response
+            statuses.forEach((status, count) -> counts.put(status == 0 ? "error" : status.toString(), count.sum()));
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.hsurveys.gateway.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hsurveys.gateway.support.TestTokens;
+import org.springframework.util.unit.DataSize;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Startup cost of each way to run the gateway: starts it as a fresh process against a
+ * local Redis and stub upstreams, and measures the time from launch to the first routed
+ * request answered with a 200, and the process's resident memory at that point. Each mode
+ * runs {@code startup.runs} times; the report in {@code target/startup-benchmark} has every
+ * run and the median. Run with {@code mvn -Pstartup package} then
+ * {@code mvn -Pstartup-benchmark test}.
+ * <p>
+ * Modes: {@code jit} (the plain jar), {@code aot} (with the AOT-generated context),
+ * {@code cds} (AOT plus the class data archive of the training run) and {@code native}
+ * (the executable of {@code mvn -Pnative native:compile}). RSS is read from
+ * {@code /proc}, so it is only reported on Linux.
+ */
+public final class StartupBenchmark {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(10);
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+    private static final String PROBE_PATH = "/api/surveys/1";
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> modes = Arrays.asList(System.getProperty("startup.modes", "jit,aot,cds").split(","));
+        int runs = Integer.parseInt(System.getProperty("startup.runs", "5"));
+        List<String> jvmArgs = Arrays.stream(System.getProperty("startup.jvm.args", "").trim().split("\\s+"))
+                .filter(arg -> !arg.isEmpty())
+                .toList();
+        Path jar = Path.of(System.getProperty("startup.jar", "target/startup/gateway-0.0.1-SNAPSHOT-app.jar"));
+        Path nativeExecutable = Path.of(System.getProperty("startup.native", "target/gateway"));
+        Path outputDirectory = Path.of(System.getProperty("startup.output", "target/startup-benchmark"));
+        Files.createDirectories(outputDirectory);
+
+        int redisPort = freePort();
+        RedisServer redis = RedisServer.newRedisServer().port(redisPort).bind("127.0.0.1").build();
+        redis.start();
+        List<StubUpstream> upstreams = new ArrayList<>();
+        try {
+            LoadTestSettings.Upstream instant = new LoadTestSettings.Upstream(Duration.ZERO, Duration.ZERO, 0,
+                    DataSize.ofKilobytes(2));
+            for (String service : LoadTestSettings.SERVICES) {
+                upstreams.add(new StubUpstream(service, instant));
+            }
+            HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+            String token = TestTokens.valid(TestTokens.USER_ID, STARTUP_TIMEOUT.multipliedBy((long) modes.size() * runs));
+
+            Map<String, Object> results = new LinkedHashMap<>();
+            for (String mode : modes) {
+                List<String> command = command(mode.trim(), jar, nativeExecutable, jvmArgs);
+                List<Run> modeRuns = new ArrayList<>();
+                for (int i = 1; i <= runs; i++) {
+                    Path log = outputDirectory.resolve(mode.trim() + "-" + i + ".log");
+                    Run run = measure(command, upstreams, redisPort, http, token, log);
+                    System.out.printf("%-6s run %d: first routed request after %d ms, RSS %s%n", mode, i,
+                            run.firstRequestMillis(), run.rssMegabytes() >= 0 ? run.rssMegabytes() + " MB" : "n/a");
+                    modeRuns.add(run);
+                }
+                results.put(mode.trim(), summary(command, modeRuns));
+            }
+
+            Path report = outputDirectory.resolve("report.json");
+            Map<String, Object> document = new LinkedHashMap<>();
+            document.put("started_at", Instant.now().toString());
+            document.put("runs_per_mode", runs);
+            document.put("jvm_args", jvmArgs);
+            document.put("modes", results);
+            new ObjectMapper()
+                    .enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(report.toFile(), document);
+            System.out.println("Startup report written to " + report.toAbsolutePath());
+        } finally {
+            upstreams.forEach(StubUpstream::close);
+            redis.stop();
+        }
+        System.exit(0);
+    }
+
+    private static List<String> command(String mode, Path jar, Path nativeExecutable, List<String> jvmArgs) {
+        List<String> command = new ArrayList<>();
+        if (mode.equals("native")) {
+            requireFile(nativeExecutable, "mvn -Pnative native:compile -DskipTests");
+            command.add(nativeExecutable.toAbsolutePath().toString());
+            return command;
+        }
+        requireFile(jar, "mvn -Pstartup package");
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        switch (mode) {
+            case "jit" -> {
+            }
+            case "aot" -> command.add("-Dspring.aot.enabled=true");
+            case "cds" -> {
+                Path archive = jar.resolveSibling("application.jsa");
+                requireFile(archive, "mvn -Pstartup package");
+                command.add("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+                command.add("-Dspring.aot.enabled=true");
+            }
+            default -> throw new IllegalArgumentException("Unknown startup mode " + mode
+                    + ", expected jit, aot, cds or native");
+        }
+        command.add("-jar");
+        command.add(jar.toAbsolutePath().toString());
+        return command;
+    }
+
+    private static Run measure(List<String> command, List<StubUpstream> upstreams, int redisPort, HttpClient http,
+                               String token, Path log) throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> arguments = new ArrayList<>(command);
+        arguments.add("--server.port=" + port);
+        arguments.add("--redis.host=127.0.0.1");
+        arguments.add("--redis.port=" + redisPort);
+        arguments.add("--jwt.secret=" + TestTokens.SECRET);
+        arguments.add("--access-log.enabled=false");
+        for (StubUpstream upstream : upstreams) {
+            arguments.add("--" + upstream.service().toUpperCase().replace('-', '_') + "_INSTANCES=" + upstream.url());
+        }
+        HttpRequest probe = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + PROBE_PATH))
+                .header("Authorization", "Bearer " + token)
+                .timeout(PROBE_TIMEOUT)
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(arguments)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            long deadline = start + STARTUP_TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Gateway exited with " + process.exitValue() + ", see " + log);
+                }
+                try {
+                    // the request timeout stops at the response headers; a body that never comes must not hang the run
+                    HttpResponse<Void> response = http.sendAsync(probe, HttpResponse.BodyHandlers.discarding())
+                            .get(PROBE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                    if (response.statusCode() == 200) {
+                        long elapsed = System.nanoTime() - start;
+                        return new Run(TimeUnit.NANOSECONDS.toMillis(elapsed), rssMegabytes(process.pid()));
+                    }
+                } catch (ExecutionException | TimeoutException e) {
+                    // not listening yet, or the connection was dropped while starting
+                }
+                Thread.sleep(POLL_INTERVAL.toMillis());
+            }
+            throw new IllegalStateException("No routed request succeeded within " + STARTUP_TIMEOUT + ", see " + log);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static long rssMegabytes(long pid) {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    long kilobytes = Long.parseLong(line.substring("VmRSS:".length()).replace("kB", "").trim());
+                    return kilobytes / 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // not Linux, or the process is gone
+        }
+        return -1;
+    }
+
+    private static Map<String, Object> summary(List<String> command, List<Run> runs) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("command", String.join(" ", command));
+        summary.put("first_routed_request_ms", Map.of(
+                "median", median(runs.stream().mapToLong(Run::firstRequestMillis).toArray()),
+                "runs", runs.stream().map(Run::firstRequestMillis).toList()));
+        summary.put("rss_mb", Map.of(
+                "median", median(runs.stream().mapToLong(Run::rssMegabytes).toArray()),
+                "runs", runs.stream().map(Run::rssMegabytes).toList()));
+        return summary;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void requireFile(Path file, String buildCommand) {
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalStateException(file + " not found, build it first with " + buildCommand);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private record Run(long firstRequestMillis, long rssMegabytes) {
+    }
+}
@@ -0,0 +1,70 @@
+package com.hsurveys.gateway.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-process stand-in for one backend service: answers every request with a JSON body of
+ * the configured size after the configured latency, failing a share of them with a 500.
+ */
+final class StubUpstream implements AutoCloseable {
+
+    private final String service;
+    private final DisposableServer server;
+
+    StubUpstream(String service, LoadTestSettings.Upstream settings) {
+        this.service = service;
+        byte[] body = body(service, (int) settings.payload().toBytes());
+        byte[] error = ("{\"error\":\"stubbed failure\",\"service\":\"" + service + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        long latencyNanos = settings.latency().toNanos();
+        long jitterNanos = settings.jitter().toNanos();
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle((request, response) -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long delay = latencyNanos + (jitterNanos > 0 ? random.nextLong(-jitterNanos, jitterNanos + 1) : 0);
+                    boolean fail = random.nextDouble() < settings.errorRate();
+                    byte[] payload = fail ? error : body;
+                    return request.receive().then()
+                            .then(Mono.delay(Duration.ofNanos(Math.max(0, delay))))
+                            .then(response.status(fail ? HttpResponseStatus.INTERNAL_SERVER_ERROR : HttpResponseStatus.OK)
+                                    .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                                    .header(HttpHeaderNames.CONTENT_LENGTH, Integer.toString(payload.length))
+                                    .sendByteArray(Mono.just(payload))
+                                    .then());
+                })
+                .bindNow();
+    }
+
+    private static byte[] body(String service, int size) {
+        String prefix = "{\"service\":\"" + service + "\",\"data\":\"";
+        String suffix = "\"}";
+        int padding = Math.max(0, size - prefix.length() - suffix.length());
+        char[] data = new char[padding];
+        Arrays.fill(data, 'x');
+        return (prefix + new String(data) + suffix).getBytes(StandardCharsets.UTF_8);
+    }
+
+    String service() {
+        return service;
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
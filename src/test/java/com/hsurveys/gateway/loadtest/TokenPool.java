@@ -0,0 +1,43 @@
+package com.hsurveys.gateway.loadtest;
+
+import com.hsurveys.gateway.support.TestTokens;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tokens for the load: one valid token per simulated user, so rate limits apply per user,
+ * plus expired and forged tokens drawn according to the configured mix.
+ */
+final class TokenPool {
+
+    record Token(LoadTestSettings.TokenKind kind, String value) {
+    }
+
+    private final Token[] valid;
+    private final Token expired = new Token(LoadTestSettings.TokenKind.EXPIRED, TestTokens.expired());
+    private final Token forged = new Token(LoadTestSettings.TokenKind.FORGED, TestTokens.forged());
+    private final int validWeight;
+    private final int expiredWeight;
+    private final int totalWeight;
+
+    TokenPool(int users, Map<LoadTestSettings.TokenKind, Integer> mix, Duration ttl) {
+        this.valid = new Token[users];
+        for (int i = 0; i < users; i++) {
+            valid[i] = new Token(LoadTestSettings.TokenKind.VALID, TestTokens.valid(UUID.randomUUID(), ttl));
+        }
+        this.validWeight = mix.getOrDefault(LoadTestSettings.TokenKind.VALID, 0);
+        this.expiredWeight = mix.getOrDefault(LoadTestSettings.TokenKind.EXPIRED, 0);
+        this.totalWeight = validWeight + expiredWeight + mix.getOrDefault(LoadTestSettings.TokenKind.FORGED, 0);
+    }
+
+    Token next(ThreadLocalRandom random) {
+        int pick = random.nextInt(totalWeight);
+        if (pick < validWeight) {
+            return valid[random.nextInt(valid.length)];
+        }
+        return pick < validWeight + expiredWeight ? expired : forged;
+    }
+}
@@ -0,0 +1,96 @@
+package com.hsurveys.gateway.logging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessLogTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void concurrentProducersAreDrainedInFull() throws Exception {
+        AccessLogRingBuffer buffer = new AccessLogRingBuffer(1 << 14);
+        int threads = 4;
+        int perThread = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    buffer.offer(i, "GET", "route-" + thread, 200, i, "req", null, -1);
+                }
+                done.countDown();
+            });
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        executor.shutdown();
+
+        List<String> routes = new ArrayList<>();
+        while (buffer.drain(event -> routes.add(event.routeId), 100) > 0) {
+            // keep draining
+        }
+        assertThat(routes).hasSize(threads * perThread);
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void fullBufferDropsAndCounts() {
+        AccessLog accessLog = new AccessLog(meterRegistry, true, new CollectingSink(), 4, 16,
+                Duration.ofMillis(10), 1.0, AccessLog.OverflowPolicy.DROP, Duration.ZERO);
+
+        for (int i = 0; i < 6; i++) {
+            accessLog.record("GET", "user-service", 200, 1000, "req-" + i, null, 10);
+        }
+
+        assertThat(meterRegistry.get("gateway.access_log.events").tag("result", "dropped").counter().count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void writerFormatsSampledEventsAsJsonLines() {
+        CollectingSink sink = new CollectingSink();
+        AccessLog accessLog = new AccessLog(meterRegistry, true, sink, 64, 16,
+                Duration.ofMillis(10), 0.0, AccessLog.OverflowPolicy.DROP, Duration.ZERO);
+        accessLog.start();
+
+        accessLog.record("GET", "user-service", 200, 1000, "sampled-out", null, 10);
+        accessLog.record("POST", "survey-service", 503, 2500, "req-\"1\"", "user-1", -1);
+        accessLog.stop();
+
+        assertThat(sink.lines.toString())
+                .doesNotContain("sampled-out")
+                .contains("\"method\":\"POST\",\"route\":\"survey-service\",\"status\":503,\"latency_ns\":2500,"
+                        + "\"request_id\":\"req-\\\"1\\\"\",\"principal\":\"user-1\",\"bytes\":-1}\n");
+        assertThat(meterRegistry.get("gateway.access_log.events").tag("result", "sampled_out").counter().count())
+                .isEqualTo(1);
+    }
+
+    private static final class CollectingSink implements AccessLogSink {
+
+        private final StringBuilder lines = new StringBuilder();
+
+        @Override
+        public void write(CharSequence batch) {
+            lines.append(batch);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
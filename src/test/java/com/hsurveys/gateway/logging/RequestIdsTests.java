@@ -0,0 +1,50 @@
+package com.hsurveys.gateway.logging;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestIdsTests {
+
+    @Test
+    void idsAreUniqueAndOrderedByTime() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(RequestIds.next());
+        }
+        assertThat(ids).hasSize(10_000).allMatch(id -> id.length() == 26 && RequestIds.isAcceptable(id));
+
+        String earlier = RequestIds.next(1_700_000_000_000L, ThreadLocalRandom.current());
+        String later = RequestIds.next(1_700_000_000_001L, ThreadLocalRandom.current());
+        assertThat(earlier.substring(0, 10)).isLessThan(later.substring(0, 10));
+    }
+
+    @Test
+    void unsafeClientIdsAreNotAccepted() {
+        assertThat(RequestIds.isAcceptable("c0ffee-42.retry:1")).isTrue();
+        assertThat(RequestIds.isAcceptable("")).isFalse();
+        assertThat(RequestIds.isAcceptable("id\r\nX-Injected: 1")).isFalse();
+        assertThat(RequestIds.isAcceptable("a".repeat(RequestIds.MAX_LENGTH + 1))).isFalse();
+    }
+
+    @Test
+    void requestIdReachesMdcOnlyWhileLoggingOnAnotherThread() {
+        String[] seen = new String[1];
+        Mono.deferContextual(context -> Mono.fromRunnable(() ->
+                        RequestCorrelation.log(context, () -> seen[0] = MDC.get(RequestCorrelation.REQUEST_ID_KEY))))
+                .subscribeOn(Schedulers.parallel())
+                .contextWrite(Context.of(RequestCorrelation.REQUEST_ID_KEY, "req-1"))
+                .block();
+
+        assertThat(seen[0]).isEqualTo("req-1");
+        assertThat(MDC.get(RequestCorrelation.REQUEST_ID_KEY)).isNull();
+    }
+}
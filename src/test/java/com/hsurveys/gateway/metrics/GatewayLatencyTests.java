@@ -0,0 +1,91 @@
+package com.hsurveys.gateway.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class GatewayLatencyTests {
+
+    private final SimpleMeterRegistry meterRegistry = registry();
+    private final GatewayLatency gatewayLatency = new GatewayLatency(meterRegistry);
+    private final LatencyEndpoint endpoint = new LatencyEndpoint(gatewayLatency);
+
+    @Test
+    void recordsEachRouteAndPhaseInItsOwnTimer() {
+        gatewayLatency.record("surveys", LatencyPhase.UPSTREAM, millis(40));
+        gatewayLatency.record("surveys", LatencyPhase.UPSTREAM, millis(60));
+        gatewayLatency.record("surveys", LatencyPhase.TOTAL, millis(70));
+        gatewayLatency.record("users", LatencyPhase.AUTHENTICATION, millis(2));
+        gatewayLatency.record(null, LatencyPhase.TOTAL, millis(5));
+
+        assertThat(timerCount("surveys", "upstream")).isEqualTo(2);
+        assertThat(timerCount("surveys", "total")).isEqualTo(1);
+        assertThat(timerCount("users", "authentication")).isEqualTo(1);
+        assertThat(meterRegistry.find(GatewayLatency.METER_NAME).tag("route", "users").tag("phase", "total")
+                .timer().count()).isZero();
+        assertThat(meterRegistry.find(GatewayLatency.METER_NAME).timers())
+                .allMatch(timer -> timer.getId().getTag("route") != null);
+    }
+
+    @Test
+    void endpointReportsRecordedPhasesOfEveryRouteInMilliseconds() {
+        gatewayLatency.record("surveys", LatencyPhase.UPSTREAM, millis(40));
+        gatewayLatency.record("surveys", LatencyPhase.UPSTREAM, millis(60));
+        gatewayLatency.record("users", LatencyPhase.AUTHENTICATION, millis(2));
+
+        Map<String, Map<String, Map<String, Object>>> routes = endpoint.routes();
+
+        assertThat(routes).containsOnlyKeys("surveys", "users");
+        // phases without a sample are left out
+        assertThat(routes.get("surveys")).containsOnlyKeys("upstream");
+        Map<String, Object> upstream = routes.get("surveys").get("upstream");
+        assertThat(upstream).containsOnlyKeys("count", "mean", "max", "p50", "p99", "p999");
+        assertThat(upstream.get("count")).isEqualTo(2L);
+        assertThat((double) upstream.get("mean")).isCloseTo(50, within(0.001));
+        assertThat((double) upstream.get("max")).isCloseTo(60, within(0.001));
+        assertThat((double) upstream.get("p99")).isCloseTo(60, within(5.0));
+    }
+
+    @Test
+    void endpointReportsOneRouteOrNothingForAnUnknownOne() {
+        gatewayLatency.record("surveys", LatencyPhase.TOTAL, millis(10));
+
+        assertThat(endpoint.route("surveys")).containsOnlyKeys("total");
+        assertThat(endpoint.route("surveys").get("total").get("count")).isEqualTo(1L);
+        assertThat(endpoint.route("unknown")).isNull();
+    }
+
+    private long timerCount(String route, String phase) {
+        return meterRegistry.get(GatewayLatency.METER_NAME).tag("route", route).tag("phase", phase).timer().count();
+    }
+
+    private static long millis(long millis) {
+        return Duration.ofMillis(millis).toNanos();
+    }
+
+    private static SimpleMeterRegistry registry() {
+        // what management.metrics.distribution.percentiles configures in application.yml
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!id.getName().equals(GatewayLatency.METER_NAME)) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentiles(0.5, 0.99, 0.999)
+                        .build()
+                        .merge(config);
+            }
+        });
+        return registry;
+    }
+}
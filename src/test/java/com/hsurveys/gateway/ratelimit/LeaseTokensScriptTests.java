@@ -0,0 +1,96 @@
+package com.hsurveys.gateway.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@code lease_tokens.lua} against a real Redis: the user, organization and route buckets
+ * one lease draws from, and the release of unused tokens.
+ */
+class LeaseTokensScriptTests {
+
+    private static RedisServer redis;
+    private static LettuceConnectionFactory connectionFactory;
+    private static RedisTokenLeases leases;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redis = RedisServer.newRedisServer().port(port).bind("127.0.0.1").build();
+        redis.start();
+        connectionFactory = new LettuceConnectionFactory("127.0.0.1", port);
+        connectionFactory.afterPropertiesSet();
+        leases = new RedisTokenLeases(new ReactiveStringRedisTemplate(connectionFactory), 64, Duration.ZERO,
+                Duration.ofSeconds(5), new SimpleMeterRegistry());
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redis.stop();
+    }
+
+    // an organization bucket that barely refills during a test, shared by users with room to spare
+    private static LeasingRateLimiter.Config config() {
+        LeasingRateLimiter.Config config = new LeasingRateLimiter.Config();
+        config.setReplenishRate(1);
+        config.setBurstCapacity(20);
+        config.setOrganizationReplenishRate(1);
+        config.setOrganizationBurstCapacity(6);
+        config.setRouteReplenishRate(1);
+        config.setRouteBurstCapacity(100);
+        return config;
+    }
+
+    private static long lease(String routeId, String user, int tokens) {
+        return leases.lease(routeId, new RateLimitKey("u:" + user, "org-1"), config(), tokens)
+                .block(Duration.ofSeconds(5));
+    }
+
+    private static void release(String routeId, String user, int tokens) {
+        leases.release(routeId, new RateLimitKey("u:" + user, "org-1"), config(), tokens)
+                .block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void leasesGrantWhatEveryLevelCanCover() {
+        assertThat(lease("grants", "1", 5)).isEqualTo(5);
+        // the organization has one token left for the next user
+        assertThat(lease("grants", "2", 5)).isEqualTo(1);
+        assertThat(lease("grants", "3", 5)).isZero();
+        // anonymous keys have no organization level
+        assertThat(leases.lease("grants", new RateLimitKey("ip:10.0.0.1", null), config(), 5)
+                .block(Duration.ofSeconds(5))).isEqualTo(5);
+    }
+
+    @Test
+    void releasedTokensGoBackToEveryLevel() {
+        assertThat(lease("releases", "1", 6)).isEqualTo(6);
+        assertThat(lease("releases", "2", 1)).isZero();
+
+        release("releases", "1", 4);
+
+        assertThat(lease("releases", "2", 5)).isEqualTo(4);
+    }
+
+    @Test
+    void releasesNeverFillABucketPastItsCapacity() {
+        release("capacity", "1", 100);
+
+        assertThat(lease("capacity", "1", 10)).isEqualTo(6);
+    }
+}
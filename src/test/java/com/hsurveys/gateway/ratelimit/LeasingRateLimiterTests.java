@@ -0,0 +1,150 @@
+package com.hsurveys.gateway.ratelimit;
+
+import com.hsurveys.gateway.metrics.GatewayLatency;
+import com.hsurveys.gateway.utils.JwtPrincipal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LeasingRateLimiterTests {
+
+    private final RedisTokenLeases leases = mock(RedisTokenLeases.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private LeasingRateLimiter limiter(int replenishRate, int burstCapacity) {
+        return limiter(replenishRate, burstCapacity, Duration.ofSeconds(30));
+    }
+
+    private LeasingRateLimiter limiter(int replenishRate, int burstCapacity, Duration leaseTtl) {
+        when(leases.release(anyString(), any(), any(), anyInt())).thenReturn(Mono.empty());
+        LeasingRateLimiter.Config config = new LeasingRateLimiter.Config();
+        config.setReplenishRate(replenishRate);
+        config.setBurstCapacity(burstCapacity);
+        LeasingRateLimiter.Settings settings = new LeasingRateLimiter.Settings(
+                4, leaseTtl, Duration.ofMillis(50), Duration.ofMinutes(1), 1000, Duration.ofMinutes(1));
+        return new LeasingRateLimiter(leases, null, config, settings, meterRegistry,
+                new GatewayLatency(meterRegistry));
+    }
+
+    private boolean allowed(LeasingRateLimiter limiter) {
+        RateLimiter.Response response = limiter.isAllowed("route", "user").block();
+        return response != null && response.isAllowed();
+    }
+
+    private double decisions(String source, boolean allowed) {
+        return meterRegistry.get("gateway.ratelimit.decisions")
+                .tag("source", source).tag("allowed", Boolean.toString(allowed)).counter().count();
+    }
+
+    @Test
+    void spendsLeasedTokensLocally() {
+        when(leases.lease(anyString(), any(), any(), anyInt()))
+                .thenReturn(Mono.just(4L)).thenReturn(Mono.just(0L));
+        LeasingRateLimiter limiter = limiter(10, 20);
+
+        assertThat(allowed(limiter)).isTrue();
+        assertThat(allowed(limiter)).isTrue();
+        assertThat(allowed(limiter)).isTrue();
+
+        assertThat(decisions("lease", true)).isEqualTo(1);
+        assertThat(decisions("local", true)).isEqualTo(2);
+    }
+
+    @Test
+    void sizesLeasesToTheKeysRecentDemand() throws InterruptedException {
+        when(leases.lease(anyString(), any(), any(), anyInt())).thenReturn(Mono.just(1L));
+        LeasingRateLimiter limiter = limiter(10, 20);
+
+        for (int i = 0; i < 6; i++) {
+            assertThat(allowed(limiter)).isTrue();
+            Thread.sleep(20);
+        }
+
+        ArgumentCaptor<Integer> sizes = ArgumentCaptor.forClass(Integer.class);
+        verify(leases, times(6)).lease(anyString(), any(), any(), sizes.capture());
+        // one request's worth before there is any history, then capped by the maximum lease size
+        assertThat(sizes.getAllValues().get(0)).isEqualTo(1);
+        assertThat(sizes.getAllValues().get(5)).isEqualTo(4);
+    }
+
+    @Test
+    void releasesUnusedTokensWhenTheLeaseExpires() {
+        when(leases.lease(anyString(), any(), any(), anyInt())).thenReturn(Mono.just(4L));
+        LeasingRateLimiter limiter = limiter(10, 20, Duration.ofMillis(50));
+
+        assertThat(allowed(limiter)).isTrue();
+
+        verify(leases, timeout(2000)).release(eq("route"), eq(new RateLimitKey("user", null)), any(), eq(3));
+        assertThat(meterRegistry.get("gateway.ratelimit.tokens.released").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void deniesWhenTheSharedQuotaIsExhausted() {
+        when(leases.lease(anyString(), any(), any(), anyInt())).thenReturn(Mono.just(0L));
+        LeasingRateLimiter limiter = limiter(10, 20);
+
+        assertThat(allowed(limiter)).isFalse();
+        assertThat(decisions("lease", false)).isEqualTo(1);
+    }
+
+    @Test
+    void fallsBackToLocalLimitsWhileRedisIsUnavailable() {
+        when(leases.lease(anyString(), any(), any(), anyInt()))
+                .thenReturn(Mono.error(new IllegalStateException("connection refused")));
+        LeasingRateLimiter limiter = limiter(1, 3);
+
+        assertThat(allowed(limiter)).isTrue();
+        assertThat(allowed(limiter)).isTrue();
+        assertThat(allowed(limiter)).isTrue();
+        assertThat(allowed(limiter)).isFalse();
+
+        assertThat(decisions("fallback", true)).isEqualTo(3);
+        verify(leases, times(1)).lease(anyString(), any(), any(), anyInt());
+    }
+
+    @Test
+    void boundsLatencyWhenRedisIsSlow() {
+        when(leases.lease(anyString(), any(), any(), anyInt())).thenReturn(Mono.never());
+        LeasingRateLimiter limiter = limiter(10, 20);
+
+        long start = System.nanoTime();
+        assertThat(allowed(limiter)).isTrue();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(decisions("fallback", true)).isEqualTo(1);
+    }
+
+    @Test
+    void keysCarryTheVerifiedUserAndOrganization() {
+        UUID userId = UUID.randomUUID();
+        UUID organizationId = UUID.randomUUID();
+        JwtPrincipal principal = new JwtPrincipal("jane", userId, organizationId, null, null, List.of(), List.of(), null);
+        when(leases.lease(anyString(), any(), any(), anyInt())).thenReturn(Mono.just(4L));
+        LeasingRateLimiter limiter = limiter(10, 20);
+
+        String id = RateLimitKey.of(principal);
+        limiter.isAllowed("survey-service", id).block();
+
+        verify(leases).lease(eq("survey-service"),
+                eq(new RateLimitKey("u:" + userId, organizationId.toString())), any(), anyInt());
+        assertThat(RateLimitKey.parse(RateLimitKey.anonymous("10.0.0.1")))
+                .isEqualTo(new RateLimitKey("ip:10.0.0.1", null));
+    }
+}
@@ -0,0 +1,97 @@
+package com.hsurveys.gateway.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedisTokenLeasesTests {
+
+    private final ReactiveStringRedisTemplate redisTemplate = mock(ReactiveStringRedisTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private static LeasingRateLimiter.Config config() {
+        LeasingRateLimiter.Config config = new LeasingRateLimiter.Config();
+        config.setReplenishRate(10);
+        config.setBurstCapacity(20);
+        config.setOrganizationReplenishRate(100);
+        config.setOrganizationBurstCapacity(200);
+        return config;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void concurrentLeasesShareOneScriptCall() {
+        when(redisTemplate.execute(any(), any(List.class), any(List.class)))
+                .thenReturn(Flux.just(List.of(5L, 3L, 0L)));
+        RedisTokenLeases leases = new RedisTokenLeases(redisTemplate, 64, Duration.ofMillis(20), Duration.ofSeconds(1), meterRegistry);
+        RateLimitKey key = new RateLimitKey("u:1", "org-1");
+
+        List<Long> grants = Flux.merge(
+                        leases.lease("survey-service", key, config(), 5),
+                        leases.lease("survey-service", new RateLimitKey("u:2", "org-1"), config(), 5),
+                        leases.lease("survey-service", new RateLimitKey("ip:10.0.0.1", null), config(), 5))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(grants).containsExactlyInAnyOrder(5L, 3L, 0L);
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<String>> args = ArgumentCaptor.forClass(List.class);
+        verify(redisTemplate, times(1)).execute(any(), keys.capture(), args.capture());
+        assertThat(keys.getValue()).hasSize(10).allMatch(k -> k.startsWith("lease_rate_limiter.{survey-service}."));
+        assertThat(args.getValue().get(0)).isEqualTo("3");
+        assertThat(meterRegistry.get("gateway.ratelimit.redis.batch.size").summary().max()).isEqualTo(3);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void survivesMoreStalledBatchesThanCanBeInFlight() throws InterruptedException {
+        Sinks.One<Boolean> redisResponds = Sinks.one();
+        List<Long> grants = Collections.nCopies(64, 1L);
+        when(redisTemplate.execute(any(), any(List.class), any(List.class)))
+                .thenAnswer(invocation -> redisResponds.asMono().map(responds -> grants).flux());
+        RedisTokenLeases leases = new RedisTokenLeases(redisTemplate, 64, Duration.ofMillis(1), Duration.ofSeconds(10),
+                meterRegistry);
+
+        // one timed flush per lease, so more batches wait for Redis than may be in flight
+        List<Mono<Long>> waiting = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Mono<Long> lease = leases.lease("survey-service", new RateLimitKey("u:" + i, "org-1"), config(), 5).cache();
+            lease.subscribe(granted -> { }, e -> { });
+            waiting.add(lease);
+            Thread.sleep(3);
+        }
+        redisResponds.tryEmitValue(true);
+
+        assertThat(Flux.concat(waiting).collectList().block(Duration.ofSeconds(5))).hasSize(40).containsOnly(1L);
+        assertThat(leases.lease("survey-service", new RateLimitKey("u:later", "org-1"), config(), 5)
+                .block(Duration.ofSeconds(5))).isEqualTo(1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedBatchesFailEveryWaitingLease() {
+        when(redisTemplate.execute(any(), any(List.class), any(List.class)))
+                .thenReturn(Flux.error(new IllegalStateException("connection refused")));
+        RedisTokenLeases leases = new RedisTokenLeases(redisTemplate, 64, Duration.ZERO, Duration.ofSeconds(1), meterRegistry);
+
+        Mono<Long> lease = leases.lease("user-service", new RateLimitKey("u:1", null), config(), 5);
+
+        assertThat(lease.onErrorReturn(-1L).block(Duration.ofSeconds(5))).isEqualTo(-1L);
+    }
+}
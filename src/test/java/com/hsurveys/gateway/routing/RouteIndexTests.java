@@ -0,0 +1,136 @@
+package com.hsurveys.gateway.routing;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RouteIndexTests {
+
+    @Test
+    void pathIndexReturnsMatchesMostSpecificFirst() {
+        PathIndex<String> index = PathIndex.<String>builder()
+                .add("/api/**", "api")
+                .add("/api/users/**", "users")
+                .add("/api/users/*/profile", "profile")
+                .add("/api/users/me/profile", "me")
+                .build();
+
+        assertThat(index.match("/api/users/me/profile")).containsExactly("me", "profile", "users", "api");
+        assertThat(index.match("/api/users/42/profile")).containsExactly("profile", "users", "api");
+        assertThat(index.match("/api/users")).containsExactly("users", "api");
+        assertThat(index.match("/api/teams/1")).containsExactly("api");
+        assertThat(index.match("/health")).isEmpty();
+        assertThatThrownBy(() -> PathIndex.builder().add("/api/**/users", "x"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void resolvesRoutesAndTheMostSpecificAuthRuleInOneLookup() {
+        AuthProperties.Rule publicRule = rule(AuthPolicy.PUBLIC, List.of("/api/auth/login/**"));
+        AuthProperties.Rule adminRule = rule(AuthPolicy.ROLE, List.of("/api/roles/**"));
+        adminRule.setRoles(List.of("ADMIN"));
+        AuthProperties properties = new AuthProperties();
+        properties.setRules(List.of(publicRule, adminRule));
+        RouteIndex routeIndex = new RouteIndex(properties);
+        Object users = routeIndex.register(List.of("/api/users/**", "/api/auth/**", "/api/roles/**"));
+        Object surveys = routeIndex.register(List.of("/api/surveys/**"));
+        assertThat(routeIndex.register(List.of("/api/surveys/**"))).isSameAs(surveys);
+
+        RouteIndex.Match login = routeIndex.resolve("/api/auth/login");
+        assertThat(login.routeKeys()).containsExactly(users);
+        assertThat(login.authRule()).isSameAs(publicRule);
+
+        RouteIndex.Match roles = routeIndex.resolve("/api/roles/7");
+        assertThat(roles.authRule().permits(List.of("USER"), List.of())).isFalse();
+        assertThat(roles.authRule().permits(List.of("ADMIN"), List.of())).isTrue();
+
+        RouteIndex.Match questions = routeIndex.resolve("/api/surveys/1/questions");
+        assertThat(questions.matchesRoute(surveys)).isTrue();
+        assertThat(questions.matchesRoute(users)).isFalse();
+        assertThat(questions.authRule().getPolicy()).isEqualTo(AuthPolicy.AUTHENTICATED);
+        assertThat(routeIndex.resolve("/api/nothing").routeKeys()).isEmpty();
+    }
+
+    @Test
+    void matchesTheDecodedNormalizedPath() {
+        AuthProperties.Rule publicRule = rule(AuthPolicy.PUBLIC, List.of("/api/public/**"));
+        AuthProperties.Rule adminRule = rule(AuthPolicy.ROLE, List.of("/api/admin/**"));
+        adminRule.setRoles(List.of("ADMIN"));
+        AuthProperties properties = new AuthProperties();
+        properties.setRules(List.of(publicRule, adminRule));
+        RouteIndex routeIndex = new RouteIndex(properties);
+        Object admin = routeIndex.register(List.of("/api/admin/**"));
+
+        for (String path : List.of("/api/admin/users", "/api/%61dmin/users", "/api/public/..%2Fadmin/users",
+                "/api/public%2F..%2F..%2Fapi/admin/users", "/api/public/../admin/users", "/api/./admin;x=1/users",
+                "//api//admin/users")) {
+            RouteIndex.Match match = routeIndex.resolve(path);
+            assertThat(match.authRule()).as(path).isSameAs(adminRule);
+            assertThat(match.matchesRoute(admin)).as(path).isTrue();
+        }
+        assertThat(routeIndex.resolve("/api/public/files").authRule()).isSameAs(publicRule);
+        // malformed escapes are matched as they are rather than dropped
+        assertThat(routeIndex.resolve("/api/public/%zz").authRule()).isSameAs(publicRule);
+        assertThat(RouteIndex.normalize("/api/../../..")).isEqualTo("/");
+    }
+
+    @Test
+    void dropsPatternsNoLongerRegisteredAfterARouteRefresh() {
+        RouteIndex routeIndex = new RouteIndex(new AuthProperties());
+        Object users = routeIndex.register(List.of("/api/users/**"));
+        routeIndex.register(List.of("/api/legacy/**"));
+
+        routeIndex.onApplicationEvent(new RefreshRoutesEvent(this));
+        assertThat(routeIndex.register(List.of("/api/users/**"))).isSameAs(users);
+        Object reports = routeIndex.register(List.of("/api/reports/**"));
+        // the routes being replaced keep matching until the refresh completes
+        assertThat(routeIndex.resolve("/api/legacy/1").routeKeys()).hasSize(1);
+        assertThat(routeIndex.resolve("/api/reports/1").matchesRoute(reports)).isTrue();
+        routeIndex.onApplicationEvent(new RefreshRoutesResultEvent(this));
+
+        assertThat(routeIndex.resolve("/api/legacy/1").routeKeys()).isEmpty();
+        assertThat(routeIndex.resolve("/api/users/1").matchesRoute(users)).isTrue();
+        assertThat(routeIndex.resolve("/api/reports/1").matchesRoute(reports)).isTrue();
+
+        // neither a failed nor a scoped refresh drops anything
+        routeIndex.onApplicationEvent(new RefreshRoutesEvent(this));
+        routeIndex.onApplicationEvent(new RefreshRoutesResultEvent(this, new IllegalStateException("boom")));
+        routeIndex.onApplicationEvent(new RefreshRoutesEvent(this, Map.of("id", "users")));
+        routeIndex.onApplicationEvent(new RefreshRoutesResultEvent(this));
+        assertThat(routeIndex.resolve("/api/users/1").matchesRoute(users)).isTrue();
+        assertThat(routeIndex.resolve("/api/reports/1").matchesRoute(reports)).isTrue();
+    }
+
+    @Test
+    void refusesToBindARoleRuleWithoutRoles() {
+        ApplicationContextRunner runner = new ApplicationContextRunner()
+                .withUserConfiguration(AuthPropertiesConfiguration.class)
+                .withPropertyValues("auth.rules[0].paths=/api/roles/**", "auth.rules[0].policy=ROLE");
+
+        runner.run(context -> assertThat(context).hasFailed()
+                .getFailure().rootCause().hasMessageContaining("A ROLE rule must list at least one role"));
+        runner.withPropertyValues("auth.rules[0].roles=ADMIN")
+                .run(context -> assertThat(context).hasNotFailed());
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableConfigurationProperties(AuthProperties.class)
+    static class AuthPropertiesConfiguration {
+    }
+
+    private static AuthProperties.Rule rule(AuthPolicy policy, List<String> paths) {
+        AuthProperties.Rule rule = new AuthProperties.Rule();
+        rule.setPolicy(policy);
+        rule.setPaths(paths);
+        return rule;
+    }
+}
@@ -0,0 +1,108 @@
+package com.hsurveys.gateway.support;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+
+import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Token fixtures shaped like the ones issued by user-service.
+ */
+public final class TestTokens {
+
+    public static final String SECRET = "dGVzdC1zZWNyZXQta2V5LWZvci10ZXN0aW5nLXB1cnBvc2VzLW9ubHktMzJieXRlcw==";
+    public static final long EXPIRATION = 900000L;
+
+    public static final UUID USER_ID = UUID.fromString("6f1c2b7e-3c1d-4a55-9b1e-2f6a7c8d9e01");
+    public static final UUID ORGANIZATION_ID = UUID.fromString("0a4e9c12-8b7d-4f3e-a1c2-5d6e7f8a9b10");
+    public static final UUID DEPARTMENT_ID = UUID.fromString("1b2c3d4e-5f60-4718-8293-a4b5c6d7e8f9");
+    public static final UUID TEAM_ID = UUID.fromString("9e8d7c6b-5a49-4382-9170-6f5e4d3c2b1a");
+    public static final List<String> ROLES = List.of("ROLE_ORG_ADMIN", "ROLE_USER");
+    public static final List<String> AUTHORITIES = List.of(
+            "SURVEY_READ", "SURVEY_CREATE", "SURVEY_UPDATE", "SURVEY_DELETE",
+            "USER_READ", "USER_UPDATE", "ORGANIZATION_READ", "TEAM_READ");
+
+    private static final SecretKey KEY = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+
+    private TestTokens() {
+    }
+
+    public static String valid() {
+        return token(KEY, Instant.now().plus(Duration.ofMinutes(15)));
+    }
+
+    /**
+     * A valid token for another member of the fixture organization, e.g. to spread load
+     * over many rate limit keys.
+     */
+    public static String valid(UUID userId, Duration ttl) {
+        return token(KEY, userId, Instant.now().plus(ttl));
+    }
+
+    public static String expired() {
+        return token(KEY, Instant.now().minus(Duration.ofMinutes(1)));
+    }
+
+    /**
+     * A correctly signed token without {@code exp}, which the gateway must refuse.
+     */
+    public static String withoutExpiry() {
+        return Jwts.builder()
+                .subject("jane.doe@example.com")
+                .claim("userId", USER_ID.toString())
+                .claim("organizationId", ORGANIZATION_ID.toString())
+                .claim("roles", ROLES)
+                .issuedAt(new Date())
+                .signWith(KEY)
+                .compact();
+    }
+
+    /**
+     * A valid token whose {@code nbf} is {@code delay} from now.
+     */
+    public static String notYetValid(Duration delay) {
+        Instant notBefore = Instant.now().plus(delay);
+        return Jwts.builder()
+                .subject("jane.doe@example.com")
+                .claim("userId", USER_ID.toString())
+                .claim("organizationId", ORGANIZATION_ID.toString())
+                .claim("roles", ROLES)
+                .issuedAt(new Date())
+                .notBefore(Date.from(notBefore))
+                .expiration(Date.from(notBefore.plus(Duration.ofMinutes(15))))
+                .signWith(KEY)
+                .compact();
+    }
+
+    public static String forged() {
+        SecretKey otherKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(
+                "b3RoZXItc2VjcmV0LWtleS1mb3ItZm9yZ2VkLXRva2Vucy1vbmx5LTMyYnl0ZXM="));
+        return token(otherKey, Instant.now().plus(Duration.ofMinutes(15)));
+    }
+
+    private static String token(SecretKey key, Instant expiresAt) {
+        return token(key, USER_ID, expiresAt);
+    }
+
+    private static String token(SecretKey key, UUID userId, Instant expiresAt) {
+        Instant issuedAt = expiresAt.minus(Duration.ofMinutes(15));
+        return Jwts.builder()
+                .subject(USER_ID.equals(userId) ? "jane.doe@example.com" : "user-" + userId + "@example.com")
+                .claim("userId", userId.toString())
+                .claim("organizationId", ORGANIZATION_ID.toString())
+                .claim("departmentId", DEPARTMENT_ID.toString())
+                .claim("teamId", TEAM_ID.toString())
+                .claim("roles", ROLES)
+                .claim("authorities", AUTHORITIES)
+                .issuedAt(Date.from(issuedAt))
+                .expiration(Date.from(expiresAt))
+                .signWith(key)
+                .compact();
+    }
+}
@@ -0,0 +1,48 @@
+package com.hsurveys.gateway.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hsurveys.gateway.support.TestTokens;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdentityHeadersTests {
+
+    private final VerifiedToken verified =
+            VerifiedToken.of(new JwtUtil(TestTokens.SECRET, TestTokens.EXPIRATION).parsePrincipal(TestTokens.valid()));
+
+    @Test
+    void legacyHeadersReplaceClientSuppliedValues() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(IdentityHeaders.USER_ID, "spoofed");
+        headers.add(IdentityHeaders.IDENTITY, "spoofed");
+
+        verified.applyTo(headers, IdentityHeaderMode.LEGACY);
+
+        assertThat(headers.get(IdentityHeaders.USER_ID)).containsExactly(TestTokens.USER_ID.toString());
+        assertThat(headers.getFirst(IdentityHeaders.ROLES)).isEqualTo("ROLE_ORG_ADMIN,ROLE_USER");
+        assertThat(headers.getFirst(IdentityHeaders.AUTHENTICATED)).isEqualTo("true");
+        assertThat(headers.containsKey(IdentityHeaders.IDENTITY)).isFalse();
+    }
+
+    @Test
+    void envelopeCarriesTheWholeIdentityInOneHeader() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(IdentityHeaders.ORGANIZATION_ID, "spoofed");
+
+        verified.applyTo(headers, IdentityHeaderMode.ENVELOPE);
+
+        assertThat(headers.size()).isEqualTo(1);
+        String value = headers.getFirst(IdentityHeaders.IDENTITY);
+        assertThat(value).startsWith(IdentityHeaders.ENVELOPE_VERSION + ".");
+        JsonNode identity = new ObjectMapper().readTree(Base64.getUrlDecoder().decode(value.substring(3)));
+        assertThat(identity.get("uid").asText()).isEqualTo(TestTokens.USER_ID.toString());
+        assertThat(identity.get("org").asText()).isEqualTo(TestTokens.ORGANIZATION_ID.toString());
+        assertThat(identity.get("roles")).hasSize(TestTokens.ROLES.size());
+        assertThat(identity.get("auth")).hasSize(TestTokens.AUTHORITIES.size());
+    }
+}
@@ -0,0 +1,56 @@
+package com.hsurveys.gateway.utils;
+
+import com.hsurveys.gateway.support.TestTokens;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MissingClaimException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtUtilTests {
+
+    private final JwtUtil jwtUtil = new JwtUtil(TestTokens.SECRET, TestTokens.EXPIRATION);
+
+    @Test
+    void parsePrincipalExtractsAllClaims() {
+        JwtPrincipal principal = jwtUtil.parsePrincipal(TestTokens.valid());
+
+        assertThat(principal.username()).isEqualTo("jane.doe@example.com");
+        assertThat(principal.userId()).isEqualTo(TestTokens.USER_ID);
+        assertThat(principal.organizationId()).isEqualTo(TestTokens.ORGANIZATION_ID);
+        assertThat(principal.departmentId()).isEqualTo(TestTokens.DEPARTMENT_ID);
+        assertThat(principal.teamId()).isEqualTo(TestTokens.TEAM_ID);
+        assertThat(principal.roles()).isEqualTo(TestTokens.ROLES);
+        assertThat(principal.authorities()).isEqualTo(TestTokens.AUTHORITIES);
+        assertThat(principal.isExpired(Instant.now())).isFalse();
+    }
+
+    @Test
+    void parsePrincipalRejectsExpiredAndForgedTokens() {
+        assertThatThrownBy(() -> jwtUtil.parsePrincipal(TestTokens.expired()))
+                .isInstanceOf(ExpiredJwtException.class);
+        assertThatThrownBy(() -> jwtUtil.parsePrincipal(TestTokens.forged()))
+                .isInstanceOf(SignatureException.class);
+    }
+
+    @Test
+    void parsePrincipalRejectsTokensWithoutExpiry() {
+        assertThatThrownBy(() -> jwtUtil.parsePrincipal(TestTokens.withoutExpiry()))
+                .isInstanceOf(MissingClaimException.class);
+        assertThat(jwtUtil.validateToken(TestTokens.withoutExpiry())).isFalse();
+    }
+
+    @Test
+    void legacyExtractorsAgreeWithPrincipal() {
+        String token = TestTokens.valid();
+
+        assertThat(jwtUtil.validateToken(token)).isTrue();
+        assertThat(jwtUtil.extractUserId(token)).isEqualTo(TestTokens.USER_ID);
+        assertThat(jwtUtil.extractRoles(token)).isEqualTo(TestTokens.ROLES);
+        assertThat(jwtUtil.validateToken(TestTokens.expired())).isFalse();
+    }
+}
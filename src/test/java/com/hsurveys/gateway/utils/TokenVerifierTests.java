@@ -0,0 +1,104 @@
+package com.hsurveys.gateway.utils;
+
+import com.hsurveys.gateway.support.TestTokens;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenVerifierTests {
+
+    private final JwtUtil jwtUtil = new JwtUtil(TestTokens.SECRET, TestTokens.EXPIRATION);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private TokenVerifier verifier(boolean enabled) {
+        return new TokenVerifier(jwtUtil, meterRegistry, enabled, DataSize.ofMegabytes(1),
+                TestTokens.EXPIRATION, 100, Duration.ofMinutes(5));
+    }
+
+    private double rejections(TokenRejection reason) {
+        return meterRegistry.get("gateway.jwt.rejections").tag("reason", reason.tag).counter().count();
+    }
+
+    @Test
+    void repeatRequestsReuseTheVerifiedToken() {
+        TokenVerifier verifier = verifier(true);
+        String token = TestTokens.valid();
+
+        VerifiedToken first = verifier.verify(token).token();
+        VerifiedToken second = verifier.verify(token).token();
+
+        assertThat(second).isSameAs(first);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", TokenVerifier.VERIFIED_CACHE_NAME)
+                .tag("result", "hit").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void disabledCacheVerifiesEveryTime() {
+        TokenVerifier verifier = verifier(false);
+        String token = TestTokens.valid();
+
+        assertThat(verifier.verify(token).token()).isNotSameAs(verifier.verify(token).token());
+        assertThat(verifier.estimatedSize()).isZero();
+    }
+
+    @Test
+    void rejectedTokensAreCountedPerReasonAndRemembered() {
+        TokenVerifier verifier = verifier(true);
+        String forged = TestTokens.forged();
+
+        assertThat(verifier.verify(forged).rejection()).isEqualTo(TokenRejection.INVALID_SIGNATURE);
+        assertThat(verifier.verify(forged).rejection()).isEqualTo(TokenRejection.INVALID_SIGNATURE);
+        assertThat(verifier.verify(TestTokens.expired()).rejection()).isEqualTo(TokenRejection.EXPIRED);
+
+        assertThat(rejections(TokenRejection.INVALID_SIGNATURE)).isEqualTo(2);
+        assertThat(rejections(TokenRejection.EXPIRED)).isEqualTo(1);
+        assertThat(verifier.estimatedSize()).isZero();
+        assertThat(verifier.estimatedRejectedSize()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", TokenVerifier.REJECTED_CACHE_NAME)
+                .tag("result", "hit").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void tokensUsedBeforeTheirNotBeforeAreNotRemembered() {
+        TokenVerifier verifier = verifier(true);
+        String premature = TestTokens.notYetValid(Duration.ofSeconds(30));
+
+        assertThat(verifier.verify(premature).rejection()).isEqualTo(TokenRejection.NOT_YET_VALID);
+        assertThat(verifier.verify(premature).rejection()).isEqualTo(TokenRejection.NOT_YET_VALID);
+
+        assertThat(verifier.estimatedRejectedSize()).isZero();
+        assertThat(rejections(TokenRejection.NOT_YET_VALID)).isEqualTo(2);
+    }
+
+    @Test
+    void tokensWithoutExpiryAreRejectedAndNeverCached() {
+        TokenVerifier verifier = verifier(true);
+        String unexpiring = TestTokens.withoutExpiry();
+
+        assertThat(verifier.verify(unexpiring).isVerified()).isFalse();
+        assertThat(verifier.verify(unexpiring).rejection()).isEqualTo(TokenRejection.INVALID);
+        assertThat(verifier(false).verify(unexpiring).isVerified()).isFalse();
+        assertThat(verifier.estimatedSize()).isZero();
+    }
+
+    @Test
+    void precheckRefusesStructurallyInvalidTokens() {
+        String valid = TestTokens.valid();
+        String unsigned = valid.substring(0, valid.lastIndexOf('.') + 1);
+        String noneAlg = "eyJhbGciOiJub25lIn0" + valid.substring(valid.indexOf('.'));
+
+        assertThat(jwtUtil.precheck(valid)).isNull();
+        assertThat(jwtUtil.precheck("not-a-token")).isEqualTo(TokenRejection.MALFORMED);
+        assertThat(jwtUtil.precheck(unsigned)).isEqualTo(TokenRejection.MALFORMED);
+        assertThat(jwtUtil.precheck(valid + ".extra")).isEqualTo(TokenRejection.MALFORMED);
+        assertThat(jwtUtil.precheck(noneAlg)).isEqualTo(TokenRejection.UNSUPPORTED_ALGORITHM);
+        assertThat(jwtUtil.precheck(TestTokens.expired())).isEqualTo(TokenRejection.EXPIRED);
+        assertThat(jwtUtil.precheck(TestTokens.withoutExpiry())).isEqualTo(TokenRejection.INVALID);
+        assertThat(jwtUtil.precheck("a".repeat(JwtUtil.DEFAULT_MAX_TOKEN_LENGTH + 1)))
+                .isEqualTo(TokenRejection.TOO_LARGE);
+    }
+}